@@ -0,0 +1,131 @@
+/**
+*    Copyright (C)  DataMelt project. The jHPLot package by S.Chekanov and Work.ORG
+*    All rights reserved.
+*
+*    This program is free software; you can redistribute it and/or modify it under the terms
+*    of the GNU General Public License as published by the Free Software Foundation; either
+*    version 3 of the License, or any later version.
+*
+*    This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+*    without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+*    See the GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License along with this program;
+*    if not, see <http://www.gnu.org/licenses>.
+*
+*    Additional permission under GNU GPL version 3 section 7:
+*    If you have received this program as a library with written permission from the DataMelt team,
+*    you can link or combine this library with your non-GPL project to convey the resulting work.
+*    In this case, this library should be considered as released under the terms of
+*    GNU Lesser public license (see <https://www.gnu.org/licenses/lgpl.html>),
+*    provided you include this license notice and a URL through which recipients can access the
+*    Corresponding Source.
+**/
+package jhplot;
+
+import hep.aida.IAxis;
+
+/**
+ * Fast conversion of coordinates to bin indices of a histogram axis. Fixed
+ * binning uses direct arithmetic, variable binning uses a binary search over
+ * the bin edges. The returned index follows the layout of the setContents()
+ * arrays: 0 is the underflow bin, 1..bins are the in-range bins and bins+1
+ * is the overflow bin. NaN has no bin and is mapped to {@link #NAN}.
+ * 
+ * @author S.Chekanov
+ * 
+ */
+final class AxisIndex {
+
+	/**
+	 * Index returned for NaN coordinates, which belong to no bin.
+	 */
+	static final int NAN = -1;
+
+	private final int bins;
+
+	private final boolean fixed;
+
+	private final double min;
+
+	private final double max;
+
+	private final double width;
+
+	private final double[] edges;
+
+	/**
+	 * Build the index for an axis.
+	 * 
+	 * @param axis
+	 *            histogram axis
+	 */
+	AxisIndex(IAxis axis) {
+		bins = axis.bins();
+		fixed = axis.isFixedBinning();
+		min = axis.lowerEdge();
+		max = axis.upperEdge();
+		width = axis.binWidth(0);
+		edges = new double[bins + 1];
+		for (int i = 0; i < bins; i++)
+			edges[i] = axis.binLowerEdge(i);
+		edges[bins] = max;
+	}
+
+	/**
+	 * Number of in-range bins.
+	 * 
+	 * @return number of bins
+	 */
+	int bins() {
+		return bins;
+	}
+
+	/**
+	 * Convert a coordinate to a bin index.
+	 * 
+	 * @param x
+	 *            coordinate
+	 * @return 0 for underflow, bins+1 for overflow, {@link #NAN} for NaN,
+	 *         otherwise bin number + 1
+	 */
+	int index(double x) {
+		if (Double.isNaN(x))
+			return NAN;
+		if (x < min)
+			return 0;
+		if (fixed) {
+			int i = (int) Math.floor((x - min) / width);
+			return i >= bins ? bins + 1 : i + 1;
+		}
+		if (x >= max)
+			return bins + 1;
+		int lo = 0;
+		int hi = bins;
+		while (hi - lo > 1) {
+			int mid = (lo + hi) >>> 1;
+			if (edges[mid] <= x)
+				lo = mid;
+			else
+				hi = mid;
+		}
+		return lo + 1;
+	}
+
+	/**
+	 * Convert an index in setContents() layout to the AIDA bin index.
+	 * 
+	 * @param k
+	 *            index from 0 to bins+1
+	 * @return AIDA bin index including IAxis.UNDERFLOW_BIN and
+	 *         IAxis.OVERFLOW_BIN
+	 */
+	int aidaIndex(int k) {
+		if (k == 0)
+			return IAxis.UNDERFLOW_BIN;
+		if (k == bins + 1)
+			return IAxis.OVERFLOW_BIN;
+		return k - 1;
+	}
+
+}
@@ -0,0 +1,279 @@
+/**
+*    Copyright (C)  DataMelt project. The jHPLot package by S.Chekanov and Work.ORG
+*    All rights reserved.
+*
+*    This program is free software; you can redistribute it and/or modify it under the terms
+*    of the GNU General Public License as published by the Free Software Foundation; either
+*    version 3 of the License, or any later version.
+*
+*    This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+*    without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+*    See the GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License along with this program;
+*    if not, see <http://www.gnu.org/licenses>.
+*
+*    Additional permission under GNU GPL version 3 section 7:
+*    If you have received this program as a library with written permission from the DataMelt team,
+*    you can link or combine this library with your non-GPL project to convey the resulting work.
+*    In this case, this library should be considered as released under the terms of
+*    GNU Lesser public license (see <https://www.gnu.org/licenses/lgpl.html>),
+*    provided you include this license notice and a URL through which recipients can access the
+*    Corresponding Source.
+**/
+package jhplot;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * Columnar storage of rows of doubles. Each column is kept in its own set of
+ * primitive chunks, so a column can be scanned through contiguous memory and
+ * rows do not exist as separate objects. Rows are exposed as a list view:
+ * get(row) returns a new array with a copy of the row, and rows are written
+ * back with set(row, values). All rows have the same number of columns, which
+ * is fixed by the first added row.
+ * 
+ * @author S.Chekanov
+ * 
+ */
+final class DoubleColumns extends AbstractList<double[]> implements
+		RandomAccess, Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/** Number of rows in one chunk (a power of two) */
+	static final int CHUNK = 1 << 16;
+
+	private static final int SHIFT = 16;
+
+	private static final int MASK = CHUNK - 1;
+
+	/** Initial length of the first chunk */
+	private static final int FIRST = 16;
+
+	private int dimension;
+
+	/** data[column][chunk][row in chunk] */
+	private double[][][] data;
+
+	private int size;
+
+	/**
+	 * Build an empty store. The number of columns is set by the first row.
+	 */
+	DoubleColumns() {
+		clear();
+	}
+
+	/**
+	 * Number of columns.
+	 * 
+	 * @return number of columns
+	 */
+	int dimension() {
+		return dimension;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Number of chunks in use.
+	 * 
+	 * @return number of chunks
+	 */
+	int chunks() {
+		return (size + CHUNK - 1) >>> SHIFT;
+	}
+
+	/**
+	 * Chunk of a column. Only the first chunkLength(k) values are valid.
+	 * 
+	 * @param column
+	 *            column index
+	 * @param k
+	 *            chunk index
+	 * @return values of the chunk
+	 */
+	double[] chunk(int column, int k) {
+		return data[column][k];
+	}
+
+	/**
+	 * Number of valid values in a chunk.
+	 * 
+	 * @param k
+	 *            chunk index
+	 * @return number of rows in this chunk
+	 */
+	int chunkLength(int k) {
+		return Math.min(CHUNK, size - (k << SHIFT));
+	}
+
+	/**
+	 * Get one value.
+	 * 
+	 * @param row
+	 *            row index
+	 * @param column
+	 *            column index
+	 * @return value
+	 */
+	double get(int row, int column) {
+		check(row);
+		return data[column][row >>> SHIFT][row & MASK];
+	}
+
+	/**
+	 * Set one value.
+	 * 
+	 * @param row
+	 *            row index
+	 * @param column
+	 *            column index
+	 * @param value
+	 *            new value
+	 */
+	void set(int row, int column, double value) {
+		check(row);
+		data[column][row >>> SHIFT][row & MASK] = value;
+	}
+
+	/**
+	 * Copy a column into an array.
+	 * 
+	 * @param column
+	 *            column index
+	 * @return array with size() values
+	 */
+	double[] column(int column) {
+		double[] a = new double[size];
+		int n = chunks();
+		for (int k = 0; k < n; k++)
+			System.arraycopy(data[column][k], 0, a, k << SHIFT, chunkLength(k));
+		return a;
+	}
+
+	@Override
+	public double[] get(int row) {
+		check(row);
+		int k = row >>> SHIFT;
+		int i = row & MASK;
+		double[] a = new double[dimension];
+		for (int c = 0; c < dimension; c++)
+			a[c] = data[c][k][i];
+		return a;
+	}
+
+	@Override
+	public double[] set(int row, double[] values) {
+		double[] old = get(row);
+		checkLength(values);
+		put(row, values);
+		return old;
+	}
+
+	@Override
+	public void add(int row, double[] values) {
+		if (row < 0 || row > size)
+			throw new IndexOutOfBoundsException("Index: " + row + ", Size: "
+					+ size);
+		if (dimension == 0 && size == 0)
+			setDimension(values.length);
+		checkLength(values);
+		ensureCapacity(size + 1);
+		for (int j = size; j > row; j--)
+			move(j - 1, j);
+		size++;
+		put(row, values);
+		modCount++;
+	}
+
+	@Override
+	public double[] remove(int row) {
+		double[] old = get(row);
+		for (int j = row + 1; j < size; j++)
+			move(j, j - 1);
+		size--;
+		modCount++;
+		return old;
+	}
+
+	@Override
+	public void clear() {
+		dimension = 0;
+		size = 0;
+		data = new double[0][][];
+		modCount++;
+	}
+
+	private void setDimension(int dim) {
+		dimension = dim;
+		data = new double[dim][0][];
+	}
+
+	private void put(int row, double[] values) {
+		int k = row >>> SHIFT;
+		int i = row & MASK;
+		for (int c = 0; c < dimension; c++)
+			data[c][k][i] = values[c];
+	}
+
+	private void move(int from, int to) {
+		for (int c = 0; c < dimension; c++)
+			data[c][to >>> SHIFT][to & MASK] = data[c][from >>> SHIFT][from
+					& MASK];
+	}
+
+	/**
+	 * Make room for a number of rows. The first chunk grows by doubling up to
+	 * the chunk size, further chunks are allocated at full size, so existing
+	 * values are never copied once a chunk is full.
+	 */
+	private void ensureCapacity(int rows) {
+		for (int c = 0; c < dimension; c++) {
+			double[][] col = data[c];
+			int need = (rows + CHUNK - 1) >>> SHIFT;
+			if (need > col.length) {
+				double[][] tmp = new double[Math.max(need, col.length * 2)][];
+				System.arraycopy(col, 0, tmp, 0, col.length);
+				col = tmp;
+				data[c] = col;
+			}
+			if (col[0] == null)
+				col[0] = new double[Math.min(CHUNK, Math.max(FIRST, rows))];
+			if (need == 1 && col[0].length < rows) {
+				double[] tmp = new double[Math.min(CHUNK,
+						Math.max(rows, col[0].length * 2))];
+				System.arraycopy(col[0], 0, tmp, 0, size);
+				col[0] = tmp;
+			}
+			for (int k = 1; k < need; k++) {
+				if (col[k] == null)
+					col[k] = new double[CHUNK];
+			}
+			if (need > 1 && col[0].length < CHUNK) {
+				double[] tmp = new double[CHUNK];
+				System.arraycopy(col[0], 0, tmp, 0, Math.min(size, CHUNK));
+				col[0] = tmp;
+			}
+		}
+	}
+
+	private void check(int row) {
+		if (row < 0 || row >= size)
+			throw new IndexOutOfBoundsException("Index: " + row + ", Size: "
+					+ size);
+	}
+
+	private void checkLength(double[] values) {
+		if (values.length != dimension)
+			throw new IllegalArgumentException("Row has " + values.length
+					+ " values, but " + dimension + " columns are expected");
+	}
+
+}
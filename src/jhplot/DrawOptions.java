@@ -227,7 +227,8 @@ public class DrawOptions extends Plottable implements Serializable {
 	 *            "l" : line style<br>
 	 *            "p": symbol type <br>
 	 *            "h": histogram style <br>
-	 *            "lp" or "pl": lines connects symbols
+	 *            "lp" or "pl": lines connects symbols <br>
+	 *            "d": density of points, drawn as one image
 	 */
 	public void setStyle(String type) {
 		if (type.equalsIgnoreCase("l")) {
@@ -252,6 +253,11 @@ public class DrawOptions extends Plottable implements Serializable {
 			lpp.setSymbol(4);
 			lpp.setDrawSymbol(true);
 			return;
+		} else if (type.equalsIgnoreCase("d")) {
+			lpp.setGraphStyle(LinePars.DENSITY);
+			lpp.setDrawLine(false);
+			lpp.setDrawSymbol(false);
+			return;
 		}
 		jhplot.utils.Util.ErrorMessage("Option =" + type + " is not defined");
 
@@ -823,6 +829,27 @@ public class DrawOptions extends Plottable implements Serializable {
 		return (double) lpp.getSymbolSize();
 	}
 
+	/**
+	 * Use a logarithmic color scale for the density style ("d").
+	 * 
+	 * @param log
+	 *            true for log scale of the point counts
+	 */
+	public void setDensityLog(boolean log) {
+		lpp.setDensityLog(log);
+	}
+
+	/**
+	 * Count points in hexagons for the density style ("d"), instead of
+	 * pixels. The radius of the hexagons is the symbol size.
+	 * 
+	 * @param hexbin
+	 *            true for hexagonal bins
+	 */
+	public void setDensityHexbin(boolean hexbin) {
+		lpp.setDensityHexbin(hexbin);
+	}
+
 	/**
 	 * Set the style of the graph. 
 	 * 
@@ -93,6 +93,10 @@ public class F1D extends DrawOptions {
 
 	private ExpressionBuilder function = null;
 
+	private transient CompiledExpression compiled = null;
+
+	private transient Expression compiledFrom = null;
+
 	private String lastException = "";
 
 	final int maxpoints = 500;
@@ -736,8 +740,13 @@ public class F1D extends DrawOptions {
 		// evaluate function
 		if (iname == null && calc != null && proxy.isParsed() == true) {
 			try {
-				calc.setVariable("x", x);
-				y = calc.evaluate();
+				CompiledExpression c = compiled();
+				if (c != null) {
+					y = c.evaluate(x);
+				} else {
+					calc.setVariable("x", x);
+					y = calc.evaluate();
+				}
 			} catch (Exception e) {
 				lastException = e.getMessage().toString();
 				String ss1 = Double.toString(x);
@@ -795,6 +804,22 @@ public class F1D extends DrawOptions {
 		// evaluate function
 		if (iname == null && calc != null && proxy.isParsed() == true) {
 
+			CompiledExpression c = compiled();
+			if (c != null) {
+				try {
+					if (HParam.isParallel(x.length))
+						ParallelEvaluation.evaluate(c, x, y);
+					else
+						c.evaluate(x, y);
+				} catch (Exception e) {
+					lastException = e.toString();
+					jhplot.utils.Util.ErrorMessage("eval(): Failed to evaluate:"
+							+ proxy.getName());
+					return null;
+				}
+				return y;
+			}
+
 			for (int i = 0; i < x.length; i++) {
 
 				try {
@@ -894,6 +919,21 @@ public class F1D extends DrawOptions {
 			x = new double[points];
 			y = new double[points];
 			double d = (max - min) / (points - 1);
+			CompiledExpression c = compiled();
+			if (c != null) {
+				for (int i = 0; i < points; i++)
+					x[i] = min + i * d;
+				try {
+					if (HParam.isParallel(points))
+						ParallelEvaluation.evaluate(c, x, y);
+					else
+						c.evaluate(x, y);
+				} catch (Exception e) {
+					System.err.println("Failed to evaluate:" + proxy.getName()
+							+ " " + e.toString());
+				}
+				return;
+			}
 			for (int i = 0; i < points; i++) {
 				x[i] = min + i * d;
 				try {
@@ -937,6 +977,28 @@ public class F1D extends DrawOptions {
 
 	}
 
+	/**
+	 * Get the compiled form of the parsed expression. The expression is
+	 * compiled once with "x" bound to a primitive slot and recompiled only when
+	 * the parsed expression changes.
+	 * 
+	 * @return compiled expression or null if it cannot be compiled
+	 */
+	private CompiledExpression compiled() {
+		if (compiledFrom != calc) {
+			compiledFrom = calc;
+			compiled = null;
+			if (calc != null) {
+				try {
+					compiled = calc.compile("x");
+				} catch (IllegalArgumentException e) {
+					compiled = null;
+				}
+			}
+		}
+		return compiled;
+	}
+
 	/**
 	 * Show online documentation.
 	 */
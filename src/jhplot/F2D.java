@@ -86,6 +86,10 @@ public class F2D extends DrawOptions {
 	private Expression calc = null;
 	private ExpressionBuilder function = null;
 
+	private transient CompiledExpression compiled = null;
+
+	private transient Expression compiledFrom = null;
+
 	final int maxpoints = 200;
 	private FProxy proxy;
 	private String lastException = "";
@@ -401,9 +405,14 @@ public class F2D extends DrawOptions {
 		if (iname == null && calc != null && isParsed == true) {
 			try {
 
-				calc.setVariable("x", x);
-				calc.setVariable("y", y);
-				z = calc.evaluate();
+				CompiledExpression c = compiled();
+				if (c != null) {
+					z = c.evaluate(x, y);
+				} else {
+					calc.setVariable("x", x);
+					calc.setVariable("y", y);
+					z = calc.evaluate();
+				}
 
 			} catch (Exception e) {
 				String ss1 = Double.toString(x);
@@ -436,6 +445,28 @@ public class F2D extends DrawOptions {
 	}
 
 
+	/**
+	 * Get the compiled form of the parsed expression. The expression is
+	 * compiled once with "x" and "y" bound to primitive slots and recompiled only
+	 * when the parsed expression changes.
+	 * 
+	 * @return compiled expression or null if it cannot be compiled
+	 */
+	private CompiledExpression compiled() {
+		if (compiledFrom != calc) {
+			compiledFrom = calc;
+			compiled = null;
+			if (calc != null) {
+				try {
+					compiled = calc.compile("x", "y");
+				} catch (IllegalArgumentException e) {
+					compiled = null;
+				}
+			}
+		}
+		return compiled;
+	}
+
          /**
          * Get Jaida function
          * 
@@ -474,25 +505,38 @@ public class F2D extends DrawOptions {
 		// evaluate function
 		if (iname == null && calc != null && isParsed == true) {
 
-			for (int i = 0; i < x.length; i++)
-				for (int j = 0; j < y.length; j++) {
+			CompiledExpression c = compiled();
+			if (c != null && HParam.isParallel(x.length * y.length)) {
+				try {
+					ParallelEvaluation.evaluate(c, x, y, z);
+				} catch (Exception e) {
+					err = "Failed to evaluate " + name + ": " + e.toString();
+				}
+			} else {
+				for (int i = 0; i < x.length; i++)
+					for (int j = 0; j < y.length; j++) {
 
-					try {
+						try {
 
-						calc.setVariable("x", x[i]);
-						calc.setVariable("y", y[i]);
-						z[i][j] = calc.evaluate();
+							if (c != null) {
+								z[i][j] = c.evaluate(x[i], y[j]);
+							} else {
+								calc.setVariable("x", x[i]);
+								calc.setVariable("y", y[j]);
+								z[i][j] = calc.evaluate();
+							}
 
-					} catch (Exception e) {
-						String ss1 = Double.toString(x[i]);
-						String ss2 = Double.toString(y[j]);
-						err = "Failed to evaluate " + name + " at position=("
-								+ ss1 + "," + ss2 + ")";
+						} catch (Exception e) {
+							String ss1 = Double.toString(x[i]);
+							String ss2 = Double.toString(y[j]);
+							err = "Failed to evaluate " + name + " at position=("
+									+ ss1 + "," + ss2 + ")";
 
-						break;
+							break;
 
+						}
 					}
-				}
+			}
 
 		} // end of the standard jPlot function
 
@@ -93,6 +93,10 @@ public class F3D extends DrawOptions  {
 
 	private ExpressionBuilder function = null;
 
+	private transient CompiledExpression compiled = null;
+
+	private transient Expression compiledFrom = null;
+
 
 	/**
 	 * Create a function in 3D for evaluation.
@@ -351,10 +355,15 @@ public class F3D extends DrawOptions  {
 		if (iname == null && function != null && isParsed == true) {
 			try {
 				
-				calc.setVariable("x", x);
-				calc.setVariable("y", y);
-				calc.setVariable("z", z);
-				h = calc.evaluate();
+				CompiledExpression c = compiled();
+				if (c != null) {
+					h = c.evaluate(x, y, z);
+				} else {
+					calc.setVariable("x", x);
+					calc.setVariable("y", y);
+					calc.setVariable("z", z);
+					h = calc.evaluate();
+				}
 				
 				
 			} catch (Exception e) {
@@ -382,6 +391,71 @@ public class F3D extends DrawOptions  {
 		return h;
 	}
 
+	/**
+	 * Evaluate a function at a list of points (x[i],y[i],z[i]). Large arrays
+	 * are evaluated in parallel if this is enabled with
+	 * {@link HParam#setParallel(boolean)}.
+	 * 
+	 * @param x
+	 *            values in x for evaluation
+	 * @param y
+	 *            values in y for evaluation
+	 * @param z
+	 *            values in z for evaluation
+	 * 
+	 * @return array of function values
+	 */
+	public double[] eval(double[] x, double[] y, double[] z) {
+
+		if (x.length != y.length || x.length != z.length) {
+			jhplot.utils.Util.ErrorMessage("eval(x[],y[],z[]): Arrays have different lengths!");
+			return null;
+		}
+
+		double[] h = new double[x.length];
+		CompiledExpression c = compiled();
+		if (proxy.getIFunction() == null && c != null && proxy.isParsed()) {
+			try {
+				if (HParam.isParallel(x.length)) {
+					ParallelEvaluation.evaluate(c, new double[][] { x, y, z }, h);
+				} else {
+					for (int i = 0; i < x.length; i++)
+						h[i] = c.evaluate(x[i], y[i], z[i]);
+				}
+			} catch (Exception e) {
+				jhplot.utils.Util.ErrorMessage("Failed to evaluate function "
+						+ proxy.getName() + " Error:" + e.toString());
+			}
+			return h;
+		}
+
+		for (int i = 0; i < x.length; i++)
+			h[i] = eval(x[i], y[i], z[i]);
+		return h;
+	}
+
+	/**
+	 * Get the compiled form of the parsed expression. The expression is
+	 * compiled once with "x", "y" and "z" bound to primitive slots and
+	 * recompiled only when the parsed expression changes.
+	 * 
+	 * @return compiled expression or null if it cannot be compiled
+	 */
+	private CompiledExpression compiled() {
+		if (compiledFrom != calc) {
+			compiledFrom = calc;
+			compiled = null;
+			if (calc != null) {
+				try {
+					compiled = calc.compile("x", "y", "z");
+				} catch (IllegalArgumentException e) {
+					compiled = null;
+				}
+			}
+		}
+		return compiled;
+	}
+
 	/**
 	 * Set a title
 	 * 
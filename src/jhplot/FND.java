@@ -292,7 +292,7 @@ public class FND extends DrawOptions {
 		try {
 			Object result = jep.evaluate(node);
 			if (result instanceof Double) {
-				return ((Double) jep.evaluate(node)).doubleValue();
+				return ((Double) result).doubleValue();
 			}
 		} catch (ParseException e) {
 			return 0;
@@ -347,14 +347,16 @@ public class FND extends DrawOptions {
 		double max = xmax;
 		x = new double[points];
 		y = new double[points];
+		jep.addVariable(indvars.trim(), 0);
+		Variable var = jep.getVar(indvars.trim());
 		for (int i = 0; i < points; i++) {
 			x[i] = min + i * (max - min) / (points - 1);
-			jep.addVariable(indvars.trim(), x[i]);
+			var.setValue(new Double(x[i]));
 
 			try {
 				Object result = jep.evaluate(node);
 				if (result instanceof Double) {
-					y[i] = ((Double) jep.evaluate(node)).doubleValue();
+					y[i] = ((Double) result).doubleValue();
 				}
 			} catch (ParseException e) {
 				jhplot.utils.Util.ErrorMessage("Failed to parse function "
@@ -395,14 +397,16 @@ public class FND extends DrawOptions {
 		double max = xmax;
 		x = new double[points];
 		y = new double[points];
+		jep.addVariable(indvars.trim(), 0);
+		Variable var = jep.getVar(indvars.trim());
 		for (int i = 0; i < points; i++) {
 			x[i] = min + i * (max - min) / (points - 1);
-			jep.addVariable(indvars.trim(), x[i]);
+			var.setValue(new Double(x[i]));
 
 			try {
 				Object result = jep.evaluate(node);
 				if (result instanceof Double) {
-					y[i] = ((Double) jep.evaluate(node)).doubleValue();
+					y[i] = ((Double) result).doubleValue();
 				}
 			} catch (ParseException e) {
 				jhplot.utils.Util.ErrorMessage("Failed to parse function "
@@ -419,6 +423,92 @@ public class FND extends DrawOptions {
 
 	} // end 1-D evaluation
 
+	/**
+	 * Bind variables of this function for fast repeated evaluation. The
+	 * expression is parsed only once, and the variables are looked up only
+	 * once, so the evaluator is suitable for minimizers and loops over many
+	 * points. Variables which are not bound keep their current values.
+	 * 
+	 * @param varNames
+	 *            names of the variables, in the order the values are passed to
+	 *            {@link Evaluator#eval(double...)}
+	 * @return evaluator for this function
+	 */
+	public Evaluator bind(String... varNames) {
+		return new Evaluator(varNames);
+	}
+
+	/**
+	 * Evaluator of a function with bound variables. Created by
+	 * {@link FND#bind(String...)}. It shares the parser with the function and
+	 * is not thread-safe.
+	 */
+	public class Evaluator {
+
+		private final Variable[] vars;
+
+		private Evaluator(String[] varNames) {
+			vars = new Variable[varNames.length];
+			for (int i = 0; i < varNames.length; i++) {
+				String name = varNames[i].trim();
+				if (jep.getVar(name) == null)
+					jep.addVariable(name, 0);
+				vars[i] = jep.getVar(name);
+			}
+		}
+
+		/**
+		 * Evaluate the function at a point.
+		 * 
+		 * @param values
+		 *            values of the bound variables
+		 * @return function value, or NaN if it cannot be evaluated
+		 */
+		public double eval(double... values) {
+			if (values.length != vars.length)
+				throw new IllegalArgumentException("Expected " + vars.length
+						+ " values but got " + values.length);
+			for (int i = 0; i < vars.length; i++)
+				vars[i].setValue(new Double(values[i]));
+			try {
+				Object result = jep.evaluate(node);
+				if (result instanceof Double)
+					return ((Double) result).doubleValue();
+			} catch (ParseException e) {
+				return Double.NaN;
+			}
+			return Double.NaN;
+		}
+
+		/**
+		 * Evaluate the function at many points.
+		 * 
+		 * @param points
+		 *            points[i] holds the values of the bound variables for
+		 *            point i
+		 * @param out
+		 *            output array; out[i] receives the value at point i
+		 */
+		public void eval(double[][] points, double[] out) {
+			if (out.length < points.length)
+				throw new IllegalArgumentException("Output array is too short");
+			for (int i = 0; i < points.length; i++)
+				out[i] = eval(points[i]);
+		}
+
+		/**
+		 * Get the names of the bound variables.
+		 * 
+		 * @return variable names
+		 */
+		public String[] getVars() {
+			String[] names = new String[vars.length];
+			for (int i = 0; i < vars.length; i++)
+				names[i] = vars[i].getName();
+			return names;
+		}
+	}
+
 	/**
 	 * Is the function was evaluated?
 	 * */
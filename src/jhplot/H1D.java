@@ -296,11 +296,32 @@ public class H1D extends DrawOptions implements Serializable {
 
 	public void fill(P0D p0d) {
 
+		if (isBulk(p0d.size())) {
+			H1DBuffer b = new H1DBuffer(this);
+			for (int i = 0; i < p0d.size(); i++)
+				b.fill(p0d.getQuick(i));
+			b.flush();
+			return;
+		}
+
 		for (int i = 0; i < p0d.size(); i++)
 			h1.fill(p0d.getQuick(i));
 
 	}
 
+	/**
+	 * Check if an array should be filled through a buffer. Large arrays are
+	 * accumulated in primitive arrays and set with a single setContents() call,
+	 * which avoids the per-entry overhead of the AIDA histogram.
+	 * 
+	 * @param n
+	 *            number of entries to fill
+	 * @return true if the bulk fill should be used
+	 */
+	private boolean isBulk(int n) {
+		return n >= 256 && n >= 2 * h1.axis().bins();
+	}
+
 
 	
      /**
@@ -663,6 +684,28 @@ public class H1D extends DrawOptions implements Serializable {
 
 	
 
+	/**
+	 * Create a buffer for fast filling of this histogram from one thread.
+	 * Entries are accumulated in primitive arrays and added to the histogram
+	 * when {@link H1DBuffer#flush()} is called.
+	 * 
+	 * @return buffer filling this histogram
+	 */
+	public H1DBuffer newFiller() {
+		return new H1DBuffer(this);
+	}
+
+	/**
+	 * Create a lock-free filler of this histogram that can be used from many
+	 * threads at once. Every thread fills its own buffer, and the buffers are
+	 * merged into this histogram when {@link H1DConcurrent#merge()} is called.
+	 * 
+	 * @return concurrent filler of this histogram
+	 */
+	public H1DConcurrent concurrent() {
+		return new H1DConcurrent(this);
+	}
+
 	/**
 	 * Get JAIDA histogram
 	 * 
@@ -852,6 +895,14 @@ public class H1D extends DrawOptions implements Serializable {
 
 	public void fill(PND pnd) {
 
+		if (isBulk(pnd.size() * pnd.getDimension())) {
+			H1DBuffer b = new H1DBuffer(this);
+			for (int i = 0; i < pnd.size(); i++)
+				b.fill((double[]) pnd.get(i));
+			b.flush();
+			return;
+		}
+
 		for (int i = 0; i < pnd.size(); i++) {
 			double[] tt = (double[]) pnd.get(i);
 			for (int j = 0; j < tt.length; j++)
@@ -877,6 +928,18 @@ public class H1D extends DrawOptions implements Serializable {
 			return;
 		}
 
+		if (isBulk(pnd.size() * pnd.getDimension())) {
+			H1DBuffer b = new H1DBuffer(this);
+			for (int i = 0; i < pnd.size(); i++) {
+				double[] tt = (double[]) pnd.get(i);
+				double[] ww = (double[]) weigths.get(i);
+				for (int j = 0; j < tt.length; j++)
+					b.fill(tt[j], ww[j]);
+			}
+			b.flush();
+			return;
+		}
+
 		for (int i = 0; i < pnd.size(); i++) {
 			double[] tt = (double[]) pnd.get(i);
 			double[] ww = (double[]) weigths.get(i);
@@ -895,6 +958,13 @@ public class H1D extends DrawOptions implements Serializable {
 
 	public void fill(double[] values) {
 
+		if (isBulk(values.length)) {
+			H1DBuffer b = new H1DBuffer(this);
+			b.fill(values);
+			b.flush();
+			return;
+		}
+
 		for (int i = 0; i < values.length; i++)
 			h1.fill(values[i]);
 
@@ -926,6 +996,13 @@ public class H1D extends DrawOptions implements Serializable {
 
 	public void fill(double[] values, double[] weights) {
 
+		if (isBulk(values.length) && values.length == weights.length) {
+			H1DBuffer b = new H1DBuffer(this);
+			b.fill(values, weights);
+			b.flush();
+			return;
+		}
+
 		for (int i = 0; i < values.length; i++)
 			h1.fill(values[i], weights[i]);
 
@@ -940,6 +1017,14 @@ public class H1D extends DrawOptions implements Serializable {
 
 	public void fill(int[] values) {
 
+		if (isBulk(values.length)) {
+			H1DBuffer b = new H1DBuffer(this);
+			for (int i = 0; i < values.length; i++)
+				b.fill((double) values[i]);
+			b.flush();
+			return;
+		}
+
 		for (int i = 0; i < values.length; i++)
 			h1.fill((double) values[i]);
 
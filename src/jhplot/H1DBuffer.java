@@ -0,0 +1,300 @@
+/**
+*    Copyright (C)  DataMelt project. The jHPLot package by S.Chekanov and Work.ORG
+*    All rights reserved.
+*
+*    This program is free software; you can redistribute it and/or modify it under the terms
+*    of the GNU General Public License as published by the Free Software Foundation; either
+*    version 3 of the License, or any later version.
+*
+*    This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+*    without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+*    See the GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License along with this program;
+*    if not, see <http://www.gnu.org/licenses>.
+*
+*    Additional permission under GNU GPL version 3 section 7:
+*    If you have received this program as a library with written permission from the DataMelt team,
+*    you can link or combine this library with your non-GPL project to convey the resulting work.
+*    In this case, this library should be considered as released under the terms of
+*    GNU Lesser public license (see <https://www.gnu.org/licenses/lgpl.html>),
+*    provided you include this license notice and a URL through which recipients can access the
+*    Corresponding Source.
+**/
+package jhplot;
+
+import hep.aida.ref.histogram.Histogram1D;
+
+/**
+ * Buffer for fast filling of a H1D histogram. Entries are accumulated in
+ * primitive arrays (entries, sum of weights, sum of squared weights and the
+ * weighted first and second moments for each bin) and added to the histogram
+ * in one step by {@link #flush()}. Bin heights, errors, means, RMS and the
+ * global mean, RMS and number of entries are the same as if every value was
+ * filled into the histogram directly. NaN values belong to no bin and are
+ * ignored.
+ * <p>
+ * A buffer is meant to be used by a single thread. Create one buffer per
+ * thread with {@link H1D#newFiller()}, or use {@link H1DConcurrent} for
+ * filling from many threads.
+ * 
+ * @author S.Chekanov
+ * 
+ */
+public class H1DBuffer {
+
+	private final H1D target;
+
+	private final AxisIndex index;
+
+	private final int n;
+
+	private final int[] entries;
+
+	private final double[] sumw;
+
+	private final double[] sumw2;
+
+	private final double[] sumwx;
+
+	private final double[] sumwx2;
+
+	private int allEntries;
+
+	/**
+	 * Create a buffer for a histogram.
+	 * 
+	 * @param target
+	 *            histogram filled by {@link #flush()}
+	 */
+	public H1DBuffer(H1D target) {
+		this.target = target;
+		this.index = new AxisIndex(target.get().axis());
+		this.n = index.bins() + 2;
+		entries = new int[n];
+		sumw = new double[n];
+		sumw2 = new double[n];
+		sumwx = new double[n];
+		sumwx2 = new double[n];
+	}
+
+	/**
+	 * Fill a value with weight 1.
+	 * 
+	 * @param x
+	 *            value
+	 */
+	public void fill(double x) {
+		int i = index.index(x);
+		if (i == AxisIndex.NAN)
+			return;
+		entries[i]++;
+		sumw[i] += 1.0;
+		sumw2[i] += 1.0;
+		sumwx[i] += x;
+		sumwx2[i] += x * x;
+		allEntries++;
+	}
+
+	/**
+	 * Fill a value with a weight.
+	 * 
+	 * @param x
+	 *            value
+	 * @param w
+	 *            weight
+	 */
+	public void fill(double x, double w) {
+		int i = index.index(x);
+		if (i == AxisIndex.NAN)
+			return;
+		double wx = w * x;
+		entries[i]++;
+		sumw[i] += w;
+		sumw2[i] += w * w;
+		sumwx[i] += wx;
+		sumwx2[i] += wx * x;
+		allEntries++;
+	}
+
+	/**
+	 * Fill an array of values with weight 1.
+	 * 
+	 * @param values
+	 *            values
+	 */
+	public void fill(double[] values) {
+		fill(values, 0, values.length);
+	}
+
+	/**
+	 * Fill a range of an array of values with weight 1.
+	 * 
+	 * @param values
+	 *            values
+	 * @param from
+	 *            first index (inclusive)
+	 * @param to
+	 *            last index (exclusive)
+	 */
+	public void fill(double[] values, int from, int to) {
+		for (int k = from; k < to; k++)
+			fill(values[k]);
+	}
+
+	/**
+	 * Fill an array of values with weights.
+	 * 
+	 * @param values
+	 *            values
+	 * @param weights
+	 *            weights
+	 */
+	public void fill(double[] values, double[] weights) {
+		if (values.length != weights.length)
+			throw new IllegalArgumentException(
+					"Sizes of input and weight arrays are different!");
+		for (int k = 0; k < values.length; k++)
+			fill(values[k], weights[k]);
+	}
+
+	/**
+	 * Number of entries accumulated since the last flush.
+	 * 
+	 * @return number of entries
+	 */
+	public int entries() {
+		return allEntries;
+	}
+
+	/**
+	 * Get the histogram filled by this buffer.
+	 * 
+	 * @return histogram
+	 */
+	public H1D getH1D() {
+		return target;
+	}
+
+	/**
+	 * Add the accumulated entries to the histogram and clear the buffer. The
+	 * update is synchronized on the histogram, so buffers of different threads
+	 * can be flushed concurrently.
+	 */
+	public void flush() {
+		if (allEntries == 0)
+			return;
+		synchronized (target) {
+			addTo(target.get());
+		}
+		clear();
+	}
+
+	/**
+	 * Discard all accumulated entries.
+	 */
+	public void clear() {
+		java.util.Arrays.fill(entries, 0);
+		java.util.Arrays.fill(sumw, 0);
+		java.util.Arrays.fill(sumw2, 0);
+		java.util.Arrays.fill(sumwx, 0);
+		java.util.Arrays.fill(sumwx2, 0);
+		allEntries = 0;
+	}
+
+	/**
+	 * Add the content of another buffer of the same histogram.
+	 * 
+	 * @param b
+	 *            buffer to be added
+	 */
+	void add(H1DBuffer b) {
+		for (int i = 0; i < n; i++) {
+			entries[i] += b.entries[i];
+			sumw[i] += b.sumw[i];
+			sumw2[i] += b.sumw2[i];
+			sumwx[i] += b.sumwx[i];
+			sumwx2[i] += b.sumwx2[i];
+		}
+		allEntries += b.allEntries;
+	}
+
+	/**
+	 * Add the buffer to the bin contents and statistics of a histogram with a
+	 * single setContents() call.
+	 * 
+	 * @param h
+	 *            histogram
+	 */
+	private void addTo(Histogram1D h) {
+
+		double[] heights = new double[n];
+		double[] errors = new double[n];
+		double[] means = new double[n];
+		double[] rmss = new double[n];
+		int[] ent = new int[n];
+
+		int valid = 0;
+		double sw = 0;
+		double swx = 0;
+		double swx2 = 0;
+
+		for (int i = 0; i < n; i++) {
+			int bin = index.aidaIndex(i);
+			double height = h.binHeight(bin);
+			double error = h.binError(bin);
+			double mean = h.binMean(bin);
+			double rms = h.binRms(bin);
+
+			double w = height + sumw[i];
+			heights[i] = w;
+			errors[i] = Math.sqrt(error * error + sumw2[i]);
+			ent[i] = h.binEntries(bin) + entries[i];
+			if (entries[i] == 0 || w == 0) {
+				means[i] = mean;
+				rmss[i] = rms;
+			} else {
+				double wx = sumwx[i];
+				double wx2 = sumwx2[i];
+				if (height != 0) {
+					wx += mean * height;
+					wx2 += (rms * rms + mean * mean) * height;
+				}
+				double m = wx / w;
+				means[i] = m;
+				rmss[i] = Math.sqrt(Math.max(0, wx2 / w - m * m));
+			}
+
+			if (i > 0 && i < n - 1) {
+				valid += entries[i];
+				sw += sumw[i];
+				swx += sumwx[i];
+				swx2 += sumwx2[i];
+			}
+		}
+
+		double oldW = h.sumBinHeights();
+		double oldMean = h.mean();
+		double oldRms = h.rms();
+		int oldAll = h.allEntries();
+		int oldValid = h.entries();
+
+		double mean = oldMean;
+		double rms = oldRms;
+		double w = oldW + sw;
+		if (sw != 0 && w != 0) {
+			if (oldW != 0) {
+				swx += oldMean * oldW;
+				swx2 += (oldRms * oldRms + oldMean * oldMean) * oldW;
+			}
+			mean = swx / w;
+			rms = Math.sqrt(Math.max(0, swx2 / w - mean * mean));
+		}
+
+		h.setContents(heights, errors, ent, means, rmss);
+		h.setMeanAndRms(mean, rms);
+		h.setNEntries(oldAll + allEntries);
+		h.setValidEntries(oldValid + valid);
+	}
+
+}
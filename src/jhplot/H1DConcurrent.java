@@ -0,0 +1,134 @@
+/**
+*    Copyright (C)  DataMelt project. The jHPLot package by S.Chekanov and Work.ORG
+*    All rights reserved.
+*
+*    This program is free software; you can redistribute it and/or modify it under the terms
+*    of the GNU General Public License as published by the Free Software Foundation; either
+*    version 3 of the License, or any later version.
+*
+*    This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+*    without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+*    See the GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License along with this program;
+*    if not, see <http://www.gnu.org/licenses>.
+*
+*    Additional permission under GNU GPL version 3 section 7:
+*    If you have received this program as a library with written permission from the DataMelt team,
+*    you can link or combine this library with your non-GPL project to convey the resulting work.
+*    In this case, this library should be considered as released under the terms of
+*    GNU Lesser public license (see <https://www.gnu.org/licenses/lgpl.html>),
+*    provided you include this license notice and a URL through which recipients can access the
+*    Corresponding Source.
+**/
+package jhplot;
+
+/**
+ * Concurrent filling of a H1D histogram from many threads. Every thread
+ * fills its own {@link H1DBuffer} without any locking, and the buffers are
+ * merged into the histogram by {@link #merge()}. The merged histogram has the
+ * same bin contents and statistics as a histogram filled sequentially.
+ * <p>
+ * Call {@link #merge()} after the filling threads have finished (for example,
+ * after joining them or shutting down their executor) and before reading the
+ * histogram.
+ * 
+ * @author S.Chekanov
+ * 
+ */
+public class H1DConcurrent {
+
+	private final H1D target;
+
+	private final ThreadBuffers<H1DBuffer> buffers = new ThreadBuffers<H1DBuffer>() {
+		@Override
+		H1DBuffer create() {
+			return new H1DBuffer(target);
+		}
+
+		@Override
+		void drain(H1DBuffer sum, H1DBuffer b) {
+			sum.add(b);
+			b.clear();
+		}
+
+		@Override
+		void flush(H1DBuffer sum) {
+			sum.flush();
+		}
+	};
+
+	/**
+	 * Create a concurrent filler for a histogram.
+	 * 
+	 * @param target
+	 *            histogram to be filled
+	 */
+	public H1DConcurrent(H1D target) {
+		this.target = target;
+	}
+
+	/**
+	 * Fill a value with weight 1. Can be called from any thread.
+	 * 
+	 * @param x
+	 *            value
+	 */
+	public void fill(double x) {
+		buffers.get().fill(x);
+	}
+
+	/**
+	 * Fill a value with a weight. Can be called from any thread.
+	 * 
+	 * @param x
+	 *            value
+	 * @param w
+	 *            weight
+	 */
+	public void fill(double x, double w) {
+		buffers.get().fill(x, w);
+	}
+
+	/**
+	 * Fill an array of values with weight 1. Can be called from any thread.
+	 * 
+	 * @param values
+	 *            values
+	 */
+	public void fill(double[] values) {
+		buffers.get().fill(values);
+	}
+
+	/**
+	 * Fill an array of values with weights. Can be called from any thread.
+	 * 
+	 * @param values
+	 *            values
+	 * @param weights
+	 *            weights
+	 */
+	public void fill(double[] values, double[] weights) {
+		buffers.get().fill(values, weights);
+	}
+
+	/**
+	 * Merge the entries of all threads into the histogram.
+	 * 
+	 * @return the filled histogram
+	 */
+	public H1D merge() {
+		buffers.merge();
+		return target;
+	}
+
+	/**
+	 * Get the histogram filled by this object.
+	 * 
+	 * @return histogram
+	 */
+	public H1D getH1D() {
+		return target;
+	}
+
+}
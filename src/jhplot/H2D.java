@@ -237,6 +237,28 @@ public class H2D extends DrawOptions implements Serializable {
 		this.binsY = yAy.bins();
 	}
 
+	/**
+	 * Create a buffer for fast filling of this histogram from one thread.
+	 * Entries are accumulated in primitive arrays and added to the histogram
+	 * when {@link H2DBuffer#flush()} is called.
+	 * 
+	 * @return buffer filling this histogram
+	 */
+	public H2DBuffer newFiller() {
+		return new H2DBuffer(this);
+	}
+
+	/**
+	 * Create a lock-free filler of this histogram that can be used from many
+	 * threads at once. Every thread fills its own buffer, and the buffers are
+	 * merged into this histogram when {@link H2DConcurrent#merge()} is called.
+	 * 
+	 * @return concurrent filler of this histogram
+	 */
+	public H2DConcurrent concurrent() {
+		return new H2DConcurrent(this);
+	}
+
 	/**
 	 * Get the JAIDA Histogram2D
 	 * 
@@ -0,0 +1,340 @@
+/**
+*    Copyright (C)  DataMelt project. The jHPLot package by S.Chekanov and Work.ORG
+*    All rights reserved.
+*
+*    This program is free software; you can redistribute it and/or modify it under the terms
+*    of the GNU General Public License as published by the Free Software Foundation; either
+*    version 3 of the License, or any later version.
+*
+*    This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+*    without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+*    See the GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License along with this program;
+*    if not, see <http://www.gnu.org/licenses>.
+*
+*    Additional permission under GNU GPL version 3 section 7:
+*    If you have received this program as a library with written permission from the DataMelt team,
+*    you can link or combine this library with your non-GPL project to convey the resulting work.
+*    In this case, this library should be considered as released under the terms of
+*    GNU Lesser public license (see <https://www.gnu.org/licenses/lgpl.html>),
+*    provided you include this license notice and a URL through which recipients can access the
+*    Corresponding Source.
+**/
+package jhplot;
+
+import hep.aida.ref.histogram.Histogram2D;
+
+/**
+ * Buffer for fast filling of a H2D histogram. Entries are accumulated in
+ * primitive arrays (entries, sum of weights, sum of squared weights and the
+ * weighted moments in X and Y for each bin) and added to the histogram in one
+ * step by {@link #flush()}. Bin contents and global statistics are the same as
+ * if every point was filled into the histogram directly. Points with a NaN
+ * coordinate belong to no bin and are ignored.
+ * <p>
+ * A buffer is meant to be used by a single thread. Create one buffer per
+ * thread with {@link H2D#newFiller()}, or use {@link H2DConcurrent} for
+ * filling from many threads.
+ * 
+ * @author S.Chekanov
+ * 
+ */
+public class H2DBuffer {
+
+	private final H2D target;
+
+	private final AxisIndex indexX;
+
+	private final AxisIndex indexY;
+
+	private final int nx;
+
+	private final int ny;
+
+	private final int[] entries;
+
+	private final double[] sumw;
+
+	private final double[] sumw2;
+
+	private final double[] sumwx;
+
+	private final double[] sumwx2;
+
+	private final double[] sumwy;
+
+	private final double[] sumwy2;
+
+	private int allEntries;
+
+	/**
+	 * Create a buffer for a histogram.
+	 * 
+	 * @param target
+	 *            histogram filled by {@link #flush()}
+	 */
+	public H2DBuffer(H2D target) {
+		this.target = target;
+		this.indexX = new AxisIndex(target.get().xAxis());
+		this.indexY = new AxisIndex(target.get().yAxis());
+		this.nx = indexX.bins() + 2;
+		this.ny = indexY.bins() + 2;
+		int n = nx * ny;
+		entries = new int[n];
+		sumw = new double[n];
+		sumw2 = new double[n];
+		sumwx = new double[n];
+		sumwx2 = new double[n];
+		sumwy = new double[n];
+		sumwy2 = new double[n];
+	}
+
+	/**
+	 * Fill a point with weight 1.
+	 * 
+	 * @param x
+	 *            value in X
+	 * @param y
+	 *            value in Y
+	 */
+	public void fill(double x, double y) {
+		fill(x, y, 1.0);
+	}
+
+	/**
+	 * Fill a point with a weight.
+	 * 
+	 * @param x
+	 *            value in X
+	 * @param y
+	 *            value in Y
+	 * @param w
+	 *            weight
+	 */
+	public void fill(double x, double y, double w) {
+		int ix = indexX.index(x);
+		int iy = indexY.index(y);
+		if (ix == AxisIndex.NAN || iy == AxisIndex.NAN)
+			return;
+		int i = ix * ny + iy;
+		double wx = w * x;
+		double wy = w * y;
+		entries[i]++;
+		sumw[i] += w;
+		sumw2[i] += w * w;
+		sumwx[i] += wx;
+		sumwx2[i] += wx * x;
+		sumwy[i] += wy;
+		sumwy2[i] += wy * y;
+		allEntries++;
+	}
+
+	/**
+	 * Fill arrays of points with weight 1.
+	 * 
+	 * @param x
+	 *            values in X
+	 * @param y
+	 *            values in Y
+	 */
+	public void fill(double[] x, double[] y) {
+		if (x.length != y.length)
+			throw new IllegalArgumentException("Sizes of X and Y arrays are different!");
+		for (int k = 0; k < x.length; k++)
+			fill(x[k], y[k], 1.0);
+	}
+
+	/**
+	 * Fill arrays of points with weights.
+	 * 
+	 * @param x
+	 *            values in X
+	 * @param y
+	 *            values in Y
+	 * @param weights
+	 *            weights
+	 */
+	public void fill(double[] x, double[] y, double[] weights) {
+		if (x.length != y.length || x.length != weights.length)
+			throw new IllegalArgumentException("Sizes of input and weight arrays are different!");
+		for (int k = 0; k < x.length; k++)
+			fill(x[k], y[k], weights[k]);
+	}
+
+	/**
+	 * Number of entries accumulated since the last flush.
+	 * 
+	 * @return number of entries
+	 */
+	public int entries() {
+		return allEntries;
+	}
+
+	/**
+	 * Get the histogram filled by this buffer.
+	 * 
+	 * @return histogram
+	 */
+	public H2D getH2D() {
+		return target;
+	}
+
+	/**
+	 * Add the accumulated entries to the histogram and clear the buffer. The
+	 * update is synchronized on the histogram, so buffers of different threads
+	 * can be flushed concurrently.
+	 */
+	public void flush() {
+		if (allEntries == 0)
+			return;
+		synchronized (target) {
+			addTo(target.get());
+		}
+		clear();
+	}
+
+	/**
+	 * Discard all accumulated entries.
+	 */
+	public void clear() {
+		java.util.Arrays.fill(entries, 0);
+		java.util.Arrays.fill(sumw, 0);
+		java.util.Arrays.fill(sumw2, 0);
+		java.util.Arrays.fill(sumwx, 0);
+		java.util.Arrays.fill(sumwx2, 0);
+		java.util.Arrays.fill(sumwy, 0);
+		java.util.Arrays.fill(sumwy2, 0);
+		allEntries = 0;
+	}
+
+	/**
+	 * Add the content of another buffer of the same histogram.
+	 * 
+	 * @param b
+	 *            buffer to be added
+	 */
+	void add(H2DBuffer b) {
+		for (int i = 0; i < entries.length; i++) {
+			entries[i] += b.entries[i];
+			sumw[i] += b.sumw[i];
+			sumw2[i] += b.sumw2[i];
+			sumwx[i] += b.sumwx[i];
+			sumwx2[i] += b.sumwx2[i];
+			sumwy[i] += b.sumwy[i];
+			sumwy2[i] += b.sumwy2[i];
+		}
+		allEntries += b.allEntries;
+	}
+
+	/**
+	 * Add the buffer to the bin contents and statistics of a histogram with a
+	 * single setContents() call.
+	 * 
+	 * @param h
+	 *            histogram
+	 */
+	private void addTo(Histogram2D h) {
+
+		double[][] heights = new double[nx][ny];
+		double[][] errors = new double[nx][ny];
+		double[][] meanXs = new double[nx][ny];
+		double[][] rmsXs = new double[nx][ny];
+		double[][] meanYs = new double[nx][ny];
+		double[][] rmsYs = new double[nx][ny];
+		int[][] ent = new int[nx][ny];
+
+		int valid = 0;
+		double sw = 0;
+		double swx = 0;
+		double swx2 = 0;
+		double swy = 0;
+		double swy2 = 0;
+
+		for (int i = 0; i < nx; i++) {
+			int binX = indexX.aidaIndex(i);
+			for (int j = 0; j < ny; j++) {
+				int binY = indexY.aidaIndex(j);
+				int k = i * ny + j;
+				double height = h.binHeight(binX, binY);
+				double error = h.binError(binX, binY);
+				double mx = h.binMeanX(binX, binY);
+				double rx = h.binRmsX(binX, binY);
+				double my = h.binMeanY(binX, binY);
+				double ry = h.binRmsY(binX, binY);
+
+				double w = height + sumw[k];
+				heights[i][j] = w;
+				errors[i][j] = Math.sqrt(error * error + sumw2[k]);
+				ent[i][j] = h.binEntries(binX, binY) + entries[k];
+				if (entries[k] == 0 || w == 0) {
+					meanXs[i][j] = mx;
+					rmsXs[i][j] = rx;
+					meanYs[i][j] = my;
+					rmsYs[i][j] = ry;
+				} else {
+					double wx = sumwx[k];
+					double wx2 = sumwx2[k];
+					double wy = sumwy[k];
+					double wy2 = sumwy2[k];
+					if (height != 0) {
+						wx += mx * height;
+						wx2 += (rx * rx + mx * mx) * height;
+						wy += my * height;
+						wy2 += (ry * ry + my * my) * height;
+					}
+					double m = wx / w;
+					meanXs[i][j] = m;
+					rmsXs[i][j] = Math.sqrt(Math.max(0, wx2 / w - m * m));
+					m = wy / w;
+					meanYs[i][j] = m;
+					rmsYs[i][j] = Math.sqrt(Math.max(0, wy2 / w - m * m));
+				}
+
+				if (i > 0 && i < nx - 1 && j > 0 && j < ny - 1) {
+					valid += entries[k];
+					sw += sumw[k];
+					swx += sumwx[k];
+					swx2 += sumwx2[k];
+					swy += sumwy[k];
+					swy2 += sumwy2[k];
+				}
+			}
+		}
+
+		double oldW = h.sumBinHeights();
+		double oldMeanX = h.meanX();
+		double oldRmsX = h.rmsX();
+		double oldMeanY = h.meanY();
+		double oldRmsY = h.rmsY();
+		int oldAll = h.allEntries();
+		int oldValid = h.entries();
+
+		double meanX = oldMeanX;
+		double rmsX = oldRmsX;
+		double meanY = oldMeanY;
+		double rmsY = oldRmsY;
+		double w = oldW + sw;
+		if (sw != 0 && w != 0) {
+			if (oldW != 0) {
+				swx += oldMeanX * oldW;
+				swx2 += (oldRmsX * oldRmsX + oldMeanX * oldMeanX) * oldW;
+				swy += oldMeanY * oldW;
+				swy2 += (oldRmsY * oldRmsY + oldMeanY * oldMeanY) * oldW;
+			}
+			meanX = swx / w;
+			rmsX = Math.sqrt(Math.max(0, swx2 / w - meanX * meanX));
+			meanY = swy / w;
+			rmsY = Math.sqrt(Math.max(0, swy2 / w - meanY * meanY));
+		}
+
+		h.setContents(heights, errors, ent, meanXs, rmsXs, meanYs, rmsYs);
+		h.setMeanX(meanX);
+		h.setRmsX(rmsX);
+		h.setMeanY(meanY);
+		h.setRmsY(rmsY);
+		h.setNEntries(oldAll + allEntries);
+		h.setValidEntries(oldValid + valid);
+	}
+
+}
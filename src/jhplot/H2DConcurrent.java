@@ -0,0 +1,142 @@
+/**
+*    Copyright (C)  DataMelt project. The jHPLot package by S.Chekanov and Work.ORG
+*    All rights reserved.
+*
+*    This program is free software; you can redistribute it and/or modify it under the terms
+*    of the GNU General Public License as published by the Free Software Foundation; either
+*    version 3 of the License, or any later version.
+*
+*    This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+*    without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+*    See the GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License along with this program;
+*    if not, see <http://www.gnu.org/licenses>.
+*
+*    Additional permission under GNU GPL version 3 section 7:
+*    If you have received this program as a library with written permission from the DataMelt team,
+*    you can link or combine this library with your non-GPL project to convey the resulting work.
+*    In this case, this library should be considered as released under the terms of
+*    GNU Lesser public license (see <https://www.gnu.org/licenses/lgpl.html>),
+*    provided you include this license notice and a URL through which recipients can access the
+*    Corresponding Source.
+**/
+package jhplot;
+
+/**
+ * Concurrent filling of a H2D histogram from many threads. Every thread
+ * fills its own {@link H2DBuffer} without any locking, and the buffers are
+ * merged into the histogram by {@link #merge()}. The merged histogram has the
+ * same bin contents and statistics as a histogram filled sequentially.
+ * <p>
+ * Call {@link #merge()} after the filling threads have finished (for example,
+ * after joining them or shutting down their executor) and before reading the
+ * histogram.
+ * 
+ * @author S.Chekanov
+ * 
+ */
+public class H2DConcurrent {
+
+	private final H2D target;
+
+	private final ThreadBuffers<H2DBuffer> buffers = new ThreadBuffers<H2DBuffer>() {
+		@Override
+		H2DBuffer create() {
+			return new H2DBuffer(target);
+		}
+
+		@Override
+		void drain(H2DBuffer sum, H2DBuffer b) {
+			sum.add(b);
+			b.clear();
+		}
+
+		@Override
+		void flush(H2DBuffer sum) {
+			sum.flush();
+		}
+	};
+
+	/**
+	 * Create a concurrent filler for a histogram.
+	 * 
+	 * @param target
+	 *            histogram to be filled
+	 */
+	public H2DConcurrent(H2D target) {
+		this.target = target;
+	}
+
+	/**
+	 * Fill a point with weight 1. Can be called from any thread.
+	 * 
+	 * @param x
+	 *            value in X
+	 * @param y
+	 *            value in Y
+	 */
+	public void fill(double x, double y) {
+		buffers.get().fill(x, y);
+	}
+
+	/**
+	 * Fill a point with a weight. Can be called from any thread.
+	 * 
+	 * @param x
+	 *            value in X
+	 * @param y
+	 *            value in Y
+	 * @param w
+	 *            weight
+	 */
+	public void fill(double x, double y, double w) {
+		buffers.get().fill(x, y, w);
+	}
+
+	/**
+	 * Fill arrays of points with weight 1. Can be called from any thread.
+	 * 
+	 * @param x
+	 *            values in X
+	 * @param y
+	 *            values in Y
+	 */
+	public void fill(double[] x, double[] y) {
+		buffers.get().fill(x, y);
+	}
+
+	/**
+	 * Fill arrays of points with weights. Can be called from any thread.
+	 * 
+	 * @param x
+	 *            values in X
+	 * @param y
+	 *            values in Y
+	 * @param weights
+	 *            weights
+	 */
+	public void fill(double[] x, double[] y, double[] weights) {
+		buffers.get().fill(x, y, weights);
+	}
+
+	/**
+	 * Merge the entries of all threads into the histogram.
+	 * 
+	 * @return the filled histogram
+	 */
+	public H2D merge() {
+		buffers.merge();
+		return target;
+	}
+
+	/**
+	 * Get the histogram filled by this object.
+	 * 
+	 * @return histogram
+	 */
+	public H2D getH2D() {
+		return target;
+	}
+
+}
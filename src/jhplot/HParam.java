@@ -43,6 +43,10 @@ public class HParam{
 
 	private static boolean fastmath = true;
 
+	private static boolean parallel = false;
+
+	private static int parallelThreshold = 100000;
+
 	/**
 	     * 
 	     * Set fast math calculation (3-5 times faster than Java Math). The typical precision is E-14 for fast calculations.
@@ -81,6 +85,58 @@ public class HParam{
                 fastmath=false;
         }
 
+	/**
+	 * Enable or disable parallel evaluation of parsed functions. If enabled,
+	 * F1D, F2D and F3D evaluate large arrays of points on all available cores.
+	 * The results are identical to the sequential evaluation. Disabled by default. 
+	 * 
+	 * @param enable
+	 *            true to evaluate large arrays in parallel
+	 */
+	public static void setParallel(boolean enable) {
+		parallel = enable;
+	}
+
+	/**
+	 * Check is parallel evaluation of functions enabled.
+	 * 
+	 * @return is parallel evaluation enabled?
+	 */
+	public static boolean isParallel() {
+		return parallel;
+	}
+
+	/**
+	 * Set the minimum number of points for which the parallel evaluation is
+	 * used. Smaller arrays are always evaluated sequentially. The default is
+	 * 100000.
+	 * 
+	 * @param points
+	 *            minimum number of points
+	 */
+	public static void setParallelThreshold(int points) {
+		parallelThreshold = points;
+	}
+
+	/**
+	 * Get the minimum number of points for which the parallel evaluation is
+	 * used.
+	 * 
+	 * @return minimum number of points
+	 */
+	public static int getParallelThreshold() {
+		return parallelThreshold;
+	}
 
+	/**
+	 * Check if an array of the given size should be evaluated in parallel.
+	 * 
+	 * @param points
+	 *            number of points
+	 * @return true if parallel evaluation is enabled and the array is large enough
+	 */
+	public static boolean isParallel(int points) {
+		return parallel && points >= parallelThreshold;
+	}
 
 }
@@ -28,11 +28,20 @@ import java.io.*;
 import java.util.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.imageio.ImageIO;
 import jplot.*;
 import java.text.DecimalFormat;
 import jhplot.gui.GHFrame;
 import jhplot.gui.HelpBrowser;
 import jhplot.io.*;
+import jhplot.io.images.Export;
+import jhplot.io.images.ImageType;
 import jhplot.shapes.*;
 import jhplot.utils.ExtensionFileFilter;
 import jhplot.utils.HelpDialog;
@@ -42,6 +51,8 @@ import java.lang.Math;
 // JAIDA 
 import hep.aida.*;
 import hep.aida.ref.histogram.*;
+import org.apache.batik.svggen.SVGGraphics2D;
+import org.apache.batik.transcoder.TranscoderException;
 
 /**
  * HPlot class to create a canvas with several plots. This class is for a
@@ -290,6 +301,8 @@ public class HPlot extends GHFrame implements Serializable {
 
 	public void visible(boolean vs) {
 		updateAll();
+		if (mainFrame == null)
+			return;
 		mainFrame.setVisible(vs);
 		if (vs == false)
 			mainFrame.validate();
@@ -303,6 +316,8 @@ public class HPlot extends GHFrame implements Serializable {
 
 	public void visible() {
 		updateAll();
+		if (mainFrame == null)
+			return;
 		mainFrame.setVisible(true);
 
 	}
@@ -319,16 +334,215 @@ public class HPlot extends GHFrame implements Serializable {
 	 */
 	public void visible(int posX, int posY) {
 		updateAll();
+		if (mainFrame == null)
+			return;
 		mainFrame.setLocation(posX, posY);
 		mainFrame.setVisible(true);
 
 	}
 
+	/**
+	 * Render the plots of this canvas to a stream without showing the canvas.
+	 * This also works without a display (with -Djava.awt.headless=true), so
+	 * it can be used by batch jobs. The pads are laid out for the given size
+	 * as on the screen. For raster formats (png, jpg, gif, bmp) each pad is
+	 * drawn into its own image. Vector formats (svg, svgz, pdf, eps, ps) are
+	 * drawn pad by pad into one SVG document, which is converted as in the
+	 * export of the canvas. Only the pads are rendered, not the global margins
+	 * of the canvas.
+	 * <p>
+	 * Pads are drawn on separate threads only if the canvas is not displayed
+	 * (for example in headless mode). A displayed canvas shares its graphs
+	 * with the painting on the screen, so it is drawn pad by pad on the event
+	 * dispatch thread.
+	 * 
+	 * @param out
+	 *            output stream. It is not closed.
+	 * @param format
+	 *            png, jpg, gif, bmp, svg, svgz, pdf, eps or ps
+	 * @param width
+	 *            width in pixels
+	 * @param height
+	 *            height in pixels
+	 * @throws IOException
+	 *             if the format is unknown or the image cannot be written
+	 */
+	public void renderTo(OutputStream out, String format, final int width,
+			final int height) throws IOException {
+
+		String f = format.trim().toLowerCase();
+		ImageType vector = null;
+		if (f.equals("svg"))
+			vector = ImageType.SVG;
+		else if (f.equals("svgz"))
+			vector = ImageType.SVGZ;
+		else if (f.equals("pdf"))
+			vector = ImageType.PDF;
+		else if (f.equals("eps"))
+			vector = ImageType.EPS;
+		else if (f.equals("ps"))
+			vector = ImageType.PS;
+		else if (!ImageIO.getImageWritersByFormatName(f).hasNext())
+			throw new IOException("Unknown image format: " + format);
+
+		updateAll();
+
+		final ImageType type = vector;
+		Object picture;
+		if (!mainPanel.isDisplayable()) {
+			picture = render(type, width, height, true);
+		} else if (SwingUtilities.isEventDispatchThread()) {
+			picture = render(type, width, height, false);
+		} else {
+			final Object[] result = new Object[1];
+			try {
+				SwingUtilities.invokeAndWait(new Runnable() {
+					public void run() {
+						try {
+							result[0] = render(type, width, height, false);
+						} catch (IOException e) {
+							result[0] = e;
+						}
+					}
+				});
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException(e.toString());
+			} catch (java.lang.reflect.InvocationTargetException e) {
+				throw new IOException(e.getCause().toString());
+			}
+			if (result[0] instanceof IOException)
+				throw (IOException) result[0];
+			picture = result[0];
+		}
+
+		if (vector != null) {
+			try {
+				Export.writeSvgGraphics((SVGGraphics2D) picture, out, vector);
+			} catch (TranscoderException e) {
+				throw new IOException(e.toString());
+			}
+			return;
+		}
+		ImageIO.write((BufferedImage) picture, f, out);
+		out.flush();
+	}
+
+	/*
+	 * Lay out the pads for the given size and draw them into an SVG document
+	 * (vector formats) or an image. The old layout is restored at the end.
+	 * Pads are drawn on several threads only if parallel is set.
+	 */
+	private Object render(ImageType vector, int width, int height,
+			boolean parallel) throws IOException {
+
+		Dimension oldSize = mainPanel.getSize();
+		Rectangle[][] bounds = new Rectangle[N1final][N2final];
+		synchronized (mainPanel.getTreeLock()) {
+			mainPanel.setSize(width, height);
+			mainPanel.doLayout();
+			for (int i1 = 0; i1 < N1final; i1++)
+				for (int i2 = 0; i2 < N2final; i2++)
+					bounds[i1][i2] = graph[i1][i2].getBounds();
+		}
+
+		try {
+			if (vector != null) {
+				SVGGraphics2D svg = Export.createSvgGraphics(new Dimension(
+						width, height));
+				for (int i1 = 0; i1 < N1final; i1++) {
+					for (int i2 = 0; i2 < N2final; i2++) {
+						Rectangle b = bounds[i1][i2];
+						Graphics g = svg.create(b.x, b.y, b.width, b.height);
+						graph[i1][i2].paintComponent(g);
+						g.dispose();
+					}
+				}
+				return svg;
+			}
+
+			BufferedImage image = new BufferedImage(
+					width, height, BufferedImage.TYPE_INT_RGB);
+			Graphics2D g = image.createGraphics();
+			g.setColor(mainPanel.getBackground());
+			g.fillRect(0, 0, width, height);
+			if (parallel) {
+				BufferedImage[][] pads = renderPads(bounds);
+				for (int i1 = 0; i1 < N1final; i1++)
+					for (int i2 = 0; i2 < N2final; i2++)
+						g.drawImage(pads[i1][i2], bounds[i1][i2].x,
+								bounds[i1][i2].y, null);
+			} else {
+				for (int i1 = 0; i1 < N1final; i1++) {
+					for (int i2 = 0; i2 < N2final; i2++) {
+						Rectangle b = bounds[i1][i2];
+						Graphics pg = g.create(b.x, b.y, b.width, b.height);
+						graph[i1][i2].paintComponent(pg);
+						pg.dispose();
+					}
+				}
+			}
+			g.dispose();
+			return image;
+
+		} finally {
+			synchronized (mainPanel.getTreeLock()) {
+				mainPanel.setSize(oldSize);
+				mainPanel.doLayout();
+			}
+		}
+	}
+
+	/*
+	 * Draw each pad into its own image, with a thread per processor. Each pad
+	 * has its own graph, settings and data, so they can be drawn at the same
+	 * time, but only while the canvas is not painted on the screen.
+	 */
+	private BufferedImage[][] renderPads(final Rectangle[][] bounds)
+			throws IOException {
+
+		final BufferedImage[][] pads = new BufferedImage[N1final][N2final];
+		int threads = Math.max(1, Math.min(N1final * N2final, Runtime
+				.getRuntime().availableProcessors()));
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		ArrayList<Future<Object>> futures = new ArrayList<Future<Object>>();
+		try {
+			for (int i1 = 0; i1 < N1final; i1++) {
+				for (int i2 = 0; i2 < N2final; i2++) {
+					final int k1 = i1;
+					final int k2 = i2;
+					futures.add(pool.submit(new Callable<Object>() {
+						public Object call() {
+							Rectangle b = bounds[k1][k2];
+							BufferedImage im = new BufferedImage(Math.max(1,
+									b.width), Math.max(1, b.height),
+									BufferedImage.TYPE_INT_RGB);
+							Graphics2D g = im.createGraphics();
+							graph[k1][k2].paintComponent(g);
+							g.dispose();
+							pads[k1][k2] = im;
+							return null;
+						}
+					}));
+				}
+			}
+			for (Future<Object> f : futures)
+				f.get();
+		} catch (InterruptedException e) {
+			throw new IOException(e.toString());
+		} catch (ExecutionException e) {
+			throw new IOException(e.getCause().toString());
+		} finally {
+			pool.shutdown();
+		}
+		return pads;
+	}
+
 	/**
 	 * Remove the canvas frame
 	 */
 	public void distroy() {
-		mainFrame.setVisible(false);
+		if (mainFrame != null)
+			mainFrame.setVisible(false);
 		close();
 		removeFrame();
 	}
@@ -444,24 +658,29 @@ public class HPlot extends GHFrame implements Serializable {
 		for (int i2 = 0; i2 < N2final; i2++) {
 			for (int i1 = 0; i1 < N1final; i1++) {
 
-				frames[i1][i2] = new JFrame();
-				jp[i1][i2] = new JPlot(frames[i1][i2], null, null, false);
-				frames[i1][i2].getContentPane().add(jp[i1][i2]);
-				frames[i1][i2].setTitle("Editor for Canvas ("
-						+ Integer.toString(i1 + 1) + ","
-						+ Integer.toString(i2 + 1) + ")");
-				frames[i1][i2].setSize(400, 400);
-				frames[i1][i2].setVisible(false);
 				hkeyCounter[i1][i2] = 0;
-				JMenuBar bar1 = new JMenuBar();
-				JMenu menu1 = new JMenu("Exit");
-				JMenuItem item1 = new JMenuItem(new NotShowAction());
-				menu1.add(item1);
-				JMenuItem item2 = new JMenuItem(new RefreshAction());
-				menu1.add(item2);
-
-				bar1.add(menu1);
-				frames[i1][i2].setJMenuBar(bar1);
+				// editors are windows, which need a display
+				if (GraphicsEnvironment.isHeadless()) {
+					jp[i1][i2] = new JPlot(null, null, null, false);
+				} else {
+					frames[i1][i2] = new JFrame();
+					jp[i1][i2] = new JPlot(frames[i1][i2], null, null, false);
+					frames[i1][i2].getContentPane().add(jp[i1][i2]);
+					frames[i1][i2].setTitle("Editor for Canvas ("
+							+ Integer.toString(i1 + 1) + ","
+							+ Integer.toString(i2 + 1) + ")");
+					frames[i1][i2].setSize(400, 400);
+					frames[i1][i2].setVisible(false);
+					JMenuBar bar1 = new JMenuBar();
+					JMenu menu1 = new JMenu("Exit");
+					JMenuItem item1 = new JMenuItem(new NotShowAction());
+					menu1.add(item1);
+					JMenuItem item2 = new JMenuItem(new RefreshAction());
+					menu1.add(item2);
+
+					bar1.add(menu1);
+					frames[i1][i2].setJMenuBar(bar1);
+				}
 
 				sc[i1][i2] = jp[i1][i2].getStyleChooser();
 				gs[i1][i2] = jp[i1][i2].getGraphSettings();
@@ -3850,7 +4069,8 @@ public class HPlot extends GHFrame implements Serializable {
 	public void close() {
 
 		isOpen = 0;
-		mainFrame.setVisible(false);
+		if (mainFrame != null)
+			mainFrame.setVisible(false);
 		m_Close = new Thread1("Closing softly");
 		if (!m_Close.Alive())
 			m_Close.Start();
@@ -3891,7 +4111,8 @@ public class HPlot extends GHFrame implements Serializable {
 				jp[i1][i2].quit();
 				jp[i1][i2] = null;
 
-				frames[i1][i2].dispose();
+				if (frames[i1][i2] != null)
+					frames[i1][i2].dispose();
 				frames[i1][i2] = null;
 
 			}
@@ -3934,7 +4155,8 @@ public class HPlot extends GHFrame implements Serializable {
 		for (int i2 = 0; i2 < N2final; i2++) {
 			for (int i1 = 0; i1 < N1final; i1++) {
 
-				frames[i1][i2].dispose();
+				if (frames[i1][i2] != null)
+					frames[i1][i2].dispose();
 				frames[i1][i2] = null;
 				graph[i1][i2] = null;
 
@@ -3988,7 +4210,8 @@ public class HPlot extends GHFrame implements Serializable {
 
 		d.setType(LinePars.P1D);
 		// for contous
-		d.setGraphStyle(LinePars.LINES);
+		if (d.getDrawOption().getGraphStyle() != LinePars.DENSITY)
+			d.setGraphStyle(LinePars.LINES);
 		if (plotType[N1][N2] == GraphSettings.CONTOUR_2D) {
 			d.setGraphStyle(LinePars.CONTOUR);
 		}
@@ -3156,7 +3156,8 @@ public class HPlotJa extends JComponent {
 				setNameY(p1d.getLabelY());
 
 		p1d.setType(LinePars.P1D);
-		p1d.setGraphStyle(LinePars.LINES);
+		if (p1d.getDrawOption().getGraphStyle() != LinePars.DENSITY)
+			p1d.setGraphStyle(LinePars.LINES);
 
 		DataArray tmp = p1d.getDataArray();
 		tmp.setDimension(p1d.dimension());
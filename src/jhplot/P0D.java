@@ -36,7 +36,9 @@ import java.util.HashMap;
 import java.util.Map;
 
 import jhplot.gui.HelpBrowser;
+import jhplot.io.ColumnFile;
 import jhplot.io.PReader;
+import jhplot.io.TextParser;
 import jhplot.math.*;
 import jhplot.math.io.*;
 import java.util.Enumeration;
@@ -242,10 +244,12 @@ public class P0D extends DoubleArrayList implements Serializable {
 	 */
 	public int read(File sfile) {
 
-		BufferedReader is = PReader.read(sfile);
-		if (is == null)
-			return 1;
-		return read(is);
+		try {
+			return read(PReader.parse(sfile));
+		} catch (NumberFormatException e) {
+			jhplot.utils.Util.ErrorMessage(e.getMessage());
+			return 3;
+		}
 
 	}
 
@@ -287,10 +291,12 @@ public class P0D extends DoubleArrayList implements Serializable {
 	 */
 	public int readGZip(String sfile) {
 
-		BufferedReader is = PReader.readGZip(sfile);
-		if (is == null)
-			return 1;
-		return read(is);
+		try {
+			return read(PReader.parseGZip(sfile));
+		} catch (NumberFormatException e) {
+			jhplot.utils.Util.ErrorMessage(e.getMessage());
+			return 3;
+		}
 
 	}
 
@@ -308,10 +314,12 @@ public class P0D extends DoubleArrayList implements Serializable {
 	 */
 	public int read(String sfile) {
 
-		BufferedReader is = PReader.read(sfile);
-		if (is == null)
-			return 1;
-		return read(is);
+		try {
+			return read(PReader.parse(sfile));
+		} catch (NumberFormatException e) {
+			jhplot.utils.Util.ErrorMessage(e.getMessage());
+			return 3;
+		}
 
 	}
 
@@ -325,13 +333,36 @@ public class P0D extends DoubleArrayList implements Serializable {
 	 */
 	public int readGZip(File sfile) {
 
-		BufferedReader is = PReader.readGZip(sfile);
-		if (is == null)
-			return 1;
-		return read(is);
+		try {
+			return read(PReader.parseGZip(sfile));
+		} catch (NumberFormatException e) {
+			jhplot.utils.Util.ErrorMessage(e.getMessage());
+			return 3;
+		}
 
 	}
 
+	/**
+	 * Fill P0D from numbers parsed by the fast text parser. Each row should
+	 * contain one number.
+	 * 
+	 * @param r
+	 *            parsed numbers
+	 * @return error: 0 in case of success. 3: parse error. 1: file not found.
+	 */
+	private int read(TextParser.Result r) {
+
+		if (r == null)
+			return 1;
+		clear();
+		if (r.rows() > 0 && r.columns() != 1) {
+			jhplot.utils.Util.ErrorMessage("Expected one number per line");
+			return 3;
+		}
+		elements(r.trimmedValues());
+		return 0;
+	}
+
 	/**
 	 * Read one dimensional data from ZIP ASCII file. Use "#" or "*" for
 	 * comments. Each number should be written in separate line.
@@ -483,10 +514,82 @@ public class P0D extends DoubleArrayList implements Serializable {
 		clear();
 
 		double[] tmp = BinaryFile.readDoubleArray(new File(name), "BIG_ENDIAN");
+		elements(tmp);
+
+		return 0;
+	}
+
+	/**
+	 * Write a P0D to a binary columnar file (see {@link ColumnFile}). Such
+	 * files can be read back fully or by a range of rows without loading the
+	 * whole file.
+	 * 
+	 * @param name
+	 *            file name for the output.
+	 * @return 0 in case of no problems
+	 */
+	public int writeColumnFile(String name) {
+
+		try {
+			ColumnFile.write(new File(name), title, new String[] { "x" },
+					new double[][] { elements() }, size());
+		} catch (IOException e) {
+			jhplot.utils.Util.ErrorMessage(e.toString());
+			return 1;
+		}
+		return 0;
+	}
+
+	/**
+	 * Read a P0D from a binary columnar file written by writeColumnFile().
+	 * Old elements will be removed.
+	 * 
+	 * @param name
+	 *            file name for input.
+	 * @return 0 in case of no problems
+	 */
+	public int readColumnFile(String name) {
+		return readColumnFile(name, 0, -1);
+	}
 
-		for (int i = 0; i < tmp.length; i++)
-			add(new Double(tmp[i]));
+	/**
+	 * Read a range of rows from a binary columnar file written by
+	 * writeColumnFile(). Only this range is mapped into memory. Old elements
+	 * will be removed.
+	 * 
+	 * @param name
+	 *            file name for input.
+	 * @param from
+	 *            first row (inclusive)
+	 * @param to
+	 *            last row (exclusive). If negative, read till the end.
+	 * @return 0 in case of no problems
+	 */
+	public int readColumnFile(String name, int from, int to) {
 
+		ColumnFile f = null;
+		try {
+			f = new ColumnFile(name);
+			if (f.getColumns() < 1) {
+				jhplot.utils.Util.ErrorMessage("No data in " + name);
+				return 3;
+			}
+			long end = to < 0 ? f.getRows() : to;
+			elements(f.read(0, from, end));
+		} catch (IOException e) {
+			jhplot.utils.Util.ErrorMessage(e.toString());
+			return 1;
+		} catch (IndexOutOfBoundsException e) {
+			jhplot.utils.Util.ErrorMessage(e.getMessage());
+			return 2;
+		} finally {
+			if (f != null) {
+				try {
+					f.close();
+				} catch (IOException e) {
+				}
+			}
+		}
 		return 0;
 	}
 
@@ -30,7 +30,9 @@ import jminhep.cluster.DataHolder;
 import jminhep.cluster.DataPoint;
 import jplot.*;
 import jhplot.gui.HelpBrowser;
+import jhplot.io.ColumnFile;
 import jhplot.io.PReader;
+import jhplot.io.TextParser;
 import jhplot.math.*;
 import jhplot.utils.SHisto;
 import java.text.DecimalFormat;
@@ -3131,32 +3133,64 @@ public class P1D extends DrawOptions implements Serializable {
 	}
 
 	/**
-	 * Return a DataArray container from JPlot
+	 * Return a DataArray container from JPlot. The values are copied, so
+	 * later changes of this P1D do not change the container.
 	 * 
 	 * @return Container of type DataArray
 	 */
 	public DataArray getDataArray() {
+		return getDataArray(false);
+	}
+
+	/**
+	 * Return a DataArray container from JPlot which is a view of the values
+	 * of this P1D. The values are not copied, which saves memory for large
+	 * data sets, but the container shows wrong values and ranges after this
+	 * P1D is changed, so it should be created again after each change.
+	 * 
+	 * @return Container of type DataArray
+	 */
+	public DataArray getDataArrayView() {
+		return getDataArray(true);
+	}
+
+	private DataArray getDataArray(boolean view) {
 
 		DataArray data = new DataArray();
-		data.allocate(X.size());
-		
+		int n = X.size();
+		double[][] c = null;
+
 		if ( dimen == 2)
-		   for (int i = 0; i < X.size(); i++)
-               data.addPoint(X.getQuick(i), Y.getQuick(i), 0, 0, 0,0, 0, 0, 0, 0);
+			c = new double[][] { X.elements(), Y.elements(), null, null,
+					null, null, null, null, null, null };
 		else if ( dimen == 3)
-			   for (int i = 0; i < X.size(); i++)
-	               data.addPoint(X.getQuick(i), Y.getQuick(i), 0, 0, YE1upper.getQuick(i),YE1upper.getQuick(i), 0, 0, 0, 0);
+			c = new double[][] { X.elements(), Y.elements(), null, null,
+					YE1upper.elements(), YE1upper.elements(), null, null,
+					null, null };
 		else if ( dimen == 4)
-			   for (int i = 0; i < X.size(); i++)
-	               data.addPoint(X.getQuick(i), Y.getQuick(i), 0, 0, YE1upper.getQuick(i),YE1down.getQuick(i), 0, 0, 0, 0);
+			c = new double[][] { X.elements(), Y.elements(), null, null,
+					YE1upper.elements(), YE1down.elements(), null, null,
+					null, null };
 		else if ( dimen == 6)
-			   for (int i = 0; i < X.size(); i++)
-	               data.addPoint(X.getQuick(i), Y.getQuick(i), XE1left.getQuick(i), XE1right.getQuick(i), YE1upper.getQuick(i),YE1down.getQuick(i), 0, 0, 0, 0);
+			c = new double[][] { X.elements(), Y.elements(),
+					XE1left.elements(), XE1right.elements(),
+					YE1upper.elements(), YE1down.elements(), null, null,
+					null, null };
 		else if ( dimen == 10)
-			   for (int i = 0; i < X.size(); i++)
-	               data.addPoint(X.getQuick(i), Y.getQuick(i), XE1left.getQuick(i), XE1right.getQuick(i), YE1upper.getQuick(i),YE1down.getQuick(i),
-	            		   XE2left.getQuick(i), XE2right.getQuick(i), YE2upper.getQuick(i),YE2down.getQuick(i));	
-		
+			c = new double[][] { X.elements(), Y.elements(),
+					XE1left.elements(), XE1right.elements(),
+					YE1upper.elements(), YE1down.elements(),
+					XE2left.elements(), XE2right.elements(),
+					YE2upper.elements(), YE2down.elements() };
+		if (c == null)
+			return data;
+
+		if (view)
+			data.setColumns(n, c[0], c[1], c[2], c[3], c[4], c[5], c[6],
+					c[7], c[8], c[9]);
+		else
+			data.copyColumns(n, c[0], c[1], c[2], c[3], c[4], c[5], c[6],
+					c[7], c[8], c[9]);
 		return data;
 
 	}
@@ -4157,6 +4191,142 @@ public class P1D extends DrawOptions implements Serializable {
 
 	}
 
+	/**
+	 * Write a P1D to a binary columnar file (see {@link ColumnFile}). All
+	 * columns used by the current dimension are written. Such files can be
+	 * read back fully or by a range of rows without loading the whole file.
+	 * 
+	 * @param name
+	 *            file name for the output.
+	 * @return zero if no errors
+	 */
+	public int writeColumnFile(String name) {
+
+		DoubleArrayList[] lists = columnLists();
+		if (lists == null) {
+			ErrorMessage("Dimension " + Integer.toString(dimen)
+					+ " is not supported");
+			return 3;
+		}
+		double[][] cols = new double[lists.length][];
+		for (int i = 0; i < lists.length; i++)
+			cols[i] = lists[i].elements();
+		String[] names = new String[lists.length];
+		for (int i = 0; i < names.length; i++)
+			names[i] = (dimen == 3 || dimen == 4) && i >= 2 ? COLUMN_NAMES[i + 2]
+					: COLUMN_NAMES[i];
+		try {
+			ColumnFile.write(new File(name), title, names, cols, size());
+		} catch (IOException e) {
+			ErrorMessage(e.toString());
+			return 1;
+		}
+		return 0;
+	}
+
+	/**
+	 * Read a P1D from a binary columnar file written by writeColumnFile().
+	 * The old content will be lost.
+	 * 
+	 * @param name
+	 *            file name for input.
+	 * @return zero if no errors
+	 */
+	public int readColumnFile(String name) {
+		return readColumnFile(name, 0, -1);
+	}
+
+	/**
+	 * Read a range of rows from a binary columnar file written by
+	 * writeColumnFile(). Only this range is mapped into memory. The old
+	 * content will be lost.
+	 * 
+	 * @param name
+	 *            file name for input.
+	 * @param from
+	 *            first row (inclusive)
+	 * @param to
+	 *            last row (exclusive). If negative, read till the end.
+	 * @return zero if no errors
+	 */
+	public int readColumnFile(String name, int from, int to) {
+
+		ColumnFile f = null;
+		try {
+			f = new ColumnFile(name);
+			int ncol = f.getColumns();
+			if (ncol != 2 && ncol != 3 && ncol != 4 && ncol != 6 && ncol != 10) {
+				ErrorMessage("Error in reading the file:\n"
+						+ Integer.toString(ncol) + " columns found!");
+				return 3;
+			}
+			double[][] cols = f.readColumns(from, to < 0 ? f.getRows() : to);
+			dimen = ncol;
+			setDimension(ncol);
+			X = new DoubleArrayList(cols[0]);
+			Y = new DoubleArrayList(cols[1]);
+			if (ncol == 3) {
+				YE1upper = new DoubleArrayList(cols[2]);
+			} else if (ncol == 4) {
+				YE1upper = new DoubleArrayList(cols[2]);
+				YE1down = new DoubleArrayList(cols[3]);
+			} else if (ncol >= 6) {
+				XE1left = new DoubleArrayList(cols[2]);
+				XE1right = new DoubleArrayList(cols[3]);
+				YE1upper = new DoubleArrayList(cols[4]);
+				YE1down = new DoubleArrayList(cols[5]);
+			}
+			if (ncol == 10) {
+				XE2left = new DoubleArrayList(cols[6]);
+				XE2right = new DoubleArrayList(cols[7]);
+				YE2upper = new DoubleArrayList(cols[8]);
+				YE2down = new DoubleArrayList(cols[9]);
+			}
+		} catch (IOException e) {
+			ErrorMessage(e.toString());
+			return 1;
+		} catch (IndexOutOfBoundsException e) {
+			ErrorMessage(e.getMessage());
+			return 2;
+		} finally {
+			if (f != null) {
+				try {
+					f.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+		return 0;
+	}
+
+	/** Names of columns in binary columnar files, in the order of add() */
+	private static final String[] COLUMN_NAMES = { "x", "y", "xleft",
+			"xright", "yupper", "ylower", "xleftSys", "xrightSys",
+			"yupperSys", "ylowerSys" };
+
+	/**
+	 * Get the columns of the current dimension in the order of add().
+	 */
+	private DoubleArrayList[] columnLists() {
+
+		switch (dimen) {
+		case 2:
+			return new DoubleArrayList[] { X, Y };
+		case 3:
+			return new DoubleArrayList[] { X, Y, YE1upper };
+		case 4:
+			return new DoubleArrayList[] { X, Y, YE1upper, YE1down };
+		case 6:
+			return new DoubleArrayList[] { X, Y, XE1left, XE1right, YE1upper,
+					YE1down };
+		case 10:
+			return new DoubleArrayList[] { X, Y, XE1left, XE1right, YE1upper,
+					YE1down, XE2left, XE2right, YE2upper, YE2down };
+		default:
+			return null;
+		}
+	}
+
 	/**
 	 * Construct a P1D from a file on the we web. The file should contain 2, or
 	 * 4, or 6, or 10 columns: 1) x,y: data without any errors 2) x,y, y(upper),
@@ -4303,10 +4473,12 @@ public class P1D extends DrawOptions implements Serializable {
 	 */
 	public int readGZip(String sfile) {
 
-		BufferedReader is = PReader.readGZip(sfile);
-		if (is == null)
-			return 1;
-		return read(is);
+		try {
+			return read(PReader.parseGZip(sfile));
+		} catch (NumberFormatException e) {
+			ErrorMessage(e.getMessage());
+			return 3;
+		}
 
 	}
 
@@ -4331,11 +4503,61 @@ public class P1D extends DrawOptions implements Serializable {
 
 	public int read(String sfile) {
 
-		BufferedReader is = PReader.read(sfile);
-		if (is == null)
+		try {
+			return read(PReader.parse(sfile));
+		} catch (NumberFormatException e) {
+			ErrorMessage(e.getMessage());
+			return 3;
+		}
+
+	}
+
+	/**
+	 * Fill P1D from numbers parsed by the fast text parser. The number of
+	 * columns is taken from the first row.
+	 * 
+	 * @param r
+	 *            parsed numbers
+	 * @return zero if success
+	 */
+	private int read(TextParser.Result r) {
+
+		if (r == null)
 			return 1;
-		return read(is);
+		clear();
+		if (r.rows() == 0)
+			return 0;
+
+		int ncount = r.length(0);
+		setDimension(ncount);
+		if (ncount != 2 && ncount != 4 && ncount != 6 && ncount != 10) {
+			ErrorMessage("Error in reading the file:\n"
+					+ Integer.toString(ncount) + " entries per line is found!");
+		}
 
+		double[] v = r.values();
+		int k = 0;
+		for (int i = 0; i < r.rows(); i++) {
+			int n = r.length(i);
+			if (n < ncount) {
+				ErrorMessage("Error in reading the row " + Integer.toString(i + 1)
+						+ ": " + Integer.toString(n) + " entries found");
+				return 3;
+			}
+			if (ncount == 2)
+				add(v[k], v[k + 1]);
+			else if (ncount == 3)
+				add(v[k], v[k + 1], v[k + 2], v[k + 2]);
+			else if (ncount == 4)
+				add(v[k], v[k + 1], v[k + 2], v[k + 3]);
+			else if (ncount == 6)
+				add(v[k], v[k + 1], v[k + 2], v[k + 3], v[k + 4], v[k + 5]);
+			else if (ncount == 10)
+				add(v[k], v[k + 1], v[k + 2], v[k + 3], v[k + 4], v[k + 5],
+						v[k + 6], v[k + 7], v[k + 8], v[k + 9]);
+			k += n;
+		}
+		return 0;
 	}
 
 	/**
@@ -5471,200 +5693,45 @@ public class P1D extends DrawOptions implements Serializable {
 
         /**
          * Sorting the original array using either X or Y values. The sorting done in increasing order.
-         * We use exchange sort method. Currently supports dimensions 2 (X-Y), 3 (X-Y,errror on Y), 4 (X-Y, errors upper and lower on Y).
+         * The permutation is computed once with a stable radix sort on the primitive values
+         * (see {@link #sortIndex(int)}) and then applied to X, Y and all error columns,
+         * so sorting takes linear time for any dimension.
          * @param axis
          *            if axis=0, sorting applied for X, if axis=1, sorting is applied for Y.
          */
         public  void sort(int axis) {
 
-                if (axis != 0 && axis != 1) {
-                        ErrorMessage("Axis variable should be 0 or 1!");
-                }
+                int[] idx = sortIndex(axis);
+                if (idx == null) return;
 
-                // use exchange sort
-                if (axis==0) {
-                
-                
-                if (dimen==2) {  
-                double tempX;
-                double tempY;
-                for (int i=0; i < size()-1; i++) {
-                  for (int j=i+1; j<size(); j++) {
-                              if (X.getQuick(i)>X.getQuick(j)) {
-                                    tempX= X.getQuick(i);         
-                                    tempY= Y.getQuick(i);         
-                                    X.setQuick(i,getQuickX(j));
-                                    Y.setQuick(i,getQuickY(j));
-                                    X.setQuick(j,tempX);
-                                    Y.setQuick(j,tempY);
-                                   }; 
-                        }
-                }
-                }
-                
-                
-                if (dimen==3) {  
-                double tempX;
-                double tempY;
-                double tempEY;
-                for (int i=0; i < size()-1; i++) {
-                  for (int j=i+1; j<size(); j++) {
-                              if (X.getQuick(i)>X.getQuick(j)) {
-                                    tempX= X.getQuick(i);         // swap
-                                    tempY= Y.getQuick(i);         // swap
-                                    tempEY= YE1upper.getQuick(i);
-                                    X.setQuick(i,getQuickX(j));
-                                    Y.setQuick(i,getQuickY(j));
-                                    YE1upper.setQuick(i,YE1upper.getQuick(j));
-                                    X.setQuick(j,tempX);
-                                    Y.setQuick(j,tempY);
-                                    YE1upper.setQuick(j,tempEY);
-                                   }; 
-                        }
-                }
-                }
-                
-                
-                if (dimen==4) {  
-                double tempX;
-                double tempY;
-                double tempEYu;
-                double tempEYd;
-                for (int i=0; i < size()-1; i++) {
-                  for (int j=i+1; j<size(); j++) {
-                              if (X.getQuick(i)>X.getQuick(j)) {
-                                    tempX= X.getQuick(i);         // swap
-                                    tempY= Y.getQuick(i);         // swap
-                                    tempEYu= YE1upper.getQuick(i);
-                                    tempEYd= YE1down.getQuick(i);
-                                    X.setQuick(i,getQuickX(j));
-                                    Y.setQuick(i,getQuickY(j));
-                                    YE1upper.setQuick(i, YE1upper.getQuick(j));
-                                    YE1down.setQuick(i,  YE1down.getQuick(j) );
-                                    X.setQuick(j,tempX);
-                                    Y.setQuick(j,tempY);
-                                    YE1upper.setQuick(j,tempEYu);
-                                    YE1down.setQuick(j,tempEYd);
-                                   }; 
-                        }
-                }
-                }
-                
-                
-                
-                
-                
-                
-                
-                
-                
-                
-                
-                
-                
-                
+                DoubleArrayList[] columns = { X, Y, XE1left, XE1right, XE2left, XE2right,
+                                YE1upper, YE1down, YE2upper, YE2down };
+                for (int i = 0; i < columns.length; i++) {
+                        DoubleArrayList c = columns[i];
+                        if (c == null || c.size() != idx.length) continue;
+                        c.elements(SortUtils.gather(idx, c.elements()));
                 }
 
+        }
 
-               if (axis==1) {
-                if (dimen==2) {
-                double tempX;
-                double tempY;
-                for (int i=0; i < size()-1; i++) {
-                  for (int j=i+1; j<size(); j++) {
-                              if (Y.getQuick(i)>Y.getQuick(j)) {
-                                    tempX= X.getQuick(i);         // swap
-                                    tempY= Y.getQuick(i);         // swap
-                                    X.setQuick(i,getQuickX(j));
-                                    Y.setQuick(i,getQuickY(j));
-                                    X.setQuick(j,tempX);
-                                    Y.setQuick(j,tempY);
-                                   };
-                        }
-                }
-                }
-                
-                
-                
-                
-                if (dimen==3) {  
-                double tempX;
-                double tempY;
-                double tempEY;
-                for (int i=0; i < size()-1; i++) {
-                  for (int j=i+1; j<size(); j++) {
-                              if (Y.getQuick(i)>Y.getQuick(j)) {
-                                    tempX= X.getQuick(i);         // swap
-                                    tempY= Y.getQuick(i);         // swap
-                                    tempEY= YE1upper.getQuick(i);
-                                    X.setQuick(i,getQuickX(j));
-                                    Y.setQuick(i,getQuickY(j));
-                                    YE1upper.setQuick(i,YE1upper.getQuick(j));
-                                    X.setQuick(j,tempX);
-                                    Y.setQuick(j,tempY);
-                                    YE1upper.setQuick(j,tempEY);
-                                   }; 
-                        }
-                }
-                }
-                
-                
-                if (dimen==4) {  
-                double tempX;
-                double tempY;
-                double tempEYu;
-                double tempEYd;
-                for (int i=0; i < size()-1; i++) {
-                  for (int j=i+1; j<size(); j++) {
-                              if (Y.getQuick(i)>Y.getQuick(j)) {
-                                    tempX= X.getQuick(i);         // swap
-                                    tempY= Y.getQuick(i);         // swap
-                                    tempEYu= YE1upper.getQuick(i);
-                                    tempEYd= YE1down.getQuick(i);
-                                    X.setQuick(i,getQuickX(j));
-                                    Y.setQuick(i,getQuickY(j));
-                                    YE1upper.setQuick(i, YE1upper.getQuick(j));
-                                    YE1down.setQuick(i,  YE1down.getQuick(j) );
-                                    X.setQuick(j,tempX);
-                                    Y.setQuick(j,tempY);
-                                    YE1upper.setQuick(j,tempEYu);
-                                    YE1down.setQuick(j,tempEYd);
-                                   }; 
-                        }
-                }
-                }
-                
-                
-                
-                
-                
-                
-                
-                
-                
-                
-                
-                
-                
-                
-                
-                
-                
-                
-                
-                
-                
-                
-                
-                
-                
-                
-                
-                }
 
+        /**
+         * Get the permutation which sorts this container in increasing order of X or Y values.
+         * The container itself is not modified. The sort is stable, so points with equal
+         * values keep their relative order.
+         * @param axis
+         *            if axis=0, sorting by X, if axis=1, sorting by Y.
+         * @return array of indices p such that getX(p[0]),..,getX(p[size()-1]) (or Y) is in increasing order
+         */
+        public int[] sortIndex(int axis) {
 
+                if (axis != 0 && axis != 1) {
+                        ErrorMessage("Axis variable should be 0 or 1!");
+                        return null;
+                }
 
-                return;
+                DoubleArrayList c = (axis == 0) ? X : Y;
+                return SortUtils.sort(c.elements(), size());
 
         }
 
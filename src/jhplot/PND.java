@@ -30,6 +30,7 @@ import hep.aida.ITree;
 import java.io.*;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.StringTokenizer;
 import java.util.Date;
 import java.util.Enumeration;
@@ -37,7 +38,9 @@ import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import jhplot.stat.Statistics;
 import jhplot.gui.HelpBrowser;
+import jhplot.io.ColumnFile;
 import jhplot.io.PReader;
+import jhplot.io.TextParser;
 import jhplot.math.DoubleArray;
 
 /**
@@ -67,7 +70,8 @@ public class PND implements Serializable {
 	 * 
 	 */
 	private static final long serialVersionUID = 1L;
-	private ArrayList<double[]> data;
+	private List<double[]> data;
+	private DoubleColumns columns;
 	private String title;
 	private int dimension;
 	private double min = 0;
@@ -195,7 +199,52 @@ public class PND implements Serializable {
 	}
 
 	/**
-	 * Return a specific row as array
+	 * Switch between row and columnar storage. By default each row is kept as
+	 * a separate array. In the columnar mode the values of each column are
+	 * kept in contiguous primitive chunks, which avoids one object per row and
+	 * makes column operations such as getColumn(), getH1D() and standardize()
+	 * scan contiguous memory. All rows must then have the same number of
+	 * columns. Existing data are converted.
+	 * <p>
+	 * In the columnar mode, get(row) and getArrayList() return copies, so
+	 * changes to the returned arrays must be written back with set().
+	 * 
+	 * @param columnar
+	 *            true for columnar storage, false for row storage
+	 */
+	public void setColumnar(boolean columnar) {
+
+		if (columnar == isColumnar())
+			return;
+
+		if (columnar) {
+			DoubleColumns c = new DoubleColumns();
+			try {
+				c.addAll(data);
+			} catch (IllegalArgumentException e) {
+				ErrorMessage("Rows have different dimensions, cannot use columnar storage");
+				return;
+			}
+			columns = c;
+			data = c;
+		} else {
+			data = new ArrayList<double[]>(data);
+			columns = null;
+		}
+	}
+
+	/**
+	 * Is the columnar storage used?
+	 * 
+	 * @return true if values are kept in columns
+	 */
+	public boolean isColumnar() {
+		return columns != null;
+	}
+
+	/**
+	 * Return a specific row as array. In the columnar mode this is a copy of
+	 * the row.
 	 * 
 	 * @param row
 	 *            index of the row
@@ -231,6 +280,8 @@ public class PND implements Serializable {
 	 * @return value
 	 */
 	public double get(int row, int column) {
+		if (columns != null)
+			return columns.get(row, column);
 		double[] tmp = (double[]) data.get(row);
 		return tmp[column];
 	}
@@ -286,6 +337,11 @@ public class PND implements Serializable {
 			return tmp;
 		}
 
+		if (columns != null) {
+			tmp.setArray(columns.column(column));
+			return tmp;
+		}
+
 		for (int j = 0; j < data.size(); j++) {
 			double[] tt = (double[]) data.get(j);
 			tmp.add(tt[column]);
@@ -305,6 +361,9 @@ public class PND implements Serializable {
 	 */
 	public double[] getColumn(int column) {
 
+		if (columns != null && column < dimension)
+			return columns.column(column);
+
 		double[] tmp = new double[data.size()];
 
 		if (column >= dimension) {
@@ -338,6 +397,11 @@ public class PND implements Serializable {
 			return tmp;
 		}
 
+		if (columns != null) {
+			tmp.setArray(columns.column(column));
+			return tmp;
+		}
+
 		for (int j = 0; j < data.size(); j++) {
 			double[] tt = (double[]) data.get(j);
 			tmp.add(tt[column]);
@@ -466,12 +530,15 @@ public class PND implements Serializable {
 	}
 
 	/**
-	 * Get data in form of ArrayList
+	 * Get data in form of ArrayList. In the columnar mode this is a copy of
+	 * the data.
 	 * 
 	 * @return data in form of ArrayList
 	 */
 	public ArrayList<double[]> getArrayList() {
-		return this.data;
+		if (columns != null)
+			return new ArrayList<double[]>(data);
+		return (ArrayList<double[]>) this.data;
 	}
 
 	/**
@@ -507,6 +574,8 @@ public class PND implements Serializable {
 	 */
 	public void add(double[] values) {
 
+		if (columns != null && !checkColumns(values.length))
+			return;
 		dimension = values.length;
 		data.add(values);
 	}
@@ -520,6 +589,8 @@ public class PND implements Serializable {
 	 */
 	public void add(P0D values) {
 
+		if (columns != null && !checkColumns(values.size()))
+			return;
 		dimension = values.size();
 		data.add(values.getArray());
 	}
@@ -539,6 +610,8 @@ public class PND implements Serializable {
 			ErrorMessage("Index is too large");
 		}
 
+		if (columns != null && !checkColumns(values.length))
+			return;
 		dimension = values.length;
 		data.set(index, values);
 	}
@@ -558,10 +631,25 @@ public class PND implements Serializable {
 			ErrorMessage("Index is too large");
 		}
 
+		if (columns != null && !checkColumns(values.size()))
+			return;
 		dimension = values.size();
 		data.set(index, values.getArray());
 	}
 
+	/**
+	 * Check that a row fits into the columnar storage.
+	 */
+	private boolean checkColumns(int n) {
+		if (columns.size() > 0 && n != columns.dimension()) {
+			ErrorMessage("Row has " + Integer.toString(n) + " values, but "
+					+ Integer.toString(columns.dimension())
+					+ " columns are expected");
+			return false;
+		}
+		return true;
+	}
+
 	/**
 	 * 
 	 * Read the data from an external source. Old data will be lost. Use "#" or
@@ -574,7 +662,17 @@ public class PND implements Serializable {
 	 * @return zero if success.
 	 */
 	public int read(BufferedReader br) {
+		return read(br, false);
+	}
+
+	/*
+	 * Read lines from a reader, values which are not numbers are read as 0.
+	 * Empty lines give empty rows, unless skipEmpty is set.
+	 */
+	private int read(BufferedReader br, boolean skipEmpty) {
 
+		if (br == null)
+			return 1;
 		data.clear();
 
 		try {
@@ -584,6 +682,8 @@ public class PND implements Serializable {
 			while ((line = br.readLine()) != null) {
 
 				line = line.trim();
+				if (skipEmpty && line.length() == 0)
+					continue;
 				if (!line.startsWith("#") && !line.startsWith("*")) {
 
 					StringTokenizer st = new StringTokenizer(line);
@@ -636,7 +736,8 @@ public class PND implements Serializable {
 	 * 
 	 * The old content will be lost. Use a space to separate values in columns
 	 * and new line to put new row. Comment lines starting with "#" and "*" are
-	 * ignored.
+	 * ignored. Empty lines are skipped. Values which are not numbers are read
+	 * as 0 with a warning, as by read(BufferedReader).
 	 * 
 	 * 
 	 * @param sfile
@@ -645,10 +746,12 @@ public class PND implements Serializable {
 	 */
 	public int read(File sfile) {
 
-		BufferedReader is = PReader.read(sfile);
-		if (is == null)
-			return 1;
-		return read(is);
+		try {
+			return read(PReader.parse(sfile));
+		} catch (NumberFormatException e) {
+			// read values which are not numbers as 0
+			return read(PReader.read(sfile), true);
+		}
 
 	}
 
@@ -674,6 +777,8 @@ public class PND implements Serializable {
 	 * http or ftp, otherwise a file on the file system is assumed.
 	 * <p>
 	 * Use a space to separate values in columns and new line to put new row.
+	 * Empty lines are skipped. Values which are not numbers are read as 0 with
+	 * a warning, as by read(BufferedReader).
 	 * 
 	 * @param sfile
 	 *            File name with input (extension .gz)
@@ -681,10 +786,12 @@ public class PND implements Serializable {
 	 */
 	public int readGZip(String sfile) {
 
-		BufferedReader is = PReader.readGZip(sfile);
-		if (is == null)
-			return 1;
-		return read(is);
+		try {
+			return read(PReader.parseGZip(sfile));
+		} catch (NumberFormatException e) {
+			// read values which are not numbers as 0
+			return read(PReader.readGZip(sfile), true);
+		}
 
 	}
 
@@ -694,7 +801,8 @@ public class PND implements Serializable {
 	 * <p>
 	 * The old content will be lost. Use a space to separate values in columns
 	 * and new line to put new row. Comment lines starting with "#" and "*" are
-	 * ignored.
+	 * ignored. Empty lines are skipped. Values which are not numbers are read
+	 * as 0 with a warning, as by read(BufferedReader).
 	 * 
 	 * @param sfile
 	 *            File name with input
@@ -702,17 +810,21 @@ public class PND implements Serializable {
 	 */
 	public int read(String sfile) {
 
-		BufferedReader is = PReader.read(sfile);
-		if (is == null)
-			return 1;
-		return read(is);
+		try {
+			return read(PReader.parse(sfile));
+		} catch (NumberFormatException e) {
+			// read values which are not numbers as 0
+			return read(PReader.read(sfile), true);
+		}
 
 	}
 
 	/**
 	 * Read PND from a GZiped file. The old content will be lost. Use a space to
 	 * separate values in columns and ne line to put new row. Comment lines
-	 * start from "#" and "*" are ignored.
+	 * start from "#" and "*" are ignored. Empty lines are skipped. Values
+	 * which are not numbers are read as 0 with a warning, as by
+	 * read(BufferedReader).
 	 * 
 	 * @param sfile
 	 *            File name with input (extension .gz)
@@ -720,13 +832,46 @@ public class PND implements Serializable {
 	 */
 	public int readGZip(File sfile) {
 
-		BufferedReader is = PReader.readGZip(sfile);
-		if (is == null)
-			return 1;
-		return read(is);
+		try {
+			return read(PReader.parseGZip(sfile));
+		} catch (NumberFormatException e) {
+			// read values which are not numbers as 0
+			return read(PReader.readGZip(sfile), true);
+		}
 
 	}
 
+	/**
+	 * Fill PND from numbers parsed by the fast text parser. Each row becomes
+	 * one array. The old content will be lost.
+	 * 
+	 * @param r
+	 *            parsed numbers
+	 * @return zero if success
+	 */
+	public int read(TextParser.Result r) {
+
+		if (r == null)
+			return 1;
+		data.clear();
+		if (columns == null)
+			((ArrayList<double[]>) data).ensureCapacity(r.rows());
+		else if (r.rows() > 0 && r.columns() < 0) {
+			ErrorMessage("Rows have different dimensions, cannot use columnar storage");
+			return 3;
+		}
+		double[] v = r.values();
+		int k = 0;
+		for (int i = 0; i < r.rows(); i++) {
+			dimension = r.length(i);
+			double[] snum = new double[dimension];
+			System.arraycopy(v, k, snum, 0, dimension);
+			data.add(snum);
+			k += dimension;
+		}
+		return 0;
+	}
+
 	/**
 	 * 
 	 * Read the data from ZIPed external file. Old data will be lost. Use "#" or
@@ -845,6 +990,97 @@ public class PND implements Serializable {
 
 	}
 
+	/**
+	 * Write a PND to a binary columnar file (see {@link ColumnFile}). All rows
+	 * should have the same dimension. Such files can be read back fully or by
+	 * a range of rows without loading the whole file.
+	 * 
+	 * @param name
+	 *            file name for the output.
+	 * @return zero if no errors
+	 */
+	public int writeColumnFile(String name) {
+
+		int dim = size() == 0 ? 0 : dimension;
+		for (int i = 0; columns == null && i < data.size(); i++) {
+			if (data.get(i).length != dim) {
+				ErrorMessage("Rows have different dimensions");
+				return 3;
+			}
+		}
+		double[][] cols = new double[dim][];
+		String[] names = new String[dim];
+		for (int c = 0; c < dim; c++) {
+			cols[c] = getColumn(c);
+			names[c] = Integer.toString(c);
+		}
+		try {
+			ColumnFile.write(new File(name), title, names, cols, size());
+		} catch (IOException e) {
+			ErrorMessage(e.toString());
+			return 1;
+		}
+		return 0;
+	}
+
+	/**
+	 * Read a PND from a binary columnar file written by writeColumnFile().
+	 * The old content will be lost.
+	 * 
+	 * @param name
+	 *            file name for input.
+	 * @return zero if no errors
+	 */
+	public int readColumnFile(String name) {
+		return readColumnFile(name, 0, -1);
+	}
+
+	/**
+	 * Read a range of rows from a binary columnar file written by
+	 * writeColumnFile(). Only this range is mapped into memory. The old
+	 * content will be lost.
+	 * 
+	 * @param name
+	 *            file name for input.
+	 * @param from
+	 *            first row (inclusive)
+	 * @param to
+	 *            last row (exclusive). If negative, read till the end.
+	 * @return zero if no errors
+	 */
+	public int readColumnFile(String name, int from, int to) {
+
+		ColumnFile f = null;
+		try {
+			f = new ColumnFile(name);
+			double[][] cols = f.readColumns(from, to < 0 ? f.getRows() : to);
+			int dim = cols.length;
+			int n = dim == 0 ? 0 : cols[0].length;
+			data.clear();
+			for (int j = 0; j < n; j++) {
+				double[] row = new double[dim];
+				for (int c = 0; c < dim; c++)
+					row[c] = cols[c][j];
+				data.add(row);
+			}
+			dimension = dim;
+		} catch (IOException e) {
+			ErrorMessage(e.toString());
+			return 1;
+		} catch (IndexOutOfBoundsException e) {
+			ErrorMessage(e.getMessage());
+			return 2;
+		} finally {
+			if (f != null) {
+				try {
+					f.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+		return 0;
+	}
+
 	/**
 	 * Write a PND to an external file.
 	 * 
@@ -1029,6 +1265,7 @@ public class PND implements Serializable {
 	 */
 	public PND copy(String newtitle) {
 		PND tmp = new PND(newtitle);
+		tmp.setColumnar(isColumnar());
 		for (int i = 0; i < data.size(); i++) {
 			double[] tt = (double[]) data.get(i);
 			double[] clone = (double[]) tt.clone();
@@ -1072,6 +1309,7 @@ public class PND implements Serializable {
 	 */
 	public void setArrayList(ArrayList<double[]> array) {
 		this.data = array;
+		this.columns = null;
 	}
 
 	/*
@@ -1148,6 +1386,11 @@ public class PND implements Serializable {
 	 * */
 	public PND standardize() {
 
+		if (columns != null) {
+			standardizeColumns();
+			return this;
+		}
+
 		int dim = getDimension();
 		double values[][] = new double[dim][size()];
 
@@ -1172,6 +1415,41 @@ public class PND implements Serializable {
 		return this;
 	}
 
+	/**
+	 * Standardize the columnar storage in place, one column at a time. The
+	 * sums are accumulated in the same order as in Statistics.mean() and
+	 * Statistics.stddeviation().
+	 */
+	private void standardizeColumns() {
+
+		int n = columns.size();
+		int nchunks = columns.chunks();
+		for (int c = 0; c < columns.dimension(); c++) {
+			double sum = 0;
+			for (int k = 0; k < nchunks; k++) {
+				double[] a = columns.chunk(c, k);
+				int len = columns.chunkLength(k);
+				for (int j = 0; j < len; j++)
+					sum += a[j];
+			}
+			double mean = sum / n;
+			double var = 0;
+			for (int k = 0; k < nchunks; k++) {
+				double[] a = columns.chunk(c, k);
+				int len = columns.chunkLength(k);
+				for (int j = 0; j < len; j++)
+					var += (a[j] - mean) * (a[j] - mean);
+			}
+			double std = Math.sqrt(var / (n - 1));
+			for (int k = 0; k < nchunks; k++) {
+				double[] a = columns.chunk(c, k);
+				int len = columns.chunkLength(k);
+				for (int j = 0; j < len; j++)
+					a[j] = (a[j] - mean) / std;
+			}
+		}
+	}
+
 	/**
 	 * Rescale the column vectors. S(i)= (X(i) - v[0]) / v[1], where
 	 * v[dimension] [2] is the 2D array returned by this function to be able
@@ -1255,6 +1533,11 @@ public class PND implements Serializable {
 	public H1D getH1D(int bins, double min, double max) {
 
 		H1D h1d = new H1D(this.title, bins, min, max);
+		if (columns != null) {
+			for (int n = 0; n < columns.dimension(); n++)
+				fillColumn(h1d, n);
+			return h1d;
+		}
 		for (int n = 0; n < getDimension(); n++) {
 			for (int j = 0; j < size(); j++)
 				h1d.fill((double) get(j, n));
@@ -1281,6 +1564,10 @@ public class PND implements Serializable {
 	public H1D getH1D(int bins, double min, double max, int column) {
 
 		H1D h1d = new H1D(this.title, bins, min, max);
+		if (columns != null) {
+			fillColumn(h1d, column);
+			return h1d;
+		}
 		for (int j = 0; j < size(); j++)
 			h1d.fill((double) get(j, column));
 
@@ -1288,6 +1575,16 @@ public class PND implements Serializable {
 
 	}
 
+	/**
+	 * Fill a histogram from the chunks of one column.
+	 */
+	private void fillColumn(H1D h1d, int column) {
+		H1DBuffer buf = h1d.newFiller();
+		for (int k = 0; k < columns.chunks(); k++)
+			buf.fill(columns.chunk(column, k), 0, columns.chunkLength(k));
+		buf.flush();
+	}
+
 	/**
 	 * Create histogram. Min and Max are determined authomatically.
 	 * 
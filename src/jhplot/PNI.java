@@ -30,6 +30,7 @@ import hep.aida.ITree;
 import java.io.*;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.StringTokenizer;
 import java.util.Date;
 import java.util.Enumeration;
@@ -68,7 +69,8 @@ public class PNI implements Serializable {
 	 * 
 	 */
 	private static final long serialVersionUID = 1L;
-	private ArrayList<int[]> data;
+	private List<int[]> data;
+	private IntColumns columns;
 	private String title;
 	private int dimension;
 	private double min = 0;
@@ -174,7 +176,52 @@ public class PNI implements Serializable {
 	}
 
 	/**
-	 * Return a specific row as array
+	 * Switch between row and columnar storage. By default each row is kept as
+	 * a separate array. In the columnar mode the values of each column are
+	 * kept in contiguous primitive chunks, which avoids one object per row and
+	 * makes column operations such as getColumn() and getH1D() scan
+	 * contiguous memory. All rows must then have the same number of columns.
+	 * Existing data are converted.
+	 * <p>
+	 * In the columnar mode, get(row) and getArrayList() return copies, so
+	 * changes to the returned arrays must be written back with set().
+	 * 
+	 * @param columnar
+	 *            true for columnar storage, false for row storage
+	 */
+	public void setColumnar(boolean columnar) {
+
+		if (columnar == isColumnar())
+			return;
+
+		if (columnar) {
+			IntColumns c = new IntColumns();
+			try {
+				c.addAll(data);
+			} catch (IllegalArgumentException e) {
+				ErrorMessage("Rows have different dimensions, cannot use columnar storage");
+				return;
+			}
+			columns = c;
+			data = c;
+		} else {
+			data = new ArrayList<int[]>(data);
+			columns = null;
+		}
+	}
+
+	/**
+	 * Is the columnar storage used?
+	 * 
+	 * @return true if values are kept in columns
+	 */
+	public boolean isColumnar() {
+		return columns != null;
+	}
+
+	/**
+	 * Return a specific row as array. In the columnar mode this is a copy of
+	 * the row.
 	 * 
 	 * @param row
 	 *            index of the row
@@ -210,6 +257,8 @@ public class PNI implements Serializable {
 	 * @return value
 	 */
 	public int get(int row, int column) {
+		if (columns != null)
+			return columns.get(row, column);
 		int[] tmp = (int[]) data.get(row);
 		return tmp[column];
 	}
@@ -258,6 +307,9 @@ public class PNI implements Serializable {
 	 */
 	public int[] getColumn(int column) {
 
+		if (columns != null && column < dimension)
+			return columns.column(column);
+
 		int[] tmp = new int[data.size()];
 
 		if (column >= dimension) {
@@ -321,6 +373,11 @@ public class PNI implements Serializable {
 			return tmp;
 		}
 
+		if (columns != null) {
+			tmp.setArray(columns.column(column));
+			return tmp;
+		}
+
 		for (int j = 0; j < data.size(); j++) {
 			int[] tt = (int[]) data.get(j);
 			tmp.add(tt[column]);
@@ -383,12 +440,15 @@ public class PNI implements Serializable {
 	}
 
 	/**
-	 * Get data in form of ArrayList
+	 * Get data in form of ArrayList. In the columnar mode this is a copy of
+	 * the data.
 	 * 
 	 * @return data in form of ArrayList
 	 */
 	public ArrayList<int[]> getArrayList() {
-		return this.data;
+		if (columns != null)
+			return new ArrayList<int[]>(data);
+		return (ArrayList<int[]>) this.data;
 	}
 
 	/**
@@ -424,6 +484,8 @@ public class PNI implements Serializable {
 	 */
 	public void add(int[] values) {
 
+		if (columns != null && !checkColumns(values.length))
+			return;
 		dimension = values.length;
 		data.add(values);
 	}
@@ -437,6 +499,8 @@ public class PNI implements Serializable {
 	 */
 	public void add(P0I values) {
 
+		if (columns != null && !checkColumns(values.size()))
+			return;
 		dimension = values.size();
 		data.add(values.getArray());
 	}
@@ -456,6 +520,8 @@ public class PNI implements Serializable {
 			ErrorMessage("Index is too large");
 		}
 
+		if (columns != null && !checkColumns(values.length))
+			return;
 		dimension = values.length;
 		data.set(index, values);
 	}
@@ -475,10 +541,25 @@ public class PNI implements Serializable {
 			ErrorMessage("Index is too large");
 		}
 
+		if (columns != null && !checkColumns(values.size()))
+			return;
 		dimension = values.size();
 		data.set(index, values.getArray());
 	}
 
+	/**
+	 * Check that a row fits into the columnar storage.
+	 */
+	private boolean checkColumns(int n) {
+		if (columns.size() > 0 && n != columns.dimension()) {
+			ErrorMessage("Row has " + Integer.toString(n) + " values, but "
+					+ Integer.toString(columns.dimension())
+					+ " columns are expected");
+			return false;
+		}
+		return true;
+	}
+
 	/**
 	 * 
 	 * Read the data from external file. Old data will be lost. Use "#" or "*"
@@ -985,6 +1066,7 @@ public class PNI implements Serializable {
 	 */
 	public PNI copy(String newtitle) {
 		PNI tmp = new PNI(newtitle);
+		tmp.setColumnar(isColumnar());
 		for (int i = 0; i < data.size(); i++) {
 			int[] tt = (int[]) data.get(i);
 			int[] clone = (int[]) tt.clone();
@@ -1028,6 +1110,7 @@ public class PNI implements Serializable {
 	 */
 	public void setArrayList(ArrayList<int[]> array) {
 		this.data = array;
+		this.columns = null;
 	}
 
 	/*
@@ -1137,6 +1220,11 @@ public class PNI implements Serializable {
 	public H1D getH1D(int bins, double min, double max) {
 
 		H1D h1d = new H1D(this.title, bins, min, max);
+		if (columns != null) {
+			for (int n = 0; n < columns.dimension(); n++)
+				fillColumn(h1d, n);
+			return h1d;
+		}
 		for (int n = 0; n < getDimension(); n++) {
 			for (int j = 0; j < size(); j++)
 				h1d.fill((double) get(j, n));
@@ -1178,6 +1266,10 @@ public class PNI implements Serializable {
 	public H1D getH1D(int bins, double min, double max, int column) {
 
 		H1D h1d = new H1D(this.title, bins, min, max);
+		if (columns != null) {
+			fillColumn(h1d, column);
+			return h1d;
+		}
 		for (int j = 0; j < size(); j++)
 			h1d.fill((double) get(j, column));
 
@@ -1185,6 +1277,20 @@ public class PNI implements Serializable {
 
 	}
 
+	/**
+	 * Fill a histogram from the chunks of one column.
+	 */
+	private void fillColumn(H1D h1d, int column) {
+		H1DBuffer buf = h1d.newFiller();
+		for (int k = 0; k < columns.chunks(); k++) {
+			int[] a = columns.chunk(column, k);
+			int len = columns.chunkLength(k);
+			for (int j = 0; j < len; j++)
+				buf.fill((double) a[j]);
+		}
+		buf.flush();
+	}
+
 	/**
 	 * Get min value
 	 * 
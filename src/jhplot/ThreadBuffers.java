@@ -0,0 +1,99 @@
+/**
+*    Copyright (C)  DataMelt project. The jHPLot package by S.Chekanov and Work.ORG
+*    All rights reserved.
+*
+*    This program is free software; you can redistribute it and/or modify it under the terms
+*    of the GNU General Public License as published by the Free Software Foundation; either
+*    version 3 of the License, or any later version.
+*
+*    This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+*    without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+*    See the GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License along with this program;
+*    if not, see <http://www.gnu.org/licenses>.
+*
+*    Additional permission under GNU GPL version 3 section 7:
+*    If you have received this program as a library with written permission from the DataMelt team,
+*    you can link or combine this library with your non-GPL project to convey the resulting work.
+*    In this case, this library should be considered as released under the terms of
+*    GNU Lesser public license (see <https://www.gnu.org/licenses/lgpl.html>),
+*    provided you include this license notice and a URL through which recipients can access the
+*    Corresponding Source.
+**/
+package jhplot;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * One fill buffer per thread, shared by {@link H1DConcurrent} and
+ * {@link H2DConcurrent}. A thread gets its own buffer on the first call of
+ * {@link #get()}; {@link #merge()} adds all buffers into a fresh one, clears
+ * them and flushes the sum into the histogram.
+ * 
+ * @author S.Chekanov
+ * 
+ * @param <B>
+ *            buffer type
+ */
+abstract class ThreadBuffers<B> {
+
+	private final List<B> buffers = new CopyOnWriteArrayList<B>();
+
+	private final ThreadLocal<B> local = new ThreadLocal<B>() {
+		@Override
+		protected B initialValue() {
+			B b = create();
+			buffers.add(b);
+			return b;
+		}
+	};
+
+	/**
+	 * Create an empty buffer for the histogram.
+	 * 
+	 * @return new buffer
+	 */
+	abstract B create();
+
+	/**
+	 * Add the content of a buffer to the sum and clear the buffer.
+	 * 
+	 * @param sum
+	 *            buffer receiving the entries
+	 * @param b
+	 *            buffer to be drained
+	 */
+	abstract void drain(B sum, B b);
+
+	/**
+	 * Add the summed buffer to the histogram.
+	 * 
+	 * @param sum
+	 *            buffer with the entries of all threads
+	 */
+	abstract void flush(B sum);
+
+	/**
+	 * Buffer of the calling thread.
+	 * 
+	 * @return buffer owned by the current thread
+	 */
+	B get() {
+		return local.get();
+	}
+
+	/**
+	 * Merge the buffers of all threads into the histogram.
+	 */
+	void merge() {
+		if (buffers.isEmpty())
+			return;
+		B sum = create();
+		for (B b : buffers)
+			drain(sum, b);
+		flush(sum);
+	}
+
+}
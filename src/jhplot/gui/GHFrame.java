@@ -133,14 +133,6 @@ abstract public class GHFrame extends GHPanel implements Serializable {
 
 		}
 
-		mainFrame = new JFrame();
-	        mainFrame.setDefaultCloseOperation(javax.swing.JFrame.DO_NOTHING_ON_CLOSE);
-		mainFrame.addWindowListener(new WindowAdapter() {
-			public void windowClosing(WindowEvent event) {
-				quitFrame();
-			}
-		});
-
 		this.set = set;
 
 		N1 = 0;
@@ -154,6 +146,22 @@ abstract public class GHFrame extends GHPanel implements Serializable {
 		N1final = n1;
 		N2final = n2;
 
+		// invert to GridLayout(); Gaps are zero
+		mainPanel.setLayout(new VariableSizeGridLayout(N2final, N1final, 0, 0));
+
+		// no window without a display, such canvas can only be rendered
+		// to images (see HPlot.renderTo())
+		if (GraphicsEnvironment.isHeadless())
+			return;
+
+		mainFrame = new JFrame();
+	        mainFrame.setDefaultCloseOperation(javax.swing.JFrame.DO_NOTHING_ON_CLOSE);
+		mainFrame.addWindowListener(new WindowAdapter() {
+			public void windowClosing(WindowEvent event) {
+				quitFrame();
+			}
+		});
+
 		mainFrame.setTitle(title);
 
 		ImageIcon icone = new ImageIcon(getClass().getClassLoader()
@@ -162,8 +170,6 @@ abstract public class GHFrame extends GHPanel implements Serializable {
 
 		// System.out.println(xsize);
 		// CanvasPanel = new GHPanel(xsize,ysize);
-		// invert to GridLayout(); Gaps are zero
-		mainPanel.setLayout(new VariableSizeGridLayout(N2final, N1final, 0, 0));
 
 		infoPanel = new JPanel();
 		infoPanel.setLayout(new BorderLayout());
@@ -388,7 +394,8 @@ abstract public class GHFrame extends GHPanel implements Serializable {
 
 		CanvasPanel.repaint();
 		CanvasPanel.updateUI();
-		mainFrame.repaint();
+		if (mainFrame != null)
+			mainFrame.repaint();
 	}
 
 	/**
@@ -431,7 +438,8 @@ abstract public class GHFrame extends GHPanel implements Serializable {
 	 */
 
 	protected void doNotShowFrame() {
-		mainFrame.setVisible(false);
+		if (mainFrame != null)
+			mainFrame.setVisible(false);
 	}
 
 	/**
@@ -451,8 +459,10 @@ abstract public class GHFrame extends GHPanel implements Serializable {
 		memMon = null;
 		infoPanel = null;
 		disposeGHPanel();
-		mainFrame.setVisible(false);
-		mainFrame.dispose();
+		if (mainFrame != null) {
+			mainFrame.setVisible(false);
+			mainFrame.dispose();
+		}
 		System.gc();
 	}
 
@@ -1,6 +1,9 @@
 package jhplot.io;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 
 /**
  * Class for reading binary data from files to multidimensional arrays
@@ -44,51 +47,15 @@ public class ArrayReaderWriter {
 	 */
 	public static void write(double[] array, String filename) throws IOException {
 		
-		// the size of the array
-		int[] size = {array.length};
-		
-		int temp;
-		long value;
-	
-		// create a stream to the file, overwriting any existing file and creating
-		// the necessary directories
-		BufferedOutputStream file = getStream(filename);
-
-		// write the number of array dimensions to the file
-		temp = size.length;
-		
-		for(int i = 0; i < 4; i++) {
-			file.write((byte)(temp & 0xff));
-			
-			temp >>= 8;
-		}
-		
-		// write the array dimensions to the file
-		for(int i = 0; i < size.length; i++) {
-			
-			temp = size[i];
-			
-			for(int j = 0; j < 4; j++) {
-				file.write((byte)(temp & 0xff));
-				
-				temp >>= 8;
-			}
+		FileChannel file = getChannel(filename);
+		try {
+			ByteBuffer buf = newBuffer();
+			putHeader(buf, new int[] {array.length});
+			putDoubles(file, buf, array);
+			flush(file, buf);
+		} finally {
+			file.close();
 		}
-
-		// write the array to the file
-		for(int i = 0; i < array.length; i++) {
-			// get the 64-bit long representation of the double
-			value = Double.doubleToLongBits(array[i]);
-			
-			// write the 64-bit long to the stream
-			for(int n = 0; n < 8; n++) {
-				file.write((byte)(value & 0xff));
-			
-				value >>= 8;
-			} // end for
-		} // end for
-
-		file.close();
 	} // end write method
 
 	/**
@@ -112,53 +79,16 @@ public class ArrayReaderWriter {
 	 */
 	public static void write(double[][] array, String filename) throws IOException {
 		
-		// the size of the array
-		int[] size = {array.length, array[0].length};
-		
-		int temp;
-		long value;
-	
-		// create a stream to the file, overwriting any existing file and creating
-		// the necessary directories
-		BufferedOutputStream file = getStream(filename);
-
-		// write the number of array dimensions to the file
-		temp = size.length;
-		
-		for(int i = 0; i < 4; i++) {
-			file.write((byte)(temp & 0xff));
-			
-			temp >>= 8;
-		}
-		
-		// write the array dimensions to the file
-		for(int i = 0; i < size.length; i++) {
-			
-			temp = size[i];
-			
-			for(int j = 0; j < 4; j++) {
-				file.write((byte)(temp & 0xff));
-				
-				temp >>= 8;
-			}
+		FileChannel file = getChannel(filename);
+		try {
+			ByteBuffer buf = newBuffer();
+			putHeader(buf, new int[] {array.length, array[0].length});
+			for(int i = 0; i < array.length; i++)
+				putDoubles(file, buf, array[i]);
+			flush(file, buf);
+		} finally {
+			file.close();
 		}
-
-		// write the array to the file
-		for(int i = 0; i < array.length; i++) {
-			for(int j = 0; j < array[0].length; j++) {
-				// get the 64-bit long representation of the double
-				value = Double.doubleToLongBits(array[i][j]);
-				
-				// write the 64-bit long to the stream
-				for(int n = 0; n < 8; n++) {
-					file.write((byte)(value & 0xff));
-				
-					value >>= 8;
-				} // end for
-			} // end for
-		} // end for
-
-		file.close();
 	} // end write method
 
 	/**
@@ -402,47 +332,17 @@ public class ArrayReaderWriter {
 	 */
 	public static double[] read1DArray(String filename) throws IOException {
 	
-		BufferedInputStream file = new BufferedInputStream(new FileInputStream(filename));
-
-		double[] array = null;
-		int[] size = new int[1];
-		
-		int temp;
-		long value;
-
-		// get the number of dimensions of the array in the file
-		temp = (file.read() & 0xff)
-					| ((file.read() & 0xff) << 8)
-					| ((file.read() & 0xff) << 16)
-					| ((file.read() & 0xff) << 24);
-		
-		if(temp != size.length)
-			throw new IOException("File doesn't contain a " + size.length + " dimensional array");
-		
-		// get the size of the array along each of the dimensions
-		for(int i = 0; i < size.length; i++)
-			size[i] = (file.read() & 0xff)
-					  | ((file.read() & 0xff) << 8)
-					  | ((file.read() & 0xff) << 16)
-					  | ((file.read() & 0xff) << 24);
-
-
-		// read the array
-		array = new double[size[0]];
-		
-		for(int i = 0; i < array.length; i++) {
-			value = 0;
-				
-			for(int n = 0; n < 8; n++)
-				value |= (long)(file.read() & 0xff) << (8 * n);
-			
-			array[i] = Double.longBitsToDouble(value);
-
-		} // end for
-
-		file.close();
-		
-		return(array);
+		FileChannel file = new FileInputStream(filename).getChannel();
+		try {
+			ByteBuffer buf = newBuffer();
+			buf.flip();
+			int[] size = getHeader(file, buf, 1);
+			double[] array = new double[size[0]];
+			getDoubles(file, buf, array);
+			return(array);
+		} finally {
+			file.close();
+		}
 	} // end read1DArray method
 
 	/**
@@ -464,49 +364,18 @@ public class ArrayReaderWriter {
 	 */
 	public static double[][] read2DArray(String filename) throws IOException {
 	
-		BufferedInputStream file = new BufferedInputStream(new FileInputStream(filename));
-
-		double[][] array = null;
-		int[] size = new int[2];
-		
-		int temp;
-		long value;
-
-		// get the number of dimensions of the array in the file
-		temp = (file.read() & 0xff)
-					| ((file.read() & 0xff) << 8)
-					| ((file.read() & 0xff) << 16)
-					| ((file.read() & 0xff) << 24);
-		
-		if(temp != size.length)
-			throw new IOException("File doesn't contain a " + size.length + " dimensional array");
-		
-		// get the size of the array along each of the dimensions
-		for(int i = 0; i < size.length; i++)
-			size[i] = (file.read() & 0xff)
-					  | ((file.read() & 0xff) << 8)
-					  | ((file.read() & 0xff) << 16)
-					  | ((file.read() & 0xff) << 24);
-
-
-		// read the array
-		array = new double[size[0]][size[1]];
-		
-		for(int i = 0; i < array.length; i++) {
-			for(int j = 0; j < array[0].length; j++) {
-				value = 0;
-				
-				for(int n = 0; n < 8; n++)
-					value |= (long)(file.read() & 0xff) << (8 * n);
-				
-				array[i][j] = Double.longBitsToDouble(value);
-
-			} // end for
-		} // end for
-
-		file.close();
-		
-		return(array);
+		FileChannel file = new FileInputStream(filename).getChannel();
+		try {
+			ByteBuffer buf = newBuffer();
+			buf.flip();
+			int[] size = getHeader(file, buf, 2);
+			double[][] array = new double[size[0]][size[1]];
+			for(int i = 0; i < array.length; i++)
+				getDoubles(file, buf, array[i]);
+			return(array);
+		} finally {
+			file.close();
+		}
 	} // end read2DArray method
 
 	/**
@@ -2849,6 +2718,100 @@ public class ArrayReaderWriter {
 		
 	
 	}
+
+	/**
+	 * Gets a channel to the file, creating the necessary directories.
+	 *
+	 * @param filename the name of the file.
+	 * @return a channel to the file.
+	 */
+	private static FileChannel getChannel(String filename) throws IOException {
+		File file = new File(filename);
+		
+		if (file.getParentFile() != null)
+			file.getParentFile().mkdirs();
+		
+		return new FileOutputStream(file).getChannel();
+	}
+
+	private static ByteBuffer newBuffer() {
+		return ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Writes the number of dimensions and the size along each of them.
+	 */
+	private static void putHeader(ByteBuffer buf, int[] size) {
+		buf.putInt(size.length);
+		for(int i = 0; i < size.length; i++)
+			buf.putInt(size[i]);
+	}
+
+	/**
+	 * Writes doubles through the buffer, emptying it into the channel
+	 * whenever it is full.
+	 */
+	private static void putDoubles(FileChannel file, ByteBuffer buf, double[] array) throws IOException {
+		int pos = 0;
+		while(pos < array.length) {
+			if(buf.remaining() < 8)
+				flush(file, buf);
+			int n = Math.min(array.length - pos, buf.remaining() / 8);
+			buf.asDoubleBuffer().put(array, pos, n);
+			buf.position(buf.position() + 8 * n);
+			pos += n;
+		}
+	}
+
+	private static void flush(FileChannel file, ByteBuffer buf) throws IOException {
+		buf.flip();
+		while(buf.hasRemaining())
+			file.write(buf);
+		buf.clear();
+	}
+
+	/**
+	 * Makes sure that the buffer holds at least n bytes.
+	 */
+	private static void fill(FileChannel file, ByteBuffer buf, int n) throws IOException {
+		if(buf.remaining() >= n)
+			return;
+		buf.compact();
+		while(buf.position() < n) {
+			if(file.read(buf) < 0)
+				throw new EOFException();
+		}
+		buf.flip();
+	}
+
+	/**
+	 * Reads the array dimensions and checks their number.
+	 */
+	private static int[] getHeader(FileChannel file, ByteBuffer buf, int dims) throws IOException {
+		fill(file, buf, 4);
+		int temp = buf.getInt();
+		if(temp != dims)
+			throw new IOException("File doesn't contain a " + dims + " dimensional array");
+		int[] size = new int[dims];
+		fill(file, buf, 4 * dims);
+		for(int i = 0; i < dims; i++)
+			size[i] = buf.getInt();
+		return size;
+	}
+
+	/**
+	 * Reads doubles through the buffer into the array.
+	 */
+	private static void getDoubles(FileChannel file, ByteBuffer buf, double[] array) throws IOException {
+		int pos = 0;
+		while(pos < array.length) {
+			fill(file, buf, 8);
+			int n = Math.min(array.length - pos, buf.remaining() / 8);
+			buf.asDoubleBuffer().get(array, pos, n);
+			buf.position(buf.position() + 8 * n);
+			pos += n;
+		}
+	}
 	
 	
 	
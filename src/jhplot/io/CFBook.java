@@ -88,7 +88,8 @@ public class CFBook {
 
 		try {
 			FileOutputStream f1 = new FileOutputStream(new File(file));
-			PrintStream tx = new PrintStream(f1);
+			PrintStream tx = new PrintStream(new BufferedOutputStream(f1,
+					1 << 16));
 
 			tx.println("<jhepwork>");
 			tx
@@ -301,6 +302,7 @@ public class CFBook {
 			} // end loop over P1D
 
 			tx.println("</jhepwork>");
+			tx.close();
 			f1.close();
 
 		} catch (IOException e) {
@@ -321,7 +323,7 @@ public class CFBook {
 
 		try {
 
-			reader = new BufferedReader(new FileReader(file));
+			reader = new BufferedReader(new FileReader(file), 1 << 16);
 			XMLRead xr = new XMLRead();
 
 			// read all lines concerning jhplot, i.e between <jhplot> and
@@ -0,0 +1,413 @@
+/**
+*    Copyright (C)  DataMelt project. The jHPLot package by S.Chekanov and Work.ORG
+*    All rights reserved.
+*
+*    This program is free software; you can redistribute it and/or modify it under the terms
+*    of the GNU General Public License as published by the Free Software Foundation; either
+*    version 3 of the License, or any later version.
+*
+*    This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+*    without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+*    See the GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License along with this program;
+*    if not, see <http://www.gnu.org/licenses>.
+*
+*    Additional permission under GNU GPL version 3 section 7:
+*    If you have received this program as a library with written permission from the DataMelt team,
+*    you can link or combine this library with your non-GPL project to convey the resulting work.
+*    In this case, this library should be considered as released under the terms of
+*    GNU Lesser public license (see <https://www.gnu.org/licenses/lgpl.html>),
+*    provided you include this license notice and a URL through which recipients can access the
+*    Corresponding Source.
+**/
+
+package jhplot.io;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Binary columnar file for P0D, P1D and PND containers. The file starts with
+ * a versioned header, followed by one block per column. Each block holds all
+ * values of a column as little-endian doubles and starts at an 8-byte aligned
+ * position, so that columns can be read with memory-mapped files and sliced
+ * by row range without reading the full file.
+ * <p>
+ * Header layout (little-endian):
+ * <ul>
+ * <li>4 bytes: magic "DMCF"</li>
+ * <li>int: format version</li>
+ * <li>int: number of columns</li>
+ * <li>int: header length in bytes (the position of the first column)</li>
+ * <li>long: number of rows</li>
+ * <li>title and column names, each as an int length followed by UTF-8 bytes,
+ * padded with zeros to a multiple of 8 bytes</li>
+ * </ul>
+ * <p>
+ * The file is opened lazily: only the header is read when an object is
+ * created, column data are mapped on request.
+ * 
+ * @author S.Chekanov
+ * 
+ */
+public class ColumnFile implements Closeable {
+
+	/** Current version of the format */
+	public static final int VERSION = 1;
+
+	private static final byte[] MAGIC = { 'D', 'M', 'C', 'F' };
+
+	private static final int FIXED_HEADER = 24;
+
+	/** Largest number of values mapped at once */
+	private static final int MAX_MAP = 1 << 27;
+
+	private static final int BUFFER = 1 << 20;
+
+	private final RandomAccessFile raf;
+
+	private final FileChannel channel;
+
+	private final int version;
+
+	private final int ncolumns;
+
+	private final long rows;
+
+	private final long offset;
+
+	private final String title;
+
+	private final String[] names;
+
+	/**
+	 * Open a file for reading. Only the header is read.
+	 * 
+	 * @param file
+	 *            input file
+	 * @throws IOException
+	 *             if the file cannot be read or has a wrong format
+	 */
+	public ColumnFile(File file) throws IOException {
+
+		raf = new RandomAccessFile(file, "r");
+		channel = raf.getChannel();
+		try {
+			ByteBuffer b = ByteBuffer.allocate(FIXED_HEADER).order(
+					ByteOrder.LITTLE_ENDIAN);
+			readFully(b, 0);
+			for (int i = 0; i < MAGIC.length; i++)
+				if (b.get(i) != MAGIC[i])
+					throw new IOException("Not a column file: " + file);
+			b.position(MAGIC.length);
+			version = b.getInt();
+			if (version < 1 || version > VERSION)
+				throw new IOException("Unsupported version " + version + " of "
+						+ file);
+			ncolumns = b.getInt();
+			int hlen = b.getInt();
+			rows = b.getLong();
+			if (ncolumns < 0 || rows < 0 || hlen < FIXED_HEADER
+					|| hlen + 8 * rows * ncolumns > channel.size())
+				throw new IOException("Corrupted header of " + file);
+			offset = hlen;
+
+			ByteBuffer h = ByteBuffer.allocate(hlen - FIXED_HEADER).order(
+					ByteOrder.LITTLE_ENDIAN);
+			readFully(h, FIXED_HEADER);
+			h.flip();
+			title = getString(h);
+			names = new String[ncolumns];
+			for (int i = 0; i < ncolumns; i++)
+				names[i] = getString(h);
+		} catch (IOException e) {
+			raf.close();
+			throw e;
+		} catch (RuntimeException e) {
+			raf.close();
+			throw new IOException("Corrupted header of " + file);
+		}
+	}
+
+	/**
+	 * Open a file for reading.
+	 * 
+	 * @param file
+	 *            input file name
+	 * @throws IOException
+	 *             if the file cannot be read or has a wrong format
+	 */
+	public ColumnFile(String file) throws IOException {
+		this(new File(file));
+	}
+
+	/**
+	 * Write columns to a file. Only the first rows values of each column are
+	 * written. An existing file is overwritten.
+	 * 
+	 * @param file
+	 *            output file
+	 * @param title
+	 *            title
+	 * @param names
+	 *            column names (can be null)
+	 * @param columns
+	 *            arrays with column values
+	 * @param rows
+	 *            number of rows
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public static void write(File file, String title, String[] names,
+			double[][] columns, int rows) throws IOException {
+
+		for (double[] c : columns)
+			if (c.length < rows)
+				throw new IllegalArgumentException(
+						"Column is shorter than the number of rows");
+		if (names != null && names.length != columns.length)
+			throw new IllegalArgumentException(
+					"Number of names and columns are different");
+
+		ByteArrayOutputStream hs = new ByteArrayOutputStream();
+		putString(hs, title);
+		for (int i = 0; i < columns.length; i++)
+			putString(hs, names == null ? "" : names[i]);
+		while (hs.size() % 8 != 0)
+			hs.write(0);
+
+		ByteBuffer b = ByteBuffer.allocateDirect(BUFFER).order(
+				ByteOrder.LITTLE_ENDIAN);
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			FileChannel ch = out.getChannel();
+			b.put(MAGIC);
+			b.putInt(VERSION);
+			b.putInt(columns.length);
+			b.putInt(FIXED_HEADER + hs.size());
+			b.putLong(rows);
+			b.flip();
+			writeFully(ch, b);
+			writeFully(ch, ByteBuffer.wrap(hs.toByteArray()));
+
+			b.clear();
+			DoubleBuffer d = b.asDoubleBuffer();
+			for (double[] c : columns) {
+				int pos = 0;
+				while (pos < rows) {
+					int n = Math.min(d.capacity(), rows - pos);
+					d.clear();
+					d.put(c, pos, n);
+					b.clear();
+					b.limit(8 * n);
+					writeFully(ch, b);
+					pos += n;
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Write columns to a file.
+	 * 
+	 * @param file
+	 *            output file name
+	 * @param title
+	 *            title
+	 * @param names
+	 *            column names (can be null)
+	 * @param columns
+	 *            arrays with column values of the same length
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public static void write(String file, String title, String[] names,
+			double[]... columns) throws IOException {
+		write(new File(file), title, names, columns,
+				columns.length == 0 ? 0 : columns[0].length);
+	}
+
+	/**
+	 * Get the format version of this file.
+	 * 
+	 * @return version
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * Get the title.
+	 * 
+	 * @return title
+	 */
+	public String getTitle() {
+		return title;
+	}
+
+	/**
+	 * Get the number of columns.
+	 * 
+	 * @return number of columns
+	 */
+	public int getColumns() {
+		return ncolumns;
+	}
+
+	/**
+	 * Get the number of rows.
+	 * 
+	 * @return number of rows
+	 */
+	public long getRows() {
+		return rows;
+	}
+
+	/**
+	 * Get the name of a column.
+	 * 
+	 * @param column
+	 *            column index
+	 * @return column name
+	 */
+	public String getColumnName(int column) {
+		return names[column];
+	}
+
+	/**
+	 * Read a full column.
+	 * 
+	 * @param column
+	 *            column index
+	 * @return column values
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	public double[] read(int column) throws IOException {
+		return read(column, 0, rows);
+	}
+
+	/**
+	 * Read a range of rows of a column. Only this part of the file is mapped
+	 * into memory.
+	 * 
+	 * @param column
+	 *            column index
+	 * @param from
+	 *            first row (inclusive)
+	 * @param to
+	 *            last row (exclusive)
+	 * @return values of the rows
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	public double[] read(int column, long from, long to) throws IOException {
+		if (to - from > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Too many rows to read: "
+					+ (to - from));
+		double[] a = new double[(int) (to - from)];
+		read(column, from, a, 0, a.length);
+		return a;
+	}
+
+	/**
+	 * Read values of a column into an array.
+	 * 
+	 * @param column
+	 *            column index
+	 * @param from
+	 *            first row
+	 * @param dst
+	 *            destination array
+	 * @param off
+	 *            position in the destination array
+	 * @param len
+	 *            number of rows to read
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	public void read(int column, long from, double[] dst, int off, int len)
+			throws IOException {
+
+		if (column < 0 || column >= ncolumns)
+			throw new IndexOutOfBoundsException("Column: " + column
+					+ ", Columns: " + ncolumns);
+		if (from < 0 || len < 0 || from + len > rows)
+			throw new IndexOutOfBoundsException("Rows: " + from + "-"
+					+ (from + len) + ", Size: " + rows);
+
+		long pos = offset + 8 * (column * rows + from);
+		while (len > 0) {
+			int n = Math.min(len, MAX_MAP);
+			DoubleBuffer d = channel.map(FileChannel.MapMode.READ_ONLY, pos,
+					8L * n).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+			d.get(dst, off, n);
+			pos += 8L * n;
+			off += n;
+			len -= n;
+		}
+	}
+
+	/**
+	 * Read a range of rows of all columns.
+	 * 
+	 * @param from
+	 *            first row (inclusive)
+	 * @param to
+	 *            last row (exclusive)
+	 * @return array [column][row]
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	public double[][] readColumns(long from, long to) throws IOException {
+		double[][] a = new double[ncolumns][];
+		for (int i = 0; i < ncolumns; i++)
+			a[i] = read(i, from, to);
+		return a;
+	}
+
+	/**
+	 * Close the file.
+	 */
+	public void close() throws IOException {
+		raf.close();
+	}
+
+	private void readFully(ByteBuffer b, long pos) throws IOException {
+		while (b.hasRemaining()) {
+			int n = channel.read(b, pos);
+			if (n < 0)
+				throw new EOFException();
+			pos += n;
+		}
+	}
+
+	private static void writeFully(FileChannel ch, ByteBuffer b)
+			throws IOException {
+		while (b.hasRemaining())
+			ch.write(b);
+	}
+
+	private static void putString(ByteArrayOutputStream out, String s)
+			throws IOException {
+		byte[] b = (s == null ? "" : s).getBytes("UTF-8");
+		ByteBuffer n = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+		n.putInt(b.length);
+		out.write(n.array());
+		out.write(b);
+	}
+
+	private static String getString(ByteBuffer b) throws IOException {
+		int n = b.getInt();
+		byte[] s = new byte[n];
+		b.get(s);
+		return new String(s, "UTF-8");
+	}
+
+}
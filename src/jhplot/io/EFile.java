@@ -31,6 +31,13 @@ import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import jhplot.gui.HelpBrowser;
 import promc.io.PEventFile.*;
@@ -45,6 +52,10 @@ import promc.io.PEventFile.*;
  * A protocol Buffers file is provided which can be used for C++ input.
  * Use the CBook package to create such files in C++.
  * <p>
+ * Small events can be packed in batches: each zip entry then keeps many
+ * length-delimited HEvent records. Use {@link #forEach(int, EventConsumer)}
+ * to process all events of a file in a single pass.
+ * <p>
  * 
  * @author S.Chekanov
  * 
@@ -55,11 +66,35 @@ public class EFile {
 	private FileInputStream iif = null;
 	private int nev = 0;
 	static final private int FILE_VERSION = 1;
+	static final private int FILE_VERSION_BATCH = 2;
 	private ZipOutputStream zout;
 	static final int BUFFER = 2048;
 	private byte data[];
 	private ZipInputStream zin;
 	private ZipFile zipFile;
+	private String file;
+	private int batch = 0;
+	private int nevents = 0;
+	private int nbatch = 0;
+	private int inBuffer = 0;
+	private ByteArrayOutputStream buffer;
+	// batches of a batched file decoded recently, by entry index
+	private final ConcurrentHashMap<Integer, FutureTask<List<HEvent>>> batches = new ConcurrentHashMap<Integer, FutureTask<List<HEvent>>>();
+	static final private int BATCH_CACHE = 4;
+
+	/**
+	 * Receives events read by {@link EFile#forEach(int, EventConsumer)}.
+	 */
+	public interface EventConsumer {
+
+		/**
+		 * Process a batch of events.
+		 * 
+		 * @param events
+		 *            events in the order they were written
+		 */
+		void accept(List<HEvent> events);
+	}
 	
 
 	/**
@@ -75,7 +110,29 @@ public class EFile {
 	 */
 	public EFile(String file, String option) {
 
+		this(file, option, 1);
+
+	};
+
+	/**
+	 * Open a file to write events packed in batches. Each zip entry keeps up
+	 * to "batch" events, which reduces the overhead per event for small
+	 * events. Such files can be read with the same class using the "r"
+	 * option.
+	 * 
+	 * @param file
+	 *            File name
+	 * @param option
+	 *            Option to create the file. If "w" - write a file, if "r"
+	 *            only read created file (batch size is taken from the file).
+	 * @param batch
+	 *            number of events per zip entry. If 1, each event is written
+	 *            as a separate entry.
+	 */
+	public EFile(String file, String option, int batch) {
+
 	        nev = 0;
+	        this.file = file;
 		if (option.equalsIgnoreCase("w")) {
 
 			try {
@@ -84,11 +141,15 @@ public class EFile {
 				zout = new ZipOutputStream(new BufferedOutputStream(oof));
 				data = new byte[BUFFER];
 				zipFile = null;
+				if (batch > 1) {
+					this.batch = batch;
+					buffer = new ByteArrayOutputStream();
+				}
 
 				// write file version
 				ZipEntry entry = new ZipEntry("info");
 				zout.putNextEntry(entry);
-				String a = new String(Integer.toString(FILE_VERSION));
+				String a = new String(Integer.toString(this.batch > 0 ? FILE_VERSION_BATCH : FILE_VERSION));
 				byte[] theByteArray = a.getBytes();
 				entry.setSize(theByteArray.length);
 				zout.write(theByteArray);
@@ -105,6 +166,16 @@ public class EFile {
 				zipFile = new ZipFile(file);
 				iif = new FileInputStream(file);
 				zin = new ZipInputStream(iif);
+
+				// number of events and batch size for batched files
+				ZipEntry entry = zipFile.getEntry("events");
+				if (entry != null) {
+					BufferedReader br = new BufferedReader(
+							new InputStreamReader(zipFile.getInputStream(entry)));
+					nevents = Integer.parseInt(br.readLine().trim());
+					batch = Integer.parseInt(br.readLine().trim());
+					br.close();
+				}
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
@@ -178,6 +249,20 @@ public class EFile {
 	public boolean write(HEvent.Builder ev) {
 
 		boolean success = true;
+		if (batch > 0) {
+			try {
+				ev.build().writeDelimitedTo(buffer);
+				nev++;
+				inBuffer++;
+				if (inBuffer == batch)
+					writeBatch();
+			} catch (IOException e) {
+				e.printStackTrace();
+				success = false;
+			}
+			return success;
+		}
+
 		nev++;
 		String firec = Integer.toString(nev);
 		try {
@@ -197,6 +282,21 @@ public class EFile {
 
 	};
 
+	/**
+	 * Write buffered events as one zip entry.
+	 * 
+	 * @throws IOException
+	 */
+	private void writeBatch() throws IOException {
+		nbatch++;
+		ZipEntry entry = new ZipEntry(Integer.toString(nbatch));
+		zout.putNextEntry(entry);
+		buffer.writeTo(zout);
+		zout.closeEntry();
+		buffer.reset();
+		inBuffer = 0;
+	}
+
 	/**
 	 * Get the number of events stored in the file.
 	 * 
@@ -206,6 +306,8 @@ public class EFile {
 
 		if (zipFile == null)
 			return nev;
+		if (batch > 0)
+			return nevents;
 		return zipFile.size()-1; // exclude version
 
 	};
@@ -258,7 +360,7 @@ public class EFile {
 	 * Read next event 
 	 * @return next object.
 	 */
-	public HEvent read() {
+	public synchronized HEvent read() {
      nev++;
      return read(nev);
 	}
@@ -268,9 +370,66 @@ public class EFile {
 	
 	
 	
+	/**
+	 * Open an iterator over all events in the file. The events are decoded
+	 * by several threads and read ahead while the current one is processed.
+	 * Entries are returned in the order they were written. Call close() on
+	 * the reader if the iteration is stopped early. For files written in
+	 * batches, whole batches are decoded by one thread, and at least one
+	 * batch per thread is decoded ahead.
+	 * 
+	 * @param threads
+	 *            number of decoding threads
+	 * @param queue
+	 *            maximum number of events decoded ahead
+	 * @return reader (or null if the file is not opened for reading)
+	 */
+	public PrefetchReader<HEvent> openReader(int threads, int queue) {
+
+		if (zipFile == null)
+			return null;
+		if (batch > 0) {
+			return new PrefetchReader<HEvent>(1, size(), threads, Math.max(
+					queue, threads * batch), batch) {
+				protected HEvent decode(int index) {
+					return read(index);
+				}
+
+				protected List<HEvent> decode(int first, int last) {
+					List<HEvent> events = readBatch((first - 1) / batch + 1);
+					List<HEvent> entries = new ArrayList<HEvent>(last - first
+							+ 1);
+					for (int k = 0; k <= last - first; k++)
+						entries.add(events != null && k < events.size() ? events
+								.get(k) : null);
+					return entries;
+				}
+			};
+		}
+		return new PrefetchReader<HEvent>(1, size(), threads, queue) {
+			protected HEvent decode(int index) {
+				return read(index);
+			}
+		};
+	}
+
+	/**
+	 * Open an iterator over all events in the file which uses all available
+	 * processors for decoding.
+	 * 
+	 * @return reader (or null if the file is not opened for reading)
+	 */
+	public PrefetchReader<HEvent> openReader() {
+
+		int threads = Runtime.getRuntime().availableProcessors();
+		return openReader(threads, 4 * threads);
+	}
+
 	/**
 	 * Get object from a file using its index.
 	 * 
+	 * This method can be called from several threads at the same time.
+	 * 
 	 * @param index
 	 *            of the object
 	 * @return Object extracted object (or null)
@@ -279,6 +438,13 @@ public class EFile {
 
 		HEvent ob = null;
 		if (zipFile == null) return ob;
+		if (batch > 0) {
+			if (index < 1 || index > nevents) return ob;
+			List<HEvent> events = readBatch((index - 1) / batch + 1);
+			int k = (index - 1) % batch;
+			if (events == null || k >= events.size()) return ob;
+			return events.get(k);
+		}
 		ZipEntry entry = zipFile.getEntry(Integer.toString(index));
 
 		if (entry == null) return ob;
@@ -292,6 +458,13 @@ public class EFile {
 		} catch (IOException e) {
 			e.printStackTrace();
 			return ob;
+		} finally {
+			if (zz != null) {
+				try {
+					zz.close();
+				} catch (IOException e) {
+				}
+			}
 		}
 		
 		if (record == null) return ob;
@@ -299,6 +472,219 @@ public class EFile {
 		return record;
 	};
 
+	/**
+	 * Read all events from one zip entry of a batched file. A few entries
+	 * read last are kept, so sequential reading decodes each entry once.
+	 * Threads which need an entry decoded by another thread wait for it, but
+	 * different entries are decoded at the same time.
+	 * 
+	 * @param index
+	 *            entry index
+	 * @return events or null
+	 */
+	private List<HEvent> readBatch(final int index) {
+
+		Integer key = Integer.valueOf(index);
+		FutureTask<List<HEvent>> task = batches.get(key);
+		if (task == null) {
+			FutureTask<List<HEvent>> t = new FutureTask<List<HEvent>>(
+					new Callable<List<HEvent>>() {
+						public List<HEvent> call() {
+							return decodeBatch(index);
+						}
+					});
+			task = batches.putIfAbsent(key, t);
+			if (task == null) {
+				task = t;
+				t.run();
+				trimBatches(index);
+			}
+		}
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			e.printStackTrace();
+		}
+		return null;
+	}
+
+	/*
+	 * Drop the cached entries with the lowest indices, except the one just
+	 * read, until at most BATCH_CACHE are kept.
+	 */
+	private void trimBatches(int index) {
+		while (batches.size() > BATCH_CACHE) {
+			Integer oldest = null;
+			for (Integer k : batches.keySet()) {
+				if (k.intValue() != index
+						&& (oldest == null || k.intValue() < oldest.intValue()))
+					oldest = k;
+			}
+			if (oldest == null)
+				return;
+			batches.remove(oldest);
+		}
+	}
+
+	private List<HEvent> decodeBatch(int index) {
+
+		ZipEntry entry = zipFile.getEntry(Integer.toString(index));
+		if (entry == null) return null;
+
+		List<HEvent> events = new ArrayList<HEvent>(batch);
+		InputStream zz = null;
+		try {
+			zz = new BufferedInputStream(zipFile.getInputStream(entry));
+			HEvent ev;
+			while ((ev = HEvent.parseDelimitedFrom(zz)) != null)
+				events.add(ev);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		} finally {
+			if (zz != null) {
+				try {
+					zz.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+		return events;
+	}
+
+	/**
+	 * Read all events of the file in a single pass and pass them to the
+	 * consumer in lists of the given size (the last list can be shorter).
+	 * Works for files with one event per entry and for batched files.
+	 * 
+	 * @param batchSize
+	 *            number of events passed to the consumer at once
+	 * @param consumer
+	 *            receives events
+	 * @return number of events, or -1 if the file cannot be read
+	 */
+	public long forEach(int batchSize, EventConsumer consumer) {
+
+		return forEach(batchSize, consumer, 1);
+	}
+
+	/**
+	 * Read all events of the file in a single pass and pass them to the
+	 * consumer in lists of the given size. The file is read and decoded by the
+	 * calling thread, while the consumer is called from "threads" threads.
+	 * In this case the consumer must be thread-safe and lists can be processed
+	 * out of order.
+	 * 
+	 * @param batchSize
+	 *            number of events passed to the consumer at once
+	 * @param consumer
+	 *            receives events
+	 * @param threads
+	 *            number of threads calling the consumer. If 1, the consumer
+	 *            is called by the calling thread in the order of events.
+	 * @return number of events, or -1 if the file cannot be read
+	 */
+	public long forEach(int batchSize, final EventConsumer consumer,
+			int threads) {
+
+		if (file == null || zipFile == null)
+			return -1;
+		if (batchSize < 1)
+			batchSize = 1;
+
+		ThreadPoolExecutor pool = null;
+		if (threads > 1)
+			pool = new ThreadPoolExecutor(threads, threads, 0L,
+					TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(
+							2 * threads),
+					new ThreadPoolExecutor.CallerRunsPolicy());
+		final RuntimeException[] failure = new RuntimeException[1];
+
+		long n = 0;
+		ZipInputStream zs = null;
+		try {
+			zs = new ZipInputStream(new BufferedInputStream(
+					new FileInputStream(file), 1 << 16));
+			List<HEvent> list = new ArrayList<HEvent>(batchSize);
+			ZipEntry ze;
+			while ((ze = zs.getNextEntry()) != null) {
+				String a = ze.getName();
+				if (a.equals("info") || a.equals("events"))
+					continue;
+				if (batch > 0) {
+					HEvent ev;
+					while ((ev = HEvent.parseDelimitedFrom(zs)) != null) {
+						list.add(ev);
+						n++;
+						if (list.size() == batchSize) {
+							deliver(list, consumer, pool, failure);
+							list = new ArrayList<HEvent>(batchSize);
+						}
+					}
+				} else {
+					list.add(HEvent.parseFrom(zs));
+					n++;
+					if (list.size() == batchSize) {
+						deliver(list, consumer, pool, failure);
+						list = new ArrayList<HEvent>(batchSize);
+					}
+				}
+			}
+			if (list.size() > 0)
+				deliver(list, consumer, pool, failure);
+		} catch (IOException e) {
+			e.printStackTrace();
+			n = -1;
+		} finally {
+			if (pool != null) {
+				pool.shutdown();
+				try {
+					pool.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			if (zs != null) {
+				try {
+					zs.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+		synchronized (failure) {
+			if (failure[0] != null)
+				throw failure[0];
+		}
+		return n;
+	}
+
+	/**
+	 * Pass a list of events to the consumer, either directly or using the
+	 * thread pool.
+	 */
+	private static void deliver(final List<HEvent> list,
+			final EventConsumer consumer, ThreadPoolExecutor pool,
+			final RuntimeException[] failure) {
+		if (pool == null) {
+			consumer.accept(list);
+			return;
+		}
+		pool.execute(new Runnable() {
+			public void run() {
+				try {
+					consumer.accept(list);
+				} catch (RuntimeException e) {
+					synchronized (failure) {
+						if (failure[0] == null)
+							failure[0] = e;
+					}
+				}
+			}
+		});
+	}
+
 	/**
 	 * Close the file
 	 * 
@@ -316,9 +702,20 @@ public class EFile {
 				iif = null;
 				zin=null;
 				zipFile=null;
+				batches.clear();
 			}
 
 			if (oof != null) {
+				if (batch > 0) {
+					if (inBuffer > 0)
+						writeBatch();
+					// number of events and batch size
+					ZipEntry entry = new ZipEntry("events");
+					zout.putNextEntry(entry);
+					zout.write((Integer.toString(nev) + "\n"
+							+ Integer.toString(batch) + "\n").getBytes());
+					zout.closeEntry();
+				}
 				zout.finish();
 				zout.close();
 				oof.flush();
@@ -27,9 +27,20 @@ package jhplot.io;
 import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import jhplot.H1D;
+import jhplot.H1DBuffer;
 import jhplot.H2D;
+import jhplot.H2DBuffer;
 import jhplot.P1D;
 import jhplot.gui.HelpBrowser;
 import hep.io.root.*;
@@ -45,6 +56,12 @@ import hep.io.root.interfaces.*;
  * dir2=key2.getObject() <br>
  * key3=dir2.getKey("Histogram") <br>
  * h1d=H1D( key3.getObject() ) <br>
+ * <p>
+ * Numeric leaves of a TTree can be read in blocks of rows with
+ * readColumn() or iterated with iterateColumn(). Decoded blocks are kept in
+ * a small cache, so repeated access to the same rows does not read and
+ * decompress the baskets again. Histograms can be filled from tree leaves
+ * with fill(), which can scan the tree on several threads.
  * 
  * @author S.Chekanov
  * 
@@ -53,6 +70,25 @@ public class FileRoot {
 
 	private RootFileReader rfr = null;
 	private TDirectory current = null; // current directory
+	private String file = null;
+	private URL url = null;
+	private String dir = null; // path of the current directory
+
+	/** Number of rows in one decoded block of a column */
+	public static final int BLOCK_SIZE = 8192;
+
+	/** Maximum number of decoded blocks in the cache */
+	private static final int CACHE_BLOCKS = 64;
+
+	// decoded blocks of columns, least recently used are removed first
+	private final Map<BlockKey, double[]> cache = new LinkedHashMap<BlockKey, double[]>(
+			16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		protected boolean removeEldestEntry(Map.Entry<BlockKey, double[]> e) {
+			return size() > CACHE_BLOCKS;
+		}
+	};
 
 	/**
 	 * Main constructor to build root file reader.
@@ -61,6 +97,7 @@ public class FileRoot {
 	 *            Input root file
 	 */
 	public FileRoot(String file) {
+		this.file = file;
 		try {
 			rfr = new RootFileReader(file);
 			current = null;
@@ -79,6 +116,7 @@ public class FileRoot {
 	 *            Input URL file
 	 */
 	public FileRoot(URL url) {
+		this.url = url;
 		try {
 			rfr = new RootFileReader(url);
 			current = null;
@@ -101,6 +139,7 @@ public class FileRoot {
 	public TDirectory cd(String dir) {
 
 		current = null;
+		this.dir = dir;
 
 		String[] dirs = dir.split("/");
 
@@ -504,6 +543,427 @@ public class FileRoot {
 		return null;
 	}
 
+	/**
+	 * Find a leaf of a tree.
+	 * 
+	 * @param tree
+	 *            tree
+	 * @param leaf
+	 *            leaf name
+	 * @return leaf
+	 * @throws IllegalArgumentException
+	 *             if there is no such leaf
+	 */
+	public TLeaf getLeaf(TTree tree, String leaf) {
+
+		int n = tree.getLeaves().size();
+		for (int i = 0; i < n; i++) {
+			TLeaf l = (TLeaf) tree.getLeaves().get(i);
+			if (l.getName().equals(leaf))
+				return l;
+		}
+		throw new IllegalArgumentException("Unknown leaf " + leaf);
+	}
+
+	/**
+	 * Read values of a numeric leaf for a range of rows. Leaves of type
+	 * double, float, int, long and byte with one value per row are supported.
+	 * Values are decoded in blocks of BLOCK_SIZE rows which are cached.
+	 * 
+	 * @param tree
+	 *            tree
+	 * @param leaf
+	 *            leaf name
+	 * @param fromRow
+	 *            first row
+	 * @param toRow
+	 *            row after the last one. It is limited by the number of
+	 *            entries.
+	 * @param out
+	 *            output array, at least toRow-fromRow long
+	 * @return number of values read
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	public int readColumn(TTree tree, String leaf, long fromRow, long toRow,
+			double[] out) throws IOException {
+
+		return readColumn(tree, getLeaf(tree, leaf), fromRow, toRow, out, 0);
+	}
+
+	/**
+	 * Read all values of a numeric leaf.
+	 * 
+	 * @param tree
+	 *            tree
+	 * @param leaf
+	 *            leaf name
+	 * @return values
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	public double[] readColumn(TTree tree, String leaf) throws IOException {
+
+		long n = tree.getEntries();
+		if (n > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Too many entries: " + n
+					+ ". Use iterateColumn()");
+		double[] out = new double[(int) n];
+		readColumn(tree, getLeaf(tree, leaf), 0, n, out, 0);
+		return out;
+	}
+
+	/**
+	 * Iterate over values of a numeric leaf in blocks of rows. Each call of
+	 * next() returns the values of the next block; the last block can be
+	 * shorter.
+	 * 
+	 * @param tree
+	 *            tree
+	 * @param leaf
+	 *            leaf name
+	 * @param blockSize
+	 *            number of rows in a block
+	 * @return iterator over blocks
+	 */
+	public Iterator<double[]> iterateColumn(final TTree tree, String leaf,
+			final int blockSize) {
+
+		final TLeaf l = getLeaf(tree, leaf);
+		final long entries = tree.getEntries();
+		return new Iterator<double[]>() {
+			private long row = 0;
+
+			public boolean hasNext() {
+				return row < entries;
+			}
+
+			public double[] next() {
+				if (row >= entries)
+					throw new NoSuchElementException();
+				int n = (int) Math.min(blockSize, entries - row);
+				double[] out = new double[n];
+				try {
+					readColumn(tree, l, row, row + n, out, 0);
+				} catch (IOException e) {
+					throw new RuntimeException(
+							"IOException reading root file", e);
+				}
+				row += n;
+				return out;
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * Remove all decoded blocks from the cache.
+	 */
+	public void clearCache() {
+
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
+
+	private int readColumn(TTree tree, TLeaf leaf, long fromRow, long toRow,
+			double[] out, int offset) throws IOException {
+
+		long entries = tree.getEntries();
+		if (toRow > entries)
+			toRow = entries;
+		if (fromRow < 0)
+			fromRow = 0;
+		int k = offset;
+		long row = fromRow;
+		while (row < toRow) {
+			long b = row / BLOCK_SIZE;
+			double[] block = getBlock(leaf, b, entries);
+			int from = (int) (row - b * BLOCK_SIZE);
+			int n = (int) Math.min(block.length - from, toRow - row);
+			System.arraycopy(block, from, out, k, n);
+			k += n;
+			row += n;
+		}
+		return k - offset;
+	}
+
+	private double[] getBlock(TLeaf leaf, long b, long entries)
+			throws IOException {
+
+		BlockKey key = new BlockKey(leaf, b);
+		synchronized (cache) {
+			double[] block = cache.get(key);
+			if (block != null)
+				return block;
+		}
+		long from = b * BLOCK_SIZE;
+		double[] block = new double[(int) Math.min(BLOCK_SIZE, entries
+				- from)];
+		decode(leaf, from, block.length, block);
+		synchronized (cache) {
+			cache.put(key, block);
+		}
+		return block;
+	}
+
+	/**
+	 * Decode consecutive rows of a leaf. Rows are read in order so that the
+	 * reader can reuse the current basket instead of reading it again.
+	 */
+	private static void decode(TLeaf leaf, long from, int n, double[] out)
+			throws IOException {
+
+		if (leaf.getArrayDim() > 0)
+			throw new IllegalArgumentException("Leaf " + leaf.getName()
+					+ " is an array");
+		if (leaf instanceof TLeafD) {
+			TLeafD l = (TLeafD) leaf;
+			for (int i = 0; i < n; i++)
+				out[i] = l.getValue(from + i);
+		} else if (leaf instanceof TLeafF) {
+			TLeafF l = (TLeafF) leaf;
+			for (int i = 0; i < n; i++)
+				out[i] = l.getValue(from + i);
+		} else if (leaf instanceof TLeafI) {
+			TLeafI l = (TLeafI) leaf;
+			for (int i = 0; i < n; i++)
+				out[i] = l.getValue(from + i);
+		} else if (leaf instanceof TLeafL) {
+			TLeafL l = (TLeafL) leaf;
+			for (int i = 0; i < n; i++)
+				out[i] = l.getValue(from + i);
+		} else if (leaf instanceof TLeafB) {
+			TLeafB l = (TLeafB) leaf;
+			for (int i = 0; i < n; i++)
+				out[i] = l.getValue(from + i);
+		} else {
+			throw new IllegalArgumentException("Leaf " + leaf.getName()
+					+ " of type " + leaf.getClass().getName()
+					+ " is not supported");
+		}
+	}
+
+	/**
+	 * Fill a histogram with values of a numeric leaf of a tree in the current
+	 * directory. The tree is split into ranges of entries which are read on
+	 * several threads, each with its own file reader. Each thread fills a
+	 * buffer of the histogram, and the buffers are added to the histogram at
+	 * the end.
+	 * 
+	 * @param tree
+	 *            tree name
+	 * @param leaf
+	 *            leaf name
+	 * @param target
+	 *            histogram to be filled
+	 * @param threads
+	 *            number of threads
+	 * @return true if success
+	 */
+	public boolean fill(String tree, final String leaf, final H1D target,
+			int threads) {
+
+		return scan(tree, new String[] { leaf }, threads, new Filler() {
+			public void fill(TLeaf[] leaves, long from, long to)
+					throws IOException {
+				H1DBuffer b = target.newFiller();
+				double[] x = new double[BLOCK_SIZE];
+				for (long row = from; row < to; row += BLOCK_SIZE) {
+					int n = (int) Math.min(BLOCK_SIZE, to - row);
+					decode(leaves[0], row, n, x);
+					b.fill(x, 0, n);
+				}
+				b.flush();
+			}
+		});
+	}
+
+	/**
+	 * Fill a histogram with values of a numeric leaf of a tree in the current
+	 * directory, using all available processors.
+	 * 
+	 * @param tree
+	 *            tree name
+	 * @param leaf
+	 *            leaf name
+	 * @param target
+	 *            histogram to be filled
+	 * @return true if success
+	 */
+	public boolean fill(String tree, String leaf, H1D target) {
+
+		return fill(tree, leaf, target, Runtime.getRuntime()
+				.availableProcessors());
+	}
+
+	/**
+	 * Fill a 2D histogram with values of two numeric leaves of a tree in the
+	 * current directory. The tree is split into ranges of entries which are
+	 * read on several threads, each with its own file reader.
+	 * 
+	 * @param tree
+	 *            tree name
+	 * @param leafX
+	 *            leaf name for X
+	 * @param leafY
+	 *            leaf name for Y
+	 * @param target
+	 *            histogram to be filled
+	 * @param threads
+	 *            number of threads
+	 * @return true if success
+	 */
+	public boolean fill(String tree, String leafX, String leafY,
+			final H2D target, int threads) {
+
+		return scan(tree, new String[] { leafX, leafY }, threads,
+				new Filler() {
+					public void fill(TLeaf[] leaves, long from, long to)
+							throws IOException {
+						H2DBuffer b = target.newFiller();
+						double[] x = new double[BLOCK_SIZE];
+						double[] y = new double[BLOCK_SIZE];
+						for (long row = from; row < to; row += BLOCK_SIZE) {
+							int n = (int) Math.min(BLOCK_SIZE, to - row);
+							if (n < BLOCK_SIZE) {
+								x = new double[n];
+								y = new double[n];
+							}
+							decode(leaves[0], row, n, x);
+							decode(leaves[1], row, n, y);
+							b.fill(x, y);
+						}
+						b.flush();
+					}
+				});
+	}
+
+	/**
+	 * Fills histograms from a range of tree entries.
+	 */
+	private interface Filler {
+		void fill(TLeaf[] leaves, long from, long to) throws IOException;
+	}
+
+	/**
+	 * Split a tree into ranges of entries and pass them to a filler on
+	 * several threads. Every thread opens its own reader.
+	 */
+	private boolean scan(final String tree, final String[] leaves,
+			int threads, final Filler filler) {
+
+		long entries;
+		try {
+			entries = getTree(rfr, tree).getEntries();
+		} catch (IOException e) {
+			jhplot.utils.Util.ErrorMessage(e.toString());
+			return false;
+		}
+		if (threads < 1)
+			threads = 1;
+		long blocks = (entries + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		int parts = (int) Math.max(1, Math.min(threads, blocks));
+
+		ExecutorService pool = Executors.newFixedThreadPool(parts);
+		List<Future<Object>> futures = new ArrayList<Future<Object>>();
+		try {
+			for (int i = 0; i < parts; i++) {
+				final long from = Math.min(entries, blocks * i / parts
+						* BLOCK_SIZE);
+				final long to = Math.min(entries, blocks * (i + 1) / parts
+						* BLOCK_SIZE);
+				futures.add(pool.submit(new Callable<Object>() {
+					public Object call() throws IOException {
+						RootFileReader reader = (file != null) ? new RootFileReader(
+								file) : new RootFileReader(url);
+						try {
+							TTree t = getTree(reader, tree);
+							TLeaf[] l = new TLeaf[leaves.length];
+							for (int j = 0; j < l.length; j++)
+								l[j] = getLeaf(t, leaves[j]);
+							filler.fill(l, from, to);
+						} finally {
+							reader.close();
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Object> f : futures)
+				f.get();
+		} catch (InterruptedException e) {
+			jhplot.utils.Util.ErrorMessage(e.toString());
+			return false;
+		} catch (ExecutionException e) {
+			jhplot.utils.Util.ErrorMessage(e.getCause().toString());
+			return false;
+		} finally {
+			pool.shutdown();
+		}
+		return true;
+	}
+
+	/**
+	 * Get a tree from the current directory using a given reader.
+	 */
+	private TTree getTree(RootFileReader reader, String tree)
+			throws IOException {
+
+		TKey key;
+		if (dir == null) {
+			key = reader.getKey(tree);
+		} else {
+			String[] dirs = (dir + "/" + tree).split("/");
+			key = reader.getKey(dirs[0]);
+			for (int j = 1; j < dirs.length; j++)
+				key = getDirectory(key).getKey(dirs[j]);
+		}
+		if (key == null)
+			throw new IOException("No such tree: " + tree);
+		try {
+			return (TTree) key.getObject();
+		} catch (RootClassNotFound e) {
+			throw new IOException("Root Class Not Found " + e.getClassName());
+		}
+	}
+
+	private static TDirectory getDirectory(TKey key) throws IOException {
+
+		try {
+			return (TDirectory) key.getObject();
+		} catch (RootClassNotFound e) {
+			throw new IOException("Root Class Not Found " + e.getClassName());
+		}
+	}
+
+	/**
+	 * Key of a decoded block in the cache.
+	 */
+	private static final class BlockKey {
+		private final TLeaf leaf;
+		private final long block;
+
+		BlockKey(TLeaf leaf, long block) {
+			this.leaf = leaf;
+			this.block = block;
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof BlockKey))
+				return false;
+			BlockKey k = (BlockKey) o;
+			return k.leaf == leaf && k.block == block;
+		}
+
+		public int hashCode() {
+			return System.identityHashCode(leaf) * 31 + (int) block;
+		}
+	}
+
 	/**
 	 * Show online documentation.
 	 */
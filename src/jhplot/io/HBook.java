@@ -27,6 +27,12 @@ import hep.aida.*;
  * standard serialisation. You can read data from URL as well.
  * <p>
  * The file extension of HBook is "jdat".
+ * <p>
+ * Local files are opened lazily: only the positions of objects are indexed
+ * when the file is opened, and an object is parsed when it is requested with
+ * get(). In the streaming write mode (see {@link #HBook(String, String, boolean)})
+ * objects are written to the file as soon as they are added, so they do not
+ * need to be kept in memory until close().
  * 
  * @see <a href="https://datamelt.org/cbook/">CFBook web page</a>. Look at
  *      examples in examples/hbook.py and hbook2d.py.
@@ -60,6 +66,19 @@ public class HBook {
 
         private static int count=0;
 
+	// positions (start, end) of objects in the file opened lazily
+	private Map<String, long[]> index;
+
+	private RandomAccessFile input;
+
+	// output stream in the streaming write mode
+	private PrintStream output;
+
+	// tags of objects in the file
+	private static final String[] TAGS = { "h1d", "h2d", "p1d", "p0d",
+			"p0i", "pnd", "p2d", "pni", "array1D", "array1I", "array2D",
+			"array2I", "f1d", "f2d", "fnd", "fpr" };
+
 	private DecimalFormat dfb = new DecimalFormat("##.#####E00");
 
 	/**
@@ -78,12 +97,47 @@ public class HBook {
 
 	public HBook(String file,String option) {
 
+		this(file, option, option.equalsIgnoreCase("r"));
+
+	}
+
+	/**
+	 * Initialize HBook and tell what to do.
+	 * If the option is "w", the file will be written.
+	 * If the option is "r", we read the file. 
+	 * If the file name starts with
+	 * "http" or "ftp", the file will be read from URL.
+	 *
+	 * @param file 
+	 *           file for reading or writing
+	 * @param option
+	 *            can be "r" (read) or "w" (write).           
+	 * @param stream
+	 *            if true, a local file is indexed on open and objects are
+	 *            parsed on request ("r"), or objects are written as soon as
+	 *            they are added with write() ("w"). Otherwise all objects
+	 *            are read on open, or kept in memory until close().
+	 */
+	public HBook(String file, String option, boolean stream) {
+
                this.file=file;
                this.option=option;
                map = new HashMap<String, Object>();
                 if (option.equalsIgnoreCase("r")) {
-                 read(file);        
-               };
+                 if (stream && !(file.startsWith("http") || file.startsWith("ftp")))
+                	 index(file);
+                 else
+                	 read(file);        
+               } else if (option.equalsIgnoreCase("w") && stream) {
+            	   try {
+            		   output = new PrintStream(new BufferedOutputStream(
+            				   new FileOutputStream(new File(file)), 1 << 16));
+            		   writeHeader(output);
+            	   } catch (IOException e) {
+            		   jhplot.utils.Util.ErrorMessage("Error in the output file");
+            		   e.printStackTrace();
+            	   }
+               }
 
 
 	}
@@ -128,12 +182,41 @@ public class HBook {
 
 	private void write(String file) {
 
-		Date dat = new Date();
-		String today = String.valueOf(dat);
-
 		try {
 			FileOutputStream f1 = new FileOutputStream(new File(file));
-			PrintStream tx = new PrintStream(f1);
+			PrintStream tx = new PrintStream(new BufferedOutputStream(f1,
+					1 << 16));
+			writeHeader(tx);
+
+			Iterator<Map.Entry<String, Object>> entries = map.entrySet()
+					.iterator();
+
+			while (entries.hasNext()) {
+				Map.Entry<String, Object> entry = entries.next();
+				writeObject(tx, entry.getKey(), entry.getValue());
+			} // end loop over objects
+
+			tx.println("</jhepwork>");
+			tx.close();
+			f1.close();
+
+		} catch (IOException e) {
+			jhplot.utils.Util.ErrorMessage("Error in the output file");
+			e.printStackTrace();
+		}
+
+	}
+
+	/**
+	 * Write the file header.
+	 * 
+	 * @param tx
+	 *            output stream
+	 */
+	private void writeHeader(PrintStream tx) {
+
+		Date dat = new Date();
+		String today = String.valueOf(dat);
                         tx.println("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>"); 
 			tx.println("<jhepwork>");
 			setString("created-by", createdBy, tx);
@@ -141,14 +224,19 @@ public class HBook {
 			setString("description", description, tx);
 			setInt("version", version, tx);
 			tx.println("");
+	}
 
-			Iterator<Map.Entry<String, Object>> entries = map.entrySet()
-					.iterator();
-
-			while (entries.hasNext()) {
-				Map.Entry<String, Object> entry = entries.next();
-				String key = entry.getKey();
-				Object ob = entry.getValue();
+	/**
+	 * Write one object.
+	 * 
+	 * @param tx
+	 *            output stream
+	 * @param key
+	 *            key
+	 * @param ob
+	 *            object
+	 */
+	private void writeObject(PrintStream tx, String key, Object ob) {
 
 				if (ob instanceof jhplot.H1D) {
 					H1D h1 = (jhplot.H1D) ob;
@@ -212,17 +300,6 @@ public class HBook {
 					writeArrayII(tx, key, p1);
 				}
 
-			} // end loop over objects
-
-			tx.println("</jhepwork>");
-			tx.close();
-			f1.close();
-
-		} catch (IOException e) {
-			jhplot.utils.Util.ErrorMessage("Error in the output file");
-			e.printStackTrace();
-		}
-
 	}
 
 	/**
@@ -267,6 +344,153 @@ public class HBook {
 
 		}
 
+		parse(reader, map, true);
+	}
+
+	/**
+	 * Index objects in a local file. Only positions of objects are kept, the
+	 * objects are parsed when they are requested. If the file has an
+	 * unexpected layout, all objects are read at once.
+	 * 
+	 * @param file
+	 *            input file name
+	 */
+	private void index(String file) {
+
+		Map<String, long[]> pos = new LinkedHashMap<String, long[]>();
+		long headerEnd = -1;
+		InputStream in = null;
+		try {
+			input = new RandomAccessFile(file, "r");
+			in = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+			ByteArrayOutputStream line = new ByteArrayOutputStream();
+			String tag = null, id = null;
+			long offset = 0, lineStart = 0, start = 0;
+			boolean ok = true;
+			int c;
+			do {
+				c = in.read();
+				if (c != '\n' && c != -1) {
+					line.write(c);
+					offset++;
+					continue;
+				}
+				String s = line.toString().trim();
+				line.reset();
+				if (s.length() > 0) {
+					if (tag == null) {
+						for (int i = 0; i < TAGS.length; i++) {
+							if (s.equals("<" + TAGS[i] + ">")) {
+								tag = TAGS[i];
+								start = lineStart;
+								id = null;
+								if (headerEnd < 0)
+									headerEnd = lineStart;
+								break;
+							}
+						}
+					} else if (id == null) {
+						// the writer puts the key just after the opening tag
+						if (s.startsWith("<id>") && s.endsWith("</id>")) {
+							id = s.substring(4, s.length() - 5).trim();
+						} else {
+							ok = false;
+							break;
+						}
+					} else if (s.equals("</" + tag + ">")) {
+						pos.put(id, new long[] { start, offset });
+						tag = null;
+					}
+				}
+				offset++;
+				lineStart = offset;
+			} while (c != -1);
+			in.close();
+
+			if (tag != null)
+				ok = false;
+			if (!ok) {
+				input.close();
+				input = null;
+				read(file);
+				return;
+			}
+
+			if (headerEnd < 0)
+				headerEnd = offset;
+			reader = new BufferedReader(new StringReader(readBlock(0,
+					headerEnd) + "</jhepwork>"));
+			parse(reader, new HashMap<String, Object>(), true);
+			index = pos;
+
+		} catch (IOException e) {
+			jhplot.utils.Util.ErrorMessage(e.toString());
+		} finally {
+			try {
+				if (in != null)
+					in.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Read a part of the input file.
+	 * 
+	 * @param start
+	 *            start position
+	 * @param end
+	 *            end position
+	 * @return text
+	 */
+	private String readBlock(long start, long end) throws IOException {
+		byte[] b = new byte[(int) (end - start)];
+		input.seek(start);
+		input.readFully(b);
+		return new String(b);
+	}
+
+	/**
+	 * Parse one indexed object.
+	 * 
+	 * @param id
+	 *            key
+	 * @return object or null if it cannot be read
+	 */
+	private synchronized Object load(String id) {
+
+		long[] p = index.get(id);
+		if (p == null)
+			return map.get(id);
+		Map<String, Object> tmp = new HashMap<String, Object>();
+		try {
+			String xml = "<jhepwork>\n" + readBlock(p[0], p[1])
+					+ "\n</jhepwork>\n";
+			parse(new BufferedReader(new StringReader(xml)), tmp, false);
+		} catch (IOException e) {
+			jhplot.utils.Util.ErrorMessage(e.toString());
+			return null;
+		}
+		Object ob = tmp.get(id);
+		index.remove(id);
+		map.put(id, ob);
+		return ob;
+	}
+
+	/**
+	 * Parse objects from XML and put them to a map.
+	 * 
+	 * @param reader
+	 *            input. It is closed at the end.
+	 * @param map
+	 *            output map with objects
+	 * @param header
+	 *            if true, the file header is read
+	 */
+	private void parse(BufferedReader reader, Map<String, Object> map,
+			boolean header) {
+
 		try {
 
 			XMLRead xr = new XMLRead();
@@ -276,10 +500,12 @@ public class HBook {
 				return;
 			}
 
+			if (header) {
 			createdBy = xr.getString("created-by", "NOT SET");
 			time = xr.getString("created-on", "NOT SET");
 			description = xr.getString("description", "NOT SET");
 			version = xr.getInt("version", -1);
+			}
 
 			// now read H1D histograms
 			double min, max;
@@ -849,6 +1075,8 @@ public class HBook {
 	 */
 	public Object get(String id) {
 
+		if (index != null && index.containsKey(id))
+			return load(id);
 		if (map.containsKey(id) == false) {
 			jhplot.utils.Util.ErrorMessage("The key = " + id
 					+ " was not found!");
@@ -871,6 +1099,8 @@ public class HBook {
 			String key = entry.getKey();
 			a.add(key);
 		}
+		if (index != null)
+			a.addAll(index.keySet());
 		String[] tmp = a.toArray(new String[a.size()]);
 		return tmp;
 	}
@@ -886,7 +1116,7 @@ public class HBook {
 	 */
 	public void write(String id, H1D h1d) {
 
-		map.put(id, h1d);
+		add(id, h1d);
 
 	}
 
@@ -901,7 +1131,7 @@ public class HBook {
 	 */
 	public void write(String id, H2D h2d) {
 
-		map.put(id, h2d);
+		add(id, h2d);
 
 	}
 
@@ -916,7 +1146,7 @@ public class HBook {
 	 */
 	public void write(String id, P1D p1d) {
 
-		map.put(id, p1d);
+		add(id, p1d);
 
 	}
 
@@ -931,7 +1161,7 @@ public class HBook {
 	 */
 	public void write(String id, PND pnd) {
 
-		map.put(id, pnd);
+		add(id, pnd);
 
 	}
 
@@ -946,7 +1176,7 @@ public class HBook {
 	 */
 	public void write(String id, PNI pnd) {
 
-		map.put(id, pnd);
+		add(id, pnd);
 
 	}
 
@@ -961,7 +1191,7 @@ public class HBook {
 	 */
 	public void write(String id, P0D pnd) {
 
-		map.put(id, pnd);
+		add(id, pnd);
 
 	}
 
@@ -976,7 +1206,7 @@ public class HBook {
 	 */
 	public void write(String id, P0I pnd) {
 
-		map.put(id, pnd);
+		add(id, pnd);
 
 	}
 
@@ -991,7 +1221,7 @@ public class HBook {
 	 */
 	public void write(String id, P2D pnd) {
 
-		map.put(id, pnd);
+		add(id, pnd);
 
 	}
 
@@ -1078,7 +1308,7 @@ public class HBook {
 	 */
 	public void write(String id, F1D f1) {
 
-		map.put(id, f1);
+		add(id, f1);
 
 	}
 
@@ -1094,7 +1324,7 @@ public class HBook {
 	 */
 	public void write(String id, FPR f1) {
 
-		map.put(id, f1);
+		add(id, f1);
 
 	}
 
@@ -1110,7 +1340,7 @@ public class HBook {
 	 */
 	public void write(String id, F2D f2) {
 
-		map.put(id, f2);
+		add(id, f2);
 
 	}
 
@@ -1126,7 +1356,7 @@ public class HBook {
 	 */
 	public void write(String id, double[] a) {
 
-		map.put(id, a);
+		add(id, a);
 
 	}
 
@@ -1142,7 +1372,7 @@ public class HBook {
 	 */
 	public void write(String id, int[] a) {
 
-		map.put(id, a);
+		add(id, a);
 
 	}
 
@@ -1158,7 +1388,7 @@ public class HBook {
 	 */
 	public void write(String id, double[][] a) {
 
-		map.put(id, a);
+		add(id, a);
 
 	}
 
@@ -1174,7 +1404,7 @@ public class HBook {
 	 */
 	public void write(String id, int[][] a) {
 
-		map.put(id, a);
+		add(id, a);
 
 	}
 
@@ -1190,19 +1420,50 @@ public class HBook {
 	 */
 	public void write(String id, FND a) {
 
-		map.put(id, a);
+		add(id, a);
 
 	}
 
 	
 
+	/**
+	 * Add an object. In the streaming mode, it is written to the file at
+	 * once.
+	 * 
+	 * @param id
+	 *            key
+	 * @param ob
+	 *            object
+	 */
+	private void add(String id, Object ob) {
+
+		if (output != null)
+			writeObject(output, id, ob);
+		else
+			map.put(id, ob);
+	}
+
 	/**
 	 * Clear all objects and exit.
 	 * If yu write a file, all objects will be writted to the disk. 
 	 */
 	public void close() {
 
-                if (option.equalsIgnoreCase("w")) write(file);
+		if (output != null) {
+			output.println("</jhepwork>");
+			output.close();
+			output = null;
+		} else if (option.equalsIgnoreCase("w"))
+			write(file);
+		if (input != null) {
+			try {
+				input.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			input = null;
+		}
+		index = null;
 		map.clear();
 		map = null;
 		reader = null;
@@ -1218,18 +1479,14 @@ public class HBook {
 	 */
 
 	private double[] getDoubles(String a) {
-		a = a.trim();
-		StringTokenizer st = new StringTokenizer(a, sep);
-		int ncount = st.countTokens(); // number of words
-		double[] d = new double[ncount];
-		int m = 0;
-		while (st.hasMoreTokens()) { // make sure there is stuff
-			String s = st.nextToken();
+		int[] pos = split(a);
+		double[] d = new double[pos.length / 2];
+		for (int m = 0; m < d.length; m++) {
 			try {
-				d[m] = Double.parseDouble(s);
+				d[m] = Double.parseDouble(a.substring(pos[2 * m],
+						pos[2 * m + 1]));
 			} catch (NumberFormatException e) {
 			}
-			m++;
 		}
 		return d;
 	}
@@ -1244,23 +1501,48 @@ public class HBook {
 	 */
 
 	private int[] getIntegers(String a) {
-		a = a.trim();
-		StringTokenizer st = new StringTokenizer(a, sep);
-		int ncount = st.countTokens(); // number of words
-		int[] d = new int[ncount];
-		int m = 0;
-		while (st.hasMoreTokens()) { // make sure there is stuff
-			String s = st.nextToken();
+		int[] pos = split(a);
+		int[] d = new int[pos.length / 2];
+		for (int m = 0; m < d.length; m++) {
 			try {
-				d[m] = Integer.parseInt(s);
+				d[m] = Integer.parseInt(a.substring(pos[2 * m],
+						pos[2 * m + 1]));
 			} catch (NumberFormatException e) {
 			}
-			m++;
 		}
 
 		return d;
 	}
 
+	/**
+	 * Find words separated by spaces.
+	 * 
+	 * @param a
+	 *            input string
+	 * @return start and end positions of words
+	 */
+	private static int[] split(String a) {
+		int n = a.length();
+		int[] pos = new int[16];
+		int m = 0;
+		int i = 0;
+		while (i < n) {
+			while (i < n && a.charAt(i) == ' ')
+				i++;
+			if (i == n)
+				break;
+			int j = i;
+			while (j < n && a.charAt(j) != ' ')
+				j++;
+			if (m + 2 > pos.length)
+				pos = Arrays.copyOf(pos, 2 * pos.length);
+			pos[m++] = i;
+			pos[m++] = j;
+			i = j;
+		}
+		return Arrays.copyOf(pos, m);
+	}
+
 	/**
 	 * Show online documentation.
 	 */
@@ -1810,6 +2092,11 @@ public class HBook {
 	 */
 	public Map<String, Object> getAll() {
 
+		if (index != null) {
+			String[] keys = index.keySet().toArray(new String[0]);
+			for (int i = 0; i < keys.length; i++)
+				load(keys[i]);
+		}
 		return map;
 	}
 
@@ -47,6 +47,18 @@ import jhplot.io.db.RecordsFileException;
  * order time with respect to file accesses. The index is small enough to load
  * into memory. This will make it easier for our implementation to fulfill the
  * requirement that dictates access time.
+ * <p>
+ * Objects can be read with get() by several threads at the same time. 
+ * Reads do not block each other, while insert, update and remove wait until 
+ * the current reads are finished. A file opened with the "r" option is mapped 
+ * into memory.
+ * <p>
+ * For bulk loading, call beginBatch() before insert() and commit() at the end. 
+ * Objects of a batch are first appended to a journal file (the database file 
+ * name with the extension ".journal"), and are added to the database in one 
+ * sequential pass at commit. If the program stops before the commit, the 
+ * database is not changed. If it stops during the commit, the journal is 
+ * applied when the database is opened again with the "rw" option.
  * 
  * The code is based on:
  * http://www.javaworld.com/javaworld/jw-01-1999/jw-01-step.html
@@ -70,7 +82,8 @@ public class HDataBase {
 	 *            File name
 	 * @param option
 	 *            Option to create the file . If "w" - write a file (or read)
-	 *            file, if "r" only read created file.
+	 *            file, if "r" only read created file, if "rw" - open an
+	 *            existing file for updates (or create it).
 	 */
 	public HDataBase(String file, String option) {
 
@@ -100,7 +113,10 @@ public class HDataBase {
 		} else if (option.equalsIgnoreCase("rw")) {
 
 			try {
-				recordsFile = new RecordsFile(file, 128);
+				if ((new File(file)).exists())
+					recordsFile = new RecordsFile(file, "rw");
+				else
+					recordsFile = new RecordsFile(file, 128);
 			} catch (IOException e) {
 				// TODO Auto-generated catch block
 				e.printStackTrace();
@@ -190,7 +206,8 @@ public class HDataBase {
 	};
 
 	/**
-	 * Get object from the database using a key
+	 * Get object from the database using a key. This method can be called
+	 * from several threads at the same time.
 	 * 
 	 * @param key
 	 *            Key to get the object
@@ -200,8 +217,9 @@ public class HDataBase {
 
 		Object ob = null;
 		try {
-			rr = recordsFile.readRecord(key);
-			ob = rr.readObject();
+			RecordReader reader = recordsFile.readRecord(key);
+			rr = reader;
+			ob = reader.readObject();
 		} catch (IOException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
@@ -275,7 +293,68 @@ public class HDataBase {
 	};
 
 	/**
-	 * Close the file
+	 * Start a batch of inserts. Objects inserted until commit() are written
+	 * to a journal and cannot be read before the commit.
+	 * 
+	 * @return true if success
+	 */
+	public boolean beginBatch() {
+
+		boolean success = true;
+		try {
+			recordsFile.beginBatch();
+		} catch (RecordsFileException e) {
+			success = false;
+			e.printStackTrace();
+		} catch (IOException e) {
+			success = false;
+			e.printStackTrace();
+		}
+		return success;
+
+	}
+
+	/**
+	 * Add all objects inserted since beginBatch() to the database.
+	 * 
+	 * @return true if success
+	 */
+	public boolean commit() {
+
+		boolean success = true;
+		try {
+			recordsFile.commitBatch();
+		} catch (RecordsFileException e) {
+			success = false;
+			e.printStackTrace();
+		} catch (IOException e) {
+			success = false;
+			e.printStackTrace();
+		}
+		return success;
+
+	}
+
+	/**
+	 * Discard all objects inserted since beginBatch().
+	 * 
+	 * @return true if success
+	 */
+	public boolean abort() {
+
+		boolean success = true;
+		try {
+			recordsFile.abortBatch();
+		} catch (IOException e) {
+			success = false;
+			e.printStackTrace();
+		}
+		return success;
+
+	}
+
+	/**
+	 * Close the file. A started batch is committed.
 	 * 
 	 * @return
 	 * */
@@ -26,8 +26,16 @@ package jhplot.io;
 
 import jhplot.*; 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractMap;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 import java.net.MalformedURLException;
@@ -46,9 +54,19 @@ import jhplot.gui.HelpBrowser;
  * using BrowserHFile.
  * <p>
  * 
- * You can also insert objects using the keys and read them back. In this case,
- * avoid writing many objects without the keys since the extraction of keys will
- * be very inefficient. Try not mix write/read with keys or without.
+ * You can also insert objects using the keys and read them back. Objects with
+ * keys are written at the end of the file, each one serialized separately,
+ * together with an index (key, position, length and class of each object).
+ * Reading an object by key from a file on the file system seeks directly to
+ * this object without reading the rest of the file. Files written by older
+ * versions, without the index, are still read by scanning the stream.
+ * <p>
+ * By default, keyed objects are also written in one map at the end of the
+ * object stream, as in older versions, so older versions of this class can
+ * read them. This stores keyed objects twice; use setCompatible(false) to
+ * write only the index. Files with only the index cannot be read by older
+ * versions (they return null for all keys). Files written in a newer format
+ * than this class understands are rejected with an error.
  * 
  * @author S.Chekanov
  * 
@@ -56,13 +74,47 @@ import jhplot.gui.HelpBrowser;
 public class HFile {
 
 	private FileOutputStream oof;
+	private GZIPOutputStream goz;
 	private ObjectOutputStream oos;
 	private ObjectInputStream iis;
 	private int reset = 100;
 	private int nev = 0;
 	private int buffer;
+	private boolean compression;
+	private String file;
 	private Map<String, Object> hmap;
-	final private int version = 2;
+	final private int version = 3;
+	private boolean compatible = true;
+
+	/** Magic bytes at the very end of files with the index of keyed objects */
+	private static final byte[] MAGIC = { 'H', 'F', 'i', 'l', 'e', 'I',
+			'd', 'x' };
+
+	/** Trailer: footer position, footer length, flags, version, magic */
+	private static final int TRAILER = 8 + 4 + 4 + 4 + 8;
+
+	private static final int COMPRESSED = 1;
+
+	/** Index of keyed objects, null for files without index */
+	private Map<String, Entry> index;
+	private boolean indexCompressed;
+	private RandomAccessFile raf;
+	private byte[] remote;
+
+	/**
+	 * Position, length and class of a keyed object.
+	 */
+	private static class Entry {
+		final long offset;
+		final int length;
+		final String className;
+
+		Entry(long offset, int length, String className) {
+			this.offset = offset;
+			this.length = length;
+			this.className = className;
+		}
+	}
 
 	/**
 	 * Open a file to write/read objects to/from a serialized file in sequential
@@ -95,17 +147,22 @@ public class HFile {
 		buffer = bufferSize;
 		nev = 0;
 		file = file.trim();
+		this.file = file;
+		this.compression = compression;
 		hmap = new HFileMap<String, Object>(version);
 
 		if (option.equalsIgnoreCase("w")) {
 
+			// keep the order of keys for the index
+			hmap = new LinkedHashMap<String, Object>();
 			try {
 				(new File(file)).delete();
 				oof = new FileOutputStream(file);
 
 				if (compression == true) {
-					oos = new ObjectOutputStream(new BufferedOutputStream(
-							new GZIPOutputStream(oof), buffer));
+					goz = new GZIPOutputStream(oof);
+					oos = new ObjectOutputStream(new BufferedOutputStream(goz,
+							buffer));
 				} else {
 					oos = new ObjectOutputStream(new BufferedOutputStream(oof,
 							buffer));
@@ -153,6 +210,12 @@ public class HFile {
 						iis = new ObjectInputStream(new BufferedInputStream(
 								iif, buffer));
 					}
+					raf = new RandomAccessFile(file, "r");
+					readIndex(raf.getChannel(), raf.length());
+					if (index == null) {
+						raf.close();
+						raf = null;
+					}
 				} catch (IOException e) {
 					jhplot.utils.Util.ErrorMessage(e.toString());
 				}
@@ -281,6 +344,21 @@ public class HFile {
 
 	};
 
+	/**
+	 * Also write keyed objects in the map read by older versions of this
+	 * class (default). If false, keyed objects are only written with the
+	 * index, which makes files smaller but older versions cannot read them.
+	 * Must be called before close().
+	 * 
+	 * @param compatible
+	 *            true to keep files readable by older versions
+	 */
+	public void setCompatible(boolean compatible) {
+
+		this.compatible = compatible;
+
+	}
+
 	/**
 	 * Set after how many events data will be flushed. The stream will flush all
 	 * the objects from the identity hash table. The default is 100.
@@ -301,6 +379,16 @@ public class HFile {
 	 */
 	public Map<String, Object> getObjectMap() {
 
+		if (hmap.size() == 0 && index == null)
+			findIndex();
+
+		if (index != null) {
+			Map<String, Object> map = new LinkedHashMap<String, Object>();
+			for (String key : index.keySet())
+				map.put(key, read(key));
+			return map;
+		}
+
 		// try to get this map
 		if (hmap.size() == 0 && iis != null) {
 			try {
@@ -380,11 +468,27 @@ public class HFile {
 
 		Object obj = null;
 
+		if (hmap.size() == 0 && index == null)
+			findIndex();
+
+		if (index != null) {
+			Entry e = index.get(key);
+			if (e == null)
+				return null;
+			try {
+				return readEntry(e);
+			} catch (ClassNotFoundException | IOException ex) {
+				jhplot.utils.Util.ErrorMessage(ex.toString());
+				return null;
+			}
+		}
+
 		if (hmap.size() == 0 && iis != null) {
 			try {
 				while ((obj = iis.readObject()) != null) {
 					if (obj instanceof jhplot.io.HFileMap) {
 						hmap = (HFileMap<String, Object>) obj;
+						break;
 					}
 				}
 			} catch (ClassNotFoundException | IOException e) {
@@ -411,17 +515,31 @@ public class HFile {
 		try {
 
 			if (oos != null) {
-				oos.writeObject(hmap); // add the map as the last object
+				// keyed objects are written after the stream with an index,
+				// and in the map at the end of the stream for older readers
+				HFileMap<String, Object> map = new HFileMap<String, Object>(
+						version);
+				if (compatible)
+					map.putAll(hmap);
+				oos.writeObject(map);
 				oos.flush();
-				oos.close();
+				if (goz != null)
+					goz.finish();
+				writeIndex();
 				oof.close();
 				oos = null;
+				goz = null;
 			}
 
 			if (iis != null) {
 				iis.close();
 				iis = null;
 			}
+
+			if (raf != null) {
+				raf.close();
+				raf = null;
+			}
 		} catch (IOException e) {
 			success = false;
 			// ErrorMessage(e.toString());
@@ -433,6 +551,250 @@ public class HFile {
 
 	}
 
+	/**
+	 * Check whether keyed objects can be read directly using the index.
+	 * 
+	 * @return true if the file has an index of keyed objects
+	 */
+	public boolean isIndexed() {
+
+		if (hmap.size() == 0 && index == null)
+			findIndex();
+		return index != null;
+	}
+
+	/**
+	 * Get the keys of all keyed objects. For files with an index, the keys are
+	 * in the order they were written and no object is read. For older files
+	 * without an index, the order is not defined.
+	 * 
+	 * @return set of keys
+	 */
+	public Set<String> getKeys() {
+
+		if (isIndexed())
+			return Collections.unmodifiableSet(index.keySet());
+		Map<String, Object> map = getObjectMap();
+		if (map == null)
+			return Collections.<String> emptySet();
+		return Collections.unmodifiableSet(map.keySet());
+	}
+
+	/**
+	 * Get the class name of a keyed object without reading it.
+	 * 
+	 * @param key
+	 *            key of the object
+	 * @return class name or null if the key does not exist
+	 */
+	public String getClassName(String key) {
+
+		if (isIndexed()) {
+			Entry e = index.get(key);
+			return e == null ? null : e.className;
+		}
+		Map<String, Object> map = getObjectMap();
+		Object ob = map == null ? null : map.get(key);
+		return ob == null ? null : ob.getClass().getName();
+	}
+
+	/**
+	 * Iterate over keyed objects. For files with an index, each object is
+	 * read only when it is reached by the iterator.
+	 * 
+	 * @return iterable over key-object pairs
+	 */
+	public Iterable<Map.Entry<String, Object>> entries() {
+
+		final Iterator<String> keys = getKeys().iterator();
+		final Map<String, Object> map = isIndexed() ? null : getObjectMap();
+		return new Iterable<Map.Entry<String, Object>>() {
+			public Iterator<Map.Entry<String, Object>> iterator() {
+				return new Iterator<Map.Entry<String, Object>>() {
+					public boolean hasNext() {
+						return keys.hasNext();
+					}
+
+					public Map.Entry<String, Object> next() {
+						if (!keys.hasNext())
+							throw new NoSuchElementException();
+						String key = keys.next();
+						Object ob = map == null ? read(key) : map.get(key);
+						return new AbstractMap.SimpleImmutableEntry<String, Object>(
+								key, ob);
+					}
+
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * Write keyed objects after the end of the object stream, followed by the
+	 * index and the trailer.
+	 */
+	private void writeIndex() throws IOException {
+
+		FileChannel ch = oof.getChannel();
+		long pos = ch.position();
+		ByteArrayOutputStream footer = new ByteArrayOutputStream();
+		DataOutputStream dos = new DataOutputStream(footer);
+		dos.writeInt(hmap.size());
+
+		BufferedOutputStream out = new BufferedOutputStream(oof, buffer);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		for (Map.Entry<String, Object> e : hmap.entrySet()) {
+			bytes.reset();
+			OutputStream os = compression ? new GZIPOutputStream(bytes)
+					: bytes;
+			ObjectOutputStream eos = new ObjectOutputStream(os);
+			eos.writeObject(e.getValue());
+			eos.close();
+			bytes.writeTo(out);
+
+			dos.writeUTF(e.getKey());
+			dos.writeLong(pos);
+			dos.writeInt(bytes.size());
+			dos.writeUTF(e.getValue() == null ? "null" : e.getValue()
+					.getClass().getName());
+			pos += bytes.size();
+		}
+		dos.flush();
+		footer.writeTo(out);
+
+		dos = new DataOutputStream(out);
+		dos.writeLong(pos);
+		dos.writeInt(footer.size());
+		dos.writeInt(compression ? COMPRESSED : 0);
+		dos.writeInt(version);
+		dos.write(MAGIC);
+		dos.flush();
+	}
+
+	/**
+	 * Read the index of keyed objects if the file has one.
+	 */
+	private void readIndex(FileChannel ch, long size) throws IOException {
+
+		if (size < TRAILER)
+			return;
+		ByteBuffer t = ByteBuffer.allocate(TRAILER);
+		readFully(ch, t, size - TRAILER);
+		for (int i = 0; i < MAGIC.length; i++)
+			if (t.get(TRAILER - MAGIC.length + i) != MAGIC[i])
+				return;
+		long footer = t.getLong(0);
+		int length = t.getInt(8);
+		int flags = t.getInt(12);
+		if (t.getInt(16) > version)
+			throw new IOException("File " + file
+					+ " was written in a newer format (version "
+					+ t.getInt(16) + "), this version can read up to "
+					+ version);
+		if (footer < 0 || length < 4 || footer + length > size - TRAILER)
+			return;
+
+		ByteBuffer f = ByteBuffer.allocate(length);
+		readFully(ch, f, footer);
+		DataInputStream dis = new DataInputStream(new ByteArrayInputStream(
+				f.array()));
+		int n = dis.readInt();
+		Map<String, Entry> map = new LinkedHashMap<String, Entry>();
+		for (int i = 0; i < n; i++) {
+			String key = dis.readUTF();
+			long offset = dis.readLong();
+			int len = dis.readInt();
+			String cl = dis.readUTF();
+			map.put(key, new Entry(offset, len, cl));
+		}
+		indexCompressed = (flags & COMPRESSED) != 0;
+		index = map;
+	}
+
+	/**
+	 * Look for the index in a file read from URL. The object stream is read
+	 * until the map object at its end. If the map is empty and marks a file
+	 * with an index (written with setCompatible(false)), the whole file is
+	 * downloaded once into memory to read keyed objects, since the index is
+	 * at its end.
+	 */
+	private void findIndex() {
+
+		if (iis == null || raf != null || remote != null)
+			return;
+		if (!(file.startsWith("http") || file.startsWith("ftp")))
+			return;
+		try {
+			Object obj = null;
+			while ((obj = iis.readObject()) != null) {
+				if (obj instanceof jhplot.io.HFileMap) {
+					hmap = (HFileMap<String, Object>) obj;
+					break;
+				}
+			}
+			int v = ((HFileMap<String, Object>) hmap).getVersion();
+			if (v > version)
+				throw new IOException("File " + file
+						+ " was written in a newer format (version " + v
+						+ "), this version can read up to " + version);
+			if (hmap.size() > 0 || v < 3)
+				return;
+			URLConnection urlConn = new URL(file).openConnection();
+			urlConn.setDoInput(true);
+			urlConn.setUseCaches(false);
+			InputStream in = urlConn.getInputStream();
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] b = new byte[1 << 16];
+			int n;
+			while ((n = in.read(b)) > 0)
+				bytes.write(b, 0, n);
+			in.close();
+			remote = bytes.toByteArray();
+			readIndex(null, remote.length);
+		} catch (ClassNotFoundException | IOException e) {
+			jhplot.utils.Util.ErrorMessage(e.toString());
+		}
+	}
+
+	private void readFully(FileChannel ch, ByteBuffer b, long pos)
+			throws IOException {
+
+		if (ch == null) {
+			b.put(remote, (int) pos, b.remaining());
+			b.flip();
+			return;
+		}
+		while (b.hasRemaining()) {
+			int n = ch.read(b, pos);
+			if (n < 0)
+				throw new EOFException();
+			pos += n;
+		}
+		b.flip();
+	}
+
+	/**
+	 * Read one keyed object at the position given by the index.
+	 */
+	private Object readEntry(Entry e) throws IOException,
+			ClassNotFoundException {
+
+		ByteBuffer b = ByteBuffer.allocate(e.length);
+		readFully(raf == null ? null : raf.getChannel(), b, e.offset);
+		InputStream in = new ByteArrayInputStream(b.array());
+		if (indexCompressed)
+			in = new GZIPInputStream(in);
+		ObjectInputStream ois = new ObjectInputStream(in);
+		try {
+			return ois.readObject();
+		} finally {
+			ois.close();
+		}
+	}
+
 	/**
 	 * Show online documentation.
 	 */
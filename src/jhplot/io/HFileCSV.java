@@ -49,7 +49,7 @@ import jhplot.io.csv.CSVWriter;
  */
 public class HFileCSV {
 
-	private FileWriter outStream;
+	private Writer outStream;
 	private BufferedReader inStream;
 	final private int version = 1;
 	private int nev = 0;
@@ -85,7 +85,7 @@ public class HFileCSV {
 
 			try {
 				(new File(file)).delete();
-				outStream = new FileWriter(file);
+				outStream = new BufferedWriter(new FileWriter(file), 1 << 16);
 
 			} catch (IOException e) {
 				System.err.println(e.toString());
@@ -190,10 +190,7 @@ public class HFileCSV {
 		try {
 			CSVWriter writer = new CSVWriter(new FileWriter(file), delim,
 					quotechar);
-			String[] nextLine = new String[p.length];
-			for (int j = 0; j < p.length; j++)
-				nextLine[j] = Double.toString(p[j]);
-			writer.writeNext(nextLine);
+			writer.writeNext(p);
 
 			writer.close();
 		} catch (IOException e) {
@@ -219,11 +216,7 @@ public class HFileCSV {
 		try {
 			CSVWriter writer = new CSVWriter(new FileWriter(file), delim,
 					quotechar);
-			String[] nextLine = new String[p.length];
-			for (int j = 0; j < p.length; j++)
-				nextLine[j] = Integer.toString(p[j]);
-
-			writer.writeNext(nextLine);
+			writer.writeNext(p);
 
 			writer.close();
 		} catch (IOException e) {
@@ -273,11 +266,7 @@ public class HFileCSV {
 		try {
 			CSVWriter writer = new CSVWriter(new FileWriter(file), delim,
 					quotechar);
-			String[] nextLine = new String[p.size()];
-			for (int j = 0; j < p.size(); j++)
-				nextLine[j] = Integer.toString(p.get(j));
-
-			writer.writeNext(nextLine);
+			writer.writeNext(p.getArray());
 
 			writer.close();
 		} catch (IOException e) {
@@ -303,10 +292,7 @@ public class HFileCSV {
 		try {
 			CSVWriter writer = new CSVWriter(new FileWriter(file), delim,
 					quotechar);
-			String[] nextLine = new String[p.size()];
-			for (int j = 0; j < p.size(); j++)
-				nextLine[j] = Double.toString(p.get(j));
-			writer.writeNext(nextLine);
+			writer.writeNext(p.getArray());
 			writer.close();
 		} catch (IOException e) {
 			System.err.println(e.getMessage());
@@ -332,16 +318,8 @@ public class HFileCSV {
 
 		try {
 
-			for (int j = 0; j < p.size(); j++) {
-				double[] tt = (double[]) p.get(j);
-				int dimension = tt.length;
-				String[] nextLine = new String[dimension];
-
-				for (int i = 0; i < dimension; i++)
-					nextLine[j] = Double.toString(tt[i]);
-
-				writer.writeNext(nextLine);
-			}
+			for (int j = 0; j < p.size(); j++)
+				writer.writeNext((double[]) p.get(j));
 			writer.close();
 		} catch (IOException e) {
 			System.err.println(e.getMessage());
@@ -367,16 +345,8 @@ public class HFileCSV {
 
 		try {
 
-			for (int j = 0; j < p.size(); j++) {
-				int[] tt = (int[]) p.get(j);
-				int dimension = tt.length;
-				String[] nextLine = new String[dimension];
-
-				for (int i = 0; i < dimension; i++)
-					nextLine[j] = Double.toString(tt[i]);
-
-				writer.writeNext(nextLine);
-			}
+			for (int j = 0; j < p.size(); j++)
+				writer.writeNext((int[]) p.get(j));
 			writer.close();
 		} catch (IOException e) {
 			System.err.println(e.getMessage());
@@ -407,12 +377,12 @@ public class HFileCSV {
 		int bins = axis.bins();
 
 		try {
+			double[] nextLine = new double[4];
 			for (int j = 0; j < bins; j++) {
-				String[] nextLine = new String[4];
-				nextLine[0] = Double.toString(axis.binLowerEdge(j));
-				nextLine[1] = Double.toString(axis.binUpperEdge(j));
-				nextLine[2] = Double.toString(h1.binHeight(j));
-				nextLine[3] = Double.toString(h1.binError(j));
+				nextLine[0] = axis.binLowerEdge(j);
+				nextLine[1] = axis.binUpperEdge(j);
+				nextLine[2] = h1.binHeight(j);
+				nextLine[3] = h1.binError(j);
 				writer.writeNext(nextLine);
 			}
 
@@ -441,61 +411,28 @@ public class HFileCSV {
 
 		try {
 
-			for (int i = 0; i < p.size(); i++) {
-
-				if (dimen == 2) {
-					String[] nextLine = new String[2];
-					nextLine[0] = Double.toString(p.getX(i));
-					nextLine[1] = Double.toString(p.getY(i));
-					writer.writeNext(nextLine);
-
-				} else if (dimen == 3) {
-
-					String[] nextLine = new String[3];
-					nextLine[0] = Double.toString(p.getX(i));
-					nextLine[1] = Double.toString(p.getY(i));
-					nextLine[2] = Double.toString(p.getYupper(i));
-					writer.writeNext(nextLine);
-
-				} else if (dimen == 4) {
-
-					String[] nextLine = new String[4];
-					nextLine[0] = Double.toString(p.getX(i));
-					nextLine[1] = Double.toString(p.getY(i));
-					nextLine[2] = Double.toString(p.getYupper(i));
-					nextLine[3] = Double.toString(p.getYlower(i));
-					writer.writeNext(nextLine);
-
-				} else if (dimen == 6) {
-
-					String[] nextLine = new String[6];
-					nextLine[0] = Double.toString(p.getX(i));
-					nextLine[1] = Double.toString(p.getY(i));
-					nextLine[2] = Double.toString(p.getYupper(i));
-					nextLine[3] = Double.toString(p.getYlower(i));
-					nextLine[4] = Double.toString(p.getXleft(i));
-					nextLine[5] = Double.toString(p.getXright(i));
-					writer.writeNext(nextLine);
-
+			if (dimen == 2 || dimen == 3 || dimen == 4 || dimen == 6
+					|| dimen == 10) {
+				double[] nextLine = new double[10];
+				for (int i = 0; i < p.size(); i++) {
+					nextLine[0] = p.getX(i);
+					nextLine[1] = p.getY(i);
+					if (dimen > 2)
+						nextLine[2] = p.getYupper(i);
+					if (dimen > 3)
+						nextLine[3] = p.getYlower(i);
+					if (dimen > 4) {
+						nextLine[4] = p.getXleft(i);
+						nextLine[5] = p.getXright(i);
+					}
+					if (dimen > 6) {
+						nextLine[6] = p.getYupperSys(i);
+						nextLine[7] = p.getYlowerSys(i);
+						nextLine[8] = p.getXleftSys(i);
+						nextLine[9] = p.getXrightSys(i);
+					}
+					writer.writeNext(nextLine, 0, dimen);
 				}
-
-				else if (dimen == 10) {
-
-					String[] nextLine = new String[10];
-					nextLine[0] = Double.toString(p.getX(i));
-					nextLine[1] = Double.toString(p.getY(i));
-					nextLine[2] = Double.toString(p.getYupper(i));
-					nextLine[3] = Double.toString(p.getYlower(i));
-					nextLine[4] = Double.toString(p.getXleft(i));
-					nextLine[5] = Double.toString(p.getXright(i));
-					nextLine[6] = Double.toString(p.getYupperSys(i));
-					nextLine[7] = Double.toString(p.getYlowerSys(i));
-					nextLine[8] = Double.toString(p.getXleftSys(i));
-					nextLine[9] = Double.toString(p.getXrightSys(i));
-					writer.writeNext(nextLine);
-
-				}
-
 			}
 
 			writer.close();
@@ -524,6 +461,77 @@ public class HFileCSV {
 		return reader;
 	}
 
+	/**
+	 * Read numbers into PND. Values are parsed directly from the file without
+	 * creating strings. Each line becomes one row. Lines starting with "#" or
+	 * "*" are ignored, and empty values are read as NaN. Quoted values cannot
+	 * contain the separator. Files larger than 16 MB are parsed in parallel.
+	 * 
+	 * @return PND with data or null in case of an error
+	 */
+	public PND readPND() {
+		return readPND(0);
+	}
+
+	/**
+	 * Read numbers into PND using a given number of threads. Files are split
+	 * into chunks at line boundaries which are parsed in parallel.
+	 * 
+	 * @param threads
+	 *            number of threads. If 0, it is chosen from the file size.
+	 * @return PND with data or null in case of an error
+	 */
+	public PND readPND(int threads) {
+
+		TextParser.Result r = readNumbers(threads);
+		if (r == null)
+			return null;
+		PND p = new PND(file);
+		p.read(r);
+		return p;
+	}
+
+	/**
+	 * Read all numbers into P0D, in the order they appear in the file. Values
+	 * are parsed directly from the file without creating strings.
+	 * 
+	 * @return P0D with data or null in case of an error
+	 */
+	public P0D readP0D() {
+
+		TextParser.Result r = readNumbers(0);
+		if (r == null)
+			return null;
+		return new P0D(file, r.trimmedValues());
+	}
+
+	/**
+	 * Parse numbers from the file or URL.
+	 * 
+	 * @param threads
+	 *            number of threads. If 0, it is chosen from the file size.
+	 * @return parsed numbers or null in case of an error
+	 */
+	private TextParser.Result readNumbers(int threads) {
+
+		try {
+			if (file.startsWith("http") || file.startsWith("ftp")) {
+				URLConnection urlConn = new URL(file).openConnection();
+				urlConn.setDoInput(true);
+				urlConn.setUseCaches(false);
+				return TextParser.parse(urlConn.getInputStream(), delim);
+			}
+			if (threads > 0)
+				return TextParser.parse(new File(file), delim, threads);
+			return TextParser.parse(new File(file), delim);
+		} catch (IOException e) {
+			System.err.println(e.toString());
+		} catch (NumberFormatException e) {
+			System.err.println(e.getMessage());
+		}
+		return null;
+	}
+
 	/**
 	 * Close the file if needed.
 	 * 
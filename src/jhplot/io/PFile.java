@@ -1,6 +1,9 @@
 package jhplot.io;
 
 import java.io.*;
+import java.util.concurrent.Callable;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
@@ -27,6 +30,12 @@ import jhplot.gui.HelpBrowser;
  *  <p>
  * 
  * Use this approach for storing P0D, P0I, P1D, H1D, H2D, F1D, F2D objects.
+ *  <p>
+ * 
+ * When writing many objects, entries can be serialized and compressed on several
+ * threads (see {@link #PFile(String, int, int)}). The entry order and names are the same as
+ * for the sequential writing. The compression level can be lowered, or set to
+ * {@link #COMPRESSION_STORED} to keep dense data uncompressed.
  * 
  * @author S.Chekanov
  * 
@@ -44,6 +53,21 @@ public class PFile {
 	private ZipFile zipFile;
 	private  Map<String,Integer> map=null;
 	private  ArrayList<FileEntry> entries=null;
+	private ZipBlockWriter pzout;
+	private ArrayList<String> titles;
+	private int level = COMPRESSION_DEFAULT;
+
+	/** Entries are stored without compression */
+	public static final int COMPRESSION_STORED = 0;
+
+	/** Fastest deflate compression */
+	public static final int COMPRESSION_FAST = Deflater.BEST_SPEED;
+
+	/** Default deflate compression */
+	public static final int COMPRESSION_DEFAULT = Deflater.DEFAULT_COMPRESSION;
+
+	/** Best deflate compression */
+	public static final int COMPRESSION_BEST = Deflater.BEST_COMPRESSION;
 	
 
 	/**
@@ -67,27 +91,85 @@ public class PFile {
 	 */
 	public PFile(String file, String option, boolean mapNames) {
 
+		this(file, option, mapNames, 1, COMPRESSION_DEFAULT);
+
+	};
+
+	/**
+	 * Open a file to write objects using several threads for serialization
+	 * and compression. Entries are written in the same order and with the
+	 * same names as with write() in the sequential mode.
+	 * 
+	 * @param file
+	 *            File name
+	 * @param threads
+	 *            number of threads. If 1, entries are compressed sequentially.
+	 * @param level
+	 *            compression level from 0 ({@link #COMPRESSION_STORED}) to 9
+	 *            ({@link #COMPRESSION_BEST}), or {@link #COMPRESSION_DEFAULT}
+	 */
+	public PFile(String file, int threads, int level) {
+
+		this(file, "w", false, threads, level);
+
+	};
+
+	/**
+	 * Open a file to write/read objects to/from a file in sequential order.
+	 * 
+	 * @param file
+	 *            File name
+	 * @param option
+	 *            Option to create the file. If "w" - write a file, if "r"
+	 *            only read created file.
+	 * @param mapNames
+	 *            make association between object name and its position in
+	 *            the record (read mode).
+	 * @param threads
+	 *            number of threads to serialize and compress entries (write
+	 *            mode).
+	 * @param level
+	 *            compression level from 0 ({@link #COMPRESSION_STORED}) to 9,
+	 *            or {@link #COMPRESSION_DEFAULT} (write mode).
+	 */
+	public PFile(String file, String option, boolean mapNames, int threads,
+			int level) {
+
 		nev = 0;
         map=null;
         entries=null;
         
 		if (option.equalsIgnoreCase("w")) {
 
+			if (level < COMPRESSION_DEFAULT || level > COMPRESSION_BEST) {
+				ErrorMessage("Wrong compression level: " + level);
+				level = COMPRESSION_DEFAULT;
+			}
+			this.level = level;
+			entries = new ArrayList<FileEntry>();
+
 			try {
 				(new File(file)).delete();
 				oof = new FileOutputStream(file);
-				zout = new ZipOutputStream(new BufferedOutputStream(oof));
+				if (threads > 1) {
+					pzout = new ZipBlockWriter(new BufferedOutputStream(oof,
+							1 << 16), threads, level);
+					titles = new ArrayList<String>();
+				} else {
+					zout = new ZipOutputStream(new BufferedOutputStream(oof));
+					if (level != COMPRESSION_STORED)
+						zout.setLevel(level);
+				}
 				data = new byte[BUFFER];
 				zipFile = null;
 
 				// write file version
-				ZipEntry entry = new ZipEntry("info");
-				zout.putNextEntry(entry);
 				String a = new String(Integer.toString(FILE_VERSION));
 				byte[] theByteArray = a.getBytes();
-				entry.setSize(theByteArray.length);
-				zout.write(theByteArray);
-				zout.closeEntry();
+				if (pzout != null)
+					pzout.add("info", theByteArray);
+				else
+					putEntry("info", theByteArray);
 
 			} catch (IOException e) {
 				e.printStackTrace();
@@ -145,8 +227,44 @@ public class PFile {
 				try {
 					InputStream zz = zipFile.getInputStream(ze);
 					record = PBufFile.Record.parseFrom(zz);
-					String title="";
 					if (record == null ) return false;
+					String title = getTitle(record);
+					
+					  map.put(title, new Integer(a.toString()));
+			          entries.add(new FileEntry(title,new Integer(a.toString()),ze.getCompressedSize(),record.getSerializedSize()));      
+			          zin.closeEntry();
+			          
+				} catch (IOException e) {				
+					e.printStackTrace();
+					return false;
+				}	
+				
+		 	}
+			}
+
+		} catch (FileNotFoundException e) {
+			e.printStackTrace();
+			return false;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+	
+		return true;
+	}
+
+	
+	
+
+	/**
+	 * Get the object name stored in a record.
+	 * 
+	 * @param record
+	 *            record
+	 * @return name or empty string
+	 */
+	private static String getTitle(Record record) {
+					String title="";
 					if (record.hasName()) {
 						title = record.getName();
 					} else if (record.hasF1D()) {
@@ -178,33 +296,9 @@ public class PFile {
 					} else {
 						title="";
 					}
-					
-					  map.put(title, new Integer(a.toString()));
-			          entries.add(new FileEntry(title,new Integer(a.toString()),ze.getCompressedSize(),record.getSerializedSize()));      
-			          zin.closeEntry();
-			          
-				} catch (IOException e) {				
-					e.printStackTrace();
-					return false;
-				}	
-				
-		 	}
-			}
-
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
-			return false;
-		} catch (IOException e) {
-			e.printStackTrace();
-			return false;
-		}
-	
-		return true;
+					return title;
 	}
 
-	
-	
-
 	/**
 	 * Get version of the input file. The version is an integer
 	 * written as an additional entry in the file "version".
@@ -476,12 +570,23 @@ public class PFile {
 		nev++;
 		String firec = Integer.toString(nev);
 		try {
-			data = record.build().toByteArray();
-			ZipEntry entry = new ZipEntry(firec);
-			zout.putNextEntry(entry);
-			entry.setSize(data.length);
-			zout.write(data);
-			zout.closeEntry();
+			final Record r = record.build();
+			String title = getTitle(r);
+			if (pzout != null) {
+				// serialize and compress on the worker threads
+				pzout.add(firec, new Callable<byte[]>() {
+					public byte[] call() {
+						return r.toByteArray();
+					}
+				});
+				titles.add(title);
+				updateEntries();
+			} else {
+				data = r.toByteArray();
+				ZipEntry entry = putEntry(firec, data);
+				entries.add(new FileEntry(title, nev, entry.getCompressedSize(),
+						data.length));
+			}
 		} catch (IOException e) {
 			e.printStackTrace();
 			success = false;
@@ -492,6 +597,44 @@ public class PFile {
 
 	};
 
+	/**
+	 * Write one entry using the sequential zip stream.
+	 * 
+	 * @param name
+	 *            entry name
+	 * @param bytes
+	 *            entry data
+	 * @return entry with the compressed size
+	 * @throws IOException
+	 */
+	private ZipEntry putEntry(String name, byte[] bytes) throws IOException {
+		ZipEntry entry = new ZipEntry(name);
+		if (level == COMPRESSION_STORED) {
+			CRC32 crc = new CRC32();
+			crc.update(bytes);
+			entry.setMethod(ZipEntry.STORED);
+			entry.setCompressedSize(bytes.length);
+			entry.setCrc(crc.getValue());
+		}
+		entry.setSize(bytes.length);
+		zout.putNextEntry(entry);
+		zout.write(bytes);
+		zout.closeEntry();
+		return entry;
+	}
+
+	/**
+	 * Add entries already written by the parallel writer to the entry list.
+	 */
+	private void updateEntries() {
+		// entry 0 is "info"
+		for (int i = entries.size() + 1; i < pzout.count(); i++) {
+			ZipBlockWriter.Block b = pzout.get(i);
+			entries.add(new FileEntry(titles.get(i - 1), i, b.length, b.size));
+			titles.set(i - 1, null);
+		}
+	}
+
 	/**
 	 * Get number of objects stored in the file.
 	 * 
@@ -519,10 +662,15 @@ public class PFile {
 	/**
 	 * Return file entries (ID,name,size).
 	 * It does not return the actual object.
+	 * In the write mode, entries with the serialized and compressed sizes are
+	 * added as they are written to the file. With several threads, the list is
+	 * complete after close().
 	 * 
 	 * @return file entry
 	 */
 	public ArrayList<FileEntry> getEntries() {
+		if (pzout != null)
+			updateEntries();
 		return entries;
 
 	};
@@ -586,7 +734,7 @@ public class PFile {
 	 * Read next object
 	 * @return next object.
 	 */
-	public Object read() {
+	public synchronized Object read() {
      nev++;
      return read(nev);
 	}
@@ -623,9 +771,46 @@ public class PFile {
 	
 	
 	
+	/**
+	 * Open an iterator over all objects in the file. The objects are decoded
+	 * by several threads and read ahead while the current one is processed.
+	 * Entries are returned in the order they were written. Call close() on
+	 * the reader if the iteration is stopped early.
+	 * 
+	 * @param threads
+	 *            number of decoding threads
+	 * @param queue
+	 *            maximum number of objects decoded ahead
+	 * @return reader (or null if the file is not opened for reading)
+	 */
+	public PrefetchReader<Object> openReader(int threads, int queue) {
+
+		if (zipFile == null)
+			return null;
+		return new PrefetchReader<Object>(1, size(), threads, queue) {
+			protected Object decode(int index) {
+				return read(index);
+			}
+		};
+	}
+
+	/**
+	 * Open an iterator over all objects in the file which uses all available
+	 * processors for decoding.
+	 * 
+	 * @return reader (or null if the file is not opened for reading)
+	 */
+	public PrefetchReader<Object> openReader() {
+
+		int threads = Runtime.getRuntime().availableProcessors();
+		return openReader(threads, 4 * threads);
+	}
+
 	/**
 	 * Get object from a file using its index.
 	 * 
+	 * This method can be called from several threads at the same time.
+	 * 
 	 * @param index
 	 *            of the object
 	 * @return Object extracted object (or null)
@@ -649,6 +834,13 @@ public class PFile {
 		} catch (IOException e) {
 			e.printStackTrace();
 			return ob;
+		} finally {
+			if (zz != null) {
+				try {
+					zz.close();
+				} catch (IOException e) {
+				}
+			}
 		}
 		
 		if (record == null) return ob;
@@ -865,9 +1057,14 @@ public class PFile {
 			}
 
 			if (oof != null) {
-				zout.finish();
-				zout.close();
-				oof.flush();
+				if (pzout != null) {
+					pzout.close();
+					updateEntries();
+					pzout = null;
+				} else {
+					zout.finish();
+					zout.close();
+				}
 				oof.close();
 				oof = null;
 			}
@@ -190,12 +190,147 @@ public class PReader implements Serializable{
 		
 		return null;
 
-		
+
 	}
-	
-	
-	
-			
+
+
+
+	/**
+	 * Parse numbers from an uncompressed text file using the fast
+	 * {@link TextParser}. Comment lines start with "#" or "*".
+	 *
+	 * @param sfile
+	 *            input file
+	 * @return parsed numbers or null if the file cannot be read
+	 * @throws NumberFormatException
+	 *             if a value is not a number
+	 */
+	static public TextParser.Result parse(File sfile) {
+
+		try {
+			return TextParser.parse(sfile);
+		} catch (IOException e) {
+			ErrorMessage(e.toString());
+		}
+		return null;
+	}
+
+	/**
+	 * Parse numbers from a text file at URL.
+	 *
+	 * @param url
+	 *            URL location of input file
+	 * @return parsed numbers or null if the file cannot be read
+	 * @throws NumberFormatException
+	 *             if a value is not a number
+	 */
+	static public TextParser.Result parse(URL url) {
+
+		try {
+			URLConnection urlConn = url.openConnection();
+			urlConn.setDoInput(true);
+			urlConn.setUseCaches(false);
+			return TextParser.parse(urlConn.getInputStream());
+		} catch (IOException e) {
+			ErrorMessage(e.toString());
+		}
+		return null;
+	}
+
+	/**
+	 * Parse numbers from a text file. It can read URL if the string starts
+	 * from http or ftp, otherwise a file on the file system is assumed.
+	 *
+	 * @param sfile
+	 *            file name or URL
+	 * @return parsed numbers or null if the file cannot be read
+	 * @throws NumberFormatException
+	 *             if a value is not a number
+	 */
+	static public TextParser.Result parse(String sfile) {
+
+		sfile = sfile.trim();
+		if (sfile.startsWith("http:") || sfile.startsWith("ftp:")
+				|| sfile.startsWith("https:")) {
+			try {
+				return parse(new URL(sfile));
+			} catch (MalformedURLException e) {
+				ErrorMessage(e.toString());
+			}
+			return null;
+		}
+		return parse(new File(sfile));
+	}
+
+	/**
+	 * Parse numbers from a gzipped text file.
+	 *
+	 * @param sfile
+	 *            input file (extension .gz)
+	 * @return parsed numbers or null if the file cannot be read
+	 * @throws NumberFormatException
+	 *             if a value is not a number
+	 */
+	static public TextParser.Result parseGZip(File sfile) {
+
+		try {
+			return TextParser.parse(new GZIPInputStream(new FileInputStream(
+					sfile), 1 << 16));
+		} catch (IOException e) {
+			ErrorMessage(e.toString());
+		}
+		return null;
+	}
+
+	/**
+	 * Parse numbers from a gzipped text file at URL.
+	 *
+	 * @param url
+	 *            URL location of input file
+	 * @return parsed numbers or null if the file cannot be read
+	 * @throws NumberFormatException
+	 *             if a value is not a number
+	 */
+	static public TextParser.Result parseGZip(URL url) {
+
+		try {
+			URLConnection urlConn = url.openConnection();
+			urlConn.setDoInput(true);
+			urlConn.setUseCaches(false);
+			return TextParser.parse(new GZIPInputStream(urlConn
+					.getInputStream(), 1 << 16));
+		} catch (IOException e) {
+			ErrorMessage(e.toString());
+		}
+		return null;
+	}
+
+	/**
+	 * Parse numbers from a gzipped text file. It can read URL if the string
+	 * starts from http or ftp, otherwise a file on the file system is assumed.
+	 *
+	 * @param sfile
+	 *            file name or URL (extension .gz)
+	 * @return parsed numbers or null if the file cannot be read
+	 * @throws NumberFormatException
+	 *             if a value is not a number
+	 */
+	static public TextParser.Result parseGZip(String sfile) {
+
+		sfile = sfile.trim();
+		if (sfile.startsWith("http") || sfile.startsWith("ftp")) {
+			try {
+				return parseGZip(new URL(sfile));
+			} catch (MalformedURLException e) {
+				ErrorMessage(e.toString());
+			}
+			return null;
+		}
+		return parseGZip(new File(sfile));
+	}
+
+
+
 	
 	
 	
@@ -0,0 +1,221 @@
+/**
+*    Copyright (C)  DataMelt project. The jHPLot package by S.Chekanov and Work.ORG
+*    All rights reserved.
+*
+*    This program is free software; you can redistribute it and/or modify it under the terms
+*    of the GNU General Public License as published by the Free Software Foundation; either
+*    version 3 of the License, or any later version.
+*
+*    This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+*    without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+*    See the GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License along with this program;
+*    if not, see <http://www.gnu.org/licenses>.
+*
+*    Additional permission under GNU GPL version 3 section 7:
+*    If you have received this program as a library with written permission from the DataMelt team,
+*    you can link or combine this library with your non-GPL project to convey the resulting work.
+*    In this case, this library should be considered as released under the terms of
+*    GNU Lesser public license (see <https://www.gnu.org/licenses/lgpl.html>),
+*    provided you include this license notice and a URL through which recipients can access the
+*    Corresponding Source.
+**/
+
+package jhplot.io;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Iterator over file entries which decodes entries in the background. Up to
+ * a given number of entries are read ahead and decoded by a pool of threads
+ * while the caller processes the current entry. Entries can be decoded in
+ * groups of consecutive indices, one group per task. Entries are returned in
+ * the order of their index. Use close() to stop the threads if the iteration
+ * is not finished.
+ * <p>
+ * Instances are created by {@link PFile#openReader(int, int)} and
+ * {@link EFile#openReader(int, int)}.
+ * 
+ * @author S.Chekanov
+ * 
+ * @param <T>
+ *            type of decoded entries
+ */
+public abstract class PrefetchReader<T> implements Iterator<T> {
+
+	private final ExecutorService pool;
+
+	private final ArrayDeque<Future<List<T>>> queue = new ArrayDeque<Future<List<T>>>();
+
+	private final int capacity;
+
+	private final int group;
+
+	private int next;
+
+	private final int last;
+
+	// decoded group which is returned now
+	private List<T> current;
+
+	private int pos;
+
+	/**
+	 * Create a reader for entries with indices from first to last.
+	 * 
+	 * @param first
+	 *            first index
+	 * @param last
+	 *            last index (inclusive)
+	 * @param threads
+	 *            number of decoding threads
+	 * @param capacity
+	 *            maximum number of entries decoded ahead
+	 */
+	protected PrefetchReader(int first, int last, int threads, int capacity) {
+		this(first, last, threads, capacity, 1);
+	}
+
+	/**
+	 * Create a reader for entries with indices from first to last, which are
+	 * decoded in groups of consecutive entries. The first group starts at
+	 * the first index.
+	 * 
+	 * @param first
+	 *            first index
+	 * @param last
+	 *            last index (inclusive)
+	 * @param threads
+	 *            number of decoding threads
+	 * @param capacity
+	 *            maximum number of entries decoded ahead, rounded up to whole
+	 *            groups
+	 * @param group
+	 *            number of entries decoded by one task
+	 */
+	protected PrefetchReader(int first, int last, int threads, int capacity,
+			int group) {
+		if (threads < 1 || capacity < 1 || group < 1)
+			throw new IllegalArgumentException(
+					"Number of threads, queue size and group size must be positive");
+		this.next = first;
+		this.last = last;
+		this.group = group;
+		this.capacity = (capacity + group - 1) / group;
+		this.pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "PrefetchReader");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Decode one entry. Called from the decoding threads.
+	 * 
+	 * @param index
+	 *            entry index
+	 * @return decoded entry
+	 */
+	protected abstract T decode(int index);
+
+	/**
+	 * Decode a group of consecutive entries. Called from the decoding
+	 * threads. The default implementation calls decode(int) for each entry.
+	 * 
+	 * @param first
+	 *            first index
+	 * @param last
+	 *            last index (inclusive)
+	 * @return decoded entries, one for each index
+	 */
+	protected List<T> decode(int first, int last) {
+		List<T> entries = new ArrayList<T>(last - first + 1);
+		for (int i = first; i <= last; i++)
+			entries.add(decode(i));
+		return entries;
+	}
+
+	/**
+	 * Returns true if there are more entries.
+	 */
+	public synchronized boolean hasNext() {
+		fill();
+		return (current != null && pos < current.size()) || !queue.isEmpty();
+	}
+
+	/**
+	 * Get the next decoded entry. Waits if it is not decoded yet.
+	 * 
+	 * @return next entry
+	 */
+	public synchronized T next() {
+		while (current == null || pos >= current.size()) {
+			fill();
+			Future<List<T>> f = queue.poll();
+			if (f == null)
+				throw new NoSuchElementException();
+			fill();
+			try {
+				current = f.get();
+				pos = 0;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(e);
+			} catch (ExecutionException e) {
+				Throwable c = e.getCause();
+				if (c instanceof RuntimeException)
+					throw (RuntimeException) c;
+				throw new IllegalStateException(c);
+			}
+		}
+		return current.get(pos++);
+	}
+
+	/**
+	 * Not supported.
+	 */
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Stop the decoding threads. Entries decoded ahead are discarded.
+	 */
+	public synchronized void close() {
+		next = last + 1;
+		current = null;
+		for (Future<List<T>> f : queue)
+			f.cancel(true);
+		queue.clear();
+		pool.shutdownNow();
+	}
+
+	private void fill() {
+		while (queue.size() < capacity && next <= last) {
+			final int from = next;
+			final int to = (int) Math.min(last, (long) next + group - 1);
+			next = to + 1;
+			queue.add(pool.submit(new Callable<List<T>>() {
+				public List<T> call() {
+					return decode(from, to);
+				}
+			}));
+		}
+		if (next > last && queue.isEmpty())
+			pool.shutdown();
+	}
+
+}
@@ -0,0 +1,675 @@
+package jhplot.io;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Fast parser of whitespace-separated numeric text files, as written by
+ * P0D, P1D and PND. Files are memory-mapped and numbers are parsed directly
+ * from bytes without creating intermediate strings. Large files are split
+ * into chunks at line boundaries which are parsed in parallel and
+ * concatenated in the original order.
+ * <p>
+ * Lines starting with "#" or "*" are comments. Empty lines are skipped.
+ * Numbers are converted exactly as by Double.parseDouble().
+ * <p>
+ * Values can also be separated by a given character, for example a comma in
+ * CSV files. In this case white space around values and quotes around a value
+ * are ignored, and an empty value is read as NaN. Quoted values cannot contain
+ * the separator or new lines.
+ *
+ * @author S.Chekanov
+ *
+ */
+public class TextParser {
+
+	/** Files larger than this are parsed in parallel */
+	private static final long PARALLEL_SIZE = 16L << 20;
+
+	/** Maximum size of one memory-mapped chunk */
+	private static final long MAX_CHUNK = 1L << 30;
+
+	private static final double[] POW10 = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5,
+			1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16,
+			1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	/**
+	 * Parsed numbers. All values are stored in one array in the order of the
+	 * file, with the number of values of each row kept separately.
+	 */
+	public static class Result {
+
+		private double[] values = new double[1024];
+
+		private int nvalues;
+
+		private int[] rows = new int[256];
+
+		private int nrows;
+
+		private long lines;
+
+		void add(double d) {
+			if (nvalues == values.length)
+				values = grow(values, nvalues);
+			values[nvalues++] = d;
+		}
+
+		void endRow(int count) {
+			if (nrows == rows.length) {
+				int[] tmp = new int[rows.length + (rows.length >> 1) + 1];
+				System.arraycopy(rows, 0, tmp, 0, nrows);
+				rows = tmp;
+			}
+			rows[nrows++] = count;
+		}
+
+		private static double[] grow(double[] a, int n) {
+			double[] tmp = new double[a.length + (a.length >> 1) + 1];
+			System.arraycopy(a, 0, tmp, 0, n);
+			return tmp;
+		}
+
+		void append(Result r) {
+			if (nvalues + r.nvalues > values.length) {
+				double[] tmp = new double[nvalues + r.nvalues];
+				System.arraycopy(values, 0, tmp, 0, nvalues);
+				values = tmp;
+			}
+			System.arraycopy(r.values, 0, values, nvalues, r.nvalues);
+			nvalues += r.nvalues;
+			if (nrows + r.nrows > rows.length) {
+				int[] tmp = new int[nrows + r.nrows];
+				System.arraycopy(rows, 0, tmp, 0, nrows);
+				rows = tmp;
+			}
+			System.arraycopy(r.rows, 0, rows, nrows, r.nrows);
+			nrows += r.nrows;
+			lines += r.lines;
+		}
+
+		/**
+		 * Number of rows (non-comment, non-empty lines).
+		 *
+		 * @return number of rows
+		 */
+		public int rows() {
+			return nrows;
+		}
+
+		/**
+		 * Number of values in a row.
+		 *
+		 * @param row
+		 *            row index
+		 * @return number of values
+		 */
+		public int length(int row) {
+			return rows[row];
+		}
+
+		/**
+		 * Total number of values.
+		 *
+		 * @return number of values
+		 */
+		public int size() {
+			return nvalues;
+		}
+
+		/**
+		 * All values in file order. The array can be longer than
+		 * {@link #size()}.
+		 *
+		 * @return array with values
+		 */
+		public double[] values() {
+			return values;
+		}
+
+		/**
+		 * All values in file order, in an array of exactly {@link #size()}
+		 * elements.
+		 *
+		 * @return array with values
+		 */
+		public double[] trimmedValues() {
+			if (values.length != nvalues) {
+				double[] tmp = new double[nvalues];
+				System.arraycopy(values, 0, tmp, 0, nvalues);
+				values = tmp;
+			}
+			return values;
+		}
+
+		/**
+		 * Check that all rows have the same number of values.
+		 *
+		 * @return number of values per row, or -1 if rows differ
+		 */
+		public int columns() {
+			if (nrows == 0)
+				return 0;
+			int n = rows[0];
+			for (int i = 1; i < nrows; i++)
+				if (rows[i] != n)
+					return -1;
+			return n;
+		}
+	}
+
+	/**
+	 * A value which is not a number, with the line where it was found.
+	 */
+	private static class LineError extends NumberFormatException {
+
+		private static final long serialVersionUID = 1L;
+
+		final long line;
+
+		final String token;
+
+		LineError(long line, String token) {
+			super("Error in reading the line " + line + ": " + token);
+			this.line = line;
+			this.token = token;
+		}
+	}
+
+	private TextParser() {
+	}
+
+	/**
+	 * Parse a file. Files larger than 16 MB are parsed in parallel using all
+	 * available processors.
+	 *
+	 * @param file
+	 *            input file
+	 * @return parsed numbers
+	 * @throws IOException
+	 *             if the file cannot be read
+	 * @throws NumberFormatException
+	 *             if a value is not a number
+	 */
+	public static Result parse(File file) throws IOException {
+		int threads = file.length() > PARALLEL_SIZE ? Runtime.getRuntime()
+				.availableProcessors() : 1;
+		return parse(file, threads);
+	}
+
+	/**
+	 * Parse a file using a given number of threads. The file is
+	 * memory-mapped and split into chunks at line boundaries.
+	 *
+	 * @param file
+	 *            input file
+	 * @param threads
+	 *            number of threads
+	 * @return parsed numbers
+	 * @throws IOException
+	 *             if the file cannot be read
+	 * @throws NumberFormatException
+	 *             if a value is not a number
+	 */
+	public static Result parse(File file, int threads) throws IOException {
+		return parse(file, ' ', threads);
+	}
+
+	/**
+	 * Parse a file with values separated by a given character. Files larger
+	 * than 16 MB are parsed in parallel using all available processors.
+	 *
+	 * @param file
+	 *            input file
+	 * @param sep
+	 *            separator of values, for example ','. A space or a tab
+	 *            means any white space.
+	 * @return parsed numbers
+	 * @throws IOException
+	 *             if the file cannot be read
+	 * @throws NumberFormatException
+	 *             if a value is not a number
+	 */
+	public static Result parse(File file, char sep) throws IOException {
+		int threads = file.length() > PARALLEL_SIZE ? Runtime.getRuntime()
+				.availableProcessors() : 1;
+		return parse(file, sep, threads);
+	}
+
+	/**
+	 * Parse a file with values separated by a given character using a given
+	 * number of threads. The file is memory-mapped and split into chunks at
+	 * line boundaries.
+	 *
+	 * @param file
+	 *            input file
+	 * @param sep
+	 *            separator of values, for example ','. A space or a tab
+	 *            means any white space.
+	 * @param threads
+	 *            number of threads
+	 * @return parsed numbers
+	 * @throws IOException
+	 *             if the file cannot be read
+	 * @throws NumberFormatException
+	 *             if a value is not a number
+	 */
+	public static Result parse(File file, final char sep, int threads)
+			throws IOException {
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel ch = raf.getChannel();
+			long size = ch.size();
+			int nchunks = (int) Math.max(threads, (size + MAX_CHUNK - 1)
+					/ MAX_CHUNK);
+			if (size < 4096)
+				nchunks = 1;
+
+			// split at line boundaries
+			List<long[]> ranges = new ArrayList<long[]>();
+			long start = 0;
+			ByteBuffer one = ByteBuffer.allocate(1);
+			for (int i = 1; i <= nchunks && start < size; i++) {
+				long end = (i == nchunks) ? size : Math.max(start, size * i
+						/ nchunks);
+				while (end < size) {
+					one.clear();
+					if (ch.read(one, end) <= 0 || one.get(0) == '\n')
+						break;
+					end++;
+				}
+				if (end < size)
+					end++; // include the new line
+				if (end - start > Integer.MAX_VALUE)
+					throw new IOException("Line is too long in " + file);
+				if (end > start)
+					ranges.add(new long[] { start, end });
+				start = end;
+			}
+
+			Result[] parts = new Result[ranges.size()];
+			if (threads <= 1 || ranges.size() <= 1) {
+				for (int i = 0; i < parts.length; i++)
+					parts[i] = parseChunk(ch, ranges.get(i), sep);
+			} else {
+				ExecutorService pool = Executors.newFixedThreadPool(Math.min(
+						threads, parts.length));
+				try {
+					List<Future<Result>> futures = new ArrayList<Future<Result>>();
+					for (final long[] r : ranges) {
+						final FileChannel fc = ch;
+						futures.add(pool.submit(new Callable<Result>() {
+							public Result call() throws IOException {
+								return parseChunk(fc, r, sep);
+							}
+						}));
+					}
+					for (int i = 0; i < parts.length; i++)
+						parts[i] = futures.get(i).get();
+				} catch (InterruptedException e) {
+					throw new InterruptedIOException(e.toString());
+				} catch (ExecutionException e) {
+					Throwable c = e.getCause();
+					if (c instanceof IOException)
+						throw (IOException) c;
+					if (c instanceof RuntimeException)
+						throw (RuntimeException) c;
+					throw new IOException(c);
+				} finally {
+					pool.shutdown();
+				}
+			}
+			return concat(parts);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Parse a stream, for example a decompressed or a remote file. The stream
+	 * is read in large blocks and closed at the end.
+	 *
+	 * @param in
+	 *            input stream
+	 * @return parsed numbers
+	 * @throws IOException
+	 *             if the stream cannot be read
+	 * @throws NumberFormatException
+	 *             if a value is not a number
+	 */
+	public static Result parse(InputStream in) throws IOException {
+		return parse(in, ' ');
+	}
+
+	/**
+	 * Parse a stream with values separated by a given character. The stream
+	 * is read in large blocks and closed at the end.
+	 *
+	 * @param in
+	 *            input stream
+	 * @param sep
+	 *            separator of values, for example ','. A space or a tab
+	 *            means any white space.
+	 * @return parsed numbers
+	 * @throws IOException
+	 *             if the stream cannot be read
+	 * @throws NumberFormatException
+	 *             if a value is not a number
+	 */
+	public static Result parse(InputStream in, char sep) throws IOException {
+		try {
+			return parseBlocks(in, sep);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Read a stream in large blocks and parse all complete lines of each
+	 * block, carrying an incomplete last line over to the next block.
+	 */
+	private static Result parseBlocks(InputStream in, char sep)
+			throws IOException {
+		Result res = new Result();
+		byte[] buf = new byte[1 << 20];
+		int len = 0;
+		while (true) {
+			if (len == buf.length) {
+				byte[] tmp = new byte[buf.length * 2];
+				System.arraycopy(buf, 0, tmp, 0, len);
+				buf = tmp;
+			}
+			int n = in.read(buf, len, buf.length - len);
+			if (n < 0)
+				break;
+			len += n;
+			int last = len - 1;
+			while (last >= 0 && buf[last] != '\n')
+				last--;
+			if (last < 0)
+				continue;
+			parseLines(buf, 0, last + 1, sep, res);
+			System.arraycopy(buf, last + 1, buf, 0, len - last - 1);
+			len = len - last - 1;
+		}
+		if (len > 0)
+			parseLines(buf, 0, len, sep, res);
+		return res;
+	}
+
+	/**
+	 * Parse one chunk of a file. Line numbers in errors are counted from the
+	 * start of the file.
+	 */
+	private static Result parseChunk(FileChannel ch, long[] r, char sep)
+			throws IOException {
+		try {
+			return parseRange(ch, r, sep);
+		} catch (LineError e) {
+			if (r[0] == 0)
+				throw e;
+			throw new LineError(countLines(ch, r[0]) + e.line, e.token);
+		}
+	}
+
+	/**
+	 * Count new lines before a position of a file.
+	 */
+	private static long countLines(FileChannel ch, long end)
+			throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+		long n = 0;
+		long pos = 0;
+		while (pos < end) {
+			buf.clear();
+			if (end - pos < buf.capacity())
+				buf.limit((int) (end - pos));
+			int len = ch.read(buf, pos);
+			if (len <= 0)
+				break;
+			for (int i = 0; i < len; i++)
+				if (buf.get(i) == '\n')
+					n++;
+			pos += len;
+		}
+		return n;
+	}
+
+	private static Result parseRange(FileChannel ch, long[] r, char sep)
+			throws IOException {
+		int len = (int) (r[1] - r[0]);
+		final MappedByteBuffer mb = ch.map(FileChannel.MapMode.READ_ONLY, r[0],
+				len);
+		return parseBlocks(new InputStream() {
+			public int read() {
+				return mb.hasRemaining() ? mb.get() & 0xFF : -1;
+			}
+
+			public int read(byte[] b, int off, int n) {
+				if (!mb.hasRemaining())
+					return -1;
+				n = Math.min(n, mb.remaining());
+				mb.get(b, off, n);
+				return n;
+			}
+		}, sep);
+	}
+
+	private static Result concat(Result[] parts) {
+		if (parts.length == 0)
+			return new Result();
+		if (parts.length == 1)
+			return parts[0];
+		Result res = new Result();
+		int nv = 0;
+		int nr = 0;
+		for (Result p : parts) {
+			nv += p.nvalues;
+			nr += p.nrows;
+		}
+		res.values = new double[nv];
+		res.rows = new int[nr];
+		for (Result p : parts)
+			res.append(p);
+		return res;
+	}
+
+	private static boolean isSpace(int c) {
+		return c == ' ' || c == '\t' || c == '\r' || c == '\f';
+	}
+
+	/**
+	 * Parse complete lines between two positions of a buffer.
+	 */
+	static void parseLines(byte[] b, int from, int to, char sep, Result res) {
+		if (sep != ' ' && sep != '\t') {
+			parseFields(b, from, to, (byte) sep, res);
+			return;
+		}
+		int pos = from;
+		while (pos < to) {
+			res.lines++;
+			// skip leading white space
+			while (pos < to && isSpace(b[pos]))
+				pos++;
+			if (pos < to && (b[pos] == '#' || b[pos] == '*')) {
+				while (pos < to && b[pos] != '\n')
+					pos++;
+				pos++;
+				continue;
+			}
+			int count = 0;
+			while (pos < to) {
+				int c = b[pos];
+				if (c == '\n') {
+					break;
+				}
+				if (isSpace(c)) {
+					pos++;
+					continue;
+				}
+				int end = pos;
+				while (end < to) {
+					int e = b[end];
+					if (e == '\n' || isSpace(e))
+						break;
+					end++;
+				}
+				res.add(parseDouble(b, pos, end, res.lines));
+				count++;
+				pos = end;
+			}
+			pos++; // new line
+			if (count > 0)
+				res.endRow(count);
+		}
+	}
+
+	/**
+	 * Parse complete lines with values separated by a character.
+	 */
+	private static void parseFields(byte[] b, int from, int to, byte sep,
+			Result res) {
+		int pos = from;
+		while (pos < to) {
+			res.lines++;
+			int end = pos;
+			while (end < to && b[end] != '\n')
+				end++;
+			while (pos < end && isSpace(b[pos]))
+				pos++;
+			if (pos == end || b[pos] == '#' || b[pos] == '*') {
+				pos = end + 1;
+				continue;
+			}
+			int count = 0;
+			while (true) {
+				int e = pos;
+				while (e < end && b[e] != sep)
+					e++;
+				int s = pos;
+				int f = e;
+				while (s < f && isSpace(b[s]))
+					s++;
+				while (f > s && isSpace(b[f - 1]))
+					f--;
+				if (f - s >= 2 && b[s] == '"' && b[f - 1] == '"') {
+					s++;
+					f--;
+				}
+				res.add(s == f ? Double.NaN : parseDouble(b, s, f, res.lines));
+				count++;
+				if (e == end)
+					break;
+				pos = e + 1;
+			}
+			res.endRow(count);
+			pos = end + 1;
+		}
+	}
+
+	/**
+	 * Parse a number between two positions. Numbers with at most 18
+	 * significant digits (so the mantissa cannot overflow a long) and a
+	 * decimal exponent up to 22 in magnitude are converted with a single
+	 * correctly rounded operation; all other forms fall back to
+	 * Double.parseDouble().
+	 */
+	private static double parseDouble(byte[] b, int from, int to, long line) {
+		int pos = from;
+		boolean neg = false;
+		int c = b[pos];
+		if (c == '-' || c == '+') {
+			neg = (c == '-');
+			pos++;
+		}
+		long m = 0;
+		int digits = 0;
+		int exp10 = 0;
+		boolean any = false;
+		boolean ok = true;
+		while (pos < to) {
+			c = b[pos];
+			if (c < '0' || c > '9')
+				break;
+			any = true;
+			if (digits < 18) {
+				m = m * 10 + (c - '0');
+				if (m != 0)
+					digits++;
+			} else {
+				ok = false;
+			}
+			pos++;
+		}
+		if (pos < to && b[pos] == '.') {
+			pos++;
+			while (pos < to) {
+				c = b[pos];
+				if (c < '0' || c > '9')
+					break;
+				any = true;
+				if (digits < 18) {
+					m = m * 10 + (c - '0');
+					if (m != 0)
+						digits++;
+					exp10--;
+				} else {
+					ok = false;
+				}
+				pos++;
+			}
+		}
+		if (any && pos < to && (b[pos] == 'e' || b[pos] == 'E')) {
+			pos++;
+			boolean eneg = false;
+			if (pos < to && (b[pos] == '-' || b[pos] == '+')) {
+				eneg = b[pos] == '-';
+				pos++;
+			}
+			int e = 0;
+			boolean edig = false;
+			while (pos < to) {
+				c = b[pos];
+				if (c < '0' || c > '9')
+					break;
+				edig = true;
+				if (e < 100000)
+					e = e * 10 + (c - '0');
+				pos++;
+			}
+			if (!edig)
+				ok = false;
+			exp10 += eneg ? -e : e;
+		}
+
+		if (ok && any && pos == to && m < (1L << 53) && exp10 >= -22
+				&& exp10 <= 22) {
+			double d = (double) m;
+			if (exp10 > 0)
+				d *= POW10[exp10];
+			else if (exp10 < 0)
+				d /= POW10[-exp10];
+			return neg ? -d : d;
+		}
+
+		// rare forms: long mantissas, large exponents, NaN, Infinity, suffixes
+		String s = new String(b, from, to - from);
+		try {
+			return Double.parseDouble(s);
+		} catch (NumberFormatException e) {
+			throw new LineError(line, s);
+		}
+	}
+
+}
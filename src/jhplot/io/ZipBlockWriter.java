@@ -0,0 +1,321 @@
+package jhplot.io;
+
+import java.io.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writer of ZIP files which compresses entries on a pool of worker threads.
+ * Entries are written in the order they were added. Each entry is deflated
+ * independently into memory, then the local header with the final sizes and
+ * CRC is written followed by the data, so no data descriptors are needed.
+ * Entries which do not become smaller after compression are stored. ZIP64
+ * records are added when the number of entries or the file size requires it,
+ * so the output can be read by java.util.zip.ZipFile.
+ * 
+ * @author S.Chekanov
+ * 
+ */
+class ZipBlockWriter {
+
+	private static final int STORED = 0;
+
+	private static final int DEFLATED = 8;
+
+	private final OutputStream out;
+
+	private final int level;
+
+	private final ExecutorService pool;
+
+	private final int maxPending;
+
+	private final ArrayDeque<Future<Block>> pending = new ArrayDeque<Future<Block>>();
+
+	private final List<Block> written = new ArrayList<Block>();
+
+	private final int dosTime;
+
+	private final int dosDate;
+
+	private long position = 0;
+
+	/**
+	 * One compressed entry.
+	 */
+	static class Block {
+		final String name;
+		final byte[] name8;
+		byte[] data;
+		int length;
+		int size;
+		long crc;
+		int method;
+		long offset;
+
+		Block(String name) throws UnsupportedEncodingException {
+			this.name = name;
+			this.name8 = name.getBytes("UTF-8");
+		}
+	}
+
+	/**
+	 * Create a writer.
+	 * 
+	 * @param out
+	 *            output stream. It is closed by close().
+	 * @param threads
+	 *            number of compression threads
+	 * @param level
+	 *            compression level 0-9 (0 means stored entries), or -1 for
+	 *            the default level
+	 */
+	ZipBlockWriter(OutputStream out, int threads, int level) {
+		this.out = out;
+		this.level = level;
+		this.maxPending = 4 * threads;
+		this.pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "ZipBlockWriter");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		Calendar c = Calendar.getInstance();
+		dosTime = (c.get(Calendar.HOUR_OF_DAY) << 11)
+				| (c.get(Calendar.MINUTE) << 5) | (c.get(Calendar.SECOND) >> 1);
+		dosDate = ((c.get(Calendar.YEAR) - 1980) << 9)
+				| ((c.get(Calendar.MONTH) + 1) << 5)
+				| c.get(Calendar.DAY_OF_MONTH);
+	}
+
+	/**
+	 * Add an entry. The data are compressed on a worker thread and must not
+	 * be modified after this call. Blocks if too many entries are waiting.
+	 * 
+	 * @param name
+	 *            entry name
+	 * @param data
+	 *            uncompressed data
+	 * @throws IOException
+	 *             if a previous entry cannot be written
+	 */
+	void add(String name, final byte[] data) throws IOException {
+		add(name, new Callable<byte[]>() {
+			public byte[] call() {
+				return data;
+			}
+		});
+	}
+
+	/**
+	 * Add an entry whose data are produced on a worker thread, for example by
+	 * serializing an immutable object. Blocks if too many entries are waiting.
+	 * 
+	 * @param name
+	 *            entry name
+	 * @param source
+	 *            returns uncompressed data
+	 * @throws IOException
+	 *             if a previous entry cannot be written
+	 */
+	void add(String name, final Callable<byte[]> source) throws IOException {
+		final Block b = new Block(name);
+		pending.add(pool.submit(new Callable<Block>() {
+			public Block call() throws Exception {
+				compress(b, source.call());
+				return b;
+			}
+		}));
+		while (pending.size() > maxPending)
+			writeNext();
+	}
+
+	/**
+	 * Number of entries written to the output so far.
+	 * 
+	 * @return number of entries
+	 */
+	int count() {
+		return written.size();
+	}
+
+	/**
+	 * Get a written entry.
+	 * 
+	 * @param i
+	 *            entry index in the order of add()
+	 * @return entry with its sizes
+	 */
+	Block get(int i) {
+		return written.get(i);
+	}
+
+	/**
+	 * Write all remaining entries and the central directory, and close the
+	 * output stream.
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	void close() throws IOException {
+		try {
+			while (!pending.isEmpty())
+				writeNext();
+			writeCentralDirectory();
+			out.flush();
+		} finally {
+			pool.shutdownNow();
+			out.close();
+		}
+	}
+
+	private void compress(Block b, byte[] data) {
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, data.length);
+		b.crc = crc.getValue();
+		b.size = data.length;
+		if (level != 0 && data.length > 0) {
+			Deflater def = new Deflater(level, true);
+			try {
+				def.setInput(data);
+				def.finish();
+				byte[] buf = new byte[data.length + (data.length >> 6) + 64];
+				int n = 0;
+				while (!def.finished() && n < data.length) {
+					n += def.deflate(buf, n, buf.length - n);
+				}
+				if (def.finished() && n < data.length) {
+					b.method = DEFLATED;
+					b.data = buf;
+					b.length = n;
+					return;
+				}
+			} finally {
+				def.end();
+			}
+		}
+		b.method = STORED;
+		b.data = data;
+		b.length = data.length;
+	}
+
+	private void writeNext() throws IOException {
+		Block b;
+		try {
+			b = pending.poll().get();
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException(e.toString());
+		} catch (ExecutionException e) {
+			throw new IOException(e.getCause());
+		}
+		b.offset = position;
+		byte[] h = new byte[30];
+		putInt(h, 0, 0x04034b50);
+		putShort(h, 4, 20);
+		putShort(h, 6, 0x0800); // UTF-8 names
+		putShort(h, 8, b.method);
+		putShort(h, 10, dosTime);
+		putShort(h, 12, dosDate);
+		putInt(h, 14, (int) b.crc);
+		putInt(h, 18, b.length);
+		putInt(h, 22, b.size);
+		putShort(h, 26, b.name8.length);
+		putShort(h, 28, 0);
+		write(h, h.length);
+		write(b.name8, b.name8.length);
+		write(b.data, b.length);
+		b.data = null;
+		written.add(b);
+	}
+
+	private void writeCentralDirectory() throws IOException {
+		long start = position;
+		for (Block b : written) {
+			boolean zip64 = b.offset >= 0xFFFFFFFFL;
+			byte[] h = new byte[46];
+			putInt(h, 0, 0x02014b50);
+			putShort(h, 4, zip64 ? 45 : 20);
+			putShort(h, 6, zip64 ? 45 : 20);
+			putShort(h, 8, 0x0800);
+			putShort(h, 10, b.method);
+			putShort(h, 12, dosTime);
+			putShort(h, 14, dosDate);
+			putInt(h, 16, (int) b.crc);
+			putInt(h, 20, b.length);
+			putInt(h, 24, b.size);
+			putShort(h, 28, b.name8.length);
+			putShort(h, 30, zip64 ? 12 : 0);
+			putInt(h, 42, zip64 ? 0xFFFFFFFF : (int) b.offset);
+			write(h, h.length);
+			write(b.name8, b.name8.length);
+			if (zip64) {
+				byte[] x = new byte[12];
+				putShort(x, 0, 0x0001);
+				putShort(x, 2, 8);
+				putLong(x, 4, b.offset);
+				write(x, x.length);
+			}
+		}
+		long size = position - start;
+		int n = written.size();
+
+		if (n >= 0xFFFF || start >= 0xFFFFFFFFL || size >= 0xFFFFFFFFL) {
+			long end64 = position;
+			byte[] z = new byte[56];
+			putInt(z, 0, 0x06064b50);
+			putLong(z, 4, 44);
+			putShort(z, 12, 45);
+			putShort(z, 14, 45);
+			putLong(z, 24, n);
+			putLong(z, 32, n);
+			putLong(z, 40, size);
+			putLong(z, 48, start);
+			write(z, z.length);
+			byte[] l = new byte[20];
+			putInt(l, 0, 0x07064b50);
+			putLong(l, 8, end64);
+			putInt(l, 16, 1);
+			write(l, l.length);
+		}
+
+		byte[] e = new byte[22];
+		putInt(e, 0, 0x06054b50);
+		putShort(e, 8, Math.min(n, 0xFFFF));
+		putShort(e, 10, Math.min(n, 0xFFFF));
+		putInt(e, 12, (int) Math.min(size, 0xFFFFFFFFL));
+		putInt(e, 16, (int) Math.min(start, 0xFFFFFFFFL));
+		write(e, e.length);
+	}
+
+	private void write(byte[] b, int len) throws IOException {
+		out.write(b, 0, len);
+		position += len;
+	}
+
+	private static void putShort(byte[] b, int off, int v) {
+		b[off] = (byte) v;
+		b[off + 1] = (byte) (v >>> 8);
+	}
+
+	private static void putInt(byte[] b, int off, int v) {
+		putShort(b, off, v);
+		putShort(b, off + 2, v >>> 16);
+	}
+
+	private static void putLong(byte[] b, int off, long v) {
+		putInt(b, off, (int) v);
+		putInt(b, off + 4, (int) (v >>> 32));
+	}
+
+}
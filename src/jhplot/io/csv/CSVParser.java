@@ -178,6 +178,55 @@ public class CSVParser {
         return parseLine(nextLine, false);
     }
 
+    /**
+     * Parses a line of numbers. Fields are split at the separator directly,
+     * without the character-by-character StringBuilder and the string array
+     * of parseLine(). White space and quote characters around a field are
+     * ignored and an empty field gives NaN. Fields cannot contain separators
+     * or span several lines.
+     *
+     * @param nextLine the string to parse
+     * @return the numbers of the line, or null if nextLine is null
+     * @throws NumberFormatException if a field is not a number
+     */
+    public double[] parseLineDoubles(String nextLine) {
+
+        if (nextLine == null) {
+            return null;
+        }
+        int n = 1;
+        for (int i = 0; i < nextLine.length(); i++) {
+            if (nextLine.charAt(i) == separator) {
+                n++;
+            }
+        }
+        double[] values = new double[n];
+        int pos = 0;
+        for (int k = 0; k < n; k++) {
+            int end = nextLine.indexOf(separator, pos);
+            if (end < 0) {
+                end = nextLine.length();
+            }
+            int s = pos;
+            int f = end;
+            while (s < f && Character.isWhitespace(nextLine.charAt(s))) {
+                s++;
+            }
+            while (f > s && Character.isWhitespace(nextLine.charAt(f - 1))) {
+                f--;
+            }
+            if (quotechar != NULL_CHARACTER && f - s >= 2
+                    && nextLine.charAt(s) == quotechar
+                    && nextLine.charAt(f - 1) == quotechar) {
+                s++;
+                f--;
+            }
+            values[k] = (s == f) ? Double.NaN : Double.parseDouble(nextLine.substring(s, f));
+            pos = end + 1;
+        }
+        return values;
+    }
+
     /**
      * Parses an incoming String and returns an array of elements.
      *
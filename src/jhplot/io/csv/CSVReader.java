@@ -354,6 +354,20 @@ public class CSVReader implements Closeable {
 
 
 
+    /**
+     * Reads the next line as numbers. Fields are split at the separator
+     * without creating a string array; see CSVParser.parseLineDoubles().
+     *
+     * @return numbers of the next line, or null at the end of the file
+     * @throws IOException
+     *             if bad things happen during the read
+     * @throws NumberFormatException
+     *             if a field is not a number
+     */
+    public double[] readNextDoubles() throws IOException {
+        return parser.parseLineDoubles(getNextLine());
+    }
+
     /**
      * Reads the next line from the file.
      * 
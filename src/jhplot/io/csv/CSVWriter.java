@@ -65,6 +65,19 @@ public class CSVWriter implements Closeable {
     public static final String DEFAULT_LINE_END = "\n";
 
     private ResultSetHelper resultService = new ResultSetHelperService();
+
+    /** Buffer reused by the numeric writeNext() methods. */
+    private char[] buf = new char[INITIAL_STRING_SIZE];
+
+    private int len;
+
+    private static final long[] POW10 = new long[19];
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++)
+            POW10[i] = POW10[i - 1] * 10;
+    }
     
     /**
      * Constructs CSVWriter using a comma for the separator.
@@ -322,6 +335,145 @@ public class CSVWriter implements Closeable {
 
     }
 
+    /**
+     * Writes the next line of numbers to the file. Numbers are formatted
+     * into a reusable buffer without creating strings. Each value is written
+     * with the fewest fraction digits (up to 17) that read back to the same
+     * double; other values are written as by Double.toString().
+     *
+     * @param nextLine
+     *            numbers of the line
+     */
+    public void writeNext(double[] nextLine) {
+        if (nextLine == null)
+            return;
+        writeNext(nextLine, 0, nextLine.length);
+    }
+
+    /**
+     * Writes a part of an array as the next line of numbers.
+     *
+     * @param values
+     *            numbers
+     * @param from
+     *            index of the first number
+     * @param to
+     *            index after the last number
+     */
+    public void writeNext(double[] values, int from, int to) {
+        len = 0;
+        for (int i = from; i < to; i++) {
+            if (i != from)
+                append(separator);
+            if (quotechar != NO_QUOTE_CHARACTER)
+                append(quotechar);
+            appendDouble(values[i]);
+            if (quotechar != NO_QUOTE_CHARACTER)
+                append(quotechar);
+        }
+        appendLineEnd();
+    }
+
+    /**
+     * Writes the next line of integer numbers to the file. Numbers are
+     * formatted into a reusable buffer without creating strings.
+     *
+     * @param nextLine
+     *            numbers of the line
+     */
+    public void writeNext(int[] nextLine) {
+        if (nextLine == null)
+            return;
+        len = 0;
+        for (int i = 0; i < nextLine.length; i++) {
+            if (i != 0)
+                append(separator);
+            if (quotechar != NO_QUOTE_CHARACTER)
+                append(quotechar);
+            appendLong(nextLine[i]);
+            if (quotechar != NO_QUOTE_CHARACTER)
+                append(quotechar);
+        }
+        appendLineEnd();
+    }
+
+    private void append(char c) {
+        if (len == buf.length)
+            buf = java.util.Arrays.copyOf(buf, 2 * buf.length);
+        buf[len++] = c;
+    }
+
+    private void appendLineEnd() {
+        for (int i = 0; i < lineEnd.length(); i++)
+            append(lineEnd.charAt(i));
+        pw.write(buf, 0, len);
+    }
+
+    private void appendLong(long v) {
+        if (v == Long.MIN_VALUE) {
+            appendString(Long.toString(v));
+            return;
+        }
+        if (v < 0) {
+            append('-');
+            v = -v;
+        }
+        appendDigits(v, 1);
+    }
+
+    /** Append digits of a non-negative number, padded with zeros to a width. */
+    private void appendDigits(long v, int width) {
+        int n = 1;
+        while (n < 19 && v >= POW10[n])
+            n++;
+        for (int i = n; i < width; i++)
+            append('0');
+        for (int i = n - 1; i >= 0; i--) {
+            append((char) ('0' + (v / POW10[i]) % 10));
+        }
+    }
+
+    private void appendString(String s) {
+        for (int i = 0; i < s.length(); i++)
+            append(s.charAt(i));
+    }
+
+    /**
+     * Append a double. A value m/10^k with |m| < 2^53 and k < 18 converts
+     * back exactly when the division gives the same double, since both the
+     * division and the parser round the same exact value.
+     */
+    private void appendDouble(double d) {
+        if (Double.isNaN(d) || Double.isInfinite(d)) {
+            appendString(Double.toString(d));
+            return;
+        }
+        double a = Math.abs(d);
+        if (a < 1e15 && a == Math.rint(a)) {
+            if (d < 0 || (d == 0 && 1 / d < 0))
+                append('-');
+            appendDigits((long) a, 1);
+            append('.');
+            append('0');
+            return;
+        }
+        for (int k = 1; k < 18; k++) {
+            double x = a * POW10[k];
+            if (x >= 9007199254740992.0)
+                break;
+            long m = Math.round(x);
+            if (m / (double) POW10[k] == a) {
+                if (d < 0)
+                    append('-');
+                appendDigits(m / POW10[k], 1);
+                append('.');
+                appendDigits(m % POW10[k], k);
+                return;
+            }
+        }
+        appendString(Double.toString(d));
+    }
+
 	private boolean stringContainsSpecialCharacters(String line) {
 	    return line.indexOf(quotechar) != -1 || line.indexOf(escapechar) != -1;
     }
@@ -1,14 +1,49 @@
 package jhplot.io.db;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 
+/**
+ * Base class of a file with keyed records. Records can be read by several 
+ * threads at the same time: reads use positional FileChannel reads (or a 
+ * memory-mapped buffer when the file is opened read-only) and only take the 
+ * read lock. Inserts, updates and deletes are done by one writer which holds 
+ * the write lock.
+ */
 public abstract class BaseRecordsFile {
 
   // The database file.
   private RandomAccessFile file;
 
+  // Channel of the database file used for positional reads.
+  private FileChannel channel;
+
+  // Whole file mapped into memory if the file is opened read-only.
+  private MappedByteBuffer mapped;
+
+  // Readers hold the read lock, operations which modify the file hold the write lock.
+  protected final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+  // Path of the database file.
+  private String dbPath;
+
+  // Journal of the current batch (null if no batch is started).
+  private DataOutputStream journal;
+  private FileOutputStream journalFile;
+  private Set<String> batchKeys;
+
+  // First bytes of a journal file.
+  private static final int JOURNAL_MAGIC = 0x44424a31;
+
+  // Maximum number of records and bytes inserted at once when a journal is applied.
+  private static final int JOURNAL_CHUNK_RECORDS = 8192;
+  private static final int JOURNAL_CHUNK_BYTES = 1 << 24;
+
   // Current file pointer to the start of the record data.
   protected long dataStartPtr;    
 
@@ -39,7 +74,10 @@ public abstract class BaseRecordsFile {
     if (f.exists()) {
       throw new RecordsFileException("Database already exits: " + dbPath);
     } 
+    this.dbPath = dbPath;
+    new File(journalPath()).delete();
     file = new RandomAccessFile(f, "rw");
+    channel = file.getChannel();
     dataStartPtr = indexPositionToKeyFp(initialSize);  // Record Data Region starts were the 
     setFileLength(dataStartPtr);                       // (i+1)th index entry would start.
     writeNumRecordsHeader(0);
@@ -55,8 +93,13 @@ public abstract class BaseRecordsFile {
     if(!f.exists()) {
       throw new RecordsFileException("Database not found: " + dbPath);
     } 
+    this.dbPath = dbPath;
     file = new RandomAccessFile(f, accessFlags);
+    channel = file.getChannel();
     dataStartPtr = readDataStartHeader();
+    if (accessFlags.equals("r") && channel.size() <= Integer.MAX_VALUE) {
+      mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
   }
 
   /**
@@ -190,6 +233,53 @@ public abstract class BaseRecordsFile {
   }
 
 
+  /**
+   * Appends several entries to the end of the index in one sequential write. 
+   * Assumes that insureIndexSpace() has already been called. The number of 
+   * records header is written last, so the new entries become visible at once.
+   */
+  protected void addEntriesToIndex(List<String> keys, List<RecordHeader> headers, int currentNumRecords) throws IOException, RecordsFileException {
+    file.seek(indexPositionToKeyFp(currentNumRecords));
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOutputStream(), 1 << 16));
+    byte[] pad = new byte[MAX_KEY_LENGTH];
+    for (int i = 0; i < keys.size(); i++) {
+      byte[] key = keyToBytes(keys.get(i));
+      out.write(key);
+      out.write(pad, 0, MAX_KEY_LENGTH - key.length);
+      RecordHeader header = headers.get(i);
+      header.write(out);
+      header.setIndexPosition(currentNumRecords + i);
+    }
+    out.flush();
+    writeNumRecordsHeader(currentNumRecords + keys.size());
+  }
+
+  /**
+   * Returns the key as written to the index. 
+   */
+  private static byte[] keyToBytes(String key) throws IOException, RecordsFileException {
+    DbByteArrayOutputStream temp = new DbByteArrayOutputStream(MAX_KEY_LENGTH);
+    (new DataOutputStream(temp)).writeUTF(key);
+    if (temp.size() > MAX_KEY_LENGTH) {
+      throw new RecordsFileException("Key is larger than permitted size of " + MAX_KEY_LENGTH + " bytes");
+    }
+    return temp.toByteArray();
+  }
+
+  /**
+   * Output stream which writes to the database file at its current position.
+   */
+  private OutputStream fileOutputStream() {
+    return new OutputStream() {
+      public void write(int b) throws IOException {
+        file.write(b);
+      }
+      public void write(byte[] b, int off, int len) throws IOException {
+        file.write(b, off, len);
+      }
+    };
+  }
+
   /**
    * Removes the record from the index. Replaces the target with the entry at the 
    * end of the index. 
@@ -208,40 +298,285 @@ public abstract class BaseRecordsFile {
   }
 
   /**
-   * Adds the given record to the database.
+   * Adds the given record to the database. If a batch is started, the record is 
+   * written to the journal and added to the database by commitBatch().
    */
-  public synchronized void insertRecord(RecordWriter rw) throws RecordsFileException, IOException { 
+  public void insertRecord(RecordWriter rw) throws RecordsFileException, IOException { 
+    lock.writeLock().lock();
+    try {
+      if (journal != null) {
+        addToBatch(rw);
+        return;
+      }
+      String key = rw.getKey();
+      if (recordExists(key)) {
+        throw new RecordsFileException("Key exists: " + key);
+      }
+      insureIndexSpace(getNumRecords() + 1);
+      RecordHeader newRecord = allocateRecord(key, rw.getDataLength());
+      writeRecordData(newRecord, rw);
+      addEntryToIndex(key, newRecord, getNumRecords());
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Adds several records to the database. The index space is grown once, then 
+   * the record data are appended to the end of the file and the index entries 
+   * are written in one sequential pass each.
+   */
+  public void insertRecords(List<RecordWriter> records) throws RecordsFileException, IOException {
+    lock.writeLock().lock();
+    try {
+      Set<String> keys = new HashSet<String>();
+      List<String> keyList = new ArrayList<String>(records.size());
+      long total = 0;
+      for (RecordWriter rw : records) {
+        String key = rw.getKey();
+        if (recordExists(key) || !keys.add(key)) {
+          throw new RecordsFileException("Key exists: " + key);
+        }
+        keyToBytes(key);
+        keyList.add(key);
+        total += Math.max(1, rw.getDataLength());
+      }
+      if (records.isEmpty()) {
+        return;
+      }
+      int currentNumRecords = getNumRecords();
+      insureIndexSpace(currentNumRecords + records.size());
+
+      long fp = getFileLength();
+      setFileLength(fp + total);
+      file.seek(fp);
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOutputStream(), 1 << 16));
+      List<RecordHeader> headers = new ArrayList<RecordHeader>(records.size());
+      for (RecordWriter rw : records) {
+        RecordHeader header = new RecordHeader(fp, Math.max(1, rw.getDataLength()));
+        header.dataCount = rw.getDataLength();
+        rw.writeTo(out);
+        if (header.dataCount == 0) {
+          out.write(0);
+        }
+        fp += header.dataCapacity;
+        headers.add(header);
+      }
+      out.flush();
+      addEntriesToIndex(keyList, headers, currentNumRecords);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Starts a batch. Records inserted until commitBatch() are appended to a 
+   * journal file next to the database and are not visible before the commit. 
+   * If the program stops before the commit, the database keeps its previous 
+   * content. 
+   */
+  public void beginBatch() throws RecordsFileException, IOException {
+    lock.writeLock().lock();
+    try {
+      if (journal != null) {
+        throw new RecordsFileException("Batch is already started");
+      }
+      journalFile = new FileOutputStream(journalPath());
+      journal = new DataOutputStream(new BufferedOutputStream(journalFile, 1 << 16));
+      journal.writeInt(JOURNAL_MAGIC);
+      batchKeys = new HashSet<String>();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Returns true if a batch is started.
+   */
+  public boolean isBatch() {
+    return journal != null;
+  }
+
+  /**
+   * Commits the current batch. The journal is closed with a commit mark and 
+   * synchronized to the disk, then the records are added to the database and 
+   * the journal is removed. If the program stops while the records are added, 
+   * the journal is applied again when the database is opened for writing.
+   */
+  public void commitBatch() throws RecordsFileException, IOException {
+    lock.writeLock().lock();
+    try {
+      if (journal == null) {
+        throw new RecordsFileException("Batch is not started");
+      }
+      try {
+        journal.writeByte(0);
+        journal.writeInt(batchKeys.size());
+        journal.flush();
+        journalFile.getFD().sync();
+      } finally {
+        journal.close();
+        journal = null;
+        journalFile = null;
+        batchKeys = null;
+      }
+      recoverJournal();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Discards the records of the current batch.
+   */
+  public void abortBatch() throws IOException {
+    lock.writeLock().lock();
+    try {
+      if (journal == null) {
+        return;
+      }
+      journal.close();
+      journal = null;
+      journalFile = null;
+      batchKeys = null;
+      new File(journalPath()).delete();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Appends a record to the journal of the current batch.
+   */
+  private void addToBatch(RecordWriter rw) throws RecordsFileException, IOException {
     String key = rw.getKey();
-    if (recordExists(key)) {
+    if (recordExists(key) || batchKeys.contains(key)) {
       throw new RecordsFileException("Key exists: " + key);
     }
-    insureIndexSpace(getNumRecords() + 1);
-    RecordHeader newRecord = allocateRecord(key, rw.getDataLength());
-    writeRecordData(newRecord, rw);
-    addEntryToIndex(key, newRecord, getNumRecords());
+    keyToBytes(key);
+    journal.writeByte(1);
+    journal.writeUTF(key);
+    journal.writeInt(rw.getDataLength());
+    rw.writeTo(journal);
+    batchKeys.add(key);
+  }
+
+  /**
+   * Applies a committed journal left next to the database and removes it. A 
+   * journal without the commit mark is removed without changes. Records which 
+   * are already in the database (from an interrupted commit) are skipped. 
+   * Subclasses call this method after the in-memory index is loaded.
+   *
+   * @return true if records were added
+   */
+  protected boolean recoverJournal() throws RecordsFileException, IOException {
+    File jf = new File(journalPath());
+    if (!jf.exists()) {
+      return false;
+    }
+    boolean applied = false;
+    int count = readJournal(jf, false);
+    if (count >= 0) {
+      insureIndexSpace(getNumRecords() + count);
+      readJournal(jf, true);
+      file.getFD().sync();
+      applied = true;
+    }
+    jf.delete();
+    return applied;
+  }
+
+  /**
+   * Reads a journal file and optionally inserts its records.
+   *
+   * @return number of records, or -1 if the journal has no commit mark
+   */
+  private int readJournal(File jf, boolean apply) throws RecordsFileException, IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(jf), 1 << 16));
+    try {
+      if (in.readInt() != JOURNAL_MAGIC) {
+        return -1;
+      }
+      List<RecordWriter> chunk = new ArrayList<RecordWriter>();
+      long chunkBytes = 0;
+      int n = 0;
+      byte[] skip = new byte[8192];
+      while (in.readByte() != 0) {
+        String key = in.readUTF();
+        int length = in.readInt();
+        if (apply && !recordExists(key)) {
+          RecordWriter rw = new RecordWriter(key);
+          byte[] data = new byte[length];
+          in.readFully(data);
+          rw.getOutputStream().write(data);
+          chunk.add(rw);
+          chunkBytes += length;
+          if (chunk.size() >= JOURNAL_CHUNK_RECORDS || chunkBytes >= JOURNAL_CHUNK_BYTES) {
+            insertRecords(chunk);
+            chunk.clear();
+            chunkBytes = 0;
+          }
+        } else {
+          while (length > 0) {
+            int k = Math.min(length, skip.length);
+            in.readFully(skip, 0, k);
+            length -= k;
+          }
+        }
+        n++;
+      }
+      if (in.readInt() != n) {
+        return -1;
+      }
+      if (apply) {
+        insertRecords(chunk);
+      }
+      return n;
+    } catch (EOFException e) {
+      return -1;
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Returns the path of the journal file used by batches.
+   */
+  protected String journalPath() {
+    return dbPath + ".journal";
   }
 
   /**
    * Updates an existing record. If the new contents do not fit in the original record,
    * then the update is handled by deleting the old record and adding the new.
    */
-  public synchronized void updateRecord(RecordWriter rw) throws RecordsFileException, IOException { 
-    RecordHeader header = keyToRecordHeader(rw.getKey());
-    if (rw.getDataLength() > header.dataCapacity) {
-      deleteRecord(rw.getKey());
-      insertRecord(rw);
-    } else {
-      writeRecordData(header, rw);
-      writeRecordHeaderToIndex(header);
+  public void updateRecord(RecordWriter rw) throws RecordsFileException, IOException { 
+    lock.writeLock().lock();
+    try {
+      RecordHeader header = keyToRecordHeader(rw.getKey());
+      if (rw.getDataLength() > header.dataCapacity) {
+        deleteRecord(rw.getKey());
+        insertRecord(rw);
+      } else {
+        writeRecordData(header, rw);
+        writeRecordHeaderToIndex(header);
+      }
+    } finally {
+      lock.writeLock().unlock();
     }
   }
 
   /**
-   * Reads a record.
+   * Reads a record. Can be called by several threads at the same time.
    */
-  public synchronized RecordReader readRecord(String key) throws RecordsFileException, IOException {
-    byte[] data = readRecordData(key);
-    return new RecordReader(key, data);
+  public RecordReader readRecord(String key) throws RecordsFileException, IOException {
+    lock.readLock().lock();
+    try {
+      byte[] data = readRecordData(key);
+      return new RecordReader(key, data);
+    } finally {
+      lock.readLock().unlock();
+    }
   }
 
   /**
@@ -252,12 +587,23 @@ public abstract class BaseRecordsFile {
   }
 
   /**
-   * Reads the record data for the given record header.
+   * Reads the record data for the given record header. Positional reads do not 
+   * change the file pointer, so the data can be read by several threads. 
    */
   protected byte[] readRecordData(RecordHeader header) throws IOException {
     byte[] buf = new byte[header.dataCount];
-    file.seek(header.dataPointer);
-    file.readFully(buf);
+    if (mapped != null) {
+      ByteBuffer b = mapped.duplicate();
+      b.position((int)header.dataPointer);
+      b.get(buf);
+      return buf;
+    }
+    ByteBuffer b = ByteBuffer.wrap(buf);
+    while (b.hasRemaining()) {
+      if (channel.read(b, header.dataPointer + b.position()) < 0) {
+        throw new EOFException();
+      }
+    }
     return buf;
   }
 
@@ -294,30 +640,35 @@ public abstract class BaseRecordsFile {
   /**
    * Deletes a record.
    */
-  public synchronized void deleteRecord(String key) throws RecordsFileException, IOException {
-    RecordHeader delRec = keyToRecordHeader(key);
-    int currentNumRecords = getNumRecords();
-    if (getFileLength() == delRec.dataPointer + delRec.dataCapacity) {
-      // shrink file since this is the last record in the file
-      setFileLength(delRec.dataPointer);
-    } else {
-      RecordHeader previous = getRecordAt(delRec.dataPointer -1);
-      if (previous != null) {
-	// append space of deleted record onto previous record
-	previous.dataCapacity += delRec.dataCapacity;
-	writeRecordHeaderToIndex(previous);
+  public void deleteRecord(String key) throws RecordsFileException, IOException {
+    lock.writeLock().lock();
+    try {
+      RecordHeader delRec = keyToRecordHeader(key);
+      int currentNumRecords = getNumRecords();
+      if (getFileLength() == delRec.dataPointer + delRec.dataCapacity) {
+        // shrink file since this is the last record in the file
+        setFileLength(delRec.dataPointer);
       } else {
-	// target record is first in the file and is deleted by adding its space to
-	// the second record.
-	RecordHeader secondRecord = getRecordAt(delRec.dataPointer + (long)delRec.dataCapacity);
-	byte[] data = readRecordData(secondRecord);
-	secondRecord.dataPointer = delRec.dataPointer;
-	secondRecord.dataCapacity += delRec.dataCapacity;
-	writeRecordData(secondRecord, data);
-	writeRecordHeaderToIndex(secondRecord);
+        RecordHeader previous = getRecordAt(delRec.dataPointer -1);
+        if (previous != null) {
+	  // append space of deleted record onto previous record
+	  previous.dataCapacity += delRec.dataCapacity;
+	  writeRecordHeaderToIndex(previous);
+        } else {
+	  // target record is first in the file and is deleted by adding its space to
+	  // the second record.
+	  RecordHeader secondRecord = getRecordAt(delRec.dataPointer + (long)delRec.dataCapacity);
+	  byte[] data = readRecordData(secondRecord);
+	  secondRecord.dataPointer = delRec.dataPointer;
+	  secondRecord.dataCapacity += delRec.dataCapacity;
+	  writeRecordData(secondRecord, data);
+	  writeRecordHeaderToIndex(secondRecord);
+        }
       }
+      deleteEntryFromIndex(key, delRec, currentNumRecords); 
+    } finally {
+      lock.writeLock().unlock();
     }
-    deleteEntryFromIndex(key, delRec, currentNumRecords); 
   }
 
 
@@ -333,8 +684,19 @@ public abstract class BaseRecordsFile {
       writeDataStartPtrHeader(dataStartPtr);
       return;
     }
+    if (endIndexPtr > getFileLength()) {
+      // The index grows past the end of the file. Extend the file first, so each
+      // record is moved once behind the new index region.
+      setFileLength(endIndexPtr);
+    }
     while (endIndexPtr > dataStartPtr) {
       RecordHeader first = getRecordAt(dataStartPtr);
+      if (first == null) {
+        // only unused space is left before the end of the index region
+        dataStartPtr = endIndexPtr;
+        writeDataStartPtrHeader(dataStartPtr);
+        break;
+      }
       byte[] data = readRecordData(first);
       first.dataPointer = getFileLength();
       // If first.dataCapacity is set to the actual data count BEFORE resetting dataStartPtr,
@@ -353,11 +715,18 @@ public abstract class BaseRecordsFile {
   /**
    * Closes the file.
    */
-  public synchronized void close() throws IOException, RecordsFileException {
+  public void close() throws IOException, RecordsFileException {
+    lock.writeLock().lock();
     try {
+      if (journal != null) {
+        commitBatch();
+      }
       file.close();
     } finally {
       file = null;
+      channel = null;
+      mapped = null;
+      lock.writeLock().unlock();
     }
   }
 
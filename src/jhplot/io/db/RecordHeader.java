@@ -26,6 +26,13 @@ public class RecordHeader {
    */
   protected int indexPosition;
 
+  /**
+   * Data pointer and free space under which this header is kept in the 
+   * in-memory free-space index of RecordsFile. Not written to the file.
+   */
+  long indexedPointer;
+  int indexedFree;
+
   protected RecordHeader() {
   }
 
@@ -25,6 +25,7 @@ package jhplot.io.db;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 
@@ -33,8 +34,31 @@ public class RecordsFile extends BaseRecordsFile {
   /**
    * Hashtable which holds the in-memory index. For efficiency, the entire index 
    * is cached in memory. The hashtable maps a key of type String to a RecordHeader.
+   * It can be read by several threads without locking.
    */
-  protected Hashtable  memIndex;    
+  protected ConcurrentHashMap<String,RecordHeader>  memIndex;    
+
+  /**
+   * Records ordered by their data pointer. Used to find the record which 
+   * holds a given file location.
+   */
+  private TreeMap<Long,RecordHeader> positionIndex = new TreeMap<Long,RecordHeader>();
+
+  /**
+   * Records with free space ordered by the size of the free space 
+   * (and by the data pointer for equal sizes). Used to allocate new records.
+   */
+  private TreeSet<RecordHeader> freeIndex = new TreeSet<RecordHeader>(new Comparator<RecordHeader>() {
+    public int compare(RecordHeader a, RecordHeader b) {
+      if (a.indexedFree != b.indexedFree) {
+        return a.indexedFree < b.indexedFree ? -1 : 1;
+      }
+      if (a.indexedPointer != b.indexedPointer) {
+        return a.indexedPointer < b.indexedPointer ? -1 : 1;
+      }
+      return 0;
+    }
+  });
 
   /**
    * Creates a new database file.  The initialSize parameter determines the 
@@ -44,7 +68,7 @@ public class RecordsFile extends BaseRecordsFile {
    */
   public RecordsFile(String dbPath, int initialSize) throws IOException, RecordsFileException {
     super(dbPath, initialSize);
-    memIndex = new Hashtable(initialSize);
+    memIndex = new ConcurrentHashMap<String,RecordHeader>(initialSize);
   }
 
   /**
@@ -53,12 +77,16 @@ public class RecordsFile extends BaseRecordsFile {
   public RecordsFile(String dbPath, String accessFlags) throws IOException, RecordsFileException {
     super(dbPath, accessFlags);
     int numRecords = readNumRecordsHeader();
-    memIndex = new Hashtable(numRecords);
+    memIndex = new ConcurrentHashMap<String,RecordHeader>(Math.max(numRecords, 16));
     for (int i = 0; i < numRecords; i++) {
       String key = readKeyFromIndex(i);
       RecordHeader header = readRecordHeaderFromIndex(i);
       header.setIndexPosition(i);
       memIndex.put(key, header);
+      addToSpaceIndex(header);
+    }
+    if (!accessFlags.equals("r")) {
+      recoverJournal();
     }
   }
 
@@ -66,21 +94,21 @@ public class RecordsFile extends BaseRecordsFile {
   /**
    * Returns an enumeration of all the keys in the database.
    */
-  public synchronized Enumeration enumerateKeys() {
+  public Enumeration enumerateKeys() {
     return memIndex.keys();
   }
 
   /**
    * Returns the current number of records in the database. 
    */
-  public synchronized int getNumRecords() {
+  public int getNumRecords() {
     return memIndex.size();
   }
 
   /**
    * Checks if there is a record belonging to the given key. 
    */
-  public synchronized boolean recordExists(String key) {
+  public boolean recordExists(String key) {
     return memIndex.containsKey(key);
   }
 
@@ -88,7 +116,7 @@ public class RecordsFile extends BaseRecordsFile {
    * Maps a key to a record header by looking it up in the in-memory index.
    */
   protected RecordHeader keyToRecordHeader(String key) throws RecordsFileException {
-    RecordHeader h = (RecordHeader)memIndex.get(key);
+    RecordHeader h = memIndex.get(key);
     if (h==null) {
       throw new RecordsFileException("Key not found: " + key);
     } 
@@ -97,20 +125,19 @@ public class RecordsFile extends BaseRecordsFile {
 
   /**
    * This method searches the file for free space and then returns a RecordHeader 
-   * which uses the space. (O(n) memory accesses)
+   * which uses the space. The record with the smallest free space which 
+   * fits the data is split. (O(log n) memory accesses)
    */
   protected RecordHeader allocateRecord(String key, int dataLength) throws RecordsFileException, IOException {
     // search for empty space
     RecordHeader newRecord = null;
-    Enumeration e = memIndex.elements();
-    while (e.hasMoreElements()) {
-      RecordHeader next = (RecordHeader)e.nextElement();
-      int free = next.getFreeSpace();
-      if (dataLength <= next.getFreeSpace()) {
+    RecordHeader probe = new RecordHeader();
+    probe.indexedFree = dataLength;
+    probe.indexedPointer = Long.MIN_VALUE;
+    RecordHeader next = freeIndex.ceiling(probe);
+    if (next != null) {
 	newRecord = next.split();
 	writeRecordHeaderToIndex(next);
-	break;
-      }
     }
     if (newRecord == null) {
       // append record to end of file - grows file to allocate space
@@ -124,30 +151,70 @@ public class RecordsFile extends BaseRecordsFile {
   /**
    * Returns the record to which the target file pointer belongs - meaning the specified location
    * in the file is part of the record data of the RecordHeader which is returned.  Returns null if 
-   * the location is not part of a record. (O(n) mem accesses)
+   * the location is not part of a record. (O(log n) mem accesses)
    */
   protected RecordHeader getRecordAt(long targetFp) throws RecordsFileException {
-    Enumeration e = memIndex.elements();
-    while (e.hasMoreElements()) {
-      RecordHeader next = (RecordHeader) e.nextElement();
-      if (targetFp >= next.dataPointer &&
-	  targetFp < next.dataPointer + (long)next.dataCapacity) {
-	return next;
-      }
+    Map.Entry<Long,RecordHeader> e = positionIndex.floorEntry(targetFp);
+    if (e == null) {
+      return null;
+    }
+    RecordHeader next = e.getValue();
+    if (targetFp < next.dataPointer + (long)next.dataCapacity) {
+      return next;
     }
     return null;
   }
 
+  /**
+   * Writes the record header to the index and updates the in-memory
+   * position and free-space indices, since the data pointer or the free 
+   * space of the record may have changed. 
+   */
+  protected void writeRecordHeaderToIndex(RecordHeader header) throws IOException {
+    super.writeRecordHeaderToIndex(header);
+    removeFromSpaceIndex(header);
+    addToSpaceIndex(header);
+  }
+
+  /**
+   * Adds a record to the position and free-space indices.
+   */
+  private void addToSpaceIndex(RecordHeader header) {
+    header.indexedPointer = header.dataPointer;
+    header.indexedFree = header.getFreeSpace();
+    if (header.dataCapacity > 0) {
+      positionIndex.put(header.indexedPointer, header);
+    }
+    if (header.indexedFree > 0) {
+      freeIndex.add(header);
+    }
+  }
+
+  /**
+   * Removes a record from the position and free-space indices using the 
+   * values under which it was added. 
+   */
+  private void removeFromSpaceIndex(RecordHeader header) {
+    if (positionIndex.get(header.indexedPointer) == header) {
+      positionIndex.remove(header.indexedPointer);
+    }
+    freeIndex.remove(header);
+  }
+
 
   /**
    * Closes the database. 
    */
-  public synchronized void close() throws IOException, RecordsFileException {
+  public void close() throws IOException, RecordsFileException {
+    lock.writeLock().lock();
     try {
       super.close();
     } finally {
       memIndex.clear();
       memIndex = null;
+      positionIndex.clear();
+      freeIndex.clear();
+      lock.writeLock().unlock();
     }
   }
 
@@ -158,15 +225,31 @@ public class RecordsFile extends BaseRecordsFile {
   protected void addEntryToIndex(String key, RecordHeader newRecord, int currentNumRecords) throws IOException, RecordsFileException {
     super.addEntryToIndex(key, newRecord, currentNumRecords);
     memIndex.put(key, newRecord);   
+    addToSpaceIndex(newRecord);
   }
  
+  /**
+   * Adds the new records to the in-memory index and calls the super class to 
+   * add the index entries to the file. 
+   */
+  protected void addEntriesToIndex(List<String> keys, List<RecordHeader> headers, int currentNumRecords) throws IOException, RecordsFileException {
+    super.addEntriesToIndex(keys, headers, currentNumRecords);
+    for (int i = 0; i < keys.size(); i++) {
+      memIndex.put(keys.get(i), headers.get(i));
+      addToSpaceIndex(headers.get(i));
+    }
+  }
+
   /**
    * Removes the record from the index. Replaces the target with the entry at the 
    * end of the index. 
    */
   protected void deleteEntryFromIndex(String key, RecordHeader header, int currentNumRecords) throws IOException, RecordsFileException {
     super.deleteEntryFromIndex(key, header, currentNumRecords);
-    RecordHeader deleted = (RecordHeader)memIndex.remove(key);
+    RecordHeader deleted = memIndex.remove(key);
+    if (deleted != null) {
+      removeFromSpaceIndex(deleted);
+    }
   }
 
 
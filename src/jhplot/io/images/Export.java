@@ -2,8 +2,10 @@ package jhplot.io.images;
 
 
 import java.awt.Component;
+import java.awt.Dimension;
 import java.awt.Rectangle;
 import java.io.*;
+import java.util.zip.GZIPOutputStream;
 import javax.swing.JComponent;
 import org.apache.batik.dom.svg.SVGDOMImplementation;
 import org.apache.batik.svggen.SVGGraphics2D;
@@ -69,13 +71,15 @@ public class Export {
     }
 
     /**
-     * Draws the selected component (assumed to be a Component) into the
-     * provided SVGGraphics2D object.
+     * Creates an empty SVG graphics with the given size. Anything can be drawn
+     * into it, and then it is written with
+     * {@link #writeSvgGraphics(SVGGraphics2D, OutputStream, ImageType)}. It
+     * does not need a display.
      *
-     * @param component
-     * @param bounds
+     * @param size the dimensions of the viewport
+     * @return SVG graphics
      */
-    private static SVGGraphics2D drawSvgGraphics(Object component, Rectangle bounds) {
+    public static SVGGraphics2D createSvgGraphics(Dimension size) {
 
         // Get a SVGDOMImplementation and create an XML document
         DOMImplementation domImpl = SVGDOMImplementation.getDOMImplementation();
@@ -84,7 +88,57 @@ public class Export {
 
         // Create an instance of the SVG Generator
         SVGGraphics2D svgGenerator = new SVGGraphics2D(svgDocument);
-        svgGenerator.setSVGCanvasSize(bounds.getSize());
+        svgGenerator.setSVGCanvasSize(size);
+        return svgGenerator;
+    }
+
+    /**
+     * Writes the SVG graphics to a stream in the wanted format. Other formats
+     * than svg and svgz are converted in memory, without temporary files.
+     *
+     * @param svgGenerator graphics with the drawing
+     * @param out the output stream, which is not closed
+     * @param imageType the image type
+     * @throws IOException
+     * @throws TranscoderException
+     */
+    public static void writeSvgGraphics(SVGGraphics2D svgGenerator, OutputStream out, ImageType imageType)
+            throws IOException, TranscoderException {
+
+        if (imageType == ImageType.SVG || imageType == ImageType.SVGZ) {
+            GZIPOutputStream gzos = null;
+            if (imageType == ImageType.SVGZ) {
+                gzos = new GZIPOutputStream(out);
+            }
+            Writer writer = new OutputStreamWriter(gzos != null ? gzos : out, "UTF-8");
+            svgGenerator.stream(writer, true /* use css */);
+            writer.flush();
+            if (gzos != null) {
+                gzos.finish();
+            }
+            return;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Writer writer = new OutputStreamWriter(bytes, "UTF-8");
+        svgGenerator.stream(writer, true /* use css */);
+        writer.close();
+
+        TranscoderInput input = new TranscoderInput(new ByteArrayInputStream(bytes.toByteArray()));
+        getTranscoder(imageType).transcode(input, new TranscoderOutput(out));
+        out.flush();
+    }
+
+    /**
+     * Draws the selected component (assumed to be a Component) into the
+     * provided SVGGraphics2D object.
+     *
+     * @param component
+     * @param bounds
+     */
+    private static SVGGraphics2D drawSvgGraphics(Object component, Rectangle bounds) {
+
+        SVGGraphics2D svgGenerator = createSvgGraphics(bounds.getSize());
 
         // draw the panel in the SVG generator
         if (component instanceof JFreeChart) {
@@ -134,58 +188,74 @@ public class Export {
             bos = new BufferedOutputStream(outstream);
             TranscoderOutput output = new TranscoderOutput(bos);
 
-            if (imageType == ImageType.PDF) {
+            Transcoder transcoder = getTranscoder(imageType);
+            if (transcoder != null) {
+                transcoder.transcode(svgInputFile, output);
+            }
 
-                // write as pdf
-                Transcoder pdfTranscoder = new PDFTranscoder();
-                pdfTranscoder.addTranscodingHint(PDFTranscoder.KEY_PIXEL_UNIT_TO_MILLIMETER, new Float(0.184666f));
-                pdfTranscoder.transcode(svgInputFile, output);
+            //close the stream
+            outstream.flush();
+            outstream.close();
+            bos.close();
 
-            } else if (imageType == ImageType.JPEG) {
+            // delete the svg file given that the selected format is not svg
+            if (svgFile.exists()) {
+                svgFile.delete();
+            }
+        }
+    }
 
-                // write as jpeg
-                Transcoder jpegTranscoder = new JPEGTranscoder();
-                jpegTranscoder.addTranscodingHint(JPEGTranscoder.KEY_QUALITY, new Float(1.0));
-                jpegTranscoder.transcode(svgInputFile, output);
+    /**
+     * Returns the transcoder from svg to the wanted format, or null for svg
+     * itself.
+     *
+     * @param imageType
+     */
+    private static Transcoder getTranscoder(ImageType imageType) {
 
-            } else if (imageType == ImageType.TIFF) {
+        if (imageType == ImageType.PDF) {
 
-                // write as tiff
-                Transcoder tiffTranscoder = new TIFFTranscoder();
-                tiffTranscoder.addTranscodingHint(TIFFTranscoder.KEY_PIXEL_UNIT_TO_MILLIMETER, new Float(0.084666f));
-                tiffTranscoder.addTranscodingHint(TIFFTranscoder.KEY_FORCE_TRANSPARENT_WHITE, true);
-                tiffTranscoder.transcode(svgInputFile, output);
+            // write as pdf
+            Transcoder pdfTranscoder = new PDFTranscoder();
+            pdfTranscoder.addTranscodingHint(PDFTranscoder.KEY_PIXEL_UNIT_TO_MILLIMETER, new Float(0.184666f));
+            return pdfTranscoder;
 
-            } else if (imageType == ImageType.PNG) {
+        } else if (imageType == ImageType.JPEG) {
 
-                // write as png
-                Transcoder pngTranscoder = new PNGTranscoder();
-                pngTranscoder.addTranscodingHint(PNGTranscoder.KEY_PIXEL_UNIT_TO_MILLIMETER, new Float(0.084666f));
-                pngTranscoder.transcode(svgInputFile, output);
+            // write as jpeg
+            Transcoder jpegTranscoder = new JPEGTranscoder();
+            jpegTranscoder.addTranscodingHint(JPEGTranscoder.KEY_QUALITY, new Float(1.0));
+            return jpegTranscoder;
 
-           } else if (imageType == ImageType.EPS) {
+        } else if (imageType == ImageType.TIFF) {
 
-                // write as EPS 
-                Transcoder epsTranscoder = new EPSTranscoder();
-                epsTranscoder.addTranscodingHint(EPSTranscoder.KEY_PIXEL_UNIT_TO_MILLIMETER, new Float(0.184666f));
-                epsTranscoder.transcode(svgInputFile, output);
-           } else if (imageType == ImageType.PS) {
+            // write as tiff
+            Transcoder tiffTranscoder = new TIFFTranscoder();
+            tiffTranscoder.addTranscodingHint(TIFFTranscoder.KEY_PIXEL_UNIT_TO_MILLIMETER, new Float(0.084666f));
+            tiffTranscoder.addTranscodingHint(TIFFTranscoder.KEY_FORCE_TRANSPARENT_WHITE, true);
+            return tiffTranscoder;
 
-                // write as PS 
-                Transcoder psTranscoder = new PSTranscoder();
-                psTranscoder.addTranscodingHint(PSTranscoder.KEY_PIXEL_UNIT_TO_MILLIMETER, new Float(0.184666f));
-                psTranscoder.transcode(svgInputFile, output);
-            }
+        } else if (imageType == ImageType.PNG) {
 
-            //close the stream
-            outstream.flush();
-            outstream.close();
-            bos.close();
+            // write as png
+            Transcoder pngTranscoder = new PNGTranscoder();
+            pngTranscoder.addTranscodingHint(PNGTranscoder.KEY_PIXEL_UNIT_TO_MILLIMETER, new Float(0.084666f));
+            return pngTranscoder;
 
-            // delete the svg file given that the selected format is not svg
-            if (svgFile.exists()) {
-                svgFile.delete();
-            }
+        } else if (imageType == ImageType.EPS) {
+
+            // write as EPS
+            Transcoder epsTranscoder = new EPSTranscoder();
+            epsTranscoder.addTranscodingHint(EPSTranscoder.KEY_PIXEL_UNIT_TO_MILLIMETER, new Float(0.184666f));
+            return epsTranscoder;
+
+        } else if (imageType == ImageType.PS) {
+
+            // write as PS
+            Transcoder psTranscoder = new PSTranscoder();
+            psTranscoder.addTranscodingHint(PSTranscoder.KEY_PIXEL_UNIT_TO_MILLIMETER, new Float(0.184666f));
+            return psTranscoder;
         }
+        return null;
     }
 }
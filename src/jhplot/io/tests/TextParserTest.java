@@ -0,0 +1,45 @@
+package jhplot.io.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import jhplot.io.TextParser;
+import junit.framework.TestCase;
+
+public class TextParserTest extends TestCase {
+
+	private static double parse(String s) throws IOException {
+		TextParser.Result r = TextParser.parse(new ByteArrayInputStream(s
+				.getBytes("US-ASCII")));
+		assertEquals(1, r.size());
+		return r.values()[0];
+	}
+
+	private void check(String s) throws IOException {
+		assertEquals(s, Double.parseDouble(s), parse(s), 0.0);
+	}
+
+	public void testSimple() throws IOException {
+		check("0");
+		check("-1.5");
+		check("+2.25e3");
+		check("1e-22");
+		check("123456789012345678");
+	}
+
+	// mantissas with more than 18 digits used to overflow the long
+	public void testLongMantissa() throws IOException {
+		check("9999999999999999999");
+		check("0.9999999999999999999");
+		check("9223372036854775808");
+		check("-9999999999999999999");
+		check("12345678901234567890123");
+	}
+
+	public void testSlowPath() throws IOException {
+		check("1e300");
+		check("4.9e-324");
+		check("NaN");
+		check("-Infinity");
+	}
+}
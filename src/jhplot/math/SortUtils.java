@@ -186,6 +186,87 @@ public class SortUtils {
     return permuted;
   }
 
+  /**
+   * Stable ascending sort of the first n elements of a double array. The
+   * values are mapped to their IEEE-754 bit patterns, flipped such that the
+   * unsigned order of the patterns is the numeric order, and sorted with a
+   * least-significant-digit radix sort in O(n). NaN values are sorted to
+   * the end. The data array itself is not modified.
+   * @param data data to be sorted
+   * @param n number of elements to sort
+   * @return permutation p such that data[p[0]],..,data[p[n-1]] is in sorted order
+   */
+  public static int[] sort(double[] data, int n) {
+    int[] idx = new int[n];
+    long[] key = new long[n];
+    for (int i = 0; i < n; i++) {
+      long bits = Double.doubleToLongBits(data[i]);
+      idx[i] = i;
+      key[i] = bits ^ ((bits >> 63) | Long.MIN_VALUE);
+    }
+
+    if (n < 64) { // stable insertion sort for small arrays
+      for (int i = 1; i < n; i++) {
+        long k = key[i];
+        long ks = k ^ Long.MIN_VALUE; // signed view of the unsigned key
+        int v = idx[i];
+        int j = i - 1;
+        while (j >= 0 && (key[j] ^ Long.MIN_VALUE) > ks) {
+          key[j + 1] = key[j];
+          idx[j + 1] = idx[j];
+          j--;
+        }
+        key[j + 1] = k;
+        idx[j + 1] = v;
+      }
+      return idx;
+    }
+
+    int[] idx2 = new int[n];
+    long[] key2 = new long[n];
+    int[] count = new int[0x10001];
+    for (int shift = 0; shift < 64; shift += 16) {
+      Arrays.fill(count, 0);
+      for (int i = 0; i < n; i++)
+        count[(int) ((key[i] >>> shift) & 0xFFFF) + 1]++;
+      if (count[(int) ((key[0] >>> shift) & 0xFFFF) + 1] == n)
+        continue; // all keys share this digit
+      for (int d = 0; d < 0x10000; d++)
+        count[d + 1] += count[d];
+      for (int i = 0; i < n; i++) {
+        int p = count[(int) ((key[i] >>> shift) & 0xFFFF)]++;
+        key2[p] = key[i];
+        idx2[p] = idx[i];
+      }
+      long[] tk = key; key = key2; key2 = tk;
+      int[] ti = idx; idx = idx2; idx2 = ti;
+    }
+    return idx;
+  }
+
+  /**
+   * Stable ascending sort of a double array.
+   * @param data data to be sorted
+   * @return permutation p such that data[p[0]],..,data[p[data.length-1]] is in sorted order
+   */
+  public static int[] sort(double[] data) {
+    return sort(data, data.length);
+  }
+
+  /**
+   * Gather the first p.length elements of a double array in the order of a
+   * permutation, that is <code>result[i] == data[p[i]]</code>.
+   * @param p the permutation, as returned by {@link #sort(double[], int)}
+   * @param data data to be rearranged
+   * @return a new array with the rearranged data
+   */
+  public static double[] gather(int[] p, double[] data) {
+    double[] out = new double[p.length];
+    for (int i = 0; i < p.length; i++)
+      out[i] = data[p[i]];
+    return out;
+  }
+
   /**
    * Answer iterator, which iterates over specified data array according
    * to the specified permutation, that is
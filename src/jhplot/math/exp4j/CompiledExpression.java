@@ -0,0 +1,338 @@
+/*
+ * Copyright 2014 Frank Asseg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jhplot.math.exp4j;
+
+import jhplot.math.exp4j.function.Function;
+import jhplot.math.exp4j.operator.Operator;
+import jhplot.math.exp4j.tokenizer.*;
+
+/**
+ * Compiled form of an {@link Expression}. The token stream is translated once
+ * into flat instruction arrays, variables are bound to primitive slots and the
+ * evaluation stack and argument buffers are allocated at compile time, so that
+ * evaluation does not allocate and does not box.
+ * <p>
+ * Variables passed to {@link Expression#compile(String...)} are bound by
+ * position. Any other variable is read from the parent {@link Expression} once
+ * at the beginning of each evaluate call.
+ * <p>
+ * An instance is not thread-safe. Use {@link #copy()} to obtain an independent
+ * evaluator for every thread.
+ */
+public final class CompiledExpression {
+
+    private static final byte OP_NUMBER = 0;
+    private static final byte OP_VARIABLE = 1;
+    private static final byte OP_UNARY = 2;
+    private static final byte OP_BINARY = 3;
+    private static final byte OP_FUNCTION = 4;
+
+    private final Expression source;
+
+    private final byte[] code;
+
+    private final double[] numbers;
+
+    private final int[] slots;
+
+    private final Operator[] operators;
+
+    private final Function[] functions;
+
+    private final String[] names;
+
+    private final int bound;
+
+    private final int depth;
+
+    /* per-instance mutable state */
+    private final double[] values;
+
+    private final double[] stack;
+
+    private final double[][] args;
+
+    CompiledExpression(Expression source, Token[] tokens, String[] variableNames) {
+        this.source = source;
+        this.bound = variableNames.length;
+        final int n = tokens.length;
+        this.code = new byte[n];
+        this.numbers = new double[n];
+        this.slots = new int[n];
+        this.operators = new Operator[n];
+        this.functions = new Function[n];
+
+        final java.util.List<String> slotNames = new java.util.ArrayList<String>(bound + 2);
+        for (String name : variableNames) {
+            if (slotNames.contains(name)) {
+                throw new IllegalArgumentException("The variable '" + name + "' is bound more than once");
+            }
+            slotNames.add(name);
+        }
+
+        int size = 0;
+        int max = 0;
+        for (int i = 0; i < n; i++) {
+            final Token t = tokens[i];
+            switch (t.getType()) {
+                case Token.TOKEN_NUMBER:
+                    code[i] = OP_NUMBER;
+                    numbers[i] = ((NumberToken) t).getValue();
+                    size++;
+                    break;
+                case Token.TOKEN_VARIABLE:
+                    final String name = ((VariableToken) t).getName();
+                    int slot = slotNames.indexOf(name);
+                    if (slot < 0) {
+                        slot = slotNames.size();
+                        slotNames.add(name);
+                    }
+                    code[i] = OP_VARIABLE;
+                    slots[i] = slot;
+                    size++;
+                    break;
+                case Token.TOKEN_OPERATOR:
+                    final Operator op = ((OperatorToken) t).getOperator();
+                    if (size < op.getNumOperands()) {
+                        throw new IllegalArgumentException("Invalid number of operands available for '" + op.getSymbol() + "' operator");
+                    }
+                    operators[i] = op;
+                    if (op.getNumOperands() == 2) {
+                        code[i] = OP_BINARY;
+                        size--;
+                    } else {
+                        code[i] = OP_UNARY;
+                    }
+                    break;
+                case Token.TOKEN_FUNCTION:
+                    final Function func = ((FunctionToken) t).getFunction();
+                    if (size < func.getNumArguments()) {
+                        throw new IllegalArgumentException("Invalid number of arguments available for '" + func.getName() + "' function");
+                    }
+                    code[i] = OP_FUNCTION;
+                    functions[i] = func;
+                    size = size - func.getNumArguments() + 1;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unexpected token in the output queue: " + t.getType());
+            }
+            if (size > max) {
+                max = size;
+            }
+        }
+        if (size != 1) {
+            throw new IllegalArgumentException("Invalid number of items on the output queue. Might be caused by an invalid number of arguments for a function.");
+        }
+
+        this.names = slotNames.toArray(new String[slotNames.size()]);
+        this.depth = max;
+        this.values = new double[names.length];
+        this.stack = new double[max];
+        this.args = newArgs();
+    }
+
+    private CompiledExpression(CompiledExpression other) {
+        this.source = other.source;
+        this.code = other.code;
+        this.numbers = other.numbers;
+        this.slots = other.slots;
+        this.operators = other.operators;
+        this.functions = other.functions;
+        this.names = other.names;
+        this.bound = other.bound;
+        this.depth = other.depth;
+        this.values = new double[names.length];
+        this.stack = new double[depth];
+        this.args = newArgs();
+    }
+
+    private double[][] newArgs() {
+        final double[][] a = new double[code.length][];
+        for (int i = 0; i < code.length; i++) {
+            switch (code[i]) {
+                case OP_UNARY:
+                    a[i] = new double[1];
+                    break;
+                case OP_BINARY:
+                    a[i] = new double[2];
+                    break;
+                case OP_FUNCTION:
+                    a[i] = new double[functions[i].getNumArguments()];
+                    break;
+                default:
+                    break;
+            }
+        }
+        return a;
+    }
+
+    /**
+     * Create an independent evaluator sharing the compiled program but with its
+     * own variable slots and stack. Use one copy per thread.
+     * @return a new evaluator
+     */
+    public CompiledExpression copy() {
+        return new CompiledExpression(this);
+    }
+
+    /**
+     * Get the names of the bound variables, in slot order.
+     * @return variable names
+     */
+    public String[] getVariableNames() {
+        final String[] v = new String[bound];
+        System.arraycopy(names, 0, v, 0, bound);
+        return v;
+    }
+
+    /**
+     * Evaluate the expression. The values are assigned to the bound variables
+     * in the order given to {@link Expression#compile(String...)}.
+     * @param vars values of the bound variables
+     * @return the result
+     */
+    public double evaluate(double[] vars) {
+        if (vars.length != bound) {
+            throw new IllegalArgumentException("Expected " + bound + " variable values but got " + vars.length);
+        }
+        System.arraycopy(vars, 0, values, 0, bound);
+        resolveUnbound();
+        return run();
+    }
+
+    /**
+     * Evaluate an expression with one bound variable.
+     * @param x value of the first bound variable
+     * @return the result
+     */
+    public double evaluate(double x) {
+        checkBound(1);
+        values[0] = x;
+        resolveUnbound();
+        return run();
+    }
+
+    /**
+     * Evaluate an expression with two bound variables.
+     * @param x value of the first bound variable
+     * @param y value of the second bound variable
+     * @return the result
+     */
+    public double evaluate(double x, double y) {
+        checkBound(2);
+        values[0] = x;
+        values[1] = y;
+        resolveUnbound();
+        return run();
+    }
+
+    /**
+     * Evaluate an expression with three bound variables.
+     * @param x value of the first bound variable
+     * @param y value of the second bound variable
+     * @param z value of the third bound variable
+     * @return the result
+     */
+    public double evaluate(double x, double y, double z) {
+        checkBound(3);
+        values[0] = x;
+        values[1] = y;
+        values[2] = z;
+        resolveUnbound();
+        return run();
+    }
+
+    /**
+     * Evaluate an expression with one bound variable for an array of values.
+     * @param xs values of the bound variable
+     * @param out output array, at least as long as xs
+     */
+    public void evaluate(double[] xs, double[] out) {
+        evaluate(xs, out, 0, xs.length);
+    }
+
+    /**
+     * Evaluate an expression with one bound variable for a range of an array.
+     * @param xs values of the bound variable
+     * @param out output array; out[i] receives the value at xs[i]
+     * @param from first index (inclusive)
+     * @param to last index (exclusive)
+     */
+    public void evaluate(double[] xs, double[] out, int from, int to) {
+        checkBound(1);
+        if (out.length < to) {
+            throw new IllegalArgumentException("Output array is too short");
+        }
+        resolveUnbound();
+        for (int i = from; i < to; i++) {
+            values[0] = xs[i];
+            out[i] = run();
+        }
+    }
+
+    private void checkBound(int n) {
+        if (bound != n) {
+            throw new IllegalArgumentException("Expected " + bound + " variable values but got " + n);
+        }
+    }
+
+    private void resolveUnbound() {
+        for (int i = bound; i < names.length; i++) {
+            final Double value = source.getVariable(names[i]);
+            if (value == null) {
+                throw new IllegalArgumentException("No value has been set for the setVariable '" + names[i] + "'.");
+            }
+            values[i] = value;
+        }
+    }
+
+    private double run() {
+        final double[] s = stack;
+        int top = -1;
+        for (int i = 0; i < code.length; i++) {
+            switch (code[i]) {
+                case OP_NUMBER:
+                    s[++top] = numbers[i];
+                    break;
+                case OP_VARIABLE:
+                    s[++top] = values[slots[i]];
+                    break;
+                case OP_BINARY: {
+                    final double[] a = args[i];
+                    a[1] = s[top--];
+                    a[0] = s[top];
+                    s[top] = operators[i].apply(a);
+                    break;
+                }
+                case OP_UNARY: {
+                    final double[] a = args[i];
+                    a[0] = s[top];
+                    s[top] = operators[i].apply(a);
+                    break;
+                }
+                default: {
+                    final double[] a = args[i];
+                    for (int j = a.length - 1; j >= 0; j--) {
+                        a[j] = s[top--];
+                    }
+                    s[++top] = functions[i].apply(a);
+                    break;
+                }
+            }
+        }
+        return s[0];
+    }
+}
@@ -49,6 +49,10 @@ public class Expression {
         return this;
     }
 
+    Double getVariable(final String name) {
+        return this.variables.get(name);
+    }
+
     private void checkVariableName(String name) {
         if (this.userFunctionNames.contains(name)) {
             throw new IllegalArgumentException("The setVariable name '" + name + "' is invalid. Since there exists a function with the same name");
@@ -131,6 +135,20 @@ public class Expression {
         });
     }
 
+    /**
+     * Compile this expression into an allocation-free evaluator. The given
+     * variables are bound to primitive slots in the order they are listed;
+     * any other variable keeps being read from this expression.
+     * @param variableNames names of the variables to bind
+     * @return a compiled evaluator
+     */
+    public CompiledExpression compile(String... variableNames) {
+        for (String name : variableNames) {
+            this.checkVariableName(name);
+        }
+        return new CompiledExpression(this, this.tokens, variableNames);
+    }
+
     public double evaluate() {
         final ArrayStack output = new ArrayStack();
         for (int i = 0; i < tokens.length; i++) {
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2014 Frank Asseg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jhplot.math.exp4j;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Fork/join evaluation of a {@link CompiledExpression} over large arrays. The
+ * input range is split into chunks, every chunk is evaluated with its own copy
+ * of the compiled expression and writes into a disjoint part of a preallocated
+ * output array. The results are identical to the sequential evaluation.
+ */
+public final class ParallelEvaluation {
+
+    /** Smallest number of points evaluated by a single task */
+    private static final int MIN_CHUNK = 1024;
+
+    private static ForkJoinPool pool = null;
+
+    private ParallelEvaluation() {
+    }
+
+    /**
+     * Get the pool used for the parallel evaluation. It is created on first use
+     * with one worker per available processor.
+     * @return fork/join pool
+     */
+    public static synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            pool = new ForkJoinPool();
+        }
+        return pool;
+    }
+
+    private static int chunk(int n) {
+        final int c = n / (4 * getPool().getParallelism());
+        return c < MIN_CHUNK ? MIN_CHUNK : c;
+    }
+
+    /**
+     * Evaluate an expression with one bound variable at every point of xs.
+     * @param expr compiled expression with one bound variable
+     * @param xs values of the variable
+     * @param out output array; out[i] receives the value at xs[i]
+     */
+    public static void evaluate(CompiledExpression expr, double[] xs, double[] out) {
+        if (out.length < xs.length) {
+            throw new IllegalArgumentException("Output array is too short");
+        }
+        getPool().invoke(new Points(expr, new double[][]{xs}, out, 0, xs.length, chunk(xs.length)));
+    }
+
+    /**
+     * Evaluate an expression at a list of points. Each column holds the values
+     * of one bound variable, in the order they were bound.
+     * @param expr compiled expression
+     * @param columns values of the bound variables, columns[k][i] is the k-th variable of point i
+     * @param out output array; out[i] receives the value at point i
+     */
+    public static void evaluate(CompiledExpression expr, double[][] columns, double[] out) {
+        final int n = columns.length == 0 ? 0 : columns[0].length;
+        for (double[] c : columns) {
+            if (c.length != n) {
+                throw new IllegalArgumentException("Columns have different lengths");
+            }
+        }
+        if (out.length < n) {
+            throw new IllegalArgumentException("Output array is too short");
+        }
+        getPool().invoke(new Points(expr, columns, out, 0, n, chunk(n)));
+    }
+
+    /**
+     * Evaluate an expression with two bound variables on a grid.
+     * @param expr compiled expression with two bound variables
+     * @param xs grid values of the first variable
+     * @param ys grid values of the second variable
+     * @param out output grid; out[i][j] receives the value at (xs[i], ys[j])
+     */
+    public static void evaluate(CompiledExpression expr, double[] xs, double[] ys, double[][] out) {
+        if (out.length < xs.length) {
+            throw new IllegalArgumentException("Output array is too short");
+        }
+        final int rows = ys.length == 0 ? xs.length : Math.max(1, chunk(xs.length * ys.length) / ys.length);
+        getPool().invoke(new Grid(expr, xs, ys, out, 0, xs.length, rows));
+    }
+
+    private static final class Points extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final CompiledExpression expr;
+        private final double[][] columns;
+        private final double[] out;
+        private final int from;
+        private final int to;
+        private final int chunk;
+
+        Points(CompiledExpression expr, double[][] columns, double[] out, int from, int to, int chunk) {
+            this.expr = expr;
+            this.columns = columns;
+            this.out = out;
+            this.from = from;
+            this.to = to;
+            this.chunk = chunk;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= chunk) {
+                final CompiledExpression e = expr.copy();
+                if (columns.length == 1) {
+                    e.evaluate(columns[0], out, from, to);
+                    return;
+                }
+                final double[] vars = new double[columns.length];
+                for (int i = from; i < to; i++) {
+                    for (int k = 0; k < vars.length; k++) {
+                        vars[k] = columns[k][i];
+                    }
+                    out[i] = e.evaluate(vars);
+                }
+                return;
+            }
+            final int mid = (from + to) >>> 1;
+            invokeAll(new Points(expr, columns, out, from, mid, chunk),
+                    new Points(expr, columns, out, mid, to, chunk));
+        }
+    }
+
+    private static final class Grid extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final CompiledExpression expr;
+        private final double[] xs;
+        private final double[] ys;
+        private final double[][] out;
+        private final int from;
+        private final int to;
+        private final int rows;
+
+        Grid(CompiledExpression expr, double[] xs, double[] ys, double[][] out, int from, int to, int rows) {
+            this.expr = expr;
+            this.xs = xs;
+            this.ys = ys;
+            this.out = out;
+            this.from = from;
+            this.to = to;
+            this.rows = rows;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= rows) {
+                final CompiledExpression e = expr.copy();
+                for (int i = from; i < to; i++) {
+                    final double[] row = out[i];
+                    final double x = xs[i];
+                    for (int j = 0; j < ys.length; j++) {
+                        row[j] = e.evaluate(x, ys[j]);
+                    }
+                }
+                return;
+            }
+            final int mid = (from + to) >>> 1;
+            invokeAll(new Grid(expr, xs, ys, out, from, mid, rows),
+                    new Grid(expr, xs, ys, out, mid, to, rows));
+        }
+    }
+}
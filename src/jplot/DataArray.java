@@ -44,8 +44,10 @@ import java.io.Serializable;
  * <p>
  * A data array has plotting attributes, e.g. saying whether we should plot
  * symbols, draw lines or fill areas. All the plotting attributes are defined in
- * the base-class LinePars, here we set the actual data array, i.e. a vector of
- * points (PlotPoints) defining X,Y.
+ * the base-class LinePars, here we set the actual data array, i.e. the points
+ * defining X,Y and their errors. The points are stored in columns of primitive
+ * values, which can also be shared with another container, see
+ * {@link #setColumns}.
  * 
  * @see LinePars
  */
@@ -63,7 +65,33 @@ public class DataArray extends LinePars implements Serializable {
 	protected int col = 0;
 	protected double mean = 0;
 	protected int Ntot = 0;
-	protected Vector<PlotPoint> points;
+
+	// the points are kept in parallel columns: x, y, left, right, upper,
+	// lower, left_sys, right_sys, upper_sys and lower_sys. Error columns
+	// stay null as long as all their values are 0.
+	private double[][] columns;
+	private BitSet lift;
+	private int npoints;
+	// the columns belong to somebody else, see setColumns()
+	private transient boolean shared;
+	// the points as objects, made on request by getData()
+	private transient Vector<PlotPoint> points;
+	private transient int pointsCount;
+
+	private static final int NCOLUMNS = 10;
+	private static final int COL_X = 0;
+	private static final int COL_Y = 1;
+	private static final int COL_LEFT = 2;
+	private static final int COL_RIGHT = 3;
+	private static final int COL_UPPER = 4;
+	private static final int COL_LOWER = 5;
+	private static final int COL_LEFT_SYS = 6;
+	private static final int COL_RIGHT_SYS = 7;
+	private static final int COL_UPPER_SYS = 8;
+	private static final int COL_LOWER_SYS = 9;
+
+	// number of changes of the points, used to detect stale caches
+	private transient int modCount;
 	protected double[] maxValue = new double[GraphSettings.N_AXES];
 	protected double[] minValue = new double[GraphSettings.N_AXES];
 	protected double[] lowestNonZeroValue = new double[GraphSettings.N_AXES];
@@ -162,11 +190,15 @@ public class DataArray extends LinePars implements Serializable {
 	 *            maximum number of datapoints.
 	 */
 	public void allocate(int n) {
+		modCount++;
 		if (n < 10)
 			n = 10;
-		points = new Vector<PlotPoint>(n, 10);
-		// error_upper = new Vector(n,10);
-		// error_lower = new Vector(n,10);
+		columns = new double[NCOLUMNS][];
+		columns[COL_X] = new double[n];
+		columns[COL_Y] = new double[n];
+		lift = null;
+		npoints = 0;
+		shared = false;
 		for (int k = 0; k < GraphSettings.N_AXES; k++) {
 			maxValue[k] = -GraphSettings.INF;
 			minValue[k] = GraphSettings.INF;
@@ -174,6 +206,194 @@ public class DataArray extends LinePars implements Serializable {
 		}
 	}
 
+	/**
+	 * Sets the points from columns of values without copying them. The array
+	 * keeps references to the columns and is a view of them until it is
+	 * changed by one of its own methods, which copies the columns first.
+	 * Columns with errors can be null if all these errors are 0. If a
+	 * multiplier or an additioner is set, the values are copied instead.
+	 * 
+	 * @param n
+	 *            number of points
+	 * @param x
+	 *            x-values of the points
+	 * @param y
+	 *            y-values of the points
+	 * @param left
+	 *            - errors on x (left)
+	 * @param right
+	 *            - errors on x (right)
+	 * @param upper
+	 *            - errors on y (upper)
+	 * @param lower
+	 *            - errors on y (lower)
+	 * @param left_sys
+	 *            - errors on x (left) - second level, used for systematics
+	 * @param right_sys
+	 *            - errors on x (right)
+	 * @param upper_sys
+	 *            - errors on y (upper)
+	 * @param lower_sys
+	 *            - errors on y (lower)
+	 */
+	public void setColumns(int n, double[] x, double[] y, double[] left,
+			double[] right, double[] upper, double[] lower,
+			double[] left_sys, double[] right_sys, double[] upper_sys,
+			double[] lower_sys) {
+		mean = 0;
+		Ntot = 0;
+		if (multiplier != 1 || additioner != 0) {
+			allocate(n);
+			for (int i = 0; i < n; i++)
+				addPoint(x[i], y[i], value(left, i), value(right, i),
+						value(upper, i), value(lower, i), value(left_sys, i),
+						value(right_sys, i), value(upper_sys, i), value(
+								lower_sys, i));
+			return;
+		}
+
+		allocate(0);
+		columns = new double[][] { x, y, left, right, upper, lower,
+				left_sys, right_sys, upper_sys, lower_sys };
+		npoints = n;
+		shared = true;
+		for (int i = 0; i < n; i++) {
+			updateMinMax(x[i], y[i], value(left, i), value(right, i), value(
+					upper, i), value(lower, i), value(left_sys, i), value(
+					right_sys, i), value(upper_sys, i), value(lower_sys, i));
+			updateMean(x[i], y[i]);
+		}
+	}
+
+	/**
+	 * Sets the points from columns of values, like
+	 * {@link #setColumns(int, double[], double[], double[], double[], double[], double[], double[], double[], double[], double[])}
+	 * but the first n values of each column are copied, so later changes of
+	 * the columns do not change this array.
+	 * 
+	 * @param n
+	 *            number of points
+	 * @param x
+	 *            x-values of the points
+	 * @param y
+	 *            y-values of the points
+	 * @param left
+	 *            - errors on x (left)
+	 * @param right
+	 *            - errors on x (right)
+	 * @param upper
+	 *            - errors on y (upper)
+	 * @param lower
+	 *            - errors on y (lower)
+	 * @param left_sys
+	 *            - errors on x (left) - second level, used for systematics
+	 * @param right_sys
+	 *            - errors on x (right)
+	 * @param upper_sys
+	 *            - errors on y (upper)
+	 * @param lower_sys
+	 *            - errors on y (lower)
+	 */
+	public void copyColumns(int n, double[] x, double[] y, double[] left,
+			double[] right, double[] upper, double[] lower,
+			double[] left_sys, double[] right_sys, double[] upper_sys,
+			double[] lower_sys) {
+		setColumns(n, x, y, left, right, upper, lower, left_sys, right_sys,
+				upper_sys, lower_sys);
+		if (shared) {
+			for (int c = 0; c < NCOLUMNS; c++) {
+				if (columns[c] != null)
+					columns[c] = Arrays.copyOf(columns[c], n);
+			}
+			shared = false;
+		}
+	}
+
+	private static double value(double[] column, int i) {
+		return column == null ? 0 : column[i];
+	}
+
+	/*
+	 * Makes room for n points. Shared columns are copied, so they are never
+	 * changed.
+	 */
+	private void ensureCapacity(int n) {
+		int length = columns[COL_X].length;
+		if (n <= length && !shared)
+			return;
+		if (n > length)
+			length = Math.max(n, length + (length >> 1) + 1);
+		for (int c = 0; c < NCOLUMNS; c++) {
+			if (columns[c] != null)
+				columns[c] = Arrays.copyOf(columns[c], length);
+		}
+		shared = false;
+	}
+
+	/*
+	 * Makes room for a point at index i, moving the next points up.
+	 */
+	private void insert(int i) {
+		ensureCapacity(npoints + 1);
+		for (int c = 0; c < NCOLUMNS; c++) {
+			if (columns[c] != null)
+				System.arraycopy(columns[c], i, columns[c], i + 1, npoints
+						- i);
+		}
+		if (lift != null) {
+			for (int k = npoints; k > i; k--)
+				lift.set(k, lift.get(k - 1));
+			lift.clear(i);
+		}
+		npoints++;
+	}
+
+	/*
+	 * Appends a point at the end of the columns.
+	 */
+	private void append(double x, double y, double left, double right,
+			double upper, double lower, double left_sys, double right_sys,
+			double upper_sys, double lower_sys) {
+		ensureCapacity(npoints + 1);
+		put(npoints, x, y, left, right, upper, lower, left_sys, right_sys,
+				upper_sys, lower_sys);
+		npoints++;
+	}
+
+	private void put(int i, double x, double y, double left, double right,
+			double upper, double lower, double left_sys, double right_sys,
+			double upper_sys, double lower_sys) {
+		columns[COL_X][i] = x;
+		columns[COL_Y][i] = y;
+		put(COL_LEFT, i, left);
+		put(COL_RIGHT, i, right);
+		put(COL_UPPER, i, upper);
+		put(COL_LOWER, i, lower);
+		put(COL_LEFT_SYS, i, left_sys);
+		put(COL_RIGHT_SYS, i, right_sys);
+		put(COL_UPPER_SYS, i, upper_sys);
+		put(COL_LOWER_SYS, i, lower_sys);
+	}
+
+	private void put(int c, int i, double v) {
+		double[] column = columns[c];
+		if (column == null) {
+			if (v == 0)
+				return;
+			column = new double[columns[COL_X].length];
+			columns[c] = column;
+		}
+		column[i] = v;
+	}
+
+	private double get(int c, int i) {
+		if (i >= 0 && i < npoints) {
+			double[] column = columns[c];
+			return column == null ? 0 : column[i];
+		}
+		return GraphSettings.INF;
+	}
+
 	/**
 	 * Updates maximum and minimum values.
 	 * 
@@ -311,11 +531,12 @@ public class DataArray extends LinePars implements Serializable {
 	 *            y-value of the plot-point
 	 */
 	public void addPoint(double x, double y) {
+		modCount++;
 		y *= multiplier;
 		y += additioner;
 		updateMinMax(x, y);
 		updateMean(x, y);
-		points.add(new PlotPoint(x, y));
+		append(x, y, 0, 0, 0, 0, 0, 0, 0, 0);
 	}
 
 	/**
@@ -332,6 +553,7 @@ public class DataArray extends LinePars implements Serializable {
 	 *            - error on y (lower)
 	 */
 	public void addPoint(double x, double y, double upper, double lower) {
+		modCount++;
 		y *= multiplier;
 		y += additioner;
 
@@ -346,7 +568,7 @@ public class DataArray extends LinePars implements Serializable {
 
 		// System.out.println(upper);
 
-		points.add(new PlotPoint(x, y, upper, lower));
+		append(x, y, 0, 0, upper, lower, 0, 0, 0, 0);
 	}
 
 	/**
@@ -368,6 +590,7 @@ public class DataArray extends LinePars implements Serializable {
 	 */
 	public void addPoint(double x, double y, double left, double right,
 			double upper, double lower) {
+		modCount++;
 		y *= multiplier;
 		y += additioner;
 
@@ -382,7 +605,7 @@ public class DataArray extends LinePars implements Serializable {
 
 		// System.out.println(upper);
 
-		points.add(new PlotPoint(x, y, left, right, upper, lower));
+		append(x, y, left, right, upper, lower, 0, 0, 0, 0);
 	}
 
 	/**
@@ -413,6 +636,7 @@ public class DataArray extends LinePars implements Serializable {
 	public void addPoint(double x, double y, double left, double right,
 			double upper, double lower, double left_sys, double right_sys,
 			double upper_sys, double lower_sys) {
+		modCount++;
 		y *= multiplier;
 		y += additioner;
 
@@ -434,8 +658,8 @@ public class DataArray extends LinePars implements Serializable {
 
 		// System.out.println(upper);
 
-		points.add(new PlotPoint(x, y, left, right, upper, lower, left_sys,
-				right_sys, upper_sys, lower_sys));
+		append(x, y, left, right, upper, lower, left_sys, right_sys,
+				upper_sys, lower_sys);
 	}
 
 	/**
@@ -450,11 +674,14 @@ public class DataArray extends LinePars implements Serializable {
 	 *            true if the pen should lift after this point
 	 */
 	public void addPoint(double x, double y, boolean liftPen) {
+		modCount++;
 		y *= multiplier;
 		y += additioner;
 		updateMinMax(x, y);
 		updateMean(x, y);
-		points.add(new PlotPoint(x, y, liftPen));
+		append(x, y, 0, 0, 0, 0, 0, 0, 0, 0);
+		if (liftPen)
+			setLiftPen(npoints - 1);
 	}
 
 	/**
@@ -468,9 +695,11 @@ public class DataArray extends LinePars implements Serializable {
 	 *            y-value of the plot-point
 	 */
 	public void setPoint(int i, double x, double y) {
-		if (i >= 0 && i < points.size()) {
+		modCount++;
+		if (i >= 0 && i < npoints) {
 			updateMinMax(x, y);
-			points.add(i, new PlotPoint(x, y));
+			insert(i);
+			put(i, x, y, 0, 0, 0, 0, 0, 0, 0, 0);
 		}
 	}
 
@@ -489,9 +718,11 @@ public class DataArray extends LinePars implements Serializable {
 	 *            lower error on y
 	 **/
 	public void setPoint(int i, double x, double y, double upper, double lower) {
-		if (i >= 0 && i < points.size()) {
+		modCount++;
+		if (i >= 0 && i < npoints) {
 			updateMinMax(x, y, 0, 0, upper, lower);
-			points.add(i, new PlotPoint(x, y, upper, lower));
+			insert(i);
+			put(i, x, y, 0, 0, upper, lower, 0, 0, 0, 0);
 		}
 	}
 
@@ -515,9 +746,11 @@ public class DataArray extends LinePars implements Serializable {
 	 **/
 	public void setPoint(int i, double x, double y, double left, double right,
 			double upper, double lower) {
-		if (i >= 0 && i < points.size()) {
+		modCount++;
+		if (i >= 0 && i < npoints) {
 			updateMinMax(x, y, left, right, upper, lower);
-			points.add(i, new PlotPoint(x, y, left, right, upper, lower));
+			insert(i);
+			put(i, x, y, left, right, upper, lower, 0, 0, 0, 0);
 		}
 	}
 
@@ -550,11 +783,13 @@ public class DataArray extends LinePars implements Serializable {
 	public void setPoint(int i, double x, double y, double left, double right,
 			double upper, double lower, double left_sys, double right_sys,
 			double upper_sys, double lower_sys) {
-		if (i >= 0 && i < points.size()) {
+		modCount++;
+		if (i >= 0 && i < npoints) {
 			updateMinMax(x, y, left, right, upper, lower, left_sys, right_sys,
 					upper_sys, lower_sys);
-			points.add(i, new PlotPoint(x, y, left, right, upper, lower,
-					left_sys, right_sys, upper_sys, lower_sys));
+			insert(i);
+			put(i, x, y, left, right, upper, lower, left_sys, right_sys,
+					upper_sys, lower_sys);
 		}
 	}
 
@@ -587,10 +822,11 @@ public class DataArray extends LinePars implements Serializable {
 	public void replacePoint(int i, double x, double y, double left,
 			double right, double upper, double lower, double left_sys,
 			double right_sys, double upper_sys, double lower_sys) {
-		if (i >= 0 && i < points.size()) {
-			points.set(i, new PlotPoint(x, y, left, right, upper, lower,
-					left_sys, right_sys, upper_sys, lower_sys));
-
+		modCount++;
+		if (i >= 0 && i < npoints) {
+			ensureCapacity(npoints);
+			put(i, x, y, left, right, upper, lower, left_sys, right_sys,
+					upper_sys, lower_sys);
 		}
 	}
 
@@ -608,7 +844,7 @@ public class DataArray extends LinePars implements Serializable {
 		lowestNonZeroValue[GraphSettings.Y_AXIS] = 0;
 		mean = 0;
 
-		for (int i = 0; i < points.size(); i++) {
+		for (int i = 0; i < npoints; i++) {
 			// update all
 			updateMinMax(getX(i), getY(i), getXleft(i), getXright(i),
 					getYupper(i), getYlower(i), getXleftSys(i),
@@ -618,15 +854,21 @@ public class DataArray extends LinePars implements Serializable {
 	}
 
 	/**
-	 * Returns the plot-point of the specified index.
+	 * Returns the plot-point of the specified index. The point is a copy, so
+	 * changing it does not change this array.
 	 * 
 	 * @param i
 	 *            index of the plot-point
 	 * @return plotpoint at index i
 	 */
 	public PlotPoint getPoint(int i) {
-		if (i >= 0 && i < points.size())
-			return (PlotPoint) points.get(i);
+		if (i >= 0 && i < npoints) {
+			PlotPoint pp = new PlotPoint(getX(i), getY(i), getXleft(i),
+					getXright(i), getYupper(i), getYlower(i), getXleftSys(i),
+					getXrightSys(i), getYupperSys(i), getYlowerSys(i));
+			pp.setLiftPen(liftPen(i));
+			return pp;
+		}
 		return null;
 	}
 
@@ -638,22 +880,49 @@ public class DataArray extends LinePars implements Serializable {
 	 *            index of the plot-point
 	 */
 	public void setLiftPen(int i) {
-		if (i >= 0 && i < points.size()) {
-			((PlotPoint) points.get(i)).setLiftPen(true);
+		modCount++;
+		if (i >= 0 && i < npoints) {
+			if (lift == null)
+				lift = new BitSet();
+			lift.set(i);
 		}
 	}
 
 	public boolean liftPen(int i) {
-		return ((PlotPoint) points.get(i)).liftPen();
+		return lift != null && lift.get(i);
+	}
+
+	/**
+	 * Returns the number of changes made to the points through this class,
+	 * and of calls of setDataChanged(). It is used to detect stale drawing
+	 * caches.
+	 * 
+	 * @return modification count
+	 */
+	public int getModCount() {
+		return modCount;
+	}
+
+	/**
+	 * Sets to true if the data has been changed by the user. Each call also
+	 * counts as a change for drawing caches, since the style may have
+	 * changed.
+	 * 
+	 * @param b
+	 *            true if the data has been changed
+	 */
+	public void setDataChanged(boolean b) {
+		super.setDataChanged(b);
+		modCount++;
 	}
 
 	/**
 	 * Return the length of the data vector.
 	 * 
-	 * @return length of the PlotPoint vector
+	 * @return number of points
 	 */
 	public int size() {
-		return points.size();
+		return npoints;
 	}
 
 	/**
@@ -675,11 +944,19 @@ public class DataArray extends LinePars implements Serializable {
 	}
 
 	/**
-	 * Return the data vector
+	 * Return the data vector. The points are kept in columns, so the vector
+	 * is made on request and it is not changed by later changes of this
+	 * array. Prefer the methods with an index for large arrays.
 	 * 
 	 * @return data vector with all the plot points
 	 */
 	public Vector getData() {
+		if (points == null || pointsCount != modCount) {
+			points = new Vector<PlotPoint>(npoints);
+			for (int i = 0; i < npoints; i++)
+				points.add(getPoint(i));
+			pointsCount = modCount;
+		}
 		return points;
 	}
 
@@ -710,10 +987,7 @@ public class DataArray extends LinePars implements Serializable {
 	 * @return the value of x at index i
 	 */
 	public double getX(int i) {
-		if (i >= 0 && i < size()) {
-			return ((PlotPoint) points.get(i)).getX();
-		}
-		return GraphSettings.INF;
+		return get(COL_X, i);
 	}
 
 	/**
@@ -725,10 +999,7 @@ public class DataArray extends LinePars implements Serializable {
 	 * @return the value of x at index i
 	 */
 	public double getXleft(int i) {
-		if (i >= 0 && i < size()) {
-			return ((PlotPoint) points.get(i)).getXleft();
-		}
-		return GraphSettings.INF;
+		return get(COL_LEFT, i);
 	}
 
 	/**
@@ -740,10 +1011,7 @@ public class DataArray extends LinePars implements Serializable {
 	 * @return the value of x at index i
 	 */
 	public double getXright(int i) {
-		if (i >= 0 && i < size()) {
-			return ((PlotPoint) points.get(i)).getXright();
-		}
-		return GraphSettings.INF;
+		return get(COL_RIGHT, i);
 	}
 
 	/**
@@ -755,10 +1023,7 @@ public class DataArray extends LinePars implements Serializable {
 	 * @return the value of x at index i
 	 */
 	public double getXleftSys(int i) {
-		if (i >= 0 && i < size()) {
-			return ((PlotPoint) points.get(i)).getXleftSys();
-		}
-		return GraphSettings.INF;
+		return get(COL_LEFT_SYS, i);
 	}
 
 	/**
@@ -770,10 +1035,7 @@ public class DataArray extends LinePars implements Serializable {
 	 * @return the value of x at index i
 	 */
 	public double getXrightSys(int i) {
-		if (i >= 0 && i < size()) {
-			return ((PlotPoint) points.get(i)).getXrightSys();
-		}
-		return GraphSettings.INF;
+		return get(COL_RIGHT_SYS, i);
 	}
 
 	/**
@@ -785,10 +1047,7 @@ public class DataArray extends LinePars implements Serializable {
 	 * @return the value of y at index i
 	 */
 	public double getY(int i) {
-		if (i >= 0 && i < size()) {
-			return ((PlotPoint) points.get(i)).getY();
-		}
-		return GraphSettings.INF;
+		return get(COL_Y, i);
 	}
 
 	/**
@@ -800,10 +1059,7 @@ public class DataArray extends LinePars implements Serializable {
 	 * @return the value of y at index i
 	 */
 	public double getYupper(int i) {
-		if (i >= 0 && i < size()) {
-			return ((PlotPoint) points.get(i)).getYupper();
-		}
-		return GraphSettings.INF;
+		return get(COL_UPPER, i);
 	}
 
 	/**
@@ -815,10 +1071,7 @@ public class DataArray extends LinePars implements Serializable {
 	 * @return the value of y at index i
 	 */
 	public double getYlower(int i) {
-		if (i >= 0 && i < size()) {
-			return ((PlotPoint) points.get(i)).getYlower();
-		}
-		return GraphSettings.INF;
+		return get(COL_LOWER, i);
 	}
 
 	/**
@@ -830,10 +1083,7 @@ public class DataArray extends LinePars implements Serializable {
 	 * @return the value of y at index i
 	 */
 	public double getYupperSys(int i) {
-		if (i >= 0 && i < size()) {
-			return ((PlotPoint) points.get(i)).getYupperSys();
-		}
-		return GraphSettings.INF;
+		return get(COL_UPPER_SYS, i);
 	}
 
 	/**
@@ -845,10 +1095,7 @@ public class DataArray extends LinePars implements Serializable {
 	 * @return the value of y at index i
 	 */
 	public double getYlowerSys(int i) {
-		if (i >= 0 && i < size()) {
-			return ((PlotPoint) points.get(i)).getYlowerSys();
-		}
-		return GraphSettings.INF;
+		return get(COL_LOWER_SYS, i);
 	}
 
 	/**
@@ -946,10 +1193,14 @@ public class DataArray extends LinePars implements Serializable {
 	 * Clears the current array.
 	 */
 	public void clear() {
+		modCount++;
 
-		if (points.size() > 0) {
+		if (npoints > 0) {
 			Ntot = 0;
-			points.removeAllElements();
+			npoints = 0;
+			lift = null;
+			if (shared)
+				allocate(0);
 			for (int k = 0; k < GraphSettings.N_AXES; k++) {
 				maxValue[k] = -GraphSettings.INF;
 				minValue[k] = GraphSettings.INF;
@@ -965,6 +1216,7 @@ public class DataArray extends LinePars implements Serializable {
 	 *            true if we should sort from small to large
 	 */
 	public void sort(boolean ascending) {
+		modCount++;
 		if (ascending) {
 			// sort-routing in ascending order
 		} else {
@@ -0,0 +1,230 @@
+/**
+ *    Copyright (C)  DataMelt project. The jHPLot package.
+ *    Includes coding developed for Centre d'Informatique Geologique
+ *    by J.V.Lee priory 2000 GNU license.
+ *
+ *    This program is free software; you can redistribute it and/or modify it under the terms
+ *    of the GNU General Public License as published by the Free Software Foundation; either
+ *    version 3 of the License, or any later version.
+ *
+ *    This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *    without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *    See the GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License along with this program;
+ *    if not, see <http://www.gnu.org/licenses>.
+ *
+ *    Additional permission under GNU GPL version 3 section 7:
+ *    If you have received this program as a library with written permission from the DataMelt team,
+ *    you can link or combine this library with your non-GPL project to convey the resulting work.
+ *    In this case, this library should be considered as released under the terms of
+ *    GNU Lesser public license (see <https://www.gnu.org/licenses/lgpl.html>),
+ *    provided you include this license notice and a URL through which recipients can access the
+ *    Corresponding Source.
+ **/
+
+package jplot;
+
+import java.util.BitSet;
+
+/**
+ * Reduce the number of points of a data set before drawing. All methods work
+ * on points already transformed to the panel coordinates and return indices
+ * of the points to be drawn, in increasing order.
+ * <p>
+ * {@link #minMax} keeps the first, last, lowest and highest point in each
+ * pixel column, which draws the same polyline as all points. {@link #lttb}
+ * is the Largest-Triangle-Three-Buckets algorithm, which keeps a fixed
+ * number of points that preserve the shape of a line. {@link #symbols}
+ * keeps one point per pixel.
+ * 
+ * @author S.Chekanov
+ */
+public class Decimation {
+
+	private Decimation() {
+	}
+
+	/**
+	 * Keep the first, last, lowest and highest point in each pixel column.
+	 * Points left of xmin or right of xmax are treated as two columns, since
+	 * their lines are hidden by the margins. The X values must be monotonic.
+	 * 
+	 * @param x
+	 *            X positions
+	 * @param y
+	 *            Y positions
+	 * @param n
+	 *            number of points
+	 * @param xmin
+	 *            left border of the graph area
+	 * @param xmax
+	 *            right border of the graph area
+	 * @return indices of points, or null if X is not monotonic
+	 */
+	public static int[] minMax(double[] x, double[] y, int n, double xmin,
+			double xmax) {
+
+		int dir = 0;
+		for (int i = 1; i < n; i++) {
+			if (x[i] > x[i - 1]) {
+				if (dir < 0)
+					return null;
+				dir = 1;
+			} else if (x[i] < x[i - 1]) {
+				if (dir > 0)
+					return null;
+				dir = -1;
+			} else if (x[i] != x[i - 1]) {
+				return null; // NaN
+			}
+		}
+
+		int[] out = new int[Math.min(n, 64)];
+		int m = 0;
+		int start = 0;
+		while (start < n) {
+			long col = column(x[start], xmin, xmax);
+			int end = start + 1;
+			int lo = start, hi = start;
+			while (end < n && column(x[end], xmin, xmax) == col) {
+				if (y[end] < y[lo])
+					lo = end;
+				if (y[end] > y[hi])
+					hi = end;
+				end++;
+			}
+			int a = Math.min(lo, hi);
+			int b = Math.max(lo, hi);
+			if (m + 4 > out.length)
+				out = java.util.Arrays.copyOf(out, Math.min(n, 2 * out.length + 4));
+			out[m++] = start;
+			if (a != start)
+				out[m++] = a;
+			if (b != a && b != end - 1)
+				out[m++] = b;
+			if (end - 1 != start && end - 1 != a)
+				out[m++] = end - 1;
+			start = end;
+		}
+		return java.util.Arrays.copyOf(out, m);
+	}
+
+	private static long column(double x, double xmin, double xmax) {
+		if (x < xmin - 1)
+			return Long.MIN_VALUE;
+		if (x > xmax + 1)
+			return Long.MAX_VALUE;
+		return (long) Math.floor(x);
+	}
+
+	/**
+	 * Select points with the Largest-Triangle-Three-Buckets algorithm. The
+	 * first and last points are always kept, the other points are split into
+	 * equal buckets and the point forming the largest triangle with the
+	 * previous selected point and the mean of the next bucket is kept.
+	 * 
+	 * @param x
+	 *            X positions
+	 * @param y
+	 *            Y positions
+	 * @param n
+	 *            number of points
+	 * @param threshold
+	 *            number of points to keep
+	 * @return indices of points
+	 */
+	public static int[] lttb(double[] x, double[] y, int n, int threshold) {
+
+		if (threshold >= n || threshold < 3) {
+			int[] all = new int[n];
+			for (int i = 0; i < n; i++)
+				all[i] = i;
+			return all;
+		}
+
+		int[] out = new int[threshold];
+		double every = (double) (n - 2) / (threshold - 2);
+		int a = 0;
+		int m = 0;
+		out[m++] = 0;
+		for (int i = 0; i < threshold - 2; i++) {
+			// mean of the next bucket
+			int from = (int) Math.floor((i + 1) * every) + 1;
+			int to = Math.min((int) Math.floor((i + 2) * every) + 1, n);
+			double ax = 0, ay = 0;
+			for (int k = from; k < to; k++) {
+				ax += x[k];
+				ay += y[k];
+			}
+			int len = to - from;
+			if (len > 0) {
+				ax /= len;
+				ay /= len;
+			} else {
+				ax = x[n - 1];
+				ay = y[n - 1];
+			}
+
+			// point of this bucket with the largest triangle
+			int s = (int) Math.floor(i * every) + 1;
+			int e = (int) Math.floor((i + 1) * every) + 1;
+			double max = -1;
+			int next = s;
+			for (int k = s; k < e; k++) {
+				double area = Math.abs((x[a] - ax) * (y[k] - y[a])
+						- (x[a] - x[k]) * (ay - y[a]));
+				if (area > max) {
+					max = area;
+					next = k;
+				}
+			}
+			out[m++] = next;
+			a = next;
+		}
+		out[m++] = n - 1;
+		return out;
+	}
+
+	/**
+	 * Keep the first point in each pixel. Points outside the given area are
+	 * dropped.
+	 * 
+	 * @param x
+	 *            X positions
+	 * @param y
+	 *            Y positions
+	 * @param n
+	 *            number of points
+	 * @param x0
+	 *            left border of the area
+	 * @param y0
+	 *            top border of the area
+	 * @param w
+	 *            width of the area in pixels
+	 * @param h
+	 *            height of the area in pixels
+	 * @return indices of points
+	 */
+	public static int[] symbols(double[] x, double[] y, int n, double x0,
+			double y0, int w, int h) {
+
+		BitSet used = new BitSet(w * h);
+		int[] out = new int[Math.min(n, 64)];
+		int m = 0;
+		for (int i = 0; i < n; i++) {
+			double dx = x[i] - x0;
+			double dy = y[i] - y0;
+			if (!(dx >= 0 && dx < w && dy >= 0 && dy < h))
+				continue;
+			int k = (int) dy * w + (int) dx;
+			if (used.get(k))
+				continue;
+			used.set(k);
+			if (m == out.length)
+				out = java.util.Arrays.copyOf(out, Math.min(n, 2 * out.length));
+			out[m++] = i;
+		}
+		return java.util.Arrays.copyOf(out, m);
+	}
+}
@@ -0,0 +1,210 @@
+/**
+ *    Copyright (C)  DataMelt project. The jHPLot package.
+ *    Includes coding developed for Centre d'Informatique Geologique
+ *    by J.V.Lee priory 2000 GNU license.
+ *
+ *    This program is free software; you can redistribute it and/or modify it under the terms
+ *    of the GNU General Public License as published by the Free Software Foundation; either
+ *    version 3 of the License, or any later version.
+ *
+ *    This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *    without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *    See the GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License along with this program;
+ *    if not, see <http://www.gnu.org/licenses>.
+ *
+ *    Additional permission under GNU GPL version 3 section 7:
+ *    If you have received this program as a library with written permission from the DataMelt team,
+ *    you can link or combine this library with your non-GPL project to convey the resulting work.
+ *    In this case, this library should be considered as released under the terms of
+ *    GNU Lesser public license (see <https://www.gnu.org/licenses/lgpl.html>),
+ *    provided you include this license notice and a URL through which recipients can access the
+ *    Corresponding Source.
+ **/
+
+package jplot;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.GeneralPath;
+import java.awt.image.BufferedImage;
+
+/**
+ * Count points in screen cells and turn the counts into an image. Used by the
+ * DENSITY graph style, which draws millions of points as one image instead of
+ * one symbol per point. All methods work on positions relative to the upper
+ * left corner of the image.
+ * <p>
+ * A cell is either one pixel (radius 0) or a hexagon with the given radius.
+ * Hexagons are pointy-topped and every second row is shifted by half a
+ * hexagon.
+ * 
+ * @author S.Chekanov
+ */
+public class Density {
+
+	private static final double SQRT3 = Math.sqrt(3.0);
+
+	// alpha of the cells with the lowest count, so single points stay visible
+	private static final int MIN_ALPHA = 48;
+
+	private Density() {
+	}
+
+	/**
+	 * Number of cell columns which cover the image.
+	 * 
+	 * @param w
+	 *            image width
+	 * @param r
+	 *            hexagon radius, or 0 for pixels
+	 * @return number of columns
+	 */
+	public static int columns(int w, double r) {
+		if (r <= 0)
+			return w;
+		return (int) (w / (SQRT3 * r)) + 2;
+	}
+
+	/**
+	 * Number of cell rows which cover the image.
+	 * 
+	 * @param h
+	 *            image height
+	 * @param r
+	 *            hexagon radius, or 0 for pixels
+	 * @return number of rows
+	 */
+	public static int rows(int h, double r) {
+		if (r <= 0)
+			return h;
+		return (int) (h / (1.5 * r)) + 2;
+	}
+
+	/**
+	 * Index of the cell which contains a position, in a row-major array of
+	 * columns(w,r)*rows(h,r) cells.
+	 * 
+	 * @param x
+	 *            X position
+	 * @param y
+	 *            Y position
+	 * @param w
+	 *            image width
+	 * @param h
+	 *            image height
+	 * @param r
+	 *            hexagon radius, or 0 for pixels
+	 * @return cell index, or -1 if the position is outside the image
+	 */
+	public static int cell(double x, double y, int w, int h, double r) {
+		if (!(x >= 0 && x < w && y >= 0 && y < h))
+			return -1;
+		if (r <= 0)
+			return (int) y * w + (int) x;
+
+		// axial coordinates, rounded to the nearest hexagon
+		double q = (SQRT3 / 3.0 * x - y / 3.0) / r;
+		double s = 2.0 / 3.0 * y / r;
+		double t = -q - s;
+		long rq = Math.round(q);
+		long rs = Math.round(s);
+		long rt = Math.round(t);
+		double dq = Math.abs(rq - q);
+		double ds = Math.abs(rs - s);
+		double dt = Math.abs(rt - t);
+		if (dq > ds && dq > dt)
+			rq = -rs - rt;
+		else if (ds > dt)
+			rs = -rq - rt;
+
+		int row = (int) rs;
+		int col = (int) (rq + (rs - (rs & 1)) / 2);
+		int ncol = columns(w, r);
+		if (row < 0 || row >= rows(h, r) || col < 0 || col >= ncol)
+			return -1;
+		return row * ncol + col;
+	}
+
+	/**
+	 * Draw the counts as an image. The cells have the given color, with the
+	 * opacity growing with the count. Empty cells are transparent.
+	 * 
+	 * @param counts
+	 *            counts of the cells, as filled using {@link #cell}
+	 * @param w
+	 *            image width
+	 * @param h
+	 *            image height
+	 * @param r
+	 *            hexagon radius, or 0 for pixels
+	 * @param color
+	 *            color of the densest cell
+	 * @param log
+	 *            use log(1+count) instead of count
+	 * @return image with transparent background
+	 */
+	public static BufferedImage image(int[] counts, int w, int h, double r,
+			Color color, boolean log) {
+
+		int max = 0;
+		for (int i = 0; i < counts.length; i++)
+			if (counts[i] > max)
+				max = counts[i];
+
+		int rgb = color.getRGB() & 0xffffff;
+		double norm = log ? Math.log1p(max) : max;
+		BufferedImage im = new BufferedImage(w, h,
+				BufferedImage.TYPE_INT_ARGB);
+		if (max == 0)
+			return im;
+
+		if (r <= 0) {
+			int[] argb = new int[w * h];
+			for (int i = 0; i < argb.length; i++) {
+				if (counts[i] > 0)
+					argb[i] = argb(counts[i], norm, log, rgb);
+			}
+			im.setRGB(0, 0, w, h, argb, 0, w);
+			return im;
+		}
+
+		GeneralPath hex = new GeneralPath();
+		for (int k = 0; k < 6; k++) {
+			double a = Math.PI / 3.0 * k - Math.PI / 2.0;
+			float px = (float) (r * Math.cos(a));
+			float py = (float) (r * Math.sin(a));
+			if (k == 0)
+				hex.moveTo(px, py);
+			else
+				hex.lineTo(px, py);
+		}
+		hex.closePath();
+
+		Graphics2D g = im.createGraphics();
+		int ncol = columns(w, r);
+		int nrow = rows(h, r);
+		for (int row = 0; row < nrow; row++) {
+			for (int col = 0; col < ncol; col++) {
+				int c = counts[row * ncol + col];
+				if (c == 0)
+					continue;
+				double cx = SQRT3 * r * (col + 0.5 * (row & 1));
+				double cy = 1.5 * r * row;
+				g.setColor(new Color(argb(c, norm, log, rgb), true));
+				g.translate(cx, cy);
+				g.fill(hex);
+				g.translate(-cx, -cy);
+			}
+		}
+		g.dispose();
+		return im;
+	}
+
+	private static int argb(int count, double norm, boolean log, int rgb) {
+		double f = (log ? Math.log1p(count) : count) / norm;
+		int alpha = MIN_ALPHA + (int) ((255 - MIN_ALPHA) * f);
+		return (Math.min(alpha, 255) << 24) | rgb;
+	}
+}
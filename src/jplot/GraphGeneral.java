@@ -198,6 +198,15 @@ public abstract class GraphGeneral extends JPanel implements Printable {
 
 	// protected BufferedImage bi;
 
+	// image of the graph without labels, legend and zoom box, so these can
+	// be moved without drawing the data again. See paintComponent().
+	private transient BufferedImage graphImage;
+	// incremented by repaint() and size changes; the image is valid while
+	// it has this number and the settings and data did not change
+	private transient volatile int graphVersion;
+	private transient int graphImageVersion = -1;
+	private transient long graphImageState;
+
 	private boolean initializing;
 
 	// variables used by a piper diagram
@@ -1196,7 +1205,6 @@ public abstract class GraphGeneral extends JPanel implements Printable {
 		
 		if (g == null ) return;
 
-		currentG=VectorGraphics.create(g);
         	panelSize = getSize();
 
 
@@ -1226,7 +1234,15 @@ public abstract class GraphGeneral extends JPanel implements Printable {
 
 
 
- 	       drawAllGraphics(panelSize, currentG);
+               if (useGraphImage(g)) {
+                   drawGraphImage((Graphics2D) g);
+                   currentG=VectorGraphics.create(g);
+                   setAntiAlias(currentG);
+                   updateLabels();
+               } else {
+                   currentG=VectorGraphics.create(g);
+                   drawAllGraphics(panelSize, currentG);
+               }
                
                  if (numberLabels != gs.getLabels().size()){
                  numberLabels = gs.getLabels().size();
@@ -1263,6 +1279,137 @@ public abstract class GraphGeneral extends JPanel implements Printable {
 
 	
 	void drawAllGraphics(Dimension size, VectorGraphics g2) {
+		drawGraph(size, g2);
+		updateLabels();
+	}
+
+	/**
+	 * Repaints the graph. The cached image of the graph is dropped, so the
+	 * data are drawn again. Use {@link #repaintLabels()} if only labels, the
+	 * legend or the zoom box have changed.
+	 */
+	public void repaint(long tm, int x, int y, int w, int h) {
+		graphVersion++;
+		super.repaint(tm, x, y, w, h);
+	}
+
+	public void setBounds(int x, int y, int w, int h) {
+		if (w != getWidth() || h != getHeight())
+			graphVersion++;
+		super.setBounds(x, y, w, h);
+	}
+
+	public void invalidate() {
+		graphVersion++;
+		super.invalidate();
+	}
+
+	/*
+	 * Combines the modification counts of the settings and of all data sets,
+	 * so any change made without repaint() is seen by the image cache.
+	 */
+	private long graphState() {
+		long state = gs == null ? 0 : gs.getModCount();
+		Vector d = data;
+		if (d == null)
+			return state;
+		synchronized (d) {
+			state = 31 * state + d.size();
+			for (int i = 0; i < d.size(); i++) {
+				Object o = d.get(i);
+				state = 31 * state + System.identityHashCode(o);
+				if (o instanceof DataArray)
+					state = 31 * state + ((DataArray) o).getModCount();
+			}
+		}
+		return state;
+	}
+
+	/*
+	 * Marks the settings as changed after a label or the legend was moved.
+	 * They are drawn over the image of the graph, so a valid image stays
+	 * valid.
+	 */
+	private void setLabelsChanged() {
+		boolean valid = graphImageState == graphState();
+		gs.setDataChanged(true);
+		if (valid)
+			graphImageState = graphState();
+	}
+
+	/**
+	 * Repaints labels, the legend and the zoom box over the cached image of
+	 * the graph, without drawing the data again.
+	 */
+	public void repaintLabels() {
+		super.repaint(0, 0, 0, getWidth(), getHeight());
+	}
+
+	/*
+	 * The image of the graph is used only on the screen. Printers and vector
+	 * formats get the graph drawn directly.
+	 */
+	private boolean useGraphImage(Graphics g) {
+		if (!(g instanceof Graphics2D) || g instanceof VectorGraphics
+				|| isPaintingForPrint())
+			return false;
+		GraphicsConfiguration gc = ((Graphics2D) g).getDeviceConfiguration();
+		return gc != null
+				&& gc.getDevice().getType() == GraphicsDevice.TYPE_RASTER_SCREEN;
+	}
+
+	/*
+	 * Draws the cached image of the graph, drawing the graph into it first if
+	 * the graph or the panel size changed. The image has the resolution of the
+	 * device, so it is copied pixel by pixel.
+	 */
+	private void drawGraphImage(Graphics2D g) {
+		AffineTransform t = g.getTransform();
+		double sx = Math.max(1.0, t.getScaleX());
+		double sy = Math.max(1.0, t.getScaleY());
+		int w = (int) Math.ceil(panelSize.width * sx);
+		int h = (int) Math.ceil(panelSize.height * sy);
+		if (w < 1 || h < 1)
+			return;
+
+		int version = graphVersion;
+		long state = graphState();
+		if (graphImage == null || graphImage.getWidth() != w
+				|| graphImage.getHeight() != h || graphImageVersion != version
+				|| graphImageState != state
+				|| width != panelSize.width || height != panelSize.height) {
+			if (graphImage == null || graphImage.getWidth() != w
+					|| graphImage.getHeight() != h) {
+				GraphicsConfiguration gc = g.getDeviceConfiguration();
+				graphImage = gc.createCompatibleImage(w, h);
+			}
+			Graphics2D ig = graphImage.createGraphics();
+			ig.scale(sx, sy);
+			VectorGraphics g2 = VectorGraphics.create(ig);
+			currentG = g2;
+			drawGraph(panelSize, g2);
+			g2.dispose();
+			ig.dispose();
+			graphImageVersion = version;
+			graphImageState = state;
+		}
+		g.drawImage(graphImage, 0, 0, panelSize.width, panelSize.height, null);
+	}
+
+	private void setAntiAlias(VectorGraphics g2) {
+		if (gs.getAntiAlias()) {
+			g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+					RenderingHints.VALUE_ANTIALIAS_ON);
+		} else {
+			g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+					RenderingHints.VALUE_ANTIALIAS_OFF);
+		}
+	}
+
+	/*
+	 * Draws the graph without labels and legend.
+	 */
+	private void drawGraph(Dimension size, VectorGraphics g2) {
 		 
 		
 		
@@ -1278,13 +1425,7 @@ public abstract class GraphGeneral extends JPanel implements Printable {
 
 		}
 
-		if (gs.getAntiAlias()) {
-            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
-		            RenderingHints.VALUE_ANTIALIAS_ON);
-            } else {
-            	g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
-                    RenderingHints.VALUE_ANTIALIAS_OFF);
-            }
+		setAntiAlias(g2);
 		
 		
            g2.setColor(gs.getBackgroundColor());
@@ -1363,6 +1504,11 @@ public abstract class GraphGeneral extends JPanel implements Printable {
 	 */
 	abstract void updateGraph();
 
+	/**
+	 * Draws the labels and the legend over the graph.
+	 */
+	abstract void updateLabels();
+
 
 
 	/**
@@ -1473,11 +1619,9 @@ public abstract class GraphGeneral extends JPanel implements Printable {
 						for (Enumeration e2 = data.elements(); e2
 								.hasMoreElements();) {
 							DataArray da = (DataArray) e2.nextElement();
-							for (Enumeration e3 = da.getData().elements(); e3
-									.hasMoreElements();) {
-								PlotPoint p = (PlotPoint) e3.nextElement();
-								xx = toX(p.getX());
-								yy = toY(p.getY());
+							for (int k = 0; k < da.size(); k++) {
+								xx = toX(da.getX(k));
+								yy = toY(da.getY(k));
 								if (xStart > xx - 3 && xStart < xx + 3
 										&& yStart > yy - 3 && yStart < yy + 3) {
 									LinePars lp = jplot.styleChooser.show(a, b,
@@ -1758,9 +1902,9 @@ public abstract class GraphGeneral extends JPanel implements Printable {
 				legendActive = false;
 				gs.setLegendPosition((double) x1, (double) y1);
 				gs.setUseLegendPosition(true);
-				gs.setDataChanged(true);
+				setLabelsChanged();
 				// updateGraph();
-                 repaint();
+                 repaintLabels();
  
 			} else {
 				for (Enumeration el = gs.getLabels().elements(); el
@@ -1769,11 +1913,11 @@ public abstract class GraphGeneral extends JPanel implements Printable {
 					if (gl.isActive()) {
 						gl.setActive(false);
 						if (x1 != (int) gl.getX() || y1 != (int) gl.getY()) {
-							gs.setDataChanged(true);
+							setLabelsChanged();
 							gl.setLocation((double) x1, (double) y1);
 							gl.setUsePosition(true);
 							// updateGraph();
-				            repaint();
+				            repaintLabels();
 
                               
                                 // show label position in status bar
@@ -1792,7 +1936,7 @@ public abstract class GraphGeneral extends JPanel implements Printable {
 										+ (int) gl.getYPos());
 							}
 						} else
-							repaint();
+							repaintLabels();
 						break;
 					}
 				}
@@ -1826,7 +1970,7 @@ public abstract class GraphGeneral extends JPanel implements Printable {
                         if (_isDragging) {
                        _lastX = x;
                        _lastY = y;
-                        repaint();
+                        repaintLabels();
                         // System.out.println("Druggin"); 
                         }
                         } else { _isDragging = false; }
@@ -301,6 +301,31 @@ public class GraphSettings extends DataChangeListener implements Serializable {
 
 	private final String lf = System.getProperty("line.separator");
 
+	// incremented by setDataChanged(), used to detect stale drawing caches
+	private transient int modCount;
+
+	/**
+	 * Sets the flag indicating that the settings have changed. Each call also
+	 * counts as a change for cached drawings of the graph.
+	 * 
+	 * @param b
+	 *            true if the settings are changed
+	 */
+	public void setDataChanged(boolean b) {
+		modCount++;
+		super.setDataChanged(b);
+	}
+
+	/**
+	 * Returns the number of calls of setDataChanged(). It is used to detect
+	 * stale drawing caches.
+	 * 
+	 * @return modification count
+	 */
+	public int getModCount() {
+		return modCount;
+	}
+
 	/**
 	 * Principal constructor. Builds the object with defaults values.
 	 * 
@@ -29,6 +29,7 @@ import graph.RTextLine;
 import java.awt.*;
 import java.awt.geom.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.text.DecimalFormat;
 import java.text.Format;
 import org.freehep.graphics2d.VectorGraphics;
@@ -51,6 +52,16 @@ public class GraphXY extends GraphGeneral {
 	private int NtotPoly = 0;
 	private Contour contour;
 
+	// data sets reduced for the current axes, see getPoints()
+	private transient Map<DataArray, Decimated> decimated;
+	// points of the data set drawn now, in pixels
+	private transient DataArray screen;
+
+	// data sets with fewer points per pixel column are not reduced
+	private static final int DECIMATION_MIN = 4;
+	// smallest number of points counted by one thread in the DENSITY style
+	private static final int DENSITY_CHUNK = 1 << 18;
+
 	/**
 	 * Main constructor. Sets the settings to their default values. If the graph
 	 * is used without the jplot GUI (hence without a JPlot instance), set the
@@ -1053,35 +1064,123 @@ public class GraphXY extends GraphGeneral {
 	 * (i.e. outside the axes system).
 	 */
 	public Vector getPoints(DataArray da) {
+		return getScreenPoints(da).getData();
+	}
+
+	/*
+	 * Draw a data set with the DENSITY style: the points are counted in pixels
+	 * (or hexagons) of the graph area and the counts are drawn as one image.
+	 * Large data sets are counted in chunks, with a thread per processor.
+	 */
+	private void drawDensity(Graphics2D g2, final DataArray da) {
+
+		final int w = (int) axisLength[X];
+		final int h = (int) axisLength[Y];
+		if (w <= 0 || h <= 0 || da.size() == 0)
+			return;
+		final double r = da.getDensityHexbin() ? Math.max(2.0, da
+				.getSymbolSize()) : 0.0;
+		final int ncells = Density.columns(w, r) * Density.rows(h, r);
+
+		int n = da.size();
+		int tasks = Math.min(Runtime.getRuntime().availableProcessors(),
+				(n + DENSITY_CHUNK - 1) / DENSITY_CHUNK);
+		int[] counts = null;
+		if (tasks > 1) {
+			ExecutorService pool = Executors.newFixedThreadPool(tasks);
+			ArrayList<Future<int[]>> futures = new ArrayList<Future<int[]>>();
+			try {
+				for (int k = 0; k < tasks; k++) {
+					final int first = (int) ((long) n * k / tasks);
+					final int last = (int) ((long) n * (k + 1) / tasks);
+					futures.add(pool.submit(new Callable<int[]>() {
+						public int[] call() {
+							return countDensity(da, first, last, w, h, r,
+									ncells);
+						}
+					}));
+				}
+				counts = futures.get(0).get();
+				for (int k = 1; k < tasks; k++) {
+					int[] c = futures.get(k).get();
+					for (int i = 0; i < ncells; i++)
+						counts[i] += c[i];
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				counts = null;
+			} catch (ExecutionException e) {
+				throw new RuntimeException(e.getCause());
+			} finally {
+				pool.shutdown();
+			}
+		}
+		if (counts == null)
+			counts = countDensity(da, 0, n, w, h, r, ncells);
 
-		Vector data = da.getData();
+		g2.drawImage(Density.image(counts, w, h, r, da.getColor(), da
+				.getDensityLog()), (int) leftMargin, (int) topMargin, null);
+	}
 
-		double x, y, oldX = 0.0;
+	/*
+	 * Count the points first..last-1 in the cells of the graph area.
+	 */
+	private int[] countDensity(DataArray da, int first, int last, int w,
+			int h, double r, int ncells) {
+		int[] counts = new int[ncells];
+		int x0 = (int) leftMargin;
+		int y0 = (int) topMargin;
+		for (int i = first; i < last; i++) {
+			int c = Density.cell(toX(da.getX(i)) - x0, toY(da.getY(i)) - y0,
+					w, h, r);
+			if (c >= 0)
+				counts[c]++;
+		}
+		return counts;
+	}
+
+	/*
+	 * Same as getPoints(), but the points are kept in the columns of a data
+	 * array in pixel coordinates, so no object is made per point. The array
+	 * is reused by the next call, unless the data set was reduced.
+	 */
+	private DataArray getScreenPoints(DataArray da) {
+
+		int mode = decimationMode(da);
+		if (mode != LinePars.DECIMATION_NONE) {
+			DataArray p = getDecimatedPoints(da, mode);
+			if (p != null)
+				return p;
+		}
+
+		double x, y, ex, ey;
 		double left, right, upper, lower, left_sys, right_sys, upper_sys, lower_sys;
-		Vector<PlotPoint> p = new Vector<PlotPoint>();
-		int i = 0;
+		if (screen == null)
+			screen = new DataArray();
+		DataArray p = screen;
+		p.clear();
 
 		double aXmin = leftMargin;
 		double aXmax = leftMargin + axisLength[X];
 		double aYmin = topMargin + axisLength[Y];
 		double aYmax = topMargin;
 
-		for (Enumeration e = data.elements(); e.hasMoreElements(); i++) {
-			PlotPoint pp = (PlotPoint) e.nextElement();
-
-			// pp.print();
-
-			x = toX(pp.getX());
-			y = toY(pp.getY());
-			left = toX(pp.getX() - pp.getXleft());
-			right = toX(pp.getX() + pp.getXright());
-			upper = toY(pp.getY() + pp.getYupper());
-			lower = toY(pp.getY() - pp.getYlower());
+		int n = da.size();
+		for (int i = 0; i < n; i++) {
+			ex = da.getX(i);
+			ey = da.getY(i);
+
+			x = toX(ex);
+			y = toY(ey);
+			left = toX(ex - da.getXleft(i));
+			right = toX(ex + da.getXright(i));
+			upper = toY(ey + da.getYupper(i));
+			lower = toY(ey - da.getYlower(i));
 			// naow, systematical bars
-			left_sys = toX(pp.getX() - pp.getXleft() - pp.getXleftSys());
-			right_sys = toX(pp.getX() + pp.getXright() + pp.getXrightSys());
-			upper_sys = toY(pp.getY() + pp.getYupper() + pp.getYupperSys());
-			lower_sys = toY(pp.getY() - pp.getYlower() - pp.getYlowerSys());
+			left_sys = toX(ex - da.getXleft(i) - da.getXleftSys(i));
+			right_sys = toX(ex + da.getXright(i) + da.getXrightSys(i));
+			upper_sys = toY(ey + da.getYupper(i) + da.getYupperSys(i));
+			lower_sys = toY(ey - da.getYlower(i) - da.getYlowerSys(i));
 
 			// skip some points ouside in case of symbols
 			if (da.getGraphStyle() != LinePars.HISTO) {
@@ -1104,14 +1203,115 @@ public class GraphXY extends GraphGeneral {
 			}
 
 			// if (inRange(x, y))
-			p.add(new PlotPoint(x, y, left, right, upper, lower, left_sys,
-					right_sys, upper_sys, lower_sys));
+			p.addPoint(x, y, left, right, upper, lower, left_sys, right_sys,
+					upper_sys, lower_sys);
+
+		}
+
+		return p;
+	}
 
+	/*
+	 * Decide whether a data set can be reduced before drawing. Only lines or
+	 * symbols without errors are reduced, since for them the picture does not
+	 * depend on the points which are dropped.
+	 */
+	private int decimationMode(DataArray da) {
+
+		if (da.getDecimation() == LinePars.DECIMATION_NONE)
+			return LinePars.DECIMATION_NONE;
+		if (da.size() < DECIMATION_MIN * axisLength[X])
+			return LinePars.DECIMATION_NONE;
+		if (da.getGraphStyle() != LinePars.LINES
+				|| da.getPointFrequency() != 1)
+			return LinePars.DECIMATION_NONE;
+		if (da.getErrorsX() || da.getErrorsY() || da.getErrorsSysX()
+				|| da.getErrorsSysY() || da.getErrorsFill()
+				|| da.getErrorsFillSys())
+			return LinePars.DECIMATION_NONE;
+		if (da.drawLine() && !da.drawSymbol() && da.getDashLength() <= 0)
+			return da.getDecimation();
+		if (da.drawSymbol() && !da.drawLine())
+			return LinePars.DECIMATION_AUTO;
+		return LinePars.DECIMATION_NONE;
+	}
+
+	/*
+	 * Reduce a data set to the points needed to draw it on the current axes.
+	 * The result is cached until the axes, the panel size or the data change,
+	 * so repaints at the same zoom do not transform all points again. Returns
+	 * null if the points cannot be reduced.
+	 */
+	private DataArray getDecimatedPoints(DataArray da, int mode) {
+
+		int n = da.size();
+		float size = da.getSymbolSize() * scalingFrame;
+		double[] key = { leftMargin, topMargin, axisLength[X],
+				axisLength[Y], gs.getMinValue(X), gs.getMaxValue(X),
+				gs.getMinValue(Y), gs.getMaxValue(Y),
+				gs.useLogScale(X) ? 1 : 0, gs.useLogScale(Y) ? 1 : 0, inv[X],
+				inv[Y], diff[X], diff[Y], mode, da.drawLine() ? 1 : 0, size,
+				n, da.getModCount() };
+
+		if (decimated == null)
+			decimated = new WeakHashMap<DataArray, Decimated>();
+		Decimated d = decimated.get(da);
+		if (d != null && Arrays.equals(d.key, key))
+			return d.points;
+
+		double[] sx = new double[n];
+		double[] sy = new double[n];
+		for (int i = 0; i < n; i++) {
+			sx[i] = toX(da.getX(i));
+			sy[i] = toY(da.getY(i));
+		}
+
+		int[] keep;
+		if (!da.drawLine()) {
+			int pad = (int) Math.ceil(size) + 1;
+			keep = Decimation.symbols(sx, sy, n, leftMargin - pad, topMargin
+					- pad, (int) axisLength[X] + 2 * pad, (int) axisLength[Y]
+					+ 2 * pad);
+		} else if (mode == LinePars.DECIMATION_LTTB) {
+			keep = Decimation.lttb(sx, sy, n, 2 * (int) axisLength[X]);
+		} else {
+			keep = Decimation.minMax(sx, sy, n, leftMargin, leftMargin
+					+ axisLength[X]);
+		}
+
+		DataArray p = null;
+		if (keep != null) {
+			p = new DataArray(-1, -1, keep.length);
+			for (int i = 0; i < keep.length; i++) {
+				int k = keep[i];
+				double ex = da.getX(k);
+				double ey = da.getY(k);
+				p.addPoint(sx[k], sy[k], toX(ex - da.getXleft(k)), toX(ex
+						+ da.getXright(k)), toY(ey + da.getYupper(k)), toY(ey
+						- da.getYlower(k)), toX(ex - da.getXleft(k)
+						- da.getXleftSys(k)), toX(ex + da.getXright(k)
+						+ da.getXrightSys(k)), toY(ey + da.getYupper(k)
+						+ da.getYupperSys(k)), toY(ey - da.getYlower(k)
+						- da.getYlowerSys(k)));
+			}
 		}
 
+		// unsorted data are remembered too, so they are not checked again
+		d = new Decimated();
+		d.key = key;
+		d.points = p;
+		decimated.put(da, d);
 		return p;
 	}
 
+	/*
+	 * Points of a reduced data set and the axes they were computed for.
+	 */
+	private static class Decimated {
+		double[] key;
+		DataArray points;
+	}
+
 	// /**
 	// * Does the graph update for a stick- or bar-graph:
 	// */
@@ -1214,9 +1414,15 @@ public class GraphXY extends GraphGeneral {
 
 			// da.print();
 
+			// density type. Counts of points are drawn as one image
+			if (da.getGraphStyle() == LinePars.DENSITY) {
+				drawDensity(g2, da);
+				continue;
+			}
+
 			// get a vector with valid points (i.e. all points which fall
 			// beyond the current domain are ignored):
-			Vector points = getPoints(da);
+			DataArray points = getScreenPoints(da);
 			if (points.size() == 0)
 				continue;
 
@@ -1269,17 +1475,18 @@ public class GraphXY extends GraphGeneral {
 			if (da.drawLine())
 				g2.setStroke(da.getStroke());
 
-			PlotPoint prev = new PlotPoint(0.0, 0.0);
-			int i = 1;
+			double prevX = 0.0, prevY = 0.0, prevXleft = 0.0, prevXright = 0.0;
+			boolean prevLift = false;
+			int n = points.size();
 
 			// System.out.println(points.size());
 
 			// SSSS
-			for (Enumeration e2 = points.elements(); e2.hasMoreElements(); i++) {
+			for (int i = 1; i <= n; i++) {
 
-				PlotPoint pp = (PlotPoint) e2.nextElement();
+				int k = i - 1;
 
-				histoWidth = pp.getXright() - pp.getXleft();
+				histoWidth = points.getXright(k) - points.getXleft(k);
 
 				// now show errors
 				int sl = (int) (da.getErrTicSize() * scalingFrame);
@@ -1287,51 +1494,51 @@ public class GraphXY extends GraphGeneral {
 					sl = 0; // when bins are too fine
 				float size = da.getSymbolSize() * scalingFrame;
 
-				// System.out.println(pp.getX());
+				// System.out.println(points.getX(k));
 
 				// mak sure that small tics on the error bars do not cross the
 				// Min and Max
-				double XlowTic = pp.getX() - sl;
+				double XlowTic = points.getX(k) - sl;
 				if (XlowTic <= cXmin)
-					XlowTic = pp.getX();
+					XlowTic = points.getX(k);
 
-				double XupTic = pp.getX() + sl;
+				double XupTic = points.getX(k) + sl;
 				if (XupTic >= cXmax)
-					XupTic = pp.getX();
+					XupTic = points.getX(k);
 
 				// errors should no go over the border
-				double Ylow = pp.getYlower();
+				double Ylow = points.getYlower(k);
 				if (Ylow > cYmin)
 					Ylow = cYmin - 1;
 				if (Ylow < cYmax)
 					Ylow = cYmax + 1;
 
-				double Yup = pp.getYupper();
+				double Yup = points.getYupper(k);
 				if (Yup < cYmax)
 					Yup = cYmax + 1;
 
-				double YlowS = pp.getYlowerSys();
+				double YlowS = points.getYlowerSys(k);
 				if (YlowS > cYmin)
 					YlowS = cYmin - 1;
 
-				double YupS = pp.getYupperSys();
+				double YupS = points.getYupperSys(k);
 				if (YupS < cYmax)
 					YupS = cYmax + 1;
 
 				// x axis
-				double Xlow = pp.getXleft();
+				double Xlow = points.getXleft(k);
 				if (Xlow < cXmin)
 					Xlow = cXmin + 1;
 
-				double Xup = pp.getXright();
+				double Xup = points.getXright(k);
 				if (Xup > cXmax)
 					Xup = cXmax - 1;
 
-				double XlowS = pp.getXleftSys();
+				double XlowS = points.getXleftSys(k);
 				if (XlowS < cXmin)
 					XlowS = cXmin + 1;
 
-				double XupS = pp.getXrightSys();
+				double XupS = points.getXrightSys(k);
 				if (XupS > cXmax)
 					XupS = cXmax - 1;
 
@@ -1341,7 +1548,7 @@ public class GraphXY extends GraphGeneral {
 				if (da.drawSymbol() && (i % da.getPointFrequency()) == 0) {
 
 					// System.out.println(
-					// "pp.getYlower()="+Double.toString(pp.getYlower())+ "
+					// "points.getYlower(k)="+Double.toString(points.getYlower(k))+ "
 					// cYmin"+cYmin );
 
 					g2.setStroke(lineSolidStroke);
@@ -1353,22 +1560,22 @@ public class GraphXY extends GraphGeneral {
 
 						// take care symbol size, draw vertical erors
 						// low
-						g2.drawLine(pp.getX(), Ylow, pp.getX(), pp.getY() + 0.5
+						g2.drawLine(points.getX(k), Ylow, points.getX(k), points.getY(k) + 0.5
 								* size);
 
 						// build a polygon
 						if (da.getErrorsFill()) {
-							xpolDW[i - 1] = (int) pp.getX();
+							xpolDW[i - 1] = (int) points.getX(k);
 							ypolDW[i - 1] = (int) Ylow;
 						}
 
 						// up
-						g2.drawLine(pp.getX(), pp.getY() - 0.5 * size,
-								pp.getX(), Yup);
+						g2.drawLine(points.getX(k), points.getY(k) - 0.5 * size,
+								points.getX(k), Yup);
 
 						// upper for polygone
 						if (da.getErrorsFill()) {
-							xpolUP[i - 1] = (int) pp.getX();
+							xpolUP[i - 1] = (int) points.getX(k);
 							ypolUP[i - 1] = (int) Yup;
 						}
 
@@ -1386,16 +1593,16 @@ public class GraphXY extends GraphGeneral {
 								* scalingFrame));
 
 						// lower
-						g2.drawLine(pp.getX(), YlowS, pp.getX(), Ylow);
+						g2.drawLine(points.getX(k), YlowS, points.getX(k), Ylow);
 						if (da.getErrorsFillSys()) {
-							xpolDWsys[i - 1] = (int) pp.getX();
+							xpolDWsys[i - 1] = (int) points.getX(k);
 							ypolDWsys[i - 1] = (int) YlowS;
 						}
 
 						// upper
-						g2.drawLine(pp.getX(), Yup, pp.getX(), YupS);
+						g2.drawLine(points.getX(k), Yup, points.getX(k), YupS);
 						if (da.getErrorsFillSys()) {
-							xpolUPsys[i - 1] = (int) pp.getX();
+							xpolUPsys[i - 1] = (int) points.getX(k);
 							ypolUPsys[i - 1] = (int) YupS;
 						}
 
@@ -1407,17 +1614,17 @@ public class GraphXY extends GraphGeneral {
 								* scalingFrame));
 						g2.setPaint(da.getColorErrorsX());
 
-						g2.drawLine(Xlow, pp.getY(), pp.getX() - 0.5 * size,
-								pp.getY());
+						g2.drawLine(Xlow, points.getY(k), points.getX(k) - 0.5 * size,
+								points.getY(k));
 
-						g2.drawLine(pp.getX() + 0.5 * size, pp.getY(), Xup,
-								pp.getY());
+						g2.drawLine(points.getX(k) + 0.5 * size, points.getY(k), Xup,
+								points.getY(k));
 
 						// small tic
 
-						g2.drawLine(Xlow, pp.getY() - sl, Xlow, pp.getY() + sl);
+						g2.drawLine(Xlow, points.getY(k) - sl, Xlow, points.getY(k) + sl);
 
-						g2.drawLine(Xup, pp.getY() - sl, Xup, pp.getY() + sl);
+						g2.drawLine(Xup, points.getY(k) - sl, Xup, points.getY(k) + sl);
 
 					}
 
@@ -1426,9 +1633,9 @@ public class GraphXY extends GraphGeneral {
 						g2.setPaint(da.getColorErrorsSysX());
 						g2.setStroke(new BasicStroke(da.getPenWidthErrSys()
 								* scalingFrame));
-						g2.drawLine(XlowS, pp.getY(), Xlow, pp.getY());
+						g2.drawLine(XlowS, points.getY(k), Xlow, points.getY(k));
 
-						g2.drawLine(Xup, pp.getY(), XupS, pp.getY());
+						g2.drawLine(Xup, points.getY(k), XupS, points.getY(k));
 
 					}
 
@@ -1436,21 +1643,21 @@ public class GraphXY extends GraphGeneral {
 					g2.setStroke(new BasicStroke(da.getPenWidth()
 							* scalingFrame));
 					g2.setPaint(da.getColor());
-					GPoints.drawPointType(da.getSymbol(), g2, pp.getX(),
-							pp.getY(), size);
+					GPoints.drawPointType(da.getSymbol(), g2, points.getX(k),
+							points.getY(k), size);
 				} // end markers
 
 				g2.setStroke(lineSolidStroke);
 				if (da.getGraphStyle() == LinePars.STICKS) {
-					g2.drawLine(pp.getX(), pp.getY(), pp.getX(), zeroY);
+					g2.drawLine(points.getX(k), points.getY(k), points.getX(k), zeroY);
 
 				}
 
 				else if (da.getGraphStyle() == LinePars.HISTO) {
 
-					// double xlow = pp.getX() - histoWidth / 2.0;
-					double xlow = pp.getXleft();
-					double xup = pp.getXright();
+					// double xlow = points.getX(k) - histoWidth / 2.0;
+					double xlow = points.getXleft(k);
+					double xup = points.getXright(k);
 					double hW = histoWidth;
 
 					// if lower than min x value
@@ -1461,7 +1668,7 @@ public class GraphXY extends GraphGeneral {
 					}
 
 					// if larger than max X value
-					// double xup = pp.getX() + histoWidth / 2.0;
+					// double xup = points.getX(k) + histoWidth / 2.0;
 					if (xup > cXmax) {
 						double dd = xup - cXmax;
 						xup = cXmax;
@@ -1469,8 +1676,8 @@ public class GraphXY extends GraphGeneral {
 					}
 
 					// if lower than min x value
-					// double xlow_prev = prev.getX() - histoWidth / 2.0;
-					double xlow_prev = prev.getXleft();
+					// double xlow_prev = prevX - histoWidth / 2.0;
+					double xlow_prev = prevXleft;
 					if (xlow_prev < cXmin) {
 						double dd = cXmin - xlow_prev;
 						xlow_prev = cXmin;
@@ -1478,8 +1685,8 @@ public class GraphXY extends GraphGeneral {
 					}
 
 					// if larger than max X value
-					// double xup_prev = prev.getX() + histoWidth / 2.0;
-					double xup_prev = prev.getXright();
+					// double xup_prev = prevX + histoWidth / 2.0;
+					double xup_prev = prevXright;
 					if (xup_prev > cXmax) {
 						double dd = xup_prev - cXmax;
 						xup_prev = cXmax;
@@ -1501,9 +1708,9 @@ public class GraphXY extends GraphGeneral {
 								da.getFillColorTransparency());
 						g2.setComposite(c);
 
-						g2.fillRect(xlow, pp.getY(), histoWidth,
-								cYmin - pp.getY());
-						// rect.setRect(xlow, pp.getY(),histoWidth, pp.getY());
+						g2.fillRect(xlow, points.getY(k), histoWidth,
+								cYmin - points.getY(k));
+						// rect.setRect(xlow, points.getY(k),histoWidth, points.getY(k));
 
 						// g2.setPaint(Color.black);
 
@@ -1516,8 +1723,8 @@ public class GraphXY extends GraphGeneral {
 
 					// draw a empty histogram with bars
 					if (da.isBarShown()) {
-						rect.setRect(xlow, pp.getY(), histoWidth,
-								cYmin - pp.getY());
+						rect.setRect(xlow, points.getY(k), histoWidth,
+								cYmin - points.getY(k));
 						g2.setStroke(lineSolidStroke);
 						g2.setColor(da.getColor());
 						g2.draw(rect);
@@ -1525,34 +1732,34 @@ public class GraphXY extends GraphGeneral {
 
 					// this draws horisontal part of histograms
 					g2.setPaint(da.getColor());
-					g2.drawLine(xlow, pp.getY(), xup, pp.getY());
+					g2.drawLine(xlow, points.getY(k), xup, points.getY(k));
 
 					if (i > 1) {
-						g2.drawLine(xlow, prev.getY(), xlow, pp.getY());
+						g2.drawLine(xlow, prevY, xlow, points.getY(k));
 						// System.out.println("xlow="+Float.toString(xlow));
 						// System.out.println("="+Float.toString(xlow));
 
 						if ((xlow - xup_prev) > 0.05) {
 							// System.out.println("Fix me
-							// pp.getY()="+Double.toString(pp.getY()));
+							// points.getY(k)="+Double.toString(points.getY(k)));
 
-							g2.drawLine(xup_prev, prev.getY(), xup_prev, cYmin);
+							g2.drawLine(xup_prev, prevY, xup_prev, cYmin);
 
-							g2.drawLine(xlow, pp.getY(), xlow, cYmin);
+							g2.drawLine(xlow, points.getY(k), xlow, cYmin);
 
 							// line.setLine( xlow, zeroY,
-							// xlow, pp.getY() );
+							// xlow, points.getY(k) );
 							// g2.draw(line);
 						}
 
 					}
 
 					if (i == 1) {
-						g2.drawLine(xlow, cYmin, xlow, pp.getY());
+						g2.drawLine(xlow, cYmin, xlow, points.getY(k));
 
 					}
 					if (i == points.size()) {
-						g2.drawLine(xup, cYmin, xup, pp.getY());
+						g2.drawLine(xup, cYmin, xup, points.getY(k));
 
 					}
 
@@ -1561,12 +1768,12 @@ public class GraphXY extends GraphGeneral {
 						g2.setPaint(da.getColorErrorsY());
 						// g2.setStroke(new BasicStroke(da.getPenWidthErr()));
 
-						g2.drawLine(pp.getX(), Ylow, pp.getX(), Yup);
+						g2.drawLine(points.getX(k), Ylow, points.getX(k), Yup);
 
 						if (da.getErrorsFill()) {
-							xpolDW[i - 1] = (int) pp.getX();
+							xpolDW[i - 1] = (int) points.getX(k);
 							ypolDW[i - 1] = (int) Ylow;
-							xpolUP[i - 1] = (int) pp.getX();
+							xpolUP[i - 1] = (int) points.getX(k);
 							ypolUP[i - 1] = (int) Yup;
 						}
 
@@ -1582,9 +1789,9 @@ public class GraphXY extends GraphGeneral {
 						g2.setStroke(new BasicStroke(da.getPenWidthErrSys()
 								* scalingFrame));
 
-						g2.drawLine(pp.getX(), YlowS, pp.getX(), Ylow);
+						g2.drawLine(points.getX(k), YlowS, points.getX(k), Ylow);
 
-						g2.drawLine(pp.getX(), Ylow, pp.getX(), YlowS);
+						g2.drawLine(points.getX(k), Ylow, points.getX(k), YlowS);
 
 					} // end Y
 
@@ -1594,13 +1801,13 @@ public class GraphXY extends GraphGeneral {
 						g2.setStroke(new BasicStroke(da.getPenWidthErr()
 								* scalingFrame));
 
-						g2.drawLine(Xlow, pp.getY(), Xup, pp.getY());
+						g2.drawLine(Xlow, points.getY(k), Xup, points.getY(k));
 
 						// show tics
 
-						g2.drawLine(Xlow, pp.getY() - sl, Xlow, pp.getY() + sl);
+						g2.drawLine(Xlow, points.getY(k) - sl, Xlow, points.getY(k) + sl);
 
-						g2.drawLine(Xup, pp.getY() - sl, Xup, pp.getY() + sl);
+						g2.drawLine(Xup, points.getY(k) - sl, Xup, points.getY(k) + sl);
 
 					}
 
@@ -1610,9 +1817,9 @@ public class GraphXY extends GraphGeneral {
 						g2.setStroke(new BasicStroke(da.getPenWidthErrSys()
 								* scalingFrame));
 
-						g2.drawLine(XlowS, pp.getY(), Xlow, pp.getY());
+						g2.drawLine(XlowS, points.getY(k), Xlow, points.getY(k));
 
-						g2.drawLine(Xup, pp.getY(), XupS, pp.getY());
+						g2.drawLine(Xup, points.getY(k), XupS, points.getY(k));
 
 					}
 
@@ -1621,25 +1828,25 @@ public class GraphXY extends GraphGeneral {
 				// Draw a line if asked for. If dashes are used, calculate
 				// the minimum distance between two plotting points in order
 				// to display the dash correctly:
-				else if (i > 1 && da.drawLine() && !prev.liftPen()) {
+				else if (i > 1 && da.drawLine() && !prevLift) {
 
 					g2.setStroke(lineStroke);
 
 					if (da.getDashLength() > 0
 							&& (da.getType() == LinePars.H1D || da.getType() == LinePars.F1D)) {
 
-						double minDist = Math.sqrt((pp.getX() - prev.getX())
-								* (pp.getX() - prev.getX())
-								+ (pp.getY() - prev.getY())
-								* (pp.getY() - prev.getY()));
+						double minDist = Math.sqrt((points.getX(k) - prevX)
+								* (points.getX(k) - prevX)
+								+ (points.getY(k) - prevY)
+								* (points.getY(k) - prevY));
 
 						// System.out.println(da.getType());
 
 						if (da.getType() == LinePars.H1D) {
 							if (minDist < da.getDashLength() * 2)
 								continue;
-							g2.drawLine(prev.getX(), prev.getY(), pp.getX(),
-									pp.getY());
+							g2.drawLine(prevX, prevY, points.getX(k),
+									points.getY(k));
 
 						}
 
@@ -1648,8 +1855,8 @@ public class GraphXY extends GraphGeneral {
 							dashCounter1 = dashCounter1 + minDist;
 							if (dashCounter1 > da.getDashLength() * 2) {
 
-								g2.drawLine(prev.getX(), prev.getY(),
-										pp.getX(), pp.getY());
+								g2.drawLine(prevX, prevY,
+										points.getX(k), points.getY(k));
 
 								dashCounter2 = dashCounter2 + minDist;
 								if (dashCounter2 > da.getDashLength() * 2) {
@@ -1664,13 +1871,17 @@ public class GraphXY extends GraphGeneral {
 
 					} else { // no dashed
 
-						g2.drawLine(prev.getX(), prev.getY(), pp.getX(),
-								pp.getY());
+						g2.drawLine(prevX, prevY, points.getX(k),
+								points.getY(k));
 					}
 
 				}
 
-				prev = pp;
+				prevX = points.getX(k);
+				prevY = points.getY(k);
+				prevXleft = points.getXleft(k);
+				prevXright = points.getXright(k);
+				prevLift = points.liftPen(k);
 			}
 
 			// ---------------- fill area between error bars
@@ -1776,6 +1987,23 @@ public class GraphXY extends GraphGeneral {
 		if (gs.primitivesToFront())
 			plotPrimitives(g2);
 
+		g2.setStroke(new BasicStroke());
+
+	}
+
+	/**
+	 * Draws the title labels and the legend. They are drawn over the graph
+	 * made by updateGraph(), so they can be moved without drawing the data
+	 * again.
+	 */
+	protected void updateLabels() {
+
+		VectorGraphics g2 = currentG;
+		if (g2 == null)
+			return;
+
+		g2.setStroke(new BasicStroke(gs.getPenWidthAxis() * scalingFrame));
+
 		// draw the title labels:
 		plotLabels(g2);
 
@@ -248,7 +248,8 @@ public class JPlot extends JPanel {
 	loaded = true;
       }
     };
-    t.start();
+    // dialogs cannot be made without a display
+    if (!GraphicsEnvironment.isHeadless()) t.start();
 
 
     // load script file if any present:
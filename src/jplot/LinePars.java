@@ -48,6 +48,7 @@ public class LinePars implements Serializable {
 	static public final int LINES = 0;
 	static public final int HISTO = 1;
 	static public final int CONTOUR = 2;
+	static public final int DENSITY = 3;
 
 	// histogram types
 	static public final int H1D = 101;
@@ -58,6 +59,11 @@ public class LinePars implements Serializable {
 
 	public static final int STICKS = 2;
 
+	// decimation of large data sets before drawing
+	static public final int DECIMATION_NONE = 0;
+	static public final int DECIMATION_AUTO = 1;
+	static public final int DECIMATION_LTTB = 2;
+
 	// there are only 12 symbols, 13 means no symbol drawing
 	static final int NO_SYMBOL = 13;
 
@@ -108,6 +114,9 @@ public class LinePars implements Serializable {
 	protected int style;
 	protected boolean showLegend;
 	protected boolean dataModified;
+	protected int decimation = DECIMATION_AUTO;
+	protected boolean densityLog;
+	protected boolean densityHexbin;
 
 	// private final String lf = System.getProperty("line.separator");
 
@@ -248,6 +257,74 @@ public class LinePars implements Serializable {
 		return every;
 	}
 
+	/**
+	 * Returns how large data sets are reduced before drawing.
+	 * 
+	 * @return DECIMATION_NONE, DECIMATION_AUTO or DECIMATION_LTTB
+	 */
+	public int getDecimation() {
+		return decimation;
+	}
+
+	/**
+	 * Sets how large data sets are reduced before drawing. With
+	 * DECIMATION_AUTO (default), lines and symbols without errors are reduced
+	 * to the points which change the picture, so the plot looks the same
+	 * (pixel for pixel without antialiasing).
+	 * DECIMATION_LTTB reduces lines to about two points per pixel column with
+	 * the Largest-Triangle-Three-Buckets algorithm, which keeps the shape of
+	 * the line but not every spike. DECIMATION_NONE draws all points.
+	 * 
+	 * @param d
+	 *            DECIMATION_NONE, DECIMATION_AUTO or DECIMATION_LTTB
+	 */
+	public void setDecimation(int d) {
+		decimation = d;
+	}
+
+	/**
+	 * Returns true if the DENSITY style uses a logarithmic color scale.
+	 * 
+	 * @return true for log scale of the point counts
+	 */
+	public boolean getDensityLog() {
+		return densityLog;
+	}
+
+	/**
+	 * Sets the color scale of the DENSITY style. With a linear scale (default)
+	 * the color of a cell is proportional to the number of points in it, with
+	 * a log scale it follows log(1+count), which keeps sparse regions visible
+	 * next to a dense core.
+	 * 
+	 * @param log
+	 *            true for log scale of the point counts
+	 */
+	public void setDensityLog(boolean log) {
+		densityLog = log;
+	}
+
+	/**
+	 * Returns true if the DENSITY style counts points in hexagons.
+	 * 
+	 * @return true for hexagonal bins, false for one bin per pixel
+	 */
+	public boolean getDensityHexbin() {
+		return densityHexbin;
+	}
+
+	/**
+	 * Sets the cells of the DENSITY style. By default the points are counted
+	 * per pixel. With hexagonal bins the radius of the hexagons (in pixels) is
+	 * the symbol size.
+	 * 
+	 * @param hexbin
+	 *            true for hexagonal bins, false for one bin per pixel
+	 */
+	public void setDensityHexbin(boolean hexbin) {
+		densityHexbin = hexbin;
+	}
+
 	/**
 	 * Returns the current graph style.
 	 * 
@@ -324,6 +401,9 @@ public class LinePars implements Serializable {
 		errorsFillColorTransp = lp.errorsFillColorTransp;
 		errorsFillColorTranspSys = lp.errorsFillColorTranspSys;
 		fillBars = lp.fillBars;
+		decimation = lp.decimation;
+		densityLog = lp.densityLog;
+		densityHexbin = lp.densityHexbin;
 	}
 
 	/**
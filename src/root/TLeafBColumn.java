@@ -14,6 +14,8 @@ import org.freehep.util.Value;
 class TLeafBColumn extends TLeafColumn
 {
    private TLeafB leaf;
+   private byte[] array;
+   private int arrayRow = -1;
 
    TLeafBColumn(TLeafB leaf)
    {
@@ -46,11 +48,33 @@ class TLeafBColumn extends TLeafColumn
       }
    }
    
+   boolean isNumeric()
+   {
+      return true;
+   }
+
+   void getValues(int row, int n, double[] out, int offset)
+   {
+      try
+      {
+         for (int i = 0; i < n; i++)
+            out[offset + i] = leaf.getValue(row + i);
+      }
+      catch (IOException x)
+      {
+         throw new RuntimeException("IOException accessing tuple", x);
+      }
+   }
+
    void getArrayValue(int row, int dim, Value value)
    {
       try
       {
-         byte[] array = (byte[]) leaf.getWrappedValue(row);
+         if (row != arrayRow)
+         {
+            array = (byte[]) leaf.getWrappedValue(row);
+            arrayRow = row;
+         }
          value.set(array[dim]);
       }
       catch (IOException x)
@@ -14,6 +14,8 @@ import org.freehep.util.Value;
 class TLeafCColumn extends TLeafColumn
 {
    private TLeafC leaf;
+   private int[] array;
+   private int arrayRow = -1;
 
    TLeafCColumn(TLeafC leaf)
    {
@@ -50,7 +52,11 @@ class TLeafCColumn extends TLeafColumn
    {
       try
       {
-         int[] array = (int[]) leaf.getWrappedValue(row);
+         if (row != arrayRow)
+         {
+            array = (int[]) leaf.getWrappedValue(row);
+            arrayRow = row;
+         }
          value.set(array[dim]);
       }
       catch (IOException x)
@@ -33,6 +33,26 @@ abstract class TLeafColumn implements FTupleColumn
 
    abstract void getValue(int row, Value value);
    abstract void getArrayValue(int row, int dim, Value value);
+
+   /**
+    * True if the values of this column can be read as doubles with
+    * getValues().
+    */
+   boolean isNumeric()
+   {
+      return false;
+   }
+
+   /**
+    * Read values of consecutive rows as doubles. Rows are read in order,
+    * so the reader can reuse the current basket. Numeric columns override
+    * it, see isNumeric().
+    * @throws IllegalStateException if the column is not numeric
+    */
+   void getValues(int row, int n, double[] out, int offset)
+   {
+      throw new IllegalStateException("Column " + name() + " is not numeric");
+   }
    
    public boolean hasDefaultValue() {
        return false;
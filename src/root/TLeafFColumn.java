@@ -14,6 +14,8 @@ import org.freehep.util.Value;
 class TLeafFColumn extends TLeafColumn
 {
    private TLeafF leaf;
+   private float[] array;
+   private int arrayRow = -1;
 
    TLeafFColumn(TLeafF leaf)
    {
@@ -45,11 +47,33 @@ class TLeafFColumn extends TLeafColumn
          throw new RuntimeException("IOException accessing tuple", x);
       }
    }
+   boolean isNumeric()
+   {
+      return true;
+   }
+
+   void getValues(int row, int n, double[] out, int offset)
+   {
+      try
+      {
+         for (int i = 0; i < n; i++)
+            out[offset + i] = leaf.getValue(row + i);
+      }
+      catch (IOException x)
+      {
+         throw new RuntimeException("IOException accessing tuple", x);
+      }
+   }
+
    void getArrayValue(int row, int dim, Value value)
    {
       try
       {
-         float[] array = (float[]) leaf.getWrappedValue(row);
+         if (row != arrayRow)
+         {
+            array = (float[]) leaf.getWrappedValue(row);
+            arrayRow = row;
+         }
          value.set(array[dim]);
       }
       catch (IOException x)
@@ -14,6 +14,8 @@ import org.freehep.util.Value;
 class TLeafIColumn extends TLeafColumn
 {
    private TLeafI leaf;
+   private int[] array;
+   private int arrayRow = -1;
 
    TLeafIColumn(TLeafI leaf)
    {
@@ -47,11 +49,33 @@ class TLeafIColumn extends TLeafColumn
       }
    }
    
+   boolean isNumeric()
+   {
+      return true;
+   }
+
+   void getValues(int row, int n, double[] out, int offset)
+   {
+      try
+      {
+         for (int i = 0; i < n; i++)
+            out[offset + i] = leaf.getValue(row + i);
+      }
+      catch (IOException x)
+      {
+         throw new RuntimeException("IOException accessing tuple", x);
+      }
+   }
+
    void getArrayValue(int row, int dim, Value value)
    {
       try
       {
-         int[] array = (int[]) leaf.getWrappedValue(row);
+         if (row != arrayRow)
+         {
+            array = (int[]) leaf.getWrappedValue(row);
+            arrayRow = row;
+         }
          value.set(array[dim]);
       }
       catch (IOException x)
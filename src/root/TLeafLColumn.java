@@ -12,6 +12,8 @@ import org.freehep.util.Value;
 class TLeafLColumn extends TLeafColumn
 {
    private TLeafL leaf;
+   private long[] array;
+   private int arrayRow = -1;
 
    TLeafLColumn(TLeafL leaf)
    {
@@ -45,11 +47,33 @@ class TLeafLColumn extends TLeafColumn
       }
    }
    
+   boolean isNumeric()
+   {
+      return true;
+   }
+
+   void getValues(int row, int n, double[] out, int offset)
+   {
+      try
+      {
+         for (int i = 0; i < n; i++)
+            out[offset + i] = leaf.getValue(row + i);
+      }
+      catch (IOException x)
+      {
+         throw new RuntimeException("IOException accessing tuple", x);
+      }
+   }
+
    void getArrayValue(int row, int dim, Value value)
    {
       try
       {
-         long[] array = (long[]) leaf.getWrappedValue(row);
+         if (row != arrayRow)
+         {
+            array = (long[]) leaf.getWrappedValue(row);
+            arrayRow = row;
+         }
          value.set(array[dim]);
       }
       catch (IOException x)
@@ -14,6 +14,8 @@ import org.freehep.util.Value;
 class TLeafObjectColumn extends TLeafColumn
 {
    private TLeaf leaf;
+   private Object[] array;
+   private int arrayRow = -1;
 
    TLeafObjectColumn(TLeaf leaf)
    {
@@ -50,7 +52,11 @@ class TLeafObjectColumn extends TLeafColumn
    {
       try
       {
-         Object[] array = (Object[]) leaf.getWrappedValue(row);
+         if (row != arrayRow)
+         {
+            array = (Object[]) leaf.getWrappedValue(row);
+            arrayRow = row;
+         }
          value.set(array[dim]);
       }
       catch (IOException x)
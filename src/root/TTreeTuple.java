@@ -98,6 +98,30 @@ class TTreeTuple extends ReadOnlyAbstractTuple {
         columns[column].getValue(getRow(),v);
     }    
 
+   /**
+    * Check whether a column can be read with columnValues().
+    * @param column The column index
+    * @return true for numeric columns
+    */
+   public boolean isNumericColumn(int column)
+   {
+      return columns[column].isNumeric();
+   }
+
+   /**
+    * Read values of a numeric column for consecutive rows.
+    * @param column The column index
+    * @param fromRow The first row
+    * @param n The number of rows
+    * @param out The output array
+    * @param offset The position of the first value in the output array
+    * @throws IllegalStateException if the column is not numeric
+    */
+   public void columnValues(int column, int fromRow, int n, double[] out, int offset)
+   {
+      columns[column].getValues(fromRow, n, out, offset);
+   }
+
    public hep.aida.ITuple findTuple(int col) {
       columns[col].getValue(getRow(), theValue);
       return (ITuple) theValue.getObject();